@@ -1,6 +1,9 @@
 package io.microgenie.application;
 
 
+import io.microgenie.application.events.AsyncPublisherConfig;
+import io.microgenie.application.events.CoalescingPublisherConfig;
+
 import java.util.Map;
 
 
@@ -17,9 +20,29 @@ import java.util.Map;
  * 			Deleted: BookDeleted
  * 			Created: BookCreated
  * 	    	Updated: BookModified
+ * 
+ * Optionally, state changes can be published asynchronously so that callers do not wait on the 
+ * underlying publisher
+ * 
+ *	stateChanges: 
+ * 		events: ...
+ * 		asyncPublisher:
+ * 			bufferSize: 10000
+ * 			lingerMs: 100
+ * 
+ * Successive changes to the same item can be merged into a single net change, published once the window 
+ * of the item has passed or the maximum number of changes has been merged
+ * 
+ *	stateChanges: 
+ * 		events: ...
+ * 		coalescing:
+ * 			windowMs: 100
+ * 			maxChangesPerKey: 50
  */
 public class StateChangeConfiguration{
 	private Map<String, Map<String, String>> events;
+	private AsyncPublisherConfig asyncPublisher;
+	private CoalescingPublisherConfig coalescing;
 	public StateChangeConfiguration(){}
 	public StateChangeConfiguration(final Map<String, Map<String, String>> events){
 		this.events = events;
@@ -30,4 +53,24 @@ public class StateChangeConfiguration{
 	public void setEvents(Map<String, Map<String, String>> events) {
 		this.events = events;
 	}
+	/***
+	 * When set, state changes are published through an {@link io.microgenie.application.events.AsyncPublisher}
+	 * @return asyncPublisherConfig - null if state changes are published synchronously
+	 */
+	public AsyncPublisherConfig getAsyncPublisher() {
+		return asyncPublisher;
+	}
+	public void setAsyncPublisher(AsyncPublisherConfig asyncPublisher) {
+		this.asyncPublisher = asyncPublisher;
+	}
+	/***
+	 * When set, successive changes to the same item are merged by a {@link io.microgenie.application.events.CoalescingStateChangePublisher}
+	 * @return coalescingConfig - null if each change is published
+	 */
+	public CoalescingPublisherConfig getCoalescing() {
+		return coalescing;
+	}
+	public void setCoalescing(CoalescingPublisherConfig coalescing) {
+		this.coalescing = coalescing;
+	}
 }
\ No newline at end of file
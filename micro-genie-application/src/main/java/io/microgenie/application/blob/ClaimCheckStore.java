@@ -0,0 +1,129 @@
+package io.microgenie.application.blob;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+
+
+/***
+ * Stores payloads that are too large for a message or event transport as files, following the claim check pattern.
+ * <p>
+ * Producers save the oversized payload and send a small pointer in its place. Consumers resolve the pointer
+ * with a streaming read and delete the file once the message has been processed. Pointers take the form
+ * {drive}:{path} and files are saved at {prefix}/{namespace}/{uuid}
+ *
+ * @author shawn
+ */
+public class ClaimCheckStore {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ClaimCheckStore.class);
+
+	/** The header producers use to flag a message whose body is a claim check pointer **/
+	public static final String HEADER = "microgenie-claim-check";
+
+	private static final String CONTENT_TYPE = "application/octet-stream";
+	private static final String POINTER_SEPARATOR = ":";
+
+	private final FileStoreFactory files;
+	private final String drive;
+	private final String prefix;
+
+
+	/***
+	 * @param files
+	 * @param drive - The drive payloads are saved to, if null the default drive is used. Only required to store payloads
+	 * @param prefix - The path prefix payloads are saved under
+	 */
+	public ClaimCheckStore(final FileStoreFactory files, final String drive, final String prefix){
+		this.files = Preconditions.checkNotNull(files, "FileStoreFactory is required");
+		this.drive = Strings.isNullOrEmpty(drive) ? files.getDefaultDrive() : drive;
+		this.prefix = Strings.nullToEmpty(prefix).endsWith("/") ? prefix.substring(0, prefix.length() - 1) : Strings.nullToEmpty(prefix);
+	}
+
+
+	/***
+	 * Save the payload
+	 * @param namespace - The queue or stream the payload was produced to
+	 * @param payload
+	 * @return pointer - The pointer to send in place of the payload
+	 */
+	public String store(final String namespace, final byte[] payload){
+		Preconditions.checkState(!Strings.isNullOrEmpty(this.drive), "A claim check drive is required when the file store has no default drive");
+		final String path = String.format("%s/%s/%s", this.prefix, namespace, UUID.randomUUID().toString());
+		this.files.save(FileContent.create(this.drive, path, payload.length, new ByteArrayInputStream(payload), FileMetadata.create(CONTENT_TYPE)));
+		return this.drive + POINTER_SEPARATOR + path;
+	}
+
+
+	/***
+	 * Open a stream over the payload, the caller is responsible for closing it
+	 * @param pointer
+	 * @return content
+	 */
+	public InputStream open(final String pointer){
+		return this.files.readStream(toPath(pointer)).getContent();
+	}
+
+
+	/***
+	 * Read the payload
+	 * @param pointer
+	 * @return payload
+	 * @throws IOException
+	 */
+	public byte[] read(final String pointer) throws IOException{
+		try(final InputStream content = this.open(pointer)){
+			return ByteStreams.toByteArray(content);
+		}
+	}
+
+
+	/***
+	 * Read the payload as a UTF-8 string
+	 * @param pointer
+	 * @return payload
+	 * @throws IOException
+	 */
+	public String readString(final String pointer) throws IOException{
+		try(final Reader content = new InputStreamReader(this.open(pointer), Charsets.UTF_8)){
+			return CharStreams.toString(content);
+		}
+	}
+
+
+	/***
+	 * Delete the payload once the message referencing it has been processed, failures are logged
+	 * @param pointer
+	 */
+	public void delete(final String pointer){
+		try{
+			this.files.delete(toPath(pointer));
+		}catch(Exception ex){
+			LOGGER.warn("failed to delete claim check: {} - {}", pointer, ex.getMessage());
+		}
+	}
+
+
+	/***
+	 * Parse a pointer into the path of the file it references
+	 * @param pointer
+	 * @return path
+	 */
+	public static FilePath toPath(final String pointer){
+		final int separator = Strings.nullToEmpty(pointer).indexOf(POINTER_SEPARATOR);
+		Preconditions.checkArgument(separator > 0 && separator < pointer.length() - 1, "Invalid claim check pointer: %s", pointer);
+		return FilePath.as(pointer.substring(0, separator), pointer.substring(separator + 1));
+	}
+}
@@ -1,5 +1,6 @@
 package io.microgenie.application.database;
 
+import io.microgenie.application.events.ItemChange;
 import io.microgenie.application.events.StateChangePublisher;
 
 import java.util.List;
@@ -10,6 +11,7 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public abstract class EntityDatabusRepository<T> extends EntityRepository<T> {
@@ -51,13 +53,14 @@ public abstract class EntityDatabusRepository<T> extends EntityRepository<T> {
 	
 	
 	/***
-	 * Save and notify batch items
+	 * Save and notify batch items. The existing items are read in one batch, and the changes of all items
+	 * are published as one batch. When an item is submitted more than once, the last submission is published
 	 * @param submittedItems
 	 */
 	public void saveAndNotify(List<T> submittedItems) {
 		
-		final Map<String, PartitionedDataKeyWithItem<T>> submittedItemsMap = Maps.newHashMap();
-		final Map<String, PartitionedDataKeyWithItem<T>> existingItemsMap = Maps.newHashMap();
+		final Map<String, PartitionedDataKeyWithItem<T>> submittedItemsMap = Maps.newLinkedHashMap();
+		final Map<String, T> existingItemsMap = Maps.newHashMap();
 		
 		/** Map the submitted items to a unique key **/
 		for(T item : submittedItems){
@@ -69,9 +72,9 @@ public abstract class EntityDatabusRepository<T> extends EntityRepository<T> {
 		/** Map the existing Items to a unique key**/
 		final List<T> existingItems = this.getList(submittedItems);
 		if(existingItems!=null){
-			for(T existingItem : submittedItems){
+			for(T existingItem : existingItems){
 				final PartitionedDataKeyWithItem<T> partitionedKey = this.createPartitionedDataKey(existingItem);
-				existingItemsMap.put(partitionedKey.getUniqueKey(), partitionedKey);
+				existingItemsMap.put(partitionedKey.getUniqueKey(), existingItem);
 			}
 		}
 		
@@ -79,10 +82,12 @@ public abstract class EntityDatabusRepository<T> extends EntityRepository<T> {
 		this.save(submittedItems);
 		
 		/** send the submitted and mapped existing items to the publisher to sort out change details **/
+		final List<ItemChange> changes = Lists.newArrayListWithCapacity(submittedItemsMap.size());
 		for(Entry<String, PartitionedDataKeyWithItem<T>> submittedItemEntry : submittedItemsMap.entrySet()){
 			final PartitionedDataKeyWithItem<T> partitionedSubmittedItem = submittedItemEntry.getValue();
-			this.changePublisher.publishChanges(this.clazz, partitionedSubmittedItem.getPartitionKey(), partitionedSubmittedItem.getItem(), existingItemsMap.get(partitionedSubmittedItem.getUniqueKey()));
+			changes.add(ItemChange.create(partitionedSubmittedItem.getPartitionKey(), partitionedSubmittedItem.getItem(), existingItemsMap.get(submittedItemEntry.getKey())));
 		}
+		this.changePublisher.publishChanges(this.clazz, changes);
 	}
 	
 	
@@ -0,0 +1,353 @@
+package io.microgenie.application.events;
+
+import io.microgenie.application.events.AsyncPublisherConfig.Backpressure;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/***
+ * An asynchronous {@link Publisher} that accepts events into a bounded in memory buffer
+ * and returns to the caller immediately.
+ * <p>
+ * A pool of sender threads drains the buffer, sending events to the wrapped publisher in batches
+ * once a batch is full or the linger time has passed. When the buffer is full the configured
+ * {@link Backpressure} policy decides whether the caller blocks, the event is dropped or the submit fails.
+ * <p>
+ * {@link #flush()} blocks until all events accepted before the call have been sent, events accepted while it waits do not
+ * hold it up. {@link #close()} drains the buffer,
+ * waiting up to the configured close timeout. Closing this publisher does not close the wrapped publisher
+ *
+ * @author shawn
+ */
+public class AsyncPublisher implements Publisher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPublisher.class);
+	private static final long FLUSH_CHECK_MILLIS = 10L;
+
+	private final Publisher publisher;
+	private final AsyncPublisherConfig config;
+	private final BlockingQueue<Accepted> buffer;
+	private final ExecutorService senders;
+
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private final AtomicLong flushing = new AtomicLong();
+	private final AtomicLong pending = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	/** each accepted event takes the next sequence number **/
+	private final AtomicLong sequence = new AtomicLong();
+	private final Object drained = new Object();
+	/** the highest sequence number at which every event up to and including it has completed, guarded by drained **/
+	private long watermark;
+	/** sequence numbers completed out of order above the watermark, guarded by drained **/
+	private final Set<Long> completedAbove = Sets.newHashSet();
+
+
+	/***
+	 * Create an asynchronous publisher which sends events to the given publisher
+	 *
+	 * @param publisher - The publisher that events are sent to by the sender threads
+	 * @param config - buffer, batching and backpressure configuration
+	 */
+	public AsyncPublisher(final Publisher publisher, final AsyncPublisherConfig config){
+		this.publisher = Preconditions.checkNotNull(publisher, "publisher is required");
+		this.config = Preconditions.checkNotNull(config, "AsyncPublisherConfig is required");
+		Preconditions.checkArgument(config.getBufferSize() > 0, "bufferSize must be greater than zero");
+		Preconditions.checkArgument(config.getSenderThreads() > 0, "senderThreads must be greater than zero");
+		Preconditions.checkArgument(config.getBatchSize() > 0, "batchSize must be greater than zero");
+
+		this.buffer = new ArrayBlockingQueue<Accepted>(config.getBufferSize());
+		this.senders = Executors.newFixedThreadPool(config.getSenderThreads(),
+				new ThreadFactoryBuilder()
+				.setDaemon(true)
+				.setNameFormat("async-publisher-" + publisher.clientId() + "-%d")
+				.build());
+		for(int i = 0; i < config.getSenderThreads(); i++){
+			this.senders.execute(new Sender());
+		}
+	}
+
+
+
+	/***
+	 * Accept the event into the buffer, applying the configured backpressure policy if the buffer is full
+	 * @throws IllegalStateException - if the publisher has been closed, or if the buffer is full and the policy is {@link Backpressure#FAIL}
+	 */
+	@Override
+	public void submit(final Event event) {
+		Preconditions.checkNotNull(event, "event cannot be null");
+		if(!this.running.get()){
+			throw new IllegalStateException(String.format("async publisher for client: %s has been closed", this.clientId()));
+		}
+
+		this.pending.incrementAndGet();
+		final Accepted accepted = new Accepted(event, this.sequence.incrementAndGet());
+		boolean enqueued = false;
+		try{
+			enqueued = this.enqueue(accepted);
+		}finally{
+			if(!enqueued){
+				this.completed(Lists.newArrayList(accepted));
+			}
+		}
+	}
+
+
+
+	/***
+	 * Accept each event into the buffer
+	 */
+	@Override
+	public void submitBatch(final List<Event> events) {
+		for(Event event : events){
+			this.submit(event);
+		}
+	}
+
+
+
+	/***
+	 * Block until all events accepted before this call have been sent
+	 */
+	public void flush() {
+		this.flush(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+
+
+	/***
+	 * Block until all events accepted before this call have been sent or the timeout expires
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return drained - true if all events accepted before this call were sent before the timeout expired
+	 */
+	public boolean flush(final long timeout, final TimeUnit unit) {
+		final long deadline = System.currentTimeMillis() + Math.min(unit.toMillis(timeout), Long.MAX_VALUE / 2);
+		final long flushSequence = this.sequence.get();
+		this.flushing.incrementAndGet();
+		try{
+			synchronized (this.drained) {
+				while(this.watermark < flushSequence){
+					final long remaining = deadline - System.currentTimeMillis();
+					if(remaining <= 0){
+						return false;
+					}
+					this.drained.wait(remaining);
+				}
+			}
+			return true;
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}finally{
+			this.flushing.decrementAndGet();
+		}
+	}
+
+
+
+	/***
+	 * The number of events that have been accepted but not yet sent
+	 * @return pendingCount
+	 */
+	public long getPendingCount(){
+		return this.pending.get();
+	}
+
+
+	/***
+	 * The number of events dropped because the buffer was full
+	 * @return droppedCount
+	 */
+	public long getDroppedCount(){
+		return this.dropped.get();
+	}
+
+
+	@Override
+	public String clientId() {
+		return this.publisher.clientId();
+	}
+
+
+
+	/***
+	 * Stop accepting events and wait up to the configured close timeout for the buffer to drain
+	 */
+	@Override
+	public void close() throws IOException {
+		if(this.running.getAndSet(false)){
+			LOGGER.info("closing async publisher for client: {} - {} events pending", this.clientId(), this.pending.get());
+			if(!this.flush(this.config.getCloseTimeoutMs(), TimeUnit.MILLISECONDS)){
+				LOGGER.warn("async publisher for client: {} was closed with {} unsent events", this.clientId(), this.pending.get());
+			}
+			this.senders.shutdown();
+			try {
+				if(!this.senders.awaitTermination(this.config.getLingerMs() + 1000, TimeUnit.MILLISECONDS)){
+					this.senders.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				this.senders.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+
+	/***
+	 * Place the event in the buffer according to the backpressure policy
+	 * @param event
+	 * @return accepted - true if the event was placed in the buffer
+	 */
+	private boolean enqueue(final Accepted accepted) {
+		final Event event = accepted.event;
+		switch(this.config.getBackpressure()){
+		case DROP:
+			if(!this.buffer.offer(accepted)){
+				final long count = this.dropped.incrementAndGet();
+				LOGGER.warn("async publisher buffer is full, dropped event id: {} for topic: {} - total dropped: {}", event.getId(), event.getTopic(), count);
+				return false;
+			}
+			return true;
+		case FAIL:
+			if(!this.buffer.offer(accepted)){
+				throw new IllegalStateException(String.format("async publisher buffer is full, unable to accept event id: %s for topic: %s", event.getId(), event.getTopic()));
+			}
+			return true;
+		case BLOCK:
+		default:
+			try {
+				this.buffer.put(accepted);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(String.format("interrupted while waiting to submit event id: %s", event.getId()), e);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Mark events as sent, dropped or failed, advancing the watermark and waking up flushing threads once it has moved
+	 * @param events
+	 */
+	private void completed(final List<Accepted> events) {
+		this.pending.addAndGet(-events.size());
+		synchronized (this.drained) {
+			for(Accepted accepted : events){
+				this.completedAbove.add(accepted.sequence);
+			}
+			final long previous = this.watermark;
+			while(this.completedAbove.remove(this.watermark + 1)){
+				this.watermark++;
+			}
+			if(this.watermark > previous){
+				this.drained.notifyAll();
+			}
+		}
+	}
+
+
+
+	/***
+	 * An accepted event and its sequence number
+	 */
+	private static final class Accepted {
+		private final Event event;
+		private final long sequence;
+		Accepted(final Event event, final long sequence){
+			this.event = event;
+			this.sequence = sequence;
+		}
+	}
+
+
+
+	/***
+	 * Drains batches from the buffer and sends them to the wrapped publisher
+	 */
+	private class Sender implements Runnable {
+
+		@Override
+		public void run() {
+			while(running.get() || !buffer.isEmpty()){
+				try{
+					final List<Accepted> batch = this.nextBatch();
+					if(!batch.isEmpty()){
+						this.send(batch);
+					}
+				}catch(InterruptedException e){
+					LOGGER.debug("async publisher sender interrupted");
+					return;
+				}
+			}
+		}
+
+
+		/***
+		 * Collect events until the batch is full, the linger time has passed, or a flush has been requested
+		 */
+		private List<Accepted> nextBatch() throws InterruptedException {
+			final List<Accepted> batch = Lists.newArrayList();
+			/** idle senders also wait in short slices, so closing is not held up by the linger time **/
+			final Accepted first = buffer.poll(FLUSH_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+			if(first == null){
+				return batch;
+			}
+			batch.add(first);
+
+			final long deadline = System.currentTimeMillis() + config.getLingerMs();
+			while(batch.size() < config.getBatchSize()){
+				buffer.drainTo(batch, config.getBatchSize() - batch.size());
+				final long remaining = deadline - System.currentTimeMillis();
+				if(batch.size() >= config.getBatchSize() || remaining <= 0 || flushing.get() > 0 || !running.get()){
+					break;
+				}
+				/** wait in short slices so a flush requested while lingering is not held up by the linger time **/
+				final Accepted next = buffer.poll(Math.min(remaining, FLUSH_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+				if(next != null){
+					batch.add(next);
+				}
+			}
+			return batch;
+		}
+
+
+		private void send(final List<Accepted> batch){
+			try{
+				if(batch.size() == 1){
+					publisher.submit(batch.get(0).event);
+				}else{
+					final List<Event> events = Lists.newArrayListWithCapacity(batch.size());
+					for(Accepted accepted : batch){
+						events.add(accepted.event);
+					}
+					publisher.submitBatch(events);
+				}
+			}catch(Exception ex){
+				LOGGER.error("async publisher failed to send batch of {} events - {}", batch.size(), ex.getMessage(), ex);
+			}finally{
+				completed(batch);
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package io.microgenie.application.events;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/***
+ * Configuration for an {@link AsyncPublisher}
+ * <p>
+ * Events are accepted into a bounded buffer of {@link #getBufferSize()} events and sent by
+ * {@link #getSenderThreads()} threads. A sender sends a batch once it holds {@link #getBatchSize()} events
+ * or once {@link #getLingerMs()} milliseconds have passed since the first event of the batch was taken
+ *
+ * @author shawn
+ */
+public class AsyncPublisherConfig {
+
+	/***
+	 * What to do when an event is submitted while the buffer is full
+	 * <li>BLOCK - block the caller until space is available</li>
+	 * <li>DROP - drop the event and log a warning</li>
+	 * <li>FAIL - throw an {@link IllegalStateException}</li>
+	 */
+	public enum Backpressure {
+		BLOCK,
+		DROP,
+		FAIL
+	}
+
+	private int bufferSize = 10000;
+	private int senderThreads = 2;
+	private int batchSize = 500;
+	private long lingerMs = 100;
+	private long closeTimeoutMs = 5000;
+	private Backpressure backpressure = Backpressure.BLOCK;
+
+
+	@JsonProperty("bufferSize")
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	@JsonProperty("bufferSize")
+	public void setBufferSize(final int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+	public AsyncPublisherConfig withBufferSize(final int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	@JsonProperty("senderThreads")
+	public int getSenderThreads() {
+		return senderThreads;
+	}
+	@JsonProperty("senderThreads")
+	public void setSenderThreads(final int senderThreads) {
+		this.senderThreads = senderThreads;
+	}
+	public AsyncPublisherConfig withSenderThreads(final int senderThreads) {
+		this.senderThreads = senderThreads;
+		return this;
+	}
+
+	@JsonProperty("batchSize")
+	public int getBatchSize() {
+		return batchSize;
+	}
+	@JsonProperty("batchSize")
+	public void setBatchSize(final int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public AsyncPublisherConfig withBatchSize(final int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	@JsonProperty("lingerMs")
+	public long getLingerMs() {
+		return lingerMs;
+	}
+	@JsonProperty("lingerMs")
+	public void setLingerMs(final long lingerMs) {
+		this.lingerMs = lingerMs;
+	}
+	public AsyncPublisherConfig withLingerMs(final long lingerMs) {
+		this.lingerMs = lingerMs;
+		return this;
+	}
+
+	/***
+	 * The maximum time {@link AsyncPublisher#close()} waits for buffered events to be sent
+	 * @return closeTimeoutMs
+	 */
+	@JsonProperty("closeTimeoutMs")
+	public long getCloseTimeoutMs() {
+		return closeTimeoutMs;
+	}
+	@JsonProperty("closeTimeoutMs")
+	public void setCloseTimeoutMs(final long closeTimeoutMs) {
+		this.closeTimeoutMs = closeTimeoutMs;
+	}
+	public AsyncPublisherConfig withCloseTimeoutMs(final long closeTimeoutMs) {
+		this.closeTimeoutMs = closeTimeoutMs;
+		return this;
+	}
+
+	@JsonProperty("backpressure")
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+	@JsonProperty("backpressure")
+	public void setBackpressure(final Backpressure backpressure) {
+		this.backpressure = backpressure;
+	}
+	public AsyncPublisherConfig withBackpressure(final Backpressure backpressure) {
+		this.backpressure = backpressure;
+		return this;
+	}
+}
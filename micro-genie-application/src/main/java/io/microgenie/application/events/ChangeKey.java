@@ -0,0 +1,19 @@
+package io.microgenie.application.events;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/***
+ * Marks a model property that identifies the item, such as its hash or range key.
+ * <p>
+ * An item modified under the same key keeps its key, so key properties are not compared for modifications.
+ * They are still reported as added when an item is created and removed when it is deleted
+ *
+ * @author shawn
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface ChangeKey {}
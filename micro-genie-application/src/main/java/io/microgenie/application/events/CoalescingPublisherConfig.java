@@ -0,0 +1,60 @@
+package io.microgenie.application.events;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/***
+ * Configuration for a {@link CoalescingStateChangePublisher}
+ * <p>
+ * Changes to the same item are held for up to {@link #getWindowMs()} milliseconds from the first change, or until
+ * {@link #getMaxChangesPerKey()} changes have been merged, and are then published as a single net change.
+ * When more than {@link #getMaxPendingKeys()} items have changes held, all held changes are published
+ *
+ * @author shawn
+ */
+public class CoalescingPublisherConfig {
+
+	private long windowMs = 100;
+	private int maxChangesPerKey = 50;
+	private int maxPendingKeys = 10000;
+
+
+	@JsonProperty("windowMs")
+	public long getWindowMs() {
+		return windowMs;
+	}
+	@JsonProperty("windowMs")
+	public void setWindowMs(final long windowMs) {
+		this.windowMs = windowMs;
+	}
+	public CoalescingPublisherConfig withWindowMs(final long windowMs) {
+		this.windowMs = windowMs;
+		return this;
+	}
+
+	@JsonProperty("maxChangesPerKey")
+	public int getMaxChangesPerKey() {
+		return maxChangesPerKey;
+	}
+	@JsonProperty("maxChangesPerKey")
+	public void setMaxChangesPerKey(final int maxChangesPerKey) {
+		this.maxChangesPerKey = maxChangesPerKey;
+	}
+	public CoalescingPublisherConfig withMaxChangesPerKey(final int maxChangesPerKey) {
+		this.maxChangesPerKey = maxChangesPerKey;
+		return this;
+	}
+
+	@JsonProperty("maxPendingKeys")
+	public int getMaxPendingKeys() {
+		return maxPendingKeys;
+	}
+	@JsonProperty("maxPendingKeys")
+	public void setMaxPendingKeys(final int maxPendingKeys) {
+		this.maxPendingKeys = maxPendingKeys;
+	}
+	public CoalescingPublisherConfig withMaxPendingKeys(final int maxPendingKeys) {
+		this.maxPendingKeys = maxPendingKeys;
+		return this;
+	}
+}
@@ -0,0 +1,515 @@
+package io.microgenie.application.events;
+
+import io.microgenie.application.StateChangeConfiguration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/***
+ * A {@link StateChangePublisher} that merges successive changes to the same item into a single net change.
+ * <p>
+ * The first change to an item, identified by its model class and partition key, opens a window holding the item
+ * as it existed before that change. Later changes within the window only replace the submitted item. Once the window
+ * has passed, or the configured number of changes has been merged, the changes between the held existing item and the
+ * latest submitted item are published as one event. An item created and deleted within the same window publishes nothing.
+ * <p>
+ * {@link #publishChanges(Class, String, Object, Object)} returns true once the change has been accepted into a window.
+ * Items are held by reference until their changes are published, so they should not be modified after being submitted.
+ * Actions published through {@link #publishAction(Class, String, String, Object)} first publish any changes held for the
+ * same item, keeping the events of an item in order. A held change stays in place until its event has been submitted,
+ * changes and actions for the item wait until then. A thread interrupted while waiting fails with an {@link IllegalStateException}
+ * without publishing its change or action. {@link #close()} publishes all held changes
+ * <p>
+ * Net changes are published at least once. When the publisher fails to submit them the changes are reopened and stay held,
+ * later changes merge into them and the next flush retries them. The failure reaches the caller when the change was published
+ * by {@link #publishChanges(Class, String, Object, Object)}, {@link #publishAction(Class, String, String, Object)},
+ * {@link #flush()} or {@link #close()}, and is logged when published by the window flusher
+ *
+ * @author shawn
+ */
+public class CoalescingStateChangePublisher extends StateChangePublisher implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingStateChangePublisher.class);
+
+	private final CoalescingPublisherConfig coalescing;
+	private final ConcurrentMap<PendingKey, PendingChange> pending = Maps.newConcurrentMap();
+	private final ScheduledExecutorService flusher;
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private final AtomicLong coalesced = new AtomicLong();
+
+
+	/***
+	 * Create a coalescing state change publisher which uses a default instance of ObjectMapper for serialization
+	 *
+	 * @param config - The state change configuration
+	 * @param publisher - The publisher net changes are submitted to
+	 * @param coalescing - window configuration
+	 */
+	public CoalescingStateChangePublisher(final StateChangeConfiguration config, final Publisher publisher, final CoalescingPublisherConfig coalescing) {
+		this(config, publisher, new ObjectMapper().setSerializationInclusion(Include.NON_NULL), coalescing);
+	}
+
+
+	/***
+	 * Create a coalescing state change publisher
+	 *
+	 * @param config - The state change configuration
+	 * @param publisher - The publisher net changes are submitted to
+	 * @param mapper - The mapper used to serialize items
+	 * @param coalescing - window configuration
+	 */
+	public CoalescingStateChangePublisher(final StateChangeConfiguration config, final Publisher publisher, final ObjectMapper mapper, final CoalescingPublisherConfig coalescing) {
+		super(config, publisher, mapper);
+		this.coalescing = Preconditions.checkNotNull(coalescing, "CoalescingPublisherConfig is required");
+		Preconditions.checkArgument(coalescing.getWindowMs() > 0, "windowMs must be greater than zero");
+		Preconditions.checkArgument(coalescing.getMaxChangesPerKey() > 0, "maxChangesPerKey must be greater than zero");
+		Preconditions.checkArgument(coalescing.getMaxPendingKeys() > 0, "maxPendingKeys must be greater than zero");
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder()
+				.setDaemon(true)
+				.setNameFormat("coalescing-change-publisher-" + publisher.clientId() + "-%d")
+				.build());
+		final long interval = Math.max(1, coalescing.getWindowMs() / 2);
+		this.flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					publishExpired();
+				}catch(Exception ex){
+					LOGGER.error("coalescing change publisher failed to publish held changes - {}", ex.getMessage(), ex);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+
+
+	/***
+	 * Accept the change into the window of the item, publishing the net change once the window is full
+	 * @return accepted - true if the change was accepted, or published once this publisher has been closed
+	 * @throws IllegalArgumentException if both submitted and existing are null
+	 * @throws RuntimeException if the full window failed to publish, the change stays held and is retried
+	 */
+	@Override
+	public boolean publishChanges(final Class<?> clazz, final String key, final Object submitted, final Object existing) {
+
+		if(submitted==null && existing==null){
+			throw new IllegalArgumentException("Both the submitted and existing instances are null. Both cannot be null");
+		}
+		if(!this.running.get()){
+			return super.publishChanges(clazz, key, submitted, existing);
+		}
+
+		final PendingKey pendingKey = new PendingKey(clazz, key);
+		final PendingChange change = this.merge(pendingKey, submitted, existing);
+		if(change.getCount() >= this.coalescing.getMaxChangesPerKey()){
+			this.publish(change);
+		}
+		if(this.pending.size() > this.coalescing.getMaxPendingKeys()){
+			LOGGER.debug("coalescing change publisher is holding changes for more than {} items, publishing all held changes", this.coalescing.getMaxPendingKeys());
+			this.flush();
+		}
+		return true;
+	}
+
+
+
+	/***
+	 * Accept each item change into the window of its item
+	 * @return acceptedCount - the number of item changes accepted
+	 */
+	@Override
+	public int publishChanges(final Class<?> clazz, final List<ItemChange> changes) {
+		if(!this.running.get()){
+			return super.publishChanges(clazz, changes);
+		}
+		int accepted = 0;
+		for(ItemChange change : changes){
+			if(this.publishChanges(clazz, change.getKey(), change.getSubmitted(), change.getExisting())){
+				accepted++;
+			}
+		}
+		return accepted;
+	}
+
+
+
+	/***
+	 * Publish any changes held for the item before publishing the action
+	 */
+	@Override
+	public boolean publishAction(final Class<?> model, final String action, final String key, final Object data) {
+		final PendingChange change = this.pending.get(new PendingKey(model, key));
+		if(change != null){
+			this.publish(change);
+		}
+		return super.publishAction(model, action, key, data);
+	}
+
+
+
+	/***
+	 * Publish all held changes, regardless of their windows
+	 * @throws RuntimeException if the publisher failed to submit the changes, the changes stay held and are retried
+	 */
+	public void flush() {
+		this.publish(Lists.newArrayList(this.pending.values()));
+	}
+
+
+
+	/***
+	 * The number of items with changes held
+	 * @return pendingCount
+	 */
+	public int getPendingCount(){
+		return this.pending.size();
+	}
+
+
+	/***
+	 * The number of changes merged into an earlier change of the same item
+	 * @return coalescedCount
+	 */
+	public long getCoalescedCount(){
+		return this.coalesced.get();
+	}
+
+
+
+	/***
+	 * Stop holding changes and publish all held changes. Closing this publisher does not close the wrapped publisher
+	 * @throws IOException if the held changes could not be submitted, they stay held and {@link #flush()} retries them
+	 */
+	@Override
+	public void close() throws IOException {
+		if(this.running.getAndSet(false)){
+			LOGGER.info("closing coalescing change publisher - publishing changes held for {} items", this.pending.size());
+			this.flusher.shutdown();
+			try {
+				this.flusher.awaitTermination(this.coalescing.getWindowMs() + 1000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			try{
+				this.flush();
+			}catch(RuntimeException ex){
+				throw new IOException(String.format("failed to publish the changes held for %d items", this.pending.size()), ex);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Merge the change into the held change of the item, opening a window if none is held
+	 * @return change - the held change the submitted item was merged into
+	 */
+	private PendingChange merge(final PendingKey pendingKey, final Object submitted, final Object existing) {
+		while(true){
+			PendingChange change = this.pending.get(pendingKey);
+			if(change == null){
+				final PendingChange created = new PendingChange(pendingKey, existing, submitted, System.currentTimeMillis());
+				change = this.pending.putIfAbsent(pendingKey, created);
+				if(change == null){
+					return created;
+				}
+			}
+			if(change.merge(submitted)){
+				this.coalesced.incrementAndGet();
+				return change;
+			}
+			/** the change is being published, wait for its event to be submitted then open a new window, or merge again if it was reopened **/
+			if(awaitPublished(change)){
+				this.pending.remove(pendingKey, change);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Publish the changes whose windows have passed
+	 */
+	private void publishExpired() {
+		final long expiredBefore = System.currentTimeMillis() - this.coalescing.getWindowMs();
+		final List<PendingChange> expired = Lists.newArrayList();
+		for(PendingChange change : this.pending.values()){
+			if(change.getFirstChangeMs() <= expiredBefore){
+				expired.add(change);
+			}
+		}
+		this.publish(expired);
+	}
+
+
+
+	/***
+	 * Publish the net change of a held change, or wait for it to be published by another thread. 
+	 * If the change fails to publish it is reopened
+	 */
+	private void publish(final PendingChange change) {
+		while(!change.close()){
+			if(awaitPublished(change)){
+				return;
+			}
+			/** the other thread failed and reopened the change, publish it here to keep the events of the item in order **/
+		}
+		boolean submitted = false;
+		try{
+			this.submit(this.createEvent(change));
+			submitted = true;
+		}finally{
+			if(submitted){
+				this.published(change);
+			}else{
+				LOGGER.warn("failed to publish the net change of item key: {} - the change is held to be retried", change.getPendingKey().getKey());
+				change.reopen();
+			}
+		}
+	}
+
+
+
+	/***
+	 * Publish the net changes of the held changes as one batch, skipping changes being published by another thread
+	 */
+	private void publish(final List<PendingChange> changes) {
+		final List<PendingChange> taken = Lists.newArrayList();
+		final List<Event> events = Lists.newArrayList();
+		boolean submitted = false;
+		try{
+			for(PendingChange change : changes){
+				if(change.close()){
+					taken.add(change);
+					this.addEvent(events, this.createEvent(change));
+				}
+			}
+			this.submit(events);
+			submitted = true;
+		}finally{
+			if(!submitted && !taken.isEmpty()){
+				LOGGER.warn("failed to publish the net changes of {} items - the changes are held to be retried", taken.size());
+			}
+			for(PendingChange change : taken){
+				if(submitted){
+					this.published(change);
+				}else{
+					change.reopen();
+				}
+			}
+		}
+	}
+
+
+
+	/***
+	 * Mark the change as published and remove it, releasing threads waiting to change or act on the item
+	 */
+	private void published(final PendingChange change) {
+		change.published();
+		this.pending.remove(change.getPendingKey(), change);
+	}
+
+
+
+	/***
+	 * Wait for the event of a change taken by another thread to be submitted
+	 * @return published - false if the change was reopened after failing to publish
+	 * @throws IllegalStateException if interrupted, the interrupt flag is restored and the calling change or action is not published
+	 */
+	private static boolean awaitPublished(final PendingChange change) {
+		try{
+			return change.awaitPublished();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(String.format("interrupted while waiting for the held change of item key: %s to be published", change.getPendingKey().getKey()), e);
+		}
+	}
+
+
+
+	/***
+	 * Create the event holding the net change of a held change
+	 * @return event - null if there is no net change
+	 */
+	private Event createEvent(final PendingChange change) {
+		final PendingKey pendingKey = change.getPendingKey();
+		if(change.getExisting() == null && change.getSubmitted() == null){
+			LOGGER.debug("item key: {} was created and deleted within the same window, no changes published", pendingKey.getKey());
+			return null;
+		}
+		try{
+			return this.createChangeEvent(pendingKey.getModel(), pendingKey.getKey(), change.getSubmitted(), change.getExisting());
+		}catch(RuntimeException ex){
+			LOGGER.error("unable to create the change event for model: {} - item key: {} - {}", pendingKey.getModel().getName(), pendingKey.getKey(), ex.getMessage(), ex);
+			return null;
+		}
+	}
+
+
+	private void addEvent(final List<Event> events, final Event event) {
+		if(event != null){
+			events.add(event);
+		}
+	}
+
+
+	private void submit(final Event event) {
+		if(event != null){
+			this.getPublisher().submit(event);
+		}
+	}
+
+
+	private void submit(final List<Event> events) {
+		if(events.size() == 1){
+			this.getPublisher().submit(events.get(0));
+		}else if(!events.isEmpty()){
+			this.getPublisher().submitBatch(events);
+		}
+	}
+
+
+
+	/***
+	 * Identifies an item by its model class and partition key
+	 */
+	private static final class PendingKey {
+		private final Class<?> model;
+		private final String key;
+		PendingKey(final Class<?> model, final String key){
+			this.model = model;
+			this.key = key;
+		}
+		public Class<?> getModel() {
+			return model;
+		}
+		public String getKey() {
+			return key;
+		}
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(this.model, this.key);
+		}
+		@Override
+		public boolean equals(final Object obj) {
+			if(!(obj instanceof PendingKey)){
+				return false;
+			}
+			final PendingKey other = (PendingKey)obj;
+			return this.model.equals(other.model) && Objects.equal(this.key, other.key);
+		}
+	}
+
+
+
+	/***
+	 * The changes held for an item, the item as it existed before the window opened and the latest submitted item
+	 */
+	private static final class PendingChange {
+		private final PendingKey pendingKey;
+		private final Object existing;
+		private final long firstChangeMs;
+		private Object submitted;
+		private int count = 1;
+		private boolean closed;
+		private boolean published;
+
+		PendingChange(final PendingKey pendingKey, final Object existing, final Object submitted, final long firstChangeMs){
+			this.pendingKey = pendingKey;
+			this.existing = existing;
+			this.submitted = submitted;
+			this.firstChangeMs = firstChangeMs;
+		}
+
+		/***
+		 * Replace the submitted item
+		 * @return merged - false if the change has already been taken for publishing
+		 */
+		synchronized boolean merge(final Object submitted){
+			if(this.closed){
+				return false;
+			}
+			this.submitted = submitted;
+			this.count++;
+			return true;
+		}
+
+		/***
+		 * Close the change to further merges, taking it for publishing
+		 * @return closed - false if the change was already closed
+		 */
+		synchronized boolean close(){
+			if(this.closed){
+				return false;
+			}
+			this.closed = true;
+			return true;
+		}
+
+		/***
+		 * Mark the event of the change as submitted
+		 */
+		synchronized void published(){
+			this.published = true;
+			this.notifyAll();
+		}
+
+		/***
+		 * Reopen the change to merges after its event failed to submit, releasing waiting threads
+		 */
+		synchronized void reopen(){
+			this.closed = false;
+			this.notifyAll();
+		}
+
+		/***
+		 * Wait until the event of the change has been submitted, or the change has been reopened
+		 * @return published - false if the change was reopened
+		 * @throws InterruptedException
+		 */
+		synchronized boolean awaitPublished() throws InterruptedException{
+			while(this.closed && !this.published){
+				this.wait();
+			}
+			return this.published;
+		}
+
+		public PendingKey getPendingKey() {
+			return pendingKey;
+		}
+		public Object getExisting() {
+			return existing;
+		}
+		public synchronized Object getSubmitted() {
+			return submitted;
+		}
+		public synchronized int getCount() {
+			return count;
+		}
+		public long getFirstChangeMs() {
+			return firstChangeMs;
+		}
+	}
+}
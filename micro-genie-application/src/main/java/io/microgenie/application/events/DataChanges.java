@@ -11,6 +11,8 @@ public class DataChanges {
 	private final Map<String, Object> added = Maps.newHashMap();
 	private final Map<String, Object> removed = Maps.newHashMap();
 	private final Map<String, Object> modified = Maps.newHashMap();
+	/** values before the change, for removed and modified paths **/
+	private final Map<String, Object> previous = Maps.newHashMap();
 	
 	
 	public DataChanges(final Map<String, Object> submitted){
@@ -34,6 +36,12 @@ public class DataChanges {
 	public void modified(Map<String, Object> modified){
 		this.modified.putAll(modified);
 	}
+	public Map<String, Object> getPrevious() {
+		return previous;
+	}
+	public void previous(Map<String, Object> previous){
+		this.previous.putAll(previous);
+	}
 	public Map<String, Object> getSubmitted() {
 		return submitted;
 	}
@@ -41,6 +49,9 @@ public class DataChanges {
 		this.submitted.putAll(submitted);
 	}
 	public static DataChanges create(final Map<String, Object> submitted, final Map<String, Object> added, final Map<String, Object> removed, final Map<String, Object> modified){
+		return DataChanges.create(submitted, added, removed, modified, null);
+	}
+	public static DataChanges create(final Map<String, Object> submitted, final Map<String, Object> added, final Map<String, Object> removed, final Map<String, Object> modified, final Map<String, Object> previous){
 		final DataChanges changes = new DataChanges(submitted);
 		if(added!=null){
 			changes.added(added);
@@ -51,6 +62,9 @@ public class DataChanges {
 		if(modified!=null){
 			changes.modified(modified);
 		}
+		if(previous!=null){
+			changes.previous(previous);
+		}
 		return changes;
 	}
 	
@@ -63,6 +77,7 @@ public class DataChanges {
 		final Map<String, Object> added = (Map<String, Object>)dataChangeMaps.get("added");
 		final Map<String, Object> removed = (Map<String, Object>)dataChangeMaps.get("removed");
 		final Map<String, Object> modified = (Map<String, Object>)dataChangeMaps.get("modified");
-		return DataChanges.create(submitted, added, removed, modified);
+		final Map<String, Object> previous = (Map<String, Object>)dataChangeMaps.get("previous");
+		return DataChanges.create(submitted, added, removed, modified, previous);
 	}
 }
@@ -0,0 +1,40 @@
+package io.microgenie.application.events;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+
+/***
+ * Thrown from {@link EventHandler#handle(List)} to report that only some events in the batch failed.
+ * <p>
+ * Events that are not part of {@link #getFailedEvents()} are considered handled. Any other exception thrown
+ * from a batch handler marks the whole batch as failed
+ *
+ * @author shawn
+ */
+public class EventBatchException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Event> failedEvents;
+
+
+	public EventBatchException(final String message, final List<Event> failedEvents){
+		this(message, failedEvents, null);
+	}
+	public EventBatchException(final String message, final List<Event> failedEvents, final Throwable cause){
+		super(message, cause);
+		this.failedEvents = ImmutableList.copyOf(Preconditions.checkNotNull(failedEvents, "failedEvents cannot be null"));
+	}
+
+
+	/***
+	 * The events from the batch that were not handled successfully
+	 * @return failedEvents
+	 */
+	public List<Event> getFailedEvents() {
+		return failedEvents;
+	}
+}
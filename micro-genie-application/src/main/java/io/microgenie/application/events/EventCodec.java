@@ -0,0 +1,41 @@
+package io.microgenie.application.events;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/***
+ * Serializes {@link Event}s to and from bytes in a single wire format.
+ * <p>
+ * Binary formats write a single header byte ahead of the payload so consumers can detect the format
+ * of each record, see {@link EventCodecs}
+ *
+ * @author shawn
+ */
+public interface EventCodec {
+
+	/***
+	 * Serialize the event, including the format header if the format has one
+	 * @param event
+	 * @return bytes
+	 * @throws IOException
+	 */
+	public byte[] encode(Event event) throws IOException;
+
+
+	/***
+	 * Determine if the data was written by this codec. The buffer position is not modified
+	 * @param data
+	 * @return canDecode
+	 */
+	public boolean canDecode(ByteBuffer data);
+
+
+	/***
+	 * Deserialize the event from the data between the buffer position and limit. The buffer position is not modified
+	 * @param data
+	 * @return event
+	 * @throws IOException
+	 */
+	public Event decode(ByteBuffer data) throws IOException;
+}
@@ -0,0 +1,83 @@
+package io.microgenie.application.events;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+
+/***
+ * The {@link EventCodec}s available to producers and consumers.
+ * <p>
+ * Producers choose a {@link Format} per topic. Consumers detect the format of each payload from its first byte:
+ * <li>JSON - no header, the payload starts with '{'</li>
+ * <li>SMILE - header byte 0x01 followed by a Jackson Smile document</li>
+ * <li>CBOR - header byte 0x02 followed by a CBOR document</li>
+ *
+ * @author shawn
+ */
+public class EventCodecs {
+
+	public enum Format {
+		JSON,
+		SMILE,
+		CBOR
+	}
+
+	public static final byte SMILE_HEADER = 0x01;
+	public static final byte CBOR_HEADER = 0x02;
+
+	private final Map<Format, EventCodec> codecs = Maps.newEnumMap(Format.class);
+
+
+	/***
+	 * @param mapper - The application mapper, used for JSON
+	 */
+	public EventCodecs(final ObjectMapper mapper){
+		this(mapper, new ObjectMapper(new SmileFactory()), new ObjectMapper(new CBORFactory()));
+	}
+
+
+	/***
+	 * @param mapper - The mapper used for JSON
+	 * @param smileMapper - A mapper created with a {@link SmileFactory}
+	 * @param cborMapper - A mapper created with a {@link CBORFactory}
+	 */
+	public EventCodecs(final ObjectMapper mapper, final ObjectMapper smileMapper, final ObjectMapper cborMapper){
+		this.codecs.put(Format.JSON, new JacksonEventCodec(null, mapper));
+		this.codecs.put(Format.SMILE, new JacksonEventCodec(SMILE_HEADER, smileMapper));
+		this.codecs.put(Format.CBOR, new JacksonEventCodec(CBOR_HEADER, cborMapper));
+	}
+
+
+	public EventCodec get(final Format format){
+		return this.codecs.get(format == null ? Format.JSON : format);
+	}
+
+
+	public byte[] encode(final Format format, final Event event) throws IOException {
+		return this.get(format).encode(event);
+	}
+
+
+	/***
+	 * Decode the event using the codec identified by the first byte of the payload
+	 * @param data
+	 * @return event
+	 * @throws IOException - if the format is not recognized or the payload cannot be deserialized
+	 */
+	public Event decode(final ByteBuffer data) throws IOException {
+		Preconditions.checkNotNull(data, "data cannot be null");
+		for(EventCodec codec : this.codecs.values()){
+			if(codec.canDecode(data)){
+				return codec.decode(data);
+			}
+		}
+		throw new IOException(String.format("Unrecognized event format, first byte: 0x%02x", data.hasRemaining() ? data.get(data.position()) : 0));
+	}
+}
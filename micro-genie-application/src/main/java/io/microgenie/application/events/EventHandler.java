@@ -4,6 +4,8 @@ import java.util.List;
 
 /***
  * The EventApi Handler
+ * <p>
+ * A batch handler can throw an {@link EventBatchException} to report which events in the batch failed
  * @author shawn
  */
 public interface EventHandler {
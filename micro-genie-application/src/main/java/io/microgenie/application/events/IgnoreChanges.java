@@ -0,0 +1,19 @@
+package io.microgenie.application.events;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/***
+ * Excludes a model property, such as a timestamp or audit field, from state change detection.
+ * <p>
+ * Changes to the property are not reported, and an item where only ignored properties changed does not publish
+ * an event. The property is still included in the submitted data of events
+ *
+ * @author shawn
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface IgnoreChanges {}
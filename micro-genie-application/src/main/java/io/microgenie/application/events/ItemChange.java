@@ -0,0 +1,39 @@
+package io.microgenie.application.events;
+
+
+/***
+ * An item change submitted to {@link StateChangePublisher#publishChanges(Class, java.util.List)}, the submitted
+ * item and the item as it existed before the change
+ *
+ * @author shawn
+ */
+public class ItemChange {
+
+	private final String key;
+	private final Object submitted;
+	private final Object existing;
+
+
+	/***
+	 * @param key - The partition key
+	 * @param submitted - The submitted item, null if the item was deleted
+	 * @param existing - The existing item, null if the item was created
+	 */
+	public ItemChange(final String key, final Object submitted, final Object existing){
+		this.key = key;
+		this.submitted = submitted;
+		this.existing = existing;
+	}
+	public static ItemChange create(final String key, final Object submitted, final Object existing){
+		return new ItemChange(key, submitted, existing);
+	}
+	public String getKey() {
+		return key;
+	}
+	public Object getSubmitted() {
+		return submitted;
+	}
+	public Object getExisting() {
+		return existing;
+	}
+}
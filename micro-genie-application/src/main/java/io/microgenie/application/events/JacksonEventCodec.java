@@ -0,0 +1,81 @@
+package io.microgenie.application.events;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.base.Preconditions;
+
+
+/***
+ * {@link EventCodec} backed by a Jackson {@link ObjectMapper}, which decides the wire format (JSON, Smile, CBOR).
+ * <p>
+ * When a header is given it is written as the first byte of every payload. Without a header the codec 
+ * recognizes JSON documents, which keeps records written before codecs were introduced readable
+ *
+ * @author shawn
+ */
+public class JacksonEventCodec implements EventCodec {
+
+	private static final int ESTIMATED_EVENT_BYTES = 512;
+
+	private final Byte header;
+	private final ObjectReader reader;
+	private final ObjectWriter writer;
+
+
+	/***
+	 * @param header - The format header byte, or null for JSON without a header
+	 * @param mapper - The mapper for the wire format
+	 */
+	public JacksonEventCodec(final Byte header, final ObjectMapper mapper){
+		Preconditions.checkNotNull(mapper, "ObjectMapper is required");
+		this.header = header;
+		this.reader = mapper.reader(Event.class);
+		this.writer = mapper.writerFor(Event.class);
+	}
+
+
+	@Override
+	public byte[] encode(final Event event) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(ESTIMATED_EVENT_BYTES);
+		if(this.header != null){
+			out.write(this.header);
+		}
+		this.writer.writeValue(out, event);
+		return out.toByteArray();
+	}
+
+
+	@Override
+	public boolean canDecode(final ByteBuffer data) {
+		if(data == null || !data.hasRemaining()){
+			return false;
+		}
+		final byte first = data.get(data.position());
+		if(this.header != null){
+			return first == this.header;
+		}
+		return first == '{' || first == ' ' || first == '\t' || first == '\r' || first == '\n';
+	}
+
+
+	/***
+	 * Heap buffers are read in place from their backing array, direct and read only buffers are streamed.
+	 * Neither path copies the payload
+	 */
+	@Override
+	public Event decode(final ByteBuffer data) throws IOException {
+		final int offset = this.header != null ? 1 : 0;
+		if(data.hasArray()){
+			return this.reader.readValue(data.array(), data.arrayOffset() + data.position() + offset, data.remaining() - offset);
+		}
+		final ByteBuffer payload = data.duplicate();
+		payload.position(payload.position() + offset);
+		return this.reader.readValue(new ByteBufferBackedInputStream(payload));
+	}
+}
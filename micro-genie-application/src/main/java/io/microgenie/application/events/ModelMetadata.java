@@ -0,0 +1,154 @@
+package io.microgenie.application.events;
+
+import io.microgenie.application.StateChangeConfiguration;
+
+import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+
+/***
+ * State change metadata of a model class, resolved once by the {@link ModelMetadataRegistry}.
+ * <p>
+ * Holds the topic configured for each action of the model, and the json names of its properties annotated with
+ * {@link IgnoreChanges} and {@link ChangeKey}, which are left out when the model's changes are detected.
+ * Missing topic configuration is reported when a change is published, as it was before topics were resolved up front
+ *
+ * @author shawn
+ */
+public class ModelMetadata {
+
+	private final Class<?> model;
+	private final boolean eventsConfigured;
+	private final Map<String, String> topics;
+	private final String createdTopic;
+	private final String deletedTopic;
+	private final String modifiedTopic;
+	private final Set<String> ignoredProperties;
+	private final Set<String> keyProperties;
+	private final Set<String> modificationExclusions;
+
+
+	private ModelMetadata(final Class<?> model, final boolean eventsConfigured, final Map<String, String> topics, final Set<String> ignoredProperties, final Set<String> keyProperties){
+		this.model = model;
+		this.eventsConfigured = eventsConfigured;
+		this.topics = topics;
+		this.createdTopic = topics != null ? Strings.emptyToNull(topics.get(StateChangePublisher.CREATED_ACTION)) : null;
+		this.deletedTopic = topics != null ? Strings.emptyToNull(topics.get(StateChangePublisher.DELETED_ACTION)) : null;
+		this.modifiedTopic = topics != null ? Strings.emptyToNull(topics.get(StateChangePublisher.MODIFIED_ACTION)) : null;
+		this.ignoredProperties = ignoredProperties;
+		this.keyProperties = keyProperties;
+		this.modificationExclusions = ImmutableSet.copyOf(Sets.union(ignoredProperties, keyProperties));
+	}
+
+
+
+	/***
+	 * Resolve the metadata of a model. Actions are configured by the model's class name or simple name
+	 *
+	 * @param model - The model class
+	 * @param config - The state change configuration
+	 * @param mapper - The mapper used to serialize the model, which determines the json names of its properties
+	 * @return metadata
+	 */
+	public static ModelMetadata create(final Class<?> model, final StateChangeConfiguration config, final ObjectMapper mapper){
+
+		final Map<String, Map<String, String>> events = config.getEvents();
+		Map<String, String> actions = null;
+		if(events != null){
+			actions = events.get(model.getName());
+			if(actions==null){
+				/** try with the simple name **/
+				actions = events.get(model.getSimpleName());
+			}
+		}
+
+		final ImmutableSet.Builder<String> ignored = ImmutableSet.builder();
+		final ImmutableSet.Builder<String> keys = ImmutableSet.builder();
+		if(!model.isInterface() && !Map.class.isAssignableFrom(model)){
+			final BeanDescription description = mapper.getSerializationConfig().introspect(mapper.constructType(model));
+			for(BeanPropertyDefinition property : description.findProperties()){
+				if(isAnnotated(property, IgnoreChanges.class)){
+					ignored.add(property.getName());
+				}
+				if(isAnnotated(property, ChangeKey.class)){
+					keys.add(property.getName());
+				}
+			}
+		}
+		return new ModelMetadata(model, events != null, actions != null ? ImmutableMap.copyOf(actions) : null, ignored.build(), keys.build());
+	}
+
+
+	private static boolean isAnnotated(final BeanPropertyDefinition property, final Class<? extends Annotation> annotation){
+		return isAnnotated(property.getField(), annotation) || isAnnotated(property.getGetter(), annotation);
+	}
+
+
+	private static boolean isAnnotated(final AnnotatedMember member, final Class<? extends Annotation> annotation){
+		return member != null && member.getAnnotation(annotation) != null;
+	}
+
+
+
+	/***
+	 * Get the topic configured for the action
+	 *
+	 * @param action - The action or event subtype
+	 * @return topic
+	 * @throws NullPointerException if no events have been configured
+	 * @throws IllegalArgumentException if the model or the action has not been configured
+	 */
+	public String getTopic(final String action){
+		if(!this.eventsConfigured){
+			throw new NullPointerException(String.format("No Events have been configured, unable to lookup topics by action for model %s", model.getName()));
+		}
+		/** ensure this this model has been configured for actions **/
+		if(this.topics==null || this.topics.isEmpty()){
+			throw new IllegalArgumentException(String.format("No configured actions-> topic pair was found for model: %s", model.getName()));
+		}
+		final String topic;
+		if(StateChangePublisher.MODIFIED_ACTION.equals(action)){
+			topic = this.modifiedTopic;
+		}else if(StateChangePublisher.CREATED_ACTION.equals(action)){
+			topic = this.createdTopic;
+		}else if(StateChangePublisher.DELETED_ACTION.equals(action)){
+			topic = this.deletedTopic;
+		}else{
+			topic = this.topics.get(action);
+		}
+		/** ensure this action has a configured topic **/
+		if(Strings.isNullOrEmpty(topic)){
+			throw new IllegalArgumentException(String.format("state change action %s has not been configured for model: %s. Unable to publish state changes for model: %s", action, model.getName(), model.getName()));
+		}
+		return topic;
+	}
+
+
+	/***
+	 * Get the json names of properties left out when detecting changes for the action
+	 * @param action
+	 * @return properties - ignored properties, and key properties for modifications
+	 */
+	public Set<String> getExclusions(final String action){
+		return StateChangePublisher.MODIFIED_ACTION.equals(action) ? this.modificationExclusions : this.ignoredProperties;
+	}
+	public Class<?> getModel() {
+		return model;
+	}
+	public Set<String> getIgnoredProperties() {
+		return ignoredProperties;
+	}
+	public Set<String> getKeyProperties() {
+		return keyProperties;
+	}
+}
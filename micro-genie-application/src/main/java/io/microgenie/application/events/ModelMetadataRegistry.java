@@ -0,0 +1,91 @@
+package io.microgenie.application.events;
+
+import io.microgenie.application.StateChangeConfiguration;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+
+/***
+ * Holds the {@link ModelMetadata} of each model class that publishes state changes.
+ * <p>
+ * Models configured by their class name are registered when the registry is created, other models the first
+ * time they publish a change. Metadata is held in a {@link ClassValue}, so looking up the metadata of a model
+ * does not reflect on it or look up its name in the configuration
+ *
+ * @author shawn
+ */
+public class ModelMetadataRegistry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ModelMetadataRegistry.class);
+
+	private final StateChangeConfiguration config;
+	private final ObjectMapper mapper;
+	private final ClassValue<ModelMetadata> models = new ClassValue<ModelMetadata>() {
+		@Override
+		protected ModelMetadata computeValue(final Class<?> model) {
+			return ModelMetadata.create(model, config, mapper);
+		}
+	};
+
+
+	/***
+	 * @param config - The state change configuration
+	 * @param mapper - The mapper used to serialize models
+	 */
+	public ModelMetadataRegistry(final StateChangeConfiguration config, final ObjectMapper mapper){
+		this.config = Preconditions.checkNotNull(config, "StateChangeConfiguration is required");
+		this.mapper = Preconditions.checkNotNull(mapper, "ObjectMapper is required");
+		this.registerConfiguredModels();
+	}
+
+
+
+	/***
+	 * Get the metadata of a model, resolving it on first use
+	 * @param model
+	 * @return metadata
+	 */
+	public ModelMetadata get(final Class<?> model){
+		return this.models.get(model);
+	}
+
+
+	/***
+	 * Resolve the metadata of models ahead of their first change
+	 * @param models
+	 */
+	public void register(final Class<?>... models){
+		for(Class<?> model : models){
+			this.models.get(model);
+		}
+	}
+
+
+
+	/***
+	 * Register the configured models that are named by their class name and can be loaded
+	 */
+	private void registerConfiguredModels(){
+		final Map<String, Map<String, String>> events = this.config.getEvents();
+		if(events == null){
+			return;
+		}
+		for(String name : events.keySet()){
+			if(name.indexOf('.') < 0){
+				continue;
+			}
+			try{
+				final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+				this.register(Class.forName(name, false, loader != null ? loader : ModelMetadataRegistry.class.getClassLoader()));
+			}catch(ClassNotFoundException | LinkageError ex){
+				LOGGER.debug("state change model: {} will be registered on first use - {}", name, ex.getMessage());
+			}
+		}
+	}
+}
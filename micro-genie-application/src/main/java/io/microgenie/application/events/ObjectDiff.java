@@ -0,0 +1,651 @@
+package io.microgenie.application.events;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonAnyFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonArrayFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonBooleanFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonFormatVisitable;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonFormatVisitorWrapper;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonIntegerFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonMapFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonNullFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonNumberFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonObjectFormatVisitor;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonStringFormatVisitor;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.github.fge.jackson.JsonNumEquals;
+import com.github.fge.jackson.NodeType;
+import com.google.common.base.Equivalence;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Computes the changes between the json forms of two objects by walking the objects directly, instead of converting
+ * them to Maps and {@link JsonNode}s first.
+ * <p>
+ * Beans serialized by a plain {@link BeanSerializer} are read through {@link MethodHandle} getters, resolved once per
+ * class from the mapper's own serializer so property names, ignored properties and null inclusion match the json form.
+ * Strings, booleans, integers and doubles are compared in place. Any other value, such as a map, collection, enum or date,
+ * is converted to a {@link JsonNode} on its own when it is reached. Values are compared as {@link JsonNumEquals} compares
+ * json, so numbers of different types with the same value are equal.
+ * <p>
+ * Fields that were added, removed or modified are reported by their json pointer path, with typed values in the form a
+ * Map conversion of the object would hold. Objects are compared field by field, other values, including arrays, as a whole.
+ * When a value cannot be read exactly as the mapper would write it, both objects are converted to Maps and compared instead
+ *
+ * @author shawn
+ */
+class ObjectDiff {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ObjectDiff.class);
+
+	private static final Equivalence<JsonNode> EQUIVALENCE = JsonNumEquals.getInstance();
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final EnumSet<Include> INCLUSIONS = EnumSet.of(Include.ALWAYS, Include.NON_NULL);
+
+	private static final String ROOT = "";
+	private static final String SEPARATOR = "/";
+	private static final TypeReference<Map<String, Object>> MAP_TYPE_REFERENCE = new TypeReference<Map<String,Object>>() {};
+
+	/** class kinds without properties **/
+	private static final Accessors VALUE = new Accessors(Kind.VALUE);
+	private static final Accessors POLYMORPHIC = new Accessors(Kind.POLYMORPHIC);
+
+	private final ObjectMapper mapper;
+	private final ConcurrentMap<Class<?>, Accessors> accessors = Maps.newConcurrentMap();
+
+
+	/***
+	 * @param mapper - The mapper whose json form of objects is compared
+	 */
+	ObjectDiff(final ObjectMapper mapper){
+		this.mapper = Preconditions.checkNotNull(mapper, "ObjectMapper is required");
+	}
+
+
+
+	/***
+	 * Compute the changes that turn the existing object into the submitted object
+	 *
+	 * @param submitted - The submitted object, or an empty map when the item was deleted
+	 * @param existing - The existing object, or an empty map when the item was created
+	 * @param exclusions - The json names of root properties left out of the comparison
+	 * @return changes
+	 * @throws IllegalArgumentException if either object cannot be converted to a Map
+	 */
+	Changes diff(final Object submitted, final Object existing, final Set<String> exclusions){
+		final SerializationConfig config = this.mapper.getSerializationConfig();
+		if(config.getActiveView() == null && INCLUSIONS.contains(config.getSerializationInclusion())){
+			try{
+				return this.diffObjects(this.root(submitted), this.root(existing), exclusions);
+			}catch(UnsupportedValueException ex){
+				LOGGER.debug("comparing the Map forms of the objects - {}", ex.getMessage());
+			}
+		}
+		return this.diffObjects(this.toObjectNode(submitted), this.toObjectNode(existing), exclusions);
+	}
+
+
+	private Changes diffObjects(final Object target, final Object source, final Set<String> exclusions){
+		final Changes changes = new Changes();
+		this.generateObject(changes, ROOT, this.rootFields(source, exclusions), this.rootFields(target, exclusions));
+		return changes;
+	}
+
+
+
+	/***
+	 * The root is read directly when it is a bean, otherwise it is converted to a Map and then a {@link JsonNode}
+	 */
+	private Object root(final Object value){
+		if(this.accessors(value.getClass()).kind == Kind.BEAN){
+			return value;
+		}
+		return this.toObjectNode(value);
+	}
+
+
+	private JsonNode toObjectNode(final Object value){
+		final Map<String, Object> map = this.mapper.convertValue(value, MAP_TYPE_REFERENCE);
+		return this.mapper.convertValue(map, JsonNode.class);
+	}
+
+
+
+	private SortedMap<String, Object> rootFields(final Object root, final Set<String> exclusions){
+		final SortedMap<String, Object> fields = this.fields(root);
+		if(!exclusions.isEmpty()){
+			fields.keySet().removeAll(exclusions);
+		}
+		return fields;
+	}
+
+
+
+	/***
+	 * Represent a non null property value as a directly read bean, an in place scalar, or a {@link JsonNode}
+	 */
+	private Object normalize(final Object value){
+		if(value instanceof String || value instanceof Boolean || value instanceof Integer || value instanceof Long){
+			return value;
+		}
+		if(value instanceof Double && this.isPlainDouble((Double)value)){
+			return value;
+		}
+		final Accessors found = this.accessors(value.getClass());
+		if(found.kind == Kind.BEAN){
+			return value;
+		}
+		if(found.kind == Kind.POLYMORPHIC){
+			/** a type id is written for a polymorphic root, but not for a property declared with a plain type **/
+			throw new UnsupportedValueException(String.format("property value of polymorphic type: %s", value.getClass().getName()));
+		}
+		return this.toNode(value);
+	}
+
+
+	private boolean isPlainDouble(final Double value){
+		return !value.isNaN() && !value.isInfinite() && !this.mapper.getDeserializationConfig().isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+	}
+
+
+
+	/***
+	 * Convert a value the same way it is converted when the whole object is converted to a Map and then a {@link JsonNode}
+	 */
+	private JsonNode toNode(final Object value){
+		if(value instanceof JsonNode){
+			return (JsonNode)value;
+		}
+		final Object plain = this.mapper.convertValue(value, Object.class);
+		if(plain == null){
+			return NullNode.getInstance();
+		}
+		return this.mapper.convertValue(plain, JsonNode.class);
+	}
+
+
+
+	private static NodeType typeOf(final Object value){
+		if(value instanceof JsonNode){
+			return NodeType.getNodeType((JsonNode)value);
+		}else if(value instanceof String){
+			return NodeType.STRING;
+		}else if(value instanceof Boolean){
+			return NodeType.BOOLEAN;
+		}else if(value instanceof Integer || value instanceof Long){
+			return NodeType.INTEGER;
+		}else if(value instanceof Double){
+			return NodeType.NUMBER;
+		}
+		return NodeType.OBJECT;
+	}
+
+
+	private static boolean isNumber(final NodeType type){
+		return type == NodeType.INTEGER || type == NodeType.NUMBER;
+	}
+
+
+
+	/***
+	 * The fields of a bean or object node, sorted by name
+	 */
+	private SortedMap<String, Object> fields(final Object value){
+		final SortedMap<String, Object> fields = Maps.newTreeMap();
+		if(value instanceof JsonNode){
+			final Iterator<Entry<String, JsonNode>> nodeFields = ((JsonNode)value).fields();
+			while(nodeFields.hasNext()){
+				final Entry<String, JsonNode> field = nodeFields.next();
+				fields.put(field.getKey(), field.getValue());
+			}
+			return fields;
+		}
+		final Accessors bean = this.accessors(value.getClass());
+		for(int i = 0; i < bean.names.length; i++){
+			final Object property = bean.get(i, value);
+			if(property != null){
+				fields.put(bean.names[i], this.normalize(property));
+			}else if(!bean.suppressNulls[i]){
+				fields.put(bean.names[i], NullNode.getInstance());
+			}
+		}
+		return fields;
+	}
+
+
+
+	/***
+	 * Equivalent to {@link JsonNumEquals} applied to the json form of both values
+	 */
+	private boolean equivalent(final Object first, final Object second){
+		if(first == second){
+			return true;
+		}
+		if(first instanceof JsonNode && second instanceof JsonNode){
+			return EQUIVALENCE.equivalent((JsonNode)first, (JsonNode)second);
+		}
+		final NodeType firstType = typeOf(first);
+		final NodeType secondType = typeOf(second);
+		if(isNumber(firstType) && isNumber(secondType)){
+			return this.numbersEquivalent(first, second);
+		}
+		if(firstType != secondType){
+			return false;
+		}
+		switch(firstType){
+		case OBJECT:
+			return this.objectsEquivalent(this.fields(first), this.fields(second));
+		case STRING:
+			return textValue(first).equals(textValue(second));
+		case BOOLEAN:
+			return booleanValue(first) == booleanValue(second);
+		case NULL:
+			return true;
+		default:
+			return EQUIVALENCE.equivalent(this.toNode(first), this.toNode(second));
+		}
+	}
+
+
+	private boolean numbersEquivalent(final Object first, final Object second){
+		if(first.getClass() == second.getClass() && (first instanceof Integer || first instanceof Long)){
+			return first.equals(second);
+		}
+		if(first instanceof Double && second instanceof Double){
+			return BigDecimal.valueOf((Double)first).compareTo(BigDecimal.valueOf((Double)second)) == 0;
+		}
+		/** mixed number types compare by the json nodes they convert to **/
+		return EQUIVALENCE.equivalent(this.toNode(first), this.toNode(second));
+	}
+
+
+	private boolean objectsEquivalent(final SortedMap<String, Object> first, final SortedMap<String, Object> second){
+		if(!first.keySet().equals(second.keySet())){
+			return false;
+		}
+		for(Entry<String, Object> field : first.entrySet()){
+			if(!this.equivalent(field.getValue(), second.get(field.getKey()))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private static String textValue(final Object value){
+		return value instanceof String ? (String)value : ((JsonNode)value).textValue();
+	}
+
+
+	private static boolean booleanValue(final Object value){
+		return value instanceof Boolean ? (Boolean)value : ((JsonNode)value).booleanValue();
+	}
+
+
+
+	/***
+	 * The typed value, as held by a Map conversion of the object
+	 */
+	private Object plain(final Object value){
+		if(value instanceof String || value instanceof Boolean || value instanceof Integer || value instanceof Long || value instanceof Double){
+			return value;
+		}
+		return this.mapper.convertValue(value, Object.class);
+	}
+
+
+
+	/***
+	 * Get the cached accessors for the class, introspecting it on first use
+	 */
+	private Accessors accessors(final Class<?> type){
+		Accessors found = this.accessors.get(type);
+		if(found == null){
+			found = this.introspect(type);
+			final Accessors existing = this.accessors.putIfAbsent(type, found);
+			if(existing != null){
+				found = existing;
+			}
+		}
+		return found;
+	}
+
+
+
+	/***
+	 * Resolve the properties the mapper's serializer writes for the class. Classes are only read directly when serialized
+	 * by a plain {@link BeanSerializer} whose properties carry nothing that changes how their values are written
+	 */
+	private Accessors introspect(final Class<?> type){
+		if(type.isArray() || type.isEnum() || Map.class.isAssignableFrom(type) || Iterable.class.isAssignableFrom(type)
+				|| JsonNode.class.isAssignableFrom(type) || Number.class.isAssignableFrom(type) || CharSequence.class.isAssignableFrom(type)){
+			return VALUE;
+		}
+		try{
+			final SerializationConfig config = this.mapper.getSerializationConfig();
+			final JavaType javaType = this.mapper.constructType(type);
+			if(this.isPolymorphic(config, javaType)){
+				return POLYMORPHIC;
+			}
+			final DefaultSerializerProvider provider = ((DefaultSerializerProvider)this.mapper.getSerializerProvider()).createInstance(config, this.mapper.getSerializerFactory());
+			final JsonSerializer<Object> serializer = provider.findValueSerializer(javaType, null);
+			if(serializer.getClass() != BeanSerializer.class || serializer.usesObjectId()){
+				return VALUE;
+			}
+			final BeanDescription description = config.introspect(javaType);
+			if(description.findAnyGetter() != null
+					|| config.getAnnotationIntrospector().findFilterId((Annotated) description.getClassInfo()) != null
+					|| !INCLUSIONS.contains(description.findSerializationInclusion(config.getSerializationInclusion()))){
+				return VALUE;
+			}
+
+			final List<BeanPropertyWriter> writers = Lists.newArrayList();
+			serializer.acceptJsonFormatVisitor(new PropertyCollector(provider, writers), javaType);
+			if(writers.isEmpty()){
+				return VALUE;
+			}
+			Collections.sort(writers, new Comparator<BeanPropertyWriter>() {
+				@Override
+				public int compare(final BeanPropertyWriter first, final BeanPropertyWriter second) {
+					return first.getName().compareTo(second.getName());
+				}
+			});
+
+			final Accessors bean = new Accessors(writers.size());
+			for(int i = 0; i < writers.size(); i++){
+				final BeanPropertyWriter writer = writers.get(i);
+				if(!this.isPlainProperty(config, writer)){
+					return VALUE;
+				}
+				bean.names[i] = writer.getName();
+				bean.getters[i] = getter(writer.getMember().getMember());
+				bean.suppressNulls[i] = writer.willSuppressNulls();
+			}
+			return bean;
+		}catch(Exception ex){
+			LOGGER.debug("unable to read class: {} directly - {}", type.getName(), ex.getMessage());
+			return VALUE;
+		}
+	}
+
+
+	private boolean isPlainProperty(final SerializationConfig config, final BeanPropertyWriter writer) throws JsonMappingException{
+		final JsonInclude include = writer.getAnnotation(JsonInclude.class);
+		return writer.getClass() == BeanPropertyWriter.class
+				&& !writer.hasNullSerializer()
+				&& writer.getAnnotation(JsonSerialize.class) == null
+				&& writer.getAnnotation(JsonFormat.class) == null
+				&& writer.getAnnotation(JsonRawValue.class) == null
+				&& writer.getAnnotation(JsonUnwrapped.class) == null
+				&& writer.getAnnotation(JsonTypeInfo.class) == null
+				&& (include == null || INCLUSIONS.contains(include.value()))
+				&& (writer.getMember().getMember() instanceof Method || writer.getMember().getMember() instanceof Field)
+				&& !this.isPolymorphic(config, writer.getType());
+	}
+
+
+	/***
+	 * True if values of the type, or of its contents, are written with a type id
+	 */
+	private boolean isPolymorphic(final SerializationConfig config, final JavaType type) throws JsonMappingException{
+		if(this.mapper.getSerializerFactory().createTypeSerializer(config, type) != null){
+			return true;
+		}
+		return type.getContentType() != null && this.isPolymorphic(config, type.getContentType());
+	}
+
+
+	private static MethodHandle getter(final Member member) throws IllegalAccessException{
+		((AccessibleObject)member).setAccessible(true);
+		final MethodHandle handle = member instanceof Method ? LOOKUP.unreflect((Method)member) : LOOKUP.unreflectGetter((Field)member);
+		return handle.asType(GETTER_TYPE);
+	}
+
+
+
+	private void generate(final Changes changes, final String path, final Object source, final Object target){
+		if(source == target){
+			return;
+		}
+		if(typeOf(source) == NodeType.OBJECT && typeOf(target) == NodeType.OBJECT){
+			this.generateObject(changes, path, this.fields(source), this.fields(target));
+		}else if(!this.equivalent(source, target)){
+			changes.modified.put(path, this.plain(target));
+			changes.previous.put(path, this.plain(source));
+		}
+	}
+
+
+	private void generateObject(final Changes changes, final String path, final SortedMap<String, Object> source, final SortedMap<String, Object> target){
+		for(Entry<String, Object> field : source.entrySet()){
+			final String fieldPath = append(path, field.getKey());
+			if(!target.containsKey(field.getKey())){
+				changes.removed.put(fieldPath, null);
+				changes.previous.put(fieldPath, this.plain(field.getValue()));
+			}else{
+				this.generate(changes, fieldPath, field.getValue(), target.get(field.getKey()));
+			}
+		}
+		for(Entry<String, Object> field : target.entrySet()){
+			if(!source.containsKey(field.getKey())){
+				changes.added.put(append(path, field.getKey()), this.plain(field.getValue()));
+			}
+		}
+	}
+
+
+
+	/***
+	 * Append a json pointer reference token to the path
+	 */
+	private static String append(final String path, final String name){
+		return path + SEPARATOR + name.replace("~", "~0").replace("/", "~1");
+	}
+
+
+
+	/***
+	 * Changes by json pointer path. Added and modified paths map to their new value, removed paths map to null,
+	 * and previous values are held for removed and modified paths
+	 */
+	static class Changes {
+		private final Map<String, Object> added = Maps.newHashMap();
+		private final Map<String, Object> removed = Maps.newHashMap();
+		private final Map<String, Object> modified = Maps.newHashMap();
+		private final Map<String, Object> previous = Maps.newHashMap();
+		boolean isEmpty(){
+			return this.added.isEmpty() && this.removed.isEmpty() && this.modified.isEmpty();
+		}
+		Map<String, Object> getAdded() {
+			return added;
+		}
+		Map<String, Object> getRemoved() {
+			return removed;
+		}
+		Map<String, Object> getModified() {
+			return modified;
+		}
+		Map<String, Object> getPrevious() {
+			return previous;
+		}
+	}
+
+
+
+	private enum Kind {BEAN, VALUE, POLYMORPHIC}
+
+	/***
+	 * The properties of a class read directly, sorted by name
+	 */
+	private static class Accessors {
+		private final Kind kind;
+		private final String[] names;
+		private final MethodHandle[] getters;
+		private final boolean[] suppressNulls;
+		private Accessors(final Kind kind){
+			this.kind = kind;
+			this.names = new String[0];
+			this.getters = new MethodHandle[0];
+			this.suppressNulls = new boolean[0];
+		}
+		private Accessors(final int size){
+			this.kind = Kind.BEAN;
+			this.names = new String[size];
+			this.getters = new MethodHandle[size];
+			this.suppressNulls = new boolean[size];
+		}
+		private Object get(final int index, final Object bean){
+			try {
+				return (Object)this.getters[index].invokeExact(bean);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				/** let the fallback conversion report the failure as it always has **/
+				throw new UnsupportedValueException(String.format("failed to read property: %s - %s", this.names[index], t.getMessage()));
+			}
+		}
+	}
+
+
+
+	/***
+	 * Collects the property writers a bean serializer reports
+	 */
+	private static class PropertyCollector implements JsonFormatVisitorWrapper {
+
+		private SerializerProvider provider;
+		private final List<BeanPropertyWriter> writers;
+
+		private PropertyCollector(final SerializerProvider provider, final List<BeanPropertyWriter> writers){
+			this.provider = provider;
+			this.writers = writers;
+		}
+
+		@Override
+		public JsonObjectFormatVisitor expectObjectFormat(final JavaType type) {
+			return new JsonObjectFormatVisitor.Base(this.provider){
+				@Override
+				public void property(final BeanProperty writer) {
+					collect(writer);
+				}
+				@Override
+				public void optionalProperty(final BeanProperty writer) {
+					collect(writer);
+				}
+				@Override
+				public void property(final String name, final JsonFormatVisitable handler, final JavaType propertyTypeHint) {
+					throw new IllegalStateException(String.format("property: %s is not written by a property writer", name));
+				}
+				@Override
+				public void optionalProperty(final String name, final JsonFormatVisitable handler, final JavaType propertyTypeHint) {
+					throw new IllegalStateException(String.format("property: %s is not written by a property writer", name));
+				}
+			};
+		}
+
+		private void collect(final BeanProperty writer){
+			Preconditions.checkState(writer instanceof BeanPropertyWriter, "property: %s is not written by a property writer", writer.getName());
+			this.writers.add((BeanPropertyWriter)writer);
+		}
+
+		@Override
+		public SerializerProvider getProvider() {
+			return this.provider;
+		}
+		@Override
+		public void setProvider(final SerializerProvider provider) {
+			this.provider = provider;
+		}
+		@Override
+		public JsonArrayFormatVisitor expectArrayFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonStringFormatVisitor expectStringFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonNumberFormatVisitor expectNumberFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonIntegerFormatVisitor expectIntegerFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonBooleanFormatVisitor expectBooleanFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonNullFormatVisitor expectNullFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonAnyFormatVisitor expectAnyFormat(final JavaType type) {
+			return null;
+		}
+		@Override
+		public JsonMapFormatVisitor expectMapFormat(final JavaType type) {
+			return null;
+		}
+	}
+
+
+
+	/***
+	 * Thrown when a value cannot be read exactly as the mapper would write it
+	 */
+	private static class UnsupportedValueException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private UnsupportedValueException(final String message){
+			super(message, null, false, false);
+		}
+	}
+}
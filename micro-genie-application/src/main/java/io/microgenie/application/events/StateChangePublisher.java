@@ -2,20 +2,24 @@ package io.microgenie.application.events;
 
 import io.microgenie.application.StateChangeConfiguration;
 
+import java.math.RoundingMode;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.fge.jsonpatch.diff.JsonDiff;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.google.common.math.IntMath;
 
 
 /****
@@ -34,20 +38,15 @@ public class StateChangePublisher {
 	public static final String MODIFIED_ACTION = "Updated";
 	
 	
-	/** json path fields **/
-	private static final String OP = "op";
-	private static final String PATH = "path";
-	private static final String VALUE = "value";
-	
-	private static final String ADD = "add";
-	private static final String REMOVE = "remove";
-	private static final String REPLACE = "replace";
-	
-	
 	private final StateChangeConfiguration config;
 	private final Publisher publisher;
 	private final ObjectMapper mapper;
+	private final ObjectDiff objectDiff;
+	private final ModelMetadataRegistry models;
+	
 	
+	/** the smallest partition of item changes detected on a separate thread **/
+	private static final int MIN_PARALLEL_PARTITION_SIZE = 32;
 	
 	private static final TypeReference<Map<String, Object>> MAP_TYPE_REFERENCE= new TypeReference<Map<String,Object>>() {};
 	
@@ -78,6 +77,8 @@ public class StateChangePublisher {
 		this.config = config;
 		this.publisher = publisher;
 		this.mapper = mapper;
+		this.objectDiff = new ObjectDiff(mapper);
+		this.models = new ModelMetadataRegistry(config, mapper);
 	}
 
 	
@@ -96,7 +97,7 @@ public class StateChangePublisher {
 	 */
 	public boolean publishAction(final Class<?> model, final String action, final String key, final Object data) {
 		
-		final String topic = this.getTopic(model, action);
+		final String topic = this.models.get(model).getTopic(action);
 		
 		/** convert the data to a Map, then create and publish the event **/
 		final Map<String, Object> dataMap = this.mapper.convertValue(data, MAP_TYPE_REFERENCE);
@@ -163,23 +164,7 @@ public class StateChangePublisher {
 	 */
 	public boolean publishChanges(final Class<?> clazz, final String key, final Object submitted, final Object existing) {
 		
-		Event event = null;
-		if(submitted==null && existing==null){
-			throw new IllegalArgumentException("Both the submitted and existing instances are null. Both cannot be null");
-		}
-		
-		/** item was deleted **/
-		if (submitted == null){ 
-			event = this.createItemChangeEvent(clazz, DELETED_ACTION, key, new HashMap<String, Object>(), existing);
-		/** item was created **/
-		}else if (existing == null){
-			event = this.createItemChangeEvent(clazz, CREATED_ACTION, key, submitted, new HashMap<String, Object>());
-		/** item was modified **/
-		}else {
-			event = this.createItemChangeEvent(clazz, MODIFIED_ACTION, key, submitted, existing);
-		}
-		
-		
+		final Event event = this.createChangeEvent(clazz, key, submitted, existing);
 		if(event==null){
 			LOGGER.debug("state change publisher did not detect any changes for item key: {}", key);
 			return false;
@@ -193,26 +178,120 @@ public class StateChangePublisher {
 	
 	
 	/***
-	 * Performs a diff against two java objects and returns as JsonNode as a Patch Node 
+	 * Create and publish the data changes of a batch of items. Changes are detected in parallel and the resulting
+	 * events are submitted to the publisher as a single batch, in the order of the item changes
 	 * 
-	 * @param oldItem - The existing Java object instance
-	 * @param newItem - The newer Java Object instance
-	 * @return patchNode - The diff between the two
+	 * @param clazz - The class is used as a lookup for topic and event action configuration
+	 * @param changes - The item changes
+	 * @return publishedCount - The number of items whose changes were published
+	 * @throws IllegalArgumentException if both the submitted and existing items of a change are null
 	 */
-	private JsonNode diff(final Map<String, Object> source, final Map<String, Object> target){
+	public int publishChanges(final Class<?> clazz, final List<ItemChange> changes) {
 		
+		Preconditions.checkNotNull(changes, "changes cannot be null");
+		final List<Event> events = Lists.newArrayListWithCapacity(changes.size());
+		for(List<Event> partition : this.createChangeEvents(clazz, changes)){
+			for(Event event : partition){
+				if(event != null){
+					events.add(event);
+				}
+			}
+		}
+		LOGGER.debug("state change publisher has detected changes for {} of {} items", events.size(), changes.size());
+		if(events.size() == 1){
+			this.publisher.submit(events.get(0));
+		}else if(!events.isEmpty()){
+			this.publisher.submitBatch(events);
+		}
+		return events.size();
+	}
+	
+	
+	
+	/***
+	 * Create the change events of the item changes, spreading partitions of the changes over the common pool
+	 * @return events - the events of each partition, null where no changes were detected
+	 */
+	private List<List<Event>> createChangeEvents(final Class<?> clazz, final List<ItemChange> changes) {
+		
+		final int partitionSize = Math.max(MIN_PARALLEL_PARTITION_SIZE, IntMath.divide(changes.size(), ForkJoinPool.getCommonPoolParallelism(), RoundingMode.CEILING));
+		final List<List<ItemChange>> partitions = Lists.partition(changes, partitionSize);
+		if(partitions.size() < 2){
+			final List<List<Event>> events = Lists.newArrayList();
+			for(List<ItemChange> partition : partitions){
+				events.add(this.createPartitionEvents(clazz, partition));
+			}
+			return events;
+		}
+		
+		final List<Callable<List<Event>>> tasks = Lists.newArrayListWithCapacity(partitions.size());
+		for(final List<ItemChange> partition : partitions){
+			tasks.add(new Callable<List<Event>>() {
+				@Override
+				public List<Event> call() {
+					return createPartitionEvents(clazz, partition);
+				}
+			});
+		}
 		try{
-			final JsonNode sourceNode = mapper.convertValue(source, JsonNode.class);
-			final JsonNode targetNode = mapper.convertValue(target, JsonNode.class);
-			final JsonNode diff = JsonDiff.asJson(targetNode, sourceNode);
-			LOGGER.debug("diff: {}", diff.toString());
-			return diff;
-		}catch(Exception ex){
-			LOGGER.error(ex.getMessage(), ex);
-			throw new RuntimeException(ex);
+			final List<List<Event>> events = Lists.newArrayListWithCapacity(partitions.size());
+			for(Future<List<Event>> future : ForkJoinPool.commonPool().invokeAll(tasks)){
+				events.add(future.get());
+			}
+			return events;
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while detecting item changes", e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw new RuntimeException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e.getCause());
 		}
 	}
-
+	
+	
+	/***
+	 * Create the change events of a partition of item changes
+	 */
+	private List<Event> createPartitionEvents(final Class<?> clazz, final List<ItemChange> changes) {
+		final List<Event> events = Lists.newArrayListWithCapacity(changes.size());
+		for(ItemChange change : changes){
+			events.add(this.createChangeEvent(clazz, change.getKey(), change.getSubmitted(), change.getExisting()));
+		}
+		return events;
+	}
+	
+	
+	
+	/***
+	 * Create the event holding the changes between the submitted and existing items
+	 * 
+	 * @param clazz - The class is used as a lookup for topic and event action configuration
+	 * @param key - The partition key
+	 * @param submitted - The submitted item, null if the item was deleted
+	 * @param existing - The existing item, null if the item was created
+	 * @return event - null if no changes were detected
+	 * @throws IllegalArgumentException if both submitted and existing are null
+	 */
+	protected Event createChangeEvent(final Class<?> clazz, final String key, final Object submitted, final Object existing) {
+		
+		if(submitted==null && existing==null){
+			throw new IllegalArgumentException("Both the submitted and existing instances are null. Both cannot be null");
+		}
+		
+		/** item was deleted **/
+		if (submitted == null){ 
+			return this.createItemChangeEvent(clazz, DELETED_ACTION, key, new HashMap<String, Object>(), existing);
+		/** item was created **/
+		}else if (existing == null){
+			return this.createItemChangeEvent(clazz, CREATED_ACTION, key, submitted, new HashMap<String, Object>());
+		/** item was modified **/
+		}else {
+			return this.createItemChangeEvent(clazz, MODIFIED_ACTION, key, submitted, existing);
+		}
+	}
+	
 	
 	
 	/***
@@ -225,36 +304,16 @@ public class StateChangePublisher {
 	 * @return event - The event holding the change state
 	 */
 	private Event createItemChangeEvent(final Class<?> clazz, final String action, final String key, final Object submitted, final Object existing){
-		final Map<String, Object> submittedMap = this.mapper.convertValue(submitted, MAP_TYPE_REFERENCE);
-		final Map<String, Object> existingMap = this.mapper.convertValue(existing, MAP_TYPE_REFERENCE);
-		final JsonNode diffNode = this.diff(submittedMap, existingMap);
-		if(diffNode==null || diffNode.size()==0 || !diffNode.isArray()){
+		
+		final ModelMetadata model = this.models.get(clazz);
+		final ObjectDiff.Changes changes = this.objectDiff.diff(submitted, existing, model.getExclusions(action));
+		if(changes.isEmpty()){
 			return null;
 		}
-		final String topic = this.getTopic(clazz, action);
-		return this.createEventForDataChanges(topic, action, key, submittedMap, diffNode);			
-	}
-
-
-	
-	
-	/**
-	 * 
-	 * Creates an event ready to be published as a DataChange event
-	 * 
-	 * Creates a {@link DataChanges} instance based on the diff represented by a {@link JsonNode}
-	 * and embeds the data changes into the event
-	 * 
-	 * @param topic - The topic to publish changes to
-	 * @param key - The partition key
-	 * @param submitted - The data that has been submitted
-	 * @param diff - a {@link JsonNode} containing items that were added, removed or values that were modified
-	 * @return event
-	 */
-	private Event createEventForDataChanges(final String topic, final String action, final String key, final Map<String, Object> submitted, JsonNode diff){
-		final DataChanges changes = this.createDataChanges(submitted, diff);
-		final Event event = this.createEvent(topic, action, key, changes);
-		return event;
+		LOGGER.debug("added: {} - removed: {} - modified: {}", changes.getAdded().keySet(), changes.getRemoved().keySet(), changes.getModified().keySet());
+		final Map<String, Object> submittedMap = this.mapper.convertValue(submitted, MAP_TYPE_REFERENCE);
+		final DataChanges dataChanges = DataChanges.create(submittedMap, changes.getAdded(), changes.getRemoved(), changes.getModified(), changes.getPrevious());
+		return this.createEvent(model.getTopic(action), action, key, dataChanges);
 	}
 	
 	
@@ -290,81 +349,19 @@ public class StateChangePublisher {
 	
 	
 	/***
-	 * Create an instance of data changes
-	 * @param submitted
-	 * @param diff
-	 * @return dataChanges
+	 * Get the registry of model metadata, used to register models ahead of their first change
+	 * @return models
 	 */
-	private DataChanges createDataChanges(final Map<String, Object> submitted, final JsonNode diff){
-		final Map<String, Object> added = Maps.newHashMap();
-		final Map<String, Object> removed = Maps.newHashMap();
-		final Map<String, Object> modified = Maps.newHashMap();
-		
-		for(JsonNode node : diff){
-			if(node.get(OP) != null && node.get(PATH) != null){
-				
-				final String op = node.get(OP).asText();
-				final String path = node.get(PATH).asText();
-				
-				/** Value can be null in some cases, during all 'removes' and when a value is being nulled out. **/
-				String value = null;
-				if(node.get(VALUE) !=null){
-					value = node.get(VALUE).asText();	
-				}
-				
-				if(ADD.equals(op)){
-					added.put(path, value);
-				}else if(REMOVE.equals(op)){
-					removed.put(path, value);
-				}else if(REPLACE.equals(op)){
-					modified.put(path, value);
-				}else{
-					LOGGER.warn("Un recognized operation encountered - operation:{} - path: {}", op, path);
-				}
-			}
-		}
-		
-		return DataChanges.create(submitted, added, removed, modified);
-	}
-	
-	
-	/***
-	 * Get the topic from configuration
-	 * @param model - The class of the event / model association with the action and event topic 
-	 * @param action - The action or event subtype
-	 * @return topic
-	 */
-	private String getTopic(final Class<?> model, final String action) {
-
-		/** ensure this this model has been configured for actions **/
-		Map<String, String> actions = getActions(model);
-		if(actions==null || actions.isEmpty()){
-			throw new IllegalArgumentException(String.format("No configured actions-> topic pair was found for model: %s", model.getName()));
-		}
-		/** ensure this action has a configured topic **/
-		final String topic = actions.get(action);
-		if(Strings.isNullOrEmpty(topic)){
-			throw new IllegalArgumentException(String.format("state change action %s has not been configured for model: %s. Unable to publish state changes for model: %s", action, model.getName(), model.getName()));
-		}
-		return topic;
+	public ModelMetadataRegistry getModels() {
+		return models;
 	}
 	
 	
 	/***
-	 * Get configured actions for the given model
-	 * @param model - The class to look for configured actions for
-	 * @return map - a map containing action to topic lookups
+	 * Get the publisher events are submitted to
+	 * @return publisher
 	 */
-	private Map<String, String> getActions(Class<?> model) {
-		if(this.config.getEvents()==null){
-			throw new NullPointerException(String.format("No Events have been configured, unable to lookup topics by action for model %s", model.getName()));
-		}
-		
-		Map<String, String> actions = this.config.getEvents().get(model.getName());
-		if(actions==null){
-			/** try with the simple name **/
-			actions = this.config.getEvents().get(model.getSimpleName());
-		}
-		return actions;
+	protected Publisher getPublisher() {
+		return publisher;
 	}
 }
@@ -0,0 +1,40 @@
+package io.microgenie.application.queue;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+
+/***
+ * Thrown from {@link MessageHandler#handleBatch(List)} to report that only some messages in the batch failed.
+ * <p>
+ * Messages that are not part of {@link #getFailedMessages()} are acknowledged and removed from the queue,
+ * failed messages are released for redelivery. Any other exception thrown from a batch handler marks the whole batch as failed
+ *
+ * @author shawn
+ */
+public class MessageBatchException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Message> failedMessages;
+
+
+	public MessageBatchException(final String message, final List<Message> failedMessages){
+		this(message, failedMessages, null);
+	}
+	public MessageBatchException(final String message, final List<Message> failedMessages, final Throwable cause){
+		super(message, cause);
+		this.failedMessages = ImmutableList.copyOf(Preconditions.checkNotNull(failedMessages, "failedMessages cannot be null"));
+	}
+
+
+	/***
+	 * The messages from the batch that were not handled successfully
+	 * @return failedMessages
+	 */
+	public List<Message> getFailedMessages() {
+		return failedMessages;
+	}
+}
@@ -0,0 +1,46 @@
+package io.microgenie.application.queue;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Caches a Jackson {@link ObjectReader} per message payload type.
+ * <p>
+ * Readers are immutable and thread safe, so one reader per type is shared by every consuming thread
+ * instead of resolving the type's deserializers for each message
+ *
+ * @author shawn
+ */
+public class MessageBodyReaders {
+
+	private final ObjectMapper mapper;
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = Maps.newConcurrentMap();
+
+
+	public MessageBodyReaders(final ObjectMapper mapper){
+		this.mapper = Preconditions.checkNotNull(mapper, "ObjectMapper is required");
+	}
+
+
+	/***
+	 * The reader for the payload type
+	 * @param type
+	 * @return reader
+	 */
+	public ObjectReader forType(final Class<?> type){
+		ObjectReader reader = this.readers.get(type);
+		if(reader == null){
+			final ObjectReader created = this.mapper.reader(type);
+			reader = this.readers.putIfAbsent(type, created);
+			if(reader == null){
+				reader = created;
+			}
+		}
+		return reader;
+	}
+}
@@ -4,6 +4,9 @@ import java.util.List;
 
 /**
  * MessageHandler Interface
+ * <p>
+ * A batch handler that fails only some of the messages should throw a {@link MessageBatchException}
+ * listing the failed messages, so the rest of the batch is acknowledged
  * @author shawn
  */
 public interface MessageHandler {
@@ -3,16 +3,31 @@ package io.microgenie.application.queue;
 import java.io.Closeable;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
 /***
  * QueueFactory
  * @author shawn
  */
 public abstract class QueueFactory implements Closeable {
 
+	private final MessageBodyReaders readers;
+	
 	/***
 	 * Creates the default ThreadGroupFactory
 	 */
-	public QueueFactory(){}
+	public QueueFactory(){
+		this(new ObjectMapper());
+	}
+	
+	
+	/***
+	 * @param mapper - decodes message bodies for typed consumers
+	 */
+	public QueueFactory(final ObjectMapper mapper){
+		this.readers = new MessageBodyReaders(mapper);
+	}
 	
 	
 	public abstract Producer getProducer();
@@ -22,5 +37,32 @@ public abstract class QueueFactory implements Closeable {
 	public abstract void produceBatch(final List<Message> messages);
 	
 	public abstract void consume(String queue, int threadCount, MessageHandler handler);
-
+	
+	
+	
+	/***
+	 * Consume the queue, decoding each message body into the payload type. Messages whose body cannot be parsed are failed
+	 * @param queue
+	 * @param threadCount
+	 * @param type - The payload type
+	 * @param handler
+	 */
+	public <T> void consume(final String queue, final int threadCount, final Class<T> type, final TypedMessageHandler<T> handler){
+		this.consume(queue, threadCount, type, handler, null);
+	}
+	
+	
+	
+	/***
+	 * Consume the queue, decoding each message body into the payload type
+	 * @param queue
+	 * @param threadCount
+	 * @param type - The payload type
+	 * @param handler
+	 * @param deadLetterQueue - Messages whose body cannot be parsed are sent to this queue with the {@link #getProducer()}
+	 */
+	public <T> void consume(final String queue, final int threadCount, final Class<T> type, final TypedMessageHandler<T> handler, final String deadLetterQueue){
+		Preconditions.checkNotNull(type, "payload type is required");
+		this.consume(queue, threadCount, new TypedMessageHandlerAdapter<T>(this.readers.forType(type), handler, this.getProducer(), deadLetterQueue));
+	}
 }
@@ -0,0 +1,14 @@
+package io.microgenie.application.queue;
+
+
+/**
+ * Handles messages whose body has been decoded into the payload type T.
+ * <p>
+ * Used with {@link QueueFactory#consume(String, int, Class, TypedMessageHandler)}, the framework decodes
+ * each body once and handlers receive both the message, for its headers and id, and the typed payload
+ * @author shawn
+ * @param <T> - The payload type
+ */
+public interface TypedMessageHandler<T> {
+	public void handle(Message message, T payload);
+}
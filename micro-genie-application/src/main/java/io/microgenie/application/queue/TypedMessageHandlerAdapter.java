@@ -0,0 +1,167 @@
+package io.microgenie.application.queue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * A {@link MessageHandler} that decodes each message body into the payload type of a {@link TypedMessageHandler}.
+ * <p>
+ * Bodies are decoded once, with the {@link ObjectReader} cached for the payload type. A body that cannot be parsed
+ * is never handed to the handler. When a dead letter queue is configured the message is forwarded to it with the
+ * parse error in the {@link #HEADER_REASON} header and acknowledged, otherwise it is failed and left to the queue's
+ * redelivery and redrive policy. Messages the handler fails are reported with a {@link MessageBatchException}
+ *
+ * @author shawn
+ * @param <T> - The payload type
+ */
+public class TypedMessageHandlerAdapter<T> implements MessageHandler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TypedMessageHandlerAdapter.class);
+
+	public static final String HEADER_SOURCE_QUEUE = "sourceQueue";
+	public static final String HEADER_REASON = "reason";
+
+	/** Queue message attribute values are limited in size **/
+	private static final int MAX_REASON_LENGTH = 1024;
+
+	private final ObjectReader reader;
+	private final TypedMessageHandler<T> handler;
+	private final Producer deadLetterProducer;
+	private final String deadLetterQueue;
+
+
+	/***
+	 * @param reader - The reader for the payload type
+	 * @param handler
+	 * @param deadLetterProducer - Submits messages whose body cannot be parsed, may be null when no dead letter queue is given
+	 * @param deadLetterQueue - The queue messages whose body cannot be parsed are sent to, may be null
+	 */
+	public TypedMessageHandlerAdapter(final ObjectReader reader, final TypedMessageHandler<T> handler, final Producer deadLetterProducer, final String deadLetterQueue){
+		this.reader = Preconditions.checkNotNull(reader, "ObjectReader is required");
+		this.handler = Preconditions.checkNotNull(handler, "TypedMessageHandler is required");
+		Preconditions.checkArgument(Strings.isNullOrEmpty(deadLetterQueue) || deadLetterProducer != null, "A producer is required to send to dead letter queue: %s", deadLetterQueue);
+		this.deadLetterProducer = deadLetterProducer;
+		this.deadLetterQueue = Strings.emptyToNull(deadLetterQueue);
+	}
+
+
+
+	@Override
+	public void handle(final Message message) {
+		this.handleBatch(Collections.singletonList(message));
+	}
+
+
+
+	/***
+	 * Decode and handle each message, throwing a {@link MessageBatchException} listing the failed messages
+	 */
+	@Override
+	public void handleBatch(final List<Message> messages) {
+		final List<Message> failed = Lists.newArrayList();
+		Exception cause = null;
+		for(Message message : messages){
+			final T payload;
+			try{
+				payload = this.decode(message);
+			}catch(Exception ex){
+				/** any decode failure, including a missing body, is a parse failure of this message only **/
+				if(!this.deadLetter(message, ex)){
+					failed.add(message);
+					cause = ex;
+				}
+				continue;
+			}
+			try{
+				this.handler.handle(message, payload);
+			}catch(Exception ex){
+				LOGGER.error("failed to handle message id: {} from queue: {} - {}", message.getId(), message.getQueue(), ex.getMessage(), ex);
+				failed.add(message);
+				cause = ex;
+			}
+		}
+		if(!failed.isEmpty()){
+			throw new MessageBatchException(String.format("%d of %d messages failed", failed.size(), messages.size()), failed, cause);
+		}
+	}
+
+
+
+	private T decode(final Message message) throws IOException{
+		if(message.getBody() == null){
+			throw new IOException(String.format("message id: %s has no body", message.getId()));
+		}
+		return this.reader.readValue(message.getBody());
+	}
+
+
+
+	/***
+	 * Forward a message whose body cannot be parsed to the dead letter queue
+	 * @return deadLettered - false when no dead letter queue is configured or the message could not be sent
+	 */
+	private boolean deadLetter(final Message message, final Exception parseError){
+		if(this.deadLetterQueue == null){
+			LOGGER.error("failed to parse body of message id: {} from queue: {} - {}", message.getId(), message.getQueue(), parseError.getMessage());
+			return false;
+		}
+		final Map<String, String> headers = message.getHeaders() != null ? Maps.newHashMap(message.getHeaders()) : Maps.<String, String>newHashMap();
+		headers.put(HEADER_SOURCE_QUEUE, message.getQueue());
+		final String reason = Strings.nullToEmpty(parseError.getMessage());
+		headers.put(HEADER_REASON, reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason);
+		try{
+			this.deadLetterProducer.submit(new DeadLetterMessage(this.deadLetterQueue, message.getId(), message.getBody(), headers));
+			LOGGER.warn("message id: {} from queue: {} could not be parsed and was sent to dead letter queue: {}", message.getId(), message.getQueue(), this.deadLetterQueue);
+			return true;
+		}catch(Exception ex){
+			LOGGER.error("failed to send message id: {} to dead letter queue: {} - {}", message.getId(), this.deadLetterQueue, ex.getMessage(), ex);
+			return false;
+		}
+	}
+
+
+
+	/***
+	 * A message whose body could not be parsed, bound for the dead letter queue
+	 */
+	static class DeadLetterMessage implements Message {
+		private final String queue;
+		private final String id;
+		private final String body;
+		private final Map<String, String> headers;
+		DeadLetterMessage(final String queue, final String id, final String body, final Map<String, String> headers){
+			this.queue = queue;
+			this.id = id;
+			this.body = body;
+			this.headers = headers;
+		}
+		@Override
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+		@Override
+		public String getId() {
+			return id;
+		}
+		@Override
+		public String getQueue() {
+			return queue;
+		}
+		@Override
+		public String getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package io.microgenie.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import io.microgenie.application.database.EntityDatabusRepository;
+import io.microgenie.application.events.DataChanges;
+import io.microgenie.application.events.Event;
+import io.microgenie.application.events.Publisher;
+import io.microgenie.application.events.StateChangePublisher;
+import io.microgenie.event.StateChangePublisherTest.Book;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test batch change detection of the {@link EntityDatabusRepository}
+ * @author shawn
+ */
+public class EntityDatabusRepositoryTest {
+
+	private static final String TOPIC = "TopicTestBookChanged";
+
+	private final Publisher publisher = mock(Publisher.class);
+
+
+	/***
+	 * Saving a batch should compare each item with its existing item, publishing only the items that changed as a single batch
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldPublishChangesOfABatchAsOneBatch(){
+
+		final Map<String, String> eventMap = ImmutableMap.of("Created", TOPIC, "Deleted", TOPIC, "Updated", TOPIC);
+		final StateChangeConfiguration config = new StateChangeConfiguration(ImmutableMap.<String, Map<String, String>>of(Book.class.getName(), eventMap));
+		final BookRepository repository = new BookRepository(new StateChangePublisher(config, this.publisher));
+
+		/** enough items to detect changes on more than one thread **/
+		final List<Book> submitted = Lists.newArrayList();
+		for(int i = 0; i < 100; i++){
+			final String id = String.valueOf(i);
+			repository.save(createBook(id, "The Trial"));
+			submitted.add(createBook(id, i % 10 == 0 ? "The Castle" : "The Trial"));
+		}
+		submitted.add(createBook("new", "America"));
+		repository.saveAndNotify(submitted);
+
+		final ArgumentCaptor<List> batchCaptor = ArgumentCaptor.forClass(List.class);
+		verify(this.publisher).submitBatch(batchCaptor.capture());
+		verify(this.publisher, never()).submit(any(Event.class));
+
+		final List<Event> events = batchCaptor.getValue();
+		assertThat(events).hasSize(11);
+		for(int i = 0; i < 10; i++){
+			assertThat(events.get(i).getPartitionKey()).isEqualTo(String.valueOf(i * 10));
+			assertThat(events.get(i).getEventData().getAction()).isEqualTo("Updated");
+			assertThat(DataChanges.from(events.get(i).getEventData()).getModified()).containsOnly(entry("/title", "The Castle"));
+		}
+		assertThat(events.get(10).getPartitionKey()).isEqualTo("new");
+		assertThat(events.get(10).getEventData().getAction()).isEqualTo("Created");
+	}
+
+
+	private static Book createBook(final String isbn, final String title){
+		final Book book = new Book();
+		book.setBookId(isbn);
+		book.setIsbn(isbn);
+		book.setTitle(title);
+		return book;
+	}
+
+
+
+	/***
+	 * In memory book repository, batch reads return copies of the stored books
+	 */
+	static class BookRepository extends EntityDatabusRepository<Book>{
+
+		private final Map<String, Book> books = Maps.newHashMap();
+
+		BookRepository(final StateChangePublisher changePublisher){
+			super(Book.class, changePublisher);
+		}
+		@Override
+		public PartitionedDataKeyWithItem<Book> createPartitionedDataKey(final Book item) {
+			return PartitionedDataKeyWithItem.create(item.getIsbn(), item.getIsbn(), item);
+		}
+		@Override
+		protected void delete(final Book item) {
+			this.books.remove(item.getIsbn());
+		}
+		@Override
+		protected List<Book> getList(final List<Book> items) {
+			final List<Book> existing = Lists.newArrayList();
+			for(Book item : items){
+				final Book book = this.books.get(item.getIsbn());
+				if(book != null){
+					existing.add(createBook(book.getIsbn(), book.getTitle()));
+				}
+			}
+			return existing;
+		}
+		@Override
+		public Book get(final Key key) {
+			return this.books.get(key.getHash());
+		}
+		@Override
+		public void delete(final Key key) {
+			this.books.remove(key.getHash());
+		}
+		@Override
+		public void save(final Book item) {
+			this.books.put(item.getIsbn(), item);
+		}
+		@Override
+		public void save(final List<Book> items) {
+			for(Book item : items){
+				this.save(item);
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package io.microgenie.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import io.microgenie.application.QueueFactoryTest.MessageImpl;
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.MessageBatchException;
+import io.microgenie.application.queue.MessageBodyReaders;
+import io.microgenie.application.queue.Producer;
+import io.microgenie.application.queue.TypedMessageHandler;
+import io.microgenie.application.queue.TypedMessageHandlerAdapter;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test body decoding and dead lettering of typed message handlers
+ * @author shawn
+ */
+public class TypedMessageHandlerTest {
+
+	private static final String QUEUE = "OrderQueue";
+	private static final String DEAD_LETTER_QUEUE = "OrderQueueDeadLetters";
+
+	private final MessageBodyReaders readers = new MessageBodyReaders(new ObjectMapper());
+	private final Producer producer = mock(Producer.class);
+
+
+	/***
+	 * One reader should be cached per payload type
+	 */
+	@Test
+	public void shouldCacheReadersPerType(){
+		assertThat(readers.forType(Order.class)).isSameAs(readers.forType(Order.class));
+		assertThat(readers.forType(Order.class)).isNotSameAs(readers.forType(Map.class));
+	}
+
+
+
+	/***
+	 * Handlers should receive decoded payloads, unparseable bodies should be sent to the dead letter queue and acknowledged
+	 */
+	@Test
+	public void shouldDecodePayloadsAndDeadLetterUnparseableBodies(){
+
+		final List<Order> handled = Lists.newArrayList();
+		final TypedMessageHandlerAdapter<Order> adapter = new TypedMessageHandlerAdapter<Order>(readers.forType(Order.class), new TypedMessageHandler<Order>() {
+			@Override
+			public void handle(Message message, Order payload) {
+				handled.add(payload);
+			}
+		}, producer, DEAD_LETTER_QUEUE);
+
+		adapter.handleBatch(Lists.<Message>newArrayList(message("1", "{\"id\":\"order-1\",\"quantity\":2}"), message("2", "not json")));
+
+		assertThat(handled).hasSize(1);
+		assertThat(handled.get(0).id).isEqualTo("order-1");
+		assertThat(handled.get(0).quantity).isEqualTo(2);
+		final ArgumentCaptor<Message> deadLetter = ArgumentCaptor.forClass(Message.class);
+		verify(producer).submit(deadLetter.capture());
+		assertThat(deadLetter.getValue().getQueue()).isEqualTo(DEAD_LETTER_QUEUE);
+		assertThat(deadLetter.getValue().getBody()).isEqualTo("not json");
+		assertThat(deadLetter.getValue().getHeaders().get(TypedMessageHandlerAdapter.HEADER_SOURCE_QUEUE)).isEqualTo(QUEUE);
+		assertThat(deadLetter.getValue().getHeaders()).containsKey(TypedMessageHandlerAdapter.HEADER_REASON);
+	}
+
+
+
+	/***
+	 * Without a dead letter queue, unparseable or missing bodies and handler failures should be reported as failed messages,
+	 * without failing the other messages of the batch
+	 */
+	@Test
+	public void shouldFailUnparseableBodiesWithoutDeadLetterQueue(){
+
+		final Message empty = message("0", null);
+		final Message unparseable = message("1", "not json");
+		final Message rejected = message("2", "{\"id\":\"order-2\",\"quantity\":-1}");
+		final TypedMessageHandlerAdapter<Order> adapter = new TypedMessageHandlerAdapter<Order>(readers.forType(Order.class), new TypedMessageHandler<Order>() {
+			@Override
+			public void handle(Message message, Order payload) {
+				if(payload.quantity < 0){
+					throw new IllegalArgumentException("quantity must not be negative");
+				}
+			}
+		}, null, null);
+
+		try{
+			adapter.handleBatch(Lists.newArrayList(empty, unparseable, rejected, message("3", "{\"id\":\"order-3\",\"quantity\":1}")));
+			fail("expected a MessageBatchException");
+		}catch(MessageBatchException ex){
+			assertThat(ex.getFailedMessages()).containsExactly(empty, unparseable, rejected);
+		}
+		verifyZeroInteractions(producer);
+	}
+
+
+
+	private static Message message(final String id, final String body){
+		final Map<String, String> headers = Maps.newHashMap();
+		headers.put("correlationId", id);
+		return new MessageImpl(QUEUE, id, body, headers);
+	}
+
+
+
+	static class Order {
+		@JsonProperty("id")
+		private String id;
+		@JsonProperty("quantity")
+		private int quantity;
+	}
+}
@@ -0,0 +1,246 @@
+package io.microgenie.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import io.microgenie.application.events.AsyncPublisher;
+import io.microgenie.application.events.AsyncPublisherConfig;
+import io.microgenie.application.events.AsyncPublisherConfig.Backpressure;
+import io.microgenie.application.events.Event;
+import io.microgenie.application.events.Publisher;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test buffering, batching and backpressure of the {@link AsyncPublisher}
+ * @author shawn
+ */
+public class AsyncPublisherTest {
+
+	private static final String TOPIC = "TopicTestAsync";
+
+	private AsyncPublisher asyncPublisher;
+
+
+	@After
+	public void tearDown() throws IOException{
+		if(this.asyncPublisher!=null){
+			this.asyncPublisher.close();
+		}
+	}
+
+
+	/***
+	 * Submitted events should be delivered to the wrapped publisher in batches once flushed
+	 */
+	@Test
+	public void shouldDeliverEventsInBatchesOnFlush(){
+
+		final RecordingPublisher publisher = new RecordingPublisher(null);
+		this.asyncPublisher = new AsyncPublisher(publisher, new AsyncPublisherConfig()
+			.withSenderThreads(1)
+			.withBatchSize(10)
+			.withLingerMs(10000));
+
+		final List<Event> events = createEvents(25);
+		this.asyncPublisher.submitBatch(events);
+		assertThat(this.asyncPublisher.flush(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(this.asyncPublisher.getPendingCount()).isEqualTo(0);
+		assertThat(publisher.events).containsExactly(events.toArray(new Event[events.size()]));
+		for(Integer batchSize : publisher.batchSizes){
+			assertThat(batchSize).isLessThanOrEqualTo(10);
+		}
+	}
+
+
+	/***
+	 * A flush should return once the events accepted before it have been sent, even while later events are still pending
+	 */
+	@Test
+	public void shouldNotWaitForEventsAcceptedDuringFlush() throws InterruptedException{
+
+		final CountDownLatch releaseEarlier = new CountDownLatch(1);
+		final CountDownLatch sendingLater = new CountDownLatch(1);
+		final CountDownLatch releaseLater = new CountDownLatch(1);
+		final List<Event> events = createEvents(2);
+		final RecordingPublisher publisher = new RecordingPublisher(null){
+			@Override
+			public void submitBatch(List<Event> batch) {
+				try {
+					if(batch.contains(events.get(0))){
+						releaseEarlier.await(5, TimeUnit.SECONDS);
+					}else{
+						sendingLater.countDown();
+						releaseLater.await(5, TimeUnit.SECONDS);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.submitBatch(batch);
+			}
+		};
+		this.asyncPublisher = new AsyncPublisher(publisher, new AsyncPublisherConfig()
+			.withSenderThreads(2)
+			.withBatchSize(1)
+			.withLingerMs(0));
+
+		this.asyncPublisher.submit(events.get(0));
+		final AtomicBoolean flushed = new AtomicBoolean();
+		final Thread flushing = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushed.set(asyncPublisher.flush(5, TimeUnit.SECONDS));
+			}
+		});
+		flushing.start();
+		flushing.join(100);
+
+		/** the later event is held by the other sender while the earlier event is sent **/
+		this.asyncPublisher.submit(events.get(1));
+		assertThat(sendingLater.await(5, TimeUnit.SECONDS)).isTrue();
+		releaseEarlier.countDown();
+		flushing.join(2000);
+		assertThat(flushing.isAlive()).isFalse();
+		assertThat(flushed.get()).isTrue();
+		assertThat(this.asyncPublisher.getPendingCount()).isEqualTo(1);
+		releaseLater.countDown();
+	}
+
+
+
+	/***
+	 * When the buffer is full and the policy is DROP, events should be dropped and counted
+	 */
+	@Test
+	public void shouldDropEventsWhenBufferIsFull(){
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final RecordingPublisher publisher = new RecordingPublisher(release);
+		this.asyncPublisher = new AsyncPublisher(publisher, new AsyncPublisherConfig()
+			.withSenderThreads(1)
+			.withBatchSize(1)
+			.withBufferSize(2)
+			.withLingerMs(0)
+			.withBackpressure(Backpressure.DROP));
+
+		/** the first event is held by the blocked sender, the next two fill the buffer **/
+		this.asyncPublisher.submitBatch(createEvents(1));
+		this.waitForSender(publisher);
+		this.asyncPublisher.submitBatch(createEvents(5));
+
+		assertThat(this.asyncPublisher.getDroppedCount()).isEqualTo(3);
+		release.countDown();
+		assertThat(this.asyncPublisher.flush(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(publisher.events).hasSize(3);
+	}
+
+
+	/***
+	 * When the buffer is full and the policy is FAIL, submit should throw
+	 */
+	@Test(expected=IllegalStateException.class)
+	public void shouldFailWhenBufferIsFull(){
+
+		final RecordingPublisher publisher = new RecordingPublisher(new CountDownLatch(1));
+		this.asyncPublisher = new AsyncPublisher(publisher, new AsyncPublisherConfig()
+			.withSenderThreads(1)
+			.withBatchSize(1)
+			.withBufferSize(1)
+			.withLingerMs(0)
+			.withCloseTimeoutMs(0)
+			.withBackpressure(Backpressure.FAIL));
+
+		this.asyncPublisher.submitBatch(createEvents(1));
+		this.waitForSender(publisher);
+		this.asyncPublisher.submitBatch(createEvents(2));
+	}
+
+
+	/***
+	 * Closing the publisher should drain buffered events
+	 */
+	@Test
+	public void shouldDrainBufferOnClose() throws IOException{
+
+		final RecordingPublisher publisher = new RecordingPublisher(null);
+		this.asyncPublisher = new AsyncPublisher(publisher, new AsyncPublisherConfig()
+			.withSenderThreads(2)
+			.withBatchSize(50)
+			.withLingerMs(10000));
+
+		this.asyncPublisher.submitBatch(createEvents(120));
+		this.asyncPublisher.close();
+		assertThat(publisher.events).hasSize(120);
+	}
+
+
+
+	private void waitForSender(final RecordingPublisher publisher){
+		try {
+			assertThat(publisher.sending.await(5, TimeUnit.SECONDS)).isTrue();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+
+	private static List<Event> createEvents(final int count){
+		final List<Event> events = Lists.newArrayList();
+		for(int i = 0; i < count; i++){
+			final Map<String, Object> data = Maps.newHashMap();
+			data.put("index", i);
+			events.add(Event.create(TOPIC, "key-" + i, data));
+		}
+		return events;
+	}
+
+
+
+	/***
+	 * Records the events it receives, optionally blocking until released
+	 */
+	static class RecordingPublisher implements Publisher{
+		private final List<Event> events = new CopyOnWriteArrayList<Event>();
+		private final List<Integer> batchSizes = new CopyOnWriteArrayList<Integer>();
+		private final CountDownLatch sending = new CountDownLatch(1);
+		private final CountDownLatch release;
+		RecordingPublisher(final CountDownLatch release){
+			this.release = release;
+		}
+		@Override
+		public void close() throws IOException {}
+		@Override
+		public String clientId() {
+			return "recording";
+		}
+		@Override
+		public void submit(Event event) {
+			this.submitBatch(Lists.newArrayList(event));
+		}
+		@Override
+		public void submitBatch(List<Event> events) {
+			this.sending.countDown();
+			if(this.release!=null){
+				try {
+					this.release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			this.batchSizes.add(events.size());
+			this.events.addAll(events);
+		}
+	}
+}
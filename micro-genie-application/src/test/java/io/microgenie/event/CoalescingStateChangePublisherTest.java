@@ -0,0 +1,309 @@
+package io.microgenie.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.StateChangeConfiguration;
+import io.microgenie.application.events.CoalescingPublisherConfig;
+import io.microgenie.application.events.CoalescingStateChangePublisher;
+import io.microgenie.application.events.DataChanges;
+import io.microgenie.application.events.Event;
+import io.microgenie.application.events.Publisher;
+import io.microgenie.event.StateChangePublisherTest.Book;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.assertj.core.util.Maps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+
+/***
+ * Test merging of successive changes by the {@link CoalescingStateChangePublisher}
+ * @author shawn
+ */
+public class CoalescingStateChangePublisherTest {
+
+	private static final String TOPIC = "TopicTestBookChanged";
+
+	private final Publisher publisher = mock(Publisher.class);
+	private StateChangeConfiguration config;
+	private CoalescingStateChangePublisher changePublisher;
+
+
+	@Before
+	public void setup(){
+		final Map<String, String> eventMap = Maps.newHashMap();
+		eventMap.put("Created", TOPIC);
+		eventMap.put("Deleted", TOPIC);
+		eventMap.put("Updated", TOPIC);
+
+		final Map<String, Map<String, String>> modelMap = Maps.newHashMap();
+		modelMap.put(Book.class.getName(), eventMap);
+		this.config = new StateChangeConfiguration(modelMap);
+		when(this.publisher.clientId()).thenReturn("coalescing");
+	}
+
+
+	@After
+	public void tearDown() throws IOException{
+		if(this.changePublisher!=null){
+			this.changePublisher.close();
+		}
+	}
+
+
+	/***
+	 * Successive changes to the same item should be published as one net change against the item
+	 * as it existed before the first change
+	 */
+	@Test
+	public void shouldMergeSuccessiveChangesIntoOneNetChange(){
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig().withWindowMs(60000));
+
+		final Book original = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		final Book first = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", null);
+		final Book second = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", "A land surveyor");
+		final Book third = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", "A land surveyor");
+
+		assertThat(this.changePublisher.publishChanges(Book.class, "124", first, original)).isTrue();
+		assertThat(this.changePublisher.publishChanges(Book.class, "124", second, first)).isTrue();
+		assertThat(this.changePublisher.publishChanges(Book.class, "124", third, second)).isTrue();
+		assertThat(this.changePublisher.getPendingCount()).isEqualTo(1);
+		assertThat(this.changePublisher.getCoalescedCount()).isEqualTo(2);
+		verify(this.publisher).clientId();
+		verifyZeroInteractions(this.publisher);
+
+		this.changePublisher.flush();
+		final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+		verify(this.publisher).submit(eventCaptor.capture());
+		assertThat(eventCaptor.getValue().getEventData().getAction()).isEqualTo("Updated");
+
+		/** the title was changed back, only the description is a net change **/
+		final DataChanges changes = DataChanges.from(eventCaptor.getValue().getEventData());
+		assertThat(changes.getAdded()).containsOnly(entry("/description", "A land surveyor"));
+		assertThat(changes.getModified()).isEmpty();
+		assertThat(changes.getRemoved()).isEmpty();
+		assertThat(this.changePublisher.getPendingCount()).isEqualTo(0);
+	}
+
+
+
+	/***
+	 * The net change should be published once the window has passed, or once the maximum number of changes has been merged
+	 */
+	@Test
+	public void shouldPublishWhenTheWindowIsFull(){
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig()
+			.withWindowMs(60000)
+			.withMaxChangesPerKey(2));
+
+		final Book original = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		this.changePublisher.publishChanges(Book.class, "124", EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", null), original);
+		this.changePublisher.publishChanges(Book.class, "124", EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "America", null), original);
+		verify(this.publisher).submit(any(Event.class));
+		assertThat(this.changePublisher.getPendingCount()).isEqualTo(0);
+	}
+
+
+
+	/***
+	 * Held changes should be published by the flusher once their window has passed
+	 */
+	@Test
+	public void shouldPublishOnceTheWindowHasPassed(){
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig().withWindowMs(20));
+
+		final Book original = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		this.changePublisher.publishChanges(Book.class, "124", EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", null), original);
+		verify(this.publisher, timeout(5000)).submit(any(Event.class));
+	}
+
+
+
+	/***
+	 * Changes the publisher failed to submit should stay held, merge later changes and be retried by the next flush
+	 */
+	@Test
+	public void shouldKeepChangesHeldWhenSubmitFails() throws IOException{
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig().withWindowMs(60000));
+		doThrow(new IllegalStateException("stream unavailable")).doNothing().when(this.publisher).submit(any(Event.class));
+
+		final Book original = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		final Book first = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", null);
+		final Book second = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", "A land surveyor");
+		this.changePublisher.publishChanges(Book.class, "124", first, original);
+		try{
+			this.changePublisher.flush();
+			fail("the submit failure should reach the caller of flush");
+		}catch(IllegalStateException ex){
+			assertThat(ex.getMessage()).isEqualTo("stream unavailable");
+		}
+		assertThat(this.changePublisher.getPendingCount()).isEqualTo(1);
+
+		this.changePublisher.publishChanges(Book.class, "124", second, first);
+		assertThat(this.changePublisher.getCoalescedCount()).isEqualTo(1);
+		this.changePublisher.close();
+
+		final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+		verify(this.publisher, times(2)).submit(eventCaptor.capture());
+		final DataChanges changes = DataChanges.from(eventCaptor.getAllValues().get(1).getEventData());
+		assertThat(changes.getModified()).containsOnly(entry("/title", "The Castle"));
+		assertThat(changes.getAdded()).containsOnly(entry("/description", "A land surveyor"));
+		assertThat(this.changePublisher.getPendingCount()).isEqualTo(0);
+	}
+
+
+
+	/***
+	 * An item created and deleted within the same window should not publish any changes
+	 */
+	@Test
+	public void shouldPublishNothingForItemsCreatedAndDeletedInTheSameWindow() throws IOException{
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig().withWindowMs(60000));
+
+		final Book created = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		this.changePublisher.publishChanges(Book.class, "124", created, null);
+		this.changePublisher.publishChanges(Book.class, "124", null, created);
+		this.changePublisher.close();
+
+		verify(this.publisher).clientId();
+		verifyZeroInteractions(this.publisher);
+	}
+
+
+
+	/***
+	 * An action for an item should wait for the net change of the item being published by another thread
+	 */
+	@Test
+	public void shouldPublishActionsAfterChangesBeingPublished() throws InterruptedException{
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig().withWindowMs(60000));
+
+		final CountDownLatch submitting = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+				submitting.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				return null;
+			}
+		}).doNothing().when(this.publisher).submit(any(Event.class));
+
+		final Book original = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		final Book modified = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", null);
+		this.changePublisher.publishChanges(Book.class, "124", modified, original);
+
+		final Thread flushing = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				changePublisher.flush();
+			}
+		});
+		final Thread deleting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				changePublisher.publishDeleted("124", modified);
+			}
+		});
+		flushing.start();
+		assertThat(submitting.await(5, TimeUnit.SECONDS)).isTrue();
+		deleting.start();
+
+		/** the deleted event waits for the held change to be submitted **/
+		deleting.join(200);
+		verify(this.publisher, times(1)).submit(any(Event.class));
+
+		release.countDown();
+		flushing.join(5000);
+		deleting.join(5000);
+		final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+		verify(this.publisher, times(2)).submit(eventCaptor.capture());
+		final List<Event> events = eventCaptor.getAllValues();
+		assertThat(events.get(0).getEventData().getAction()).isEqualTo("Updated");
+		assertThat(events.get(1).getEventData().getAction()).isEqualTo("Deleted");
+	}
+
+
+
+	/***
+	 * An interrupted thread waiting for the net change of an item should fail without publishing its action
+	 */
+	@Test
+	public void shouldNotPublishActionsOfInterruptedThreads() throws InterruptedException{
+
+		this.changePublisher = new CoalescingStateChangePublisher(this.config, this.publisher, new CoalescingPublisherConfig().withWindowMs(60000));
+
+		final CountDownLatch submitting = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+				submitting.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				return null;
+			}
+		}).doNothing().when(this.publisher).submit(any(Event.class));
+
+		final Book original = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Trial", null);
+		final Book modified = EventTestUtil.createTestBook("124", "ABC-E2-2334", "F. Kafka", "The Castle", null);
+		this.changePublisher.publishChanges(Book.class, "124", modified, original);
+
+		final Thread flushing = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				changePublisher.flush();
+			}
+		});
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final Thread deleting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					changePublisher.publishDeleted("124", modified);
+				}catch(Exception ex){
+					failure.set(ex);
+				}
+			}
+		});
+		flushing.start();
+		assertThat(submitting.await(5, TimeUnit.SECONDS)).isTrue();
+		deleting.start();
+		deleting.join(200);
+		deleting.interrupt();
+		deleting.join(5000);
+		assertThat(deleting.isAlive()).isFalse();
+		assertThat(failure.get()).isInstanceOf(IllegalStateException.class);
+
+		release.countDown();
+		flushing.join(5000);
+		final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+		verify(this.publisher, times(1)).submit(eventCaptor.capture());
+		assertThat(eventCaptor.getValue().getEventData().getAction()).isEqualTo("Updated");
+	}
+}
@@ -0,0 +1,82 @@
+package io.microgenie.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import io.microgenie.application.events.Event;
+import io.microgenie.application.events.EventCodecs;
+import io.microgenie.application.events.EventCodecs.Format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test encoding and format detection of {@link EventCodecs}
+ * @author shawn
+ */
+public class EventCodecsTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final EventCodecs codecs = new EventCodecs(mapper);
+
+
+	/***
+	 * Each format should round trip and be detected from the payload
+	 */
+	@Test
+	public void shouldRoundTripEveryFormat() throws IOException{
+		final Event event = createEvent();
+		for(Format format : Format.values()){
+			final byte[] bytes = this.codecs.encode(format, event);
+			final Event decoded = this.codecs.decode(ByteBuffer.wrap(bytes));
+			assertThat(decoded.getId()).isEqualTo(event.getId());
+			assertThat(decoded.getPartitionKey()).isEqualTo(event.getPartitionKey());
+			assertThat(decoded.getEventData().getData()).isEqualTo(event.getEventData().getData());
+		}
+	}
+
+
+	/***
+	 * Binary formats should carry their header byte, JSON should stay plain so existing consumers can read it
+	 */
+	@Test
+	public void shouldWriteFormatHeaders() throws IOException{
+		final Event event = createEvent();
+		assertThat(this.codecs.encode(Format.SMILE, event)[0]).isEqualTo(EventCodecs.SMILE_HEADER);
+		assertThat(this.codecs.encode(Format.CBOR, event)[0]).isEqualTo(EventCodecs.CBOR_HEADER);
+		assertThat(this.codecs.encode(Format.JSON, event)).isEqualTo(mapper.writeValueAsBytes(event));
+	}
+
+
+	/***
+	 * Payloads should be decoded from direct buffers without a backing array
+	 */
+	@Test
+	public void shouldDecodeFromDirectBuffer() throws IOException{
+		final Event event = createEvent();
+		final byte[] bytes = this.codecs.encode(Format.CBOR, event);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		assertThat(this.codecs.decode(buffer).getId()).isEqualTo(event.getId());
+		assertThat(buffer.position()).isEqualTo(0);
+	}
+
+
+	@Test(expected=IOException.class)
+	public void shouldRejectUnknownFormat() throws IOException{
+		this.codecs.decode(ByteBuffer.wrap(new byte[]{0x7f, 0x00}));
+	}
+
+
+	private static Event createEvent(){
+		final Map<String, Object> data = Maps.newHashMap();
+		data.put("name", "value");
+		data.put("count", 42);
+		return Event.create("TopicCodecs", "key", data);
+	}
+}
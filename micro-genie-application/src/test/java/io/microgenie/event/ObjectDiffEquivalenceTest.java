@@ -0,0 +1,473 @@
+package io.microgenie.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import io.microgenie.application.StateChangeConfiguration;
+import io.microgenie.application.events.DataChanges;
+import io.microgenie.application.events.Event;
+import io.microgenie.application.events.Publisher;
+import io.microgenie.application.events.StateChangePublisher;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.github.fge.jackson.JsonNumEquals;
+import com.github.fge.jsonpatch.diff.JsonDiff;
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+
+
+/***
+ * Compare the changes published by the {@link StateChangePublisher} against the {@link JsonDiff} pipeline it replaced,
+ * where both items were converted to maps, diffed as json and the patch operations were collected by path.
+ * <p>
+ * Values are published typed and a move or copy is published as the removal and addition it stands for,
+ * the legacy operations are mapped into that form before the two are compared
+ * @author shawn
+ *
+ */
+public class ObjectDiffEquivalenceTest {
+
+
+	private static final String TOPIC = "TopicTestShelfChanged";
+	private static final String KEY = "shelf-1";
+	private static final TypeReference<Map<String, Object>> MAP_TYPE_REFERENCE = new TypeReference<Map<String, Object>>() {};
+	private static final Equivalence<JsonNode> EQUIVALENCE = JsonNumEquals.getInstance();
+
+	private final Publisher publisher = mock(Publisher.class);
+	private final ObjectMapper nonNullMapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+	private final ObjectMapper alwaysMapper = new ObjectMapper();
+	private final List<ObjectMapper> mappers = ImmutableList.of(nonNullMapper, alwaysMapper);
+	private StateChangeConfiguration config;
+
+
+	@Before
+	public void setup(){
+		final Map<String, String> eventMap = Maps.newHashMap();
+		eventMap.put(StateChangePublisher.CREATED_ACTION, TOPIC);
+		eventMap.put(StateChangePublisher.DELETED_ACTION, TOPIC);
+		eventMap.put(StateChangePublisher.MODIFIED_ACTION, TOPIC);
+
+		final Map<String, Map<String, String>> modelMap = Maps.newHashMap();
+		modelMap.put(Shelf.class.getName(), eventMap);
+		config = new StateChangeConfiguration();
+		config.setEvents(modelMap);
+	}
+
+
+
+	@Test
+	public void shouldMatchForCreatedItems(){
+		this.assertSameChanges(createShelf(), null);
+
+		final Shelf sparse = new Shelf();
+		sparse.setShelfId(KEY);
+		this.assertSameChanges(sparse, null);
+	}
+
+
+
+	@Test
+	public void shouldMatchForDeletedItems(){
+		this.assertSameChanges(null, createShelf());
+	}
+
+
+
+	@Test
+	public void shouldMatchForUnchangedItems(){
+		this.assertSameChanges(createShelf(), createShelf());
+	}
+
+
+
+	@Test
+	public void shouldMatchForNestedMapChanges(){
+		final Shelf existing = createShelf();
+		final Shelf submitted = createShelf();
+
+		final Map<String, Object> dimensions = Maps.newHashMap();
+		dimensions.put("width", 120);
+		dimensions.put("depth", 40);
+		submitted.getAttributes().put("dimensions", dimensions);
+		submitted.getAttributes().remove("material");
+		submitted.getAttributes().put("finish", "oak");
+
+		final Map<String, Object> bracket = Maps.newHashMap();
+		bracket.put("count", 4);
+		nested(submitted.getAttributes(), "mounting").put("bracket", bracket);
+		nested(submitted.getAttributes(), "mounting").put("wall", "brick");
+		submitted.getLocation().setFloor(3);
+
+		this.assertSameChanges(submitted, existing);
+	}
+
+
+
+	@Test
+	public void shouldMatchForNestedObjectsReplacingNulls(){
+		final Shelf existing = createShelf();
+		existing.setAttributes(null);
+		existing.setLocation(null);
+		this.assertSameChanges(createShelf(), existing);
+		this.assertSameChanges(existing, createShelf());
+	}
+
+
+
+	@Test
+	public void shouldMatchForEnumAndDateChanges(){
+		final Shelf existing = createShelf();
+		final Shelf submitted = createShelf();
+		submitted.setGenre(Genre.HISTORY);
+		submitted.setStocked(new Date(existing.getStocked().getTime() + 60000));
+		this.assertSameChanges(submitted, existing);
+
+		existing.setGenre(null);
+		existing.setStocked(null);
+		this.assertSameChanges(submitted, existing);
+		this.assertSameChanges(existing, submitted);
+	}
+
+
+
+	@Test
+	public void shouldMatchForNullsUnderEitherInclusion(){
+		final Shelf existing = createShelf();
+		final Shelf submitted = createShelf();
+		submitted.setNote(null);
+		submitted.setAmount(null);
+		submitted.getAttributes().put("material", null);
+		this.assertSameChanges(submitted, existing);
+		this.assertSameChanges(existing, submitted);
+	}
+
+
+
+	@Test
+	public void shouldMatchForWidenedNumbers(){
+		final Shelf existing = createShelf();
+		final Shelf submitted = createShelf();
+
+		existing.setAmount(Integer.valueOf(5));
+		existing.getAttributes().put("capacity", Integer.valueOf(30));
+		existing.getAttributes().put("weight", Long.valueOf(12L));
+
+		submitted.setAmount(Long.valueOf(5L));
+		submitted.getAttributes().put("capacity", Double.valueOf(30.0));
+		submitted.getAttributes().put("weight", Integer.valueOf(12));
+		this.assertSameChanges(submitted, existing);
+
+		submitted.setAmount(Double.valueOf(5.0));
+		submitted.getAttributes().put("capacity", Long.valueOf(30L));
+		submitted.getAttributes().put("weight", Double.valueOf(12.5));
+		this.assertSameChanges(submitted, existing);
+
+		submitted.setAmount(Double.valueOf(5.5));
+		this.assertSameChanges(submitted, existing);
+	}
+
+
+
+	@Test
+	public void shouldMatchForMovedValues(){
+		final Shelf existing = createShelf();
+		final Shelf submitted = createShelf();
+
+		final Map<String, Object> moved = Maps.newHashMap();
+		moved.put("count", 2);
+		existing.getAttributes().put("spare", moved);
+		submitted.getAttributes().put("extra", moved);
+
+		existing.setLabel(null);
+		existing.setNote("front row");
+		submitted.setLabel("front row");
+		submitted.setNote(null);
+
+		assertThat(this.legacyChanges(nonNullMapper, submitted, existing).operations).contains("move");
+		this.assertSameChanges(submitted, existing);
+	}
+
+
+
+	@Test
+	public void shouldMatchForCopiedValues(){
+		final Shelf existing = createShelf();
+		final Shelf submitted = createShelf();
+
+		submitted.getAttributes().put("trim", existing.getAttributes().get("material"));
+		submitted.getAttributes().put("mirror", Maps.newHashMap(nested(existing.getAttributes(), "mounting")));
+		existing.setLabel(null);
+		submitted.setLabel(existing.getNote());
+
+		assertThat(this.legacyChanges(nonNullMapper, submitted, existing).operations).contains("copy");
+		this.assertSameChanges(submitted, existing);
+	}
+
+
+
+	/***
+	 * Publish the changes with each mapper and assert they match the legacy pipeline run with the same mapper
+	 * @param submitted
+	 * @param existing
+	 */
+	private void assertSameChanges(final Object submitted, final Object existing){
+		for(ObjectMapper mapper : this.mappers){
+			final String inclusion = mapper == this.nonNullMapper ? "NON_NULL" : "ALWAYS";
+			final LegacyChanges expected = this.legacyChanges(mapper, submitted, existing);
+
+			reset(this.publisher);
+			final StateChangePublisher changePublisher = new StateChangePublisher(config, this.publisher, mapper);
+			final boolean published = changePublisher.publishChanges(Shelf.class, KEY, submitted, existing);
+
+			if(expected.isEmpty()){
+				assertThat(published).as("published under " + inclusion).isFalse();
+				verify(this.publisher, never()).submit(Matchers.any(Event.class));
+				continue;
+			}
+
+			assertThat(published).as("published under " + inclusion).isTrue();
+			final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+			verify(this.publisher).submit(eventCaptor.capture());
+			final DataChanges actual = DataChanges.from(eventCaptor.getValue().getEventData());
+
+			assertEquivalent(mapper, "added under " + inclusion, expected.added, actual.getAdded());
+			assertEquivalent(mapper, "removed under " + inclusion, expected.removed, actual.getRemoved());
+			assertEquivalent(mapper, "modified under " + inclusion, expected.modified, actual.getModified());
+		}
+	}
+
+
+
+	private static void assertEquivalent(final ObjectMapper mapper, final String description, final Map<String, JsonNode> expected, final Map<String, Object> actual){
+		assertThat(actual.keySet()).as(description).isEqualTo(expected.keySet());
+		for(Map.Entry<String, JsonNode> entry : expected.entrySet()){
+			final JsonNode actualNode = toNode(mapper, actual.get(entry.getKey()));
+			assertThat(EQUIVALENCE.equivalent(entry.getValue(), actualNode))
+				.as(String.format("%s %s - expected: %s actual: %s", description, entry.getKey(), entry.getValue(), actualNode))
+				.isTrue();
+		}
+	}
+
+
+
+	/***
+	 * The diff as the publisher computed it before {@code ObjectDiff}, both items converted to maps and diffed with {@link JsonDiff}
+	 * @param mapper
+	 * @param submitted - null if the item was deleted
+	 * @param existing - null if the item was created
+	 * @return legacyChanges
+	 */
+	private LegacyChanges legacyChanges(final ObjectMapper mapper, final Object submitted, final Object existing){
+		final Map<String, Object> submittedMap = mapper.convertValue(submitted == null ? new HashMap<String, Object>() : submitted, MAP_TYPE_REFERENCE);
+		final Map<String, Object> existingMap = mapper.convertValue(existing == null ? new HashMap<String, Object>() : existing, MAP_TYPE_REFERENCE);
+		final JsonNode submittedNode = mapper.convertValue(submittedMap, JsonNode.class);
+		final JsonNode existingNode = mapper.convertValue(existingMap, JsonNode.class);
+
+		final LegacyChanges changes = new LegacyChanges();
+		for(JsonNode node : JsonDiff.asJson(existingNode, submittedNode)){
+			final String op = node.get("op").asText();
+			final String path = node.get("path").asText();
+			changes.operations.add(op);
+			if("add".equals(op)){
+				changes.added.put(path, node.get("value"));
+			}else if("remove".equals(op)){
+				changes.removed.put(path, NullNode.getInstance());
+			}else if("replace".equals(op)){
+				changes.modified.put(path, node.get("value"));
+			/** a move removes the value from its old path and adds it at the new one **/
+			}else if("move".equals(op)){
+				changes.removed.put(node.get("from").asText(), NullNode.getInstance());
+				changes.added.put(path, submittedNode.at(path));
+			/** a copy adds a value equal to one left unchanged **/
+			}else if("copy".equals(op)){
+				changes.added.put(path, submittedNode.at(path));
+			}else{
+				throw new IllegalStateException("unexpected json diff operation: " + op);
+			}
+		}
+		return changes;
+	}
+
+
+
+	private static JsonNode toNode(final ObjectMapper mapper, final Object value){
+		if(value == null){
+			return NullNode.getInstance();
+		}
+		return mapper.valueToTree(value);
+	}
+
+
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> nested(final Map<String, Object> map, final String key){
+		return (Map<String, Object>)map.get(key);
+	}
+
+
+
+	private static Shelf createShelf(){
+		final Shelf shelf = new Shelf();
+		shelf.setShelfId(KEY);
+		shelf.setName("Fiction A");
+		shelf.setNote("back wall");
+		shelf.setLabel("FIC-A");
+		shelf.setGenre(Genre.FICTION);
+		shelf.setStocked(new Date(1420070400000L));
+		shelf.setAmount(Integer.valueOf(7));
+		shelf.setTags(Lists.newArrayList("tall", "fixed"));
+
+		final Location location = new Location();
+		location.setCity("Lisbon");
+		location.setFloor(2);
+		shelf.setLocation(location);
+
+		final Map<String, Object> mounting = Maps.newHashMap();
+		mounting.put("screws", 8);
+		mounting.put("anchored", Boolean.TRUE);
+		final Map<String, Object> attributes = Maps.newHashMap();
+		attributes.put("material", "pine");
+		attributes.put("mounting", mounting);
+		shelf.setAttributes(attributes);
+		return shelf;
+	}
+
+
+
+	/***
+	 * The legacy patch operations collected by path, in the form the publisher reports them
+	 */
+	private static class LegacyChanges{
+		private final Set<String> operations = Sets.newHashSet();
+		private final Map<String, JsonNode> added = Maps.newHashMap();
+		private final Map<String, JsonNode> removed = Maps.newHashMap();
+		private final Map<String, JsonNode> modified = Maps.newHashMap();
+		private boolean isEmpty(){
+			return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+		}
+	}
+
+
+
+	public static enum Genre{
+		FICTION, HISTORY
+	}
+
+
+
+	/**
+	 * Mock shelf item holding enums, dates, widened numbers and nested maps
+	 */
+	public static class Shelf{
+		private String shelfId;
+		private String name;
+		private String note;
+		private String label;
+		private Genre genre;
+		private Date stocked;
+		private Number amount;
+		private List<String> tags;
+		private Location location;
+		private Map<String, Object> attributes;
+		public String getShelfId() {
+			return shelfId;
+		}
+		public void setShelfId(String shelfId) {
+			this.shelfId = shelfId;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public String getNote() {
+			return note;
+		}
+		public void setNote(String note) {
+			this.note = note;
+		}
+		public String getLabel() {
+			return label;
+		}
+		public void setLabel(String label) {
+			this.label = label;
+		}
+		public Genre getGenre() {
+			return genre;
+		}
+		public void setGenre(Genre genre) {
+			this.genre = genre;
+		}
+		public Date getStocked() {
+			return stocked;
+		}
+		public void setStocked(Date stocked) {
+			this.stocked = stocked;
+		}
+		public Number getAmount() {
+			return amount;
+		}
+		public void setAmount(Number amount) {
+			this.amount = amount;
+		}
+		public List<String> getTags() {
+			return tags;
+		}
+		public void setTags(List<String> tags) {
+			this.tags = tags;
+		}
+		public Location getLocation() {
+			return location;
+		}
+		public void setLocation(Location location) {
+			this.location = location;
+		}
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+		public void setAttributes(Map<String, Object> attributes) {
+			this.attributes = attributes;
+		}
+	}
+
+
+
+	public static class Location{
+		private String city;
+		private int floor;
+		public String getCity() {
+			return city;
+		}
+		public void setCity(String city) {
+			this.city = city;
+		}
+		public int getFloor() {
+			return floor;
+		}
+		public void setFloor(int floor) {
+			this.floor = floor;
+		}
+	}
+}
@@ -9,9 +9,12 @@ import io.microgenie.application.StateChangeConfiguration;
 import io.microgenie.application.events.DataChanges;
 import io.microgenie.application.events.Event;
 import io.microgenie.application.events.EventData;
+import io.microgenie.application.events.ChangeKey;
+import io.microgenie.application.events.IgnoreChanges;
 import io.microgenie.application.events.Publisher;
 import io.microgenie.application.events.StateChangePublisher;
 
+import java.util.List;
 import java.util.Map;
 
 import org.assertj.core.util.Maps;
@@ -20,6 +23,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
 
 
 /***
@@ -53,6 +59,8 @@ public class StateChangePublisherTest {
 		
 		final Map<String, Map<String, String>> modelMap = Maps.newHashMap();
 		modelMap.put(Book.class.getName(), eventMap);
+		modelMap.put(Edition.class.getName(), eventMap);
+		modelMap.put(AuditedBook.class.getSimpleName(), eventMap);
 		config.setEvents(modelMap);
 		changePublisher = new StateChangePublisher(config, this.publisher);
 	}
@@ -230,6 +238,110 @@ public class StateChangePublisherTest {
 	}
 	
 	
+	
+	
+	/***
+	 * Changes should carry typed values, including nested objects, numbers and collections, with the previous
+	 * value of each modified or removed path. Changed lists are reported as a whole
+	 */
+	@Test
+	public void shouldReportTypedAndPreviousValues(){
+		
+		final Edition existing = createEdition("F. Kafka", 120, 9.5, Lists.newArrayList("fiction", "classic"));
+		
+		/** numbers stay numbers, nested objects are reported by path **/
+		final Edition submitted = createEdition("Franz Kafka", 121, 10.0, Lists.newArrayList("fiction"));
+		submitted.getPublisher().setCity("Prague");
+		submitted.setAttributes(ImmutableMap.<String, Object>of("signed", true, "copies", 3));
+		DataChanges changes = this.publishEditionChanges(submitted, existing);
+		assertThat(changes.getModified()).containsOnly(
+				entry("/author", "Franz Kafka"),
+				entry("/pages", 121),
+				entry("/price", 10.0),
+				entry("/tags", Lists.newArrayList("fiction")),
+				entry("/publisher/city", "Prague"));
+		assertThat(changes.getPrevious()).containsOnly(
+				entry("/author", "F. Kafka"),
+				entry("/pages", 120),
+				entry("/price", 9.5),
+				entry("/tags", Lists.newArrayList("fiction", "classic")),
+				entry("/publisher/city", "Leipzig"));
+		assertThat(changes.getAdded()).containsOnly(entry("/attributes", ImmutableMap.<String, Object>of("signed", true, "copies", 3)));
+		assertThat(changes.getRemoved()).isEmpty();
+		
+		/** a value moved from one field to another is reported as removed and added **/
+		final Edition moved = createEdition(null, 120, 9.5, Lists.newArrayList("fiction", "classic"));
+		moved.setTranslator("F. Kafka");
+		moved.setPublisher(null);
+		changes = this.publishEditionChanges(moved, existing);
+		assertThat(changes.getAdded()).containsOnly(entry("/translator", "F. Kafka"));
+		assertThat(changes.getRemoved()).containsOnly(entry("/author", null), entry("/publisher", null));
+		assertThat(changes.getModified()).isEmpty();
+		assertThat(changes.getPrevious()).containsOnly(
+				entry("/author", "F. Kafka"),
+				entry("/publisher", ImmutableMap.<String, Object>of("name", "Kurt Wolff", "city", "Leipzig")));
+		
+		/** the same objects should not publish changes **/
+		reset(publisher);
+		assertThat(this.changePublisher.publishChanges(Edition.class, "key", existing, existing)).isFalse();
+	}
+	
+	
+	private DataChanges publishEditionChanges(final Edition submitted, final Edition existing){
+		reset(publisher);
+		assertThat(this.changePublisher.publishChanges(Edition.class, "key", submitted, existing)).isTrue();
+		final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+		verify(publisher).submit(eventCaptor.capture());
+		return DataChanges.from(eventCaptor.getValue().getEventData());
+	}
+	
+	
+	
+	/***
+	 * Properties annotated with {@link IgnoreChanges} should never be reported, and {@link ChangeKey} properties
+	 * should only be reported when the item is created or deleted
+	 */
+	@Test
+	public void shouldPruneIgnoredAndKeyPropertiesFromChanges(){
+		
+		final AuditedBook existing = new AuditedBook("book-1", "The Trial", 1000L);
+		
+		/** only the ignored timestamp and the key changed, nothing to publish **/
+		assertThat(this.changePublisher.publishChanges(AuditedBook.class, "book-1", new AuditedBook("book-2", "The Trial", 2000L), existing)).isFalse();
+		
+		assertThat(this.changePublisher.publishChanges(AuditedBook.class, "book-1", new AuditedBook("book-1", "The Castle", 3000L), existing)).isTrue();
+		final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+		verify(publisher).submit(eventCaptor.capture());
+		DataChanges changes = DataChanges.from(eventCaptor.getValue().getEventData());
+		assertThat(changes.getModified()).containsOnly(entry("/title", "The Castle"));
+		assertThat(changes.getAdded()).isEmpty();
+		assertThat(changes.getRemoved()).isEmpty();
+		assertThat(changes.getSubmitted()).containsKey("updatedAt");
+		
+		reset(publisher);
+		assertThat(this.changePublisher.publishChanges(AuditedBook.class, "book-1", existing, null)).isTrue();
+		verify(publisher).submit(eventCaptor.capture());
+		changes = DataChanges.from(eventCaptor.getValue().getEventData());
+		assertThat(changes.getAdded()).containsOnly(entry("/bookId", "book-1"), entry("/title", "The Trial"));
+		
+		assertThat(this.changePublisher.getModels().get(AuditedBook.class).getTopic("Updated")).isEqualTo(TOPIC);
+	}
+	
+	
+	
+	private static Edition createEdition(final String author, final int pages, final Double price, final List<String> tags){
+		final Edition edition = new Edition();
+		edition.setAuthor(author);
+		edition.setPages(pages);
+		edition.setPrice(price);
+		edition.setTags(tags);
+		edition.setPublisher(new EditionPublisher());
+		edition.getPublisher().setName("Kurt Wolff");
+		edition.getPublisher().setCity("Leipzig");
+		return edition;
+	}
+	
+	
     
    	/***
    	 * Common Event assertions, since event is the outer container all events contain these properties and
@@ -291,4 +403,106 @@ public class StateChangePublisherTest {
 			this.bookId = bookId;
 		}
 	}
+	
+	
+	
+	/**
+	 * Mock edition item for testing changes to nested objects, numbers and collections
+	 */
+	public static class Edition{
+		private String author;
+		private String translator;
+		private int pages;
+		private Double price;
+		private List<String> tags;
+		private Map<String, Object> attributes;
+		private EditionPublisher publisher;
+		public String getAuthor() {
+			return author;
+		}
+		public void setAuthor(String author) {
+			this.author = author;
+		}
+		public String getTranslator() {
+			return translator;
+		}
+		public void setTranslator(String translator) {
+			this.translator = translator;
+		}
+		public int getPages() {
+			return pages;
+		}
+		public void setPages(int pages) {
+			this.pages = pages;
+		}
+		public Double getPrice() {
+			return price;
+		}
+		public void setPrice(Double price) {
+			this.price = price;
+		}
+		public List<String> getTags() {
+			return tags;
+		}
+		public void setTags(List<String> tags) {
+			this.tags = tags;
+		}
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+		public void setAttributes(Map<String, Object> attributes) {
+			this.attributes = attributes;
+		}
+		public EditionPublisher getPublisher() {
+			return publisher;
+		}
+		public void setPublisher(EditionPublisher publisher) {
+			this.publisher = publisher;
+		}
+	}
+	
+	
+	public static class EditionPublisher{
+		private String name;
+		private String city;
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public String getCity() {
+			return city;
+		}
+		public void setCity(String city) {
+			this.city = city;
+		}
+	}
+	
+	
+	/**
+	 * Mock item with an audit timestamp that should not be reported as a change
+	 */
+	public static class AuditedBook{
+		@ChangeKey
+		private String bookId;
+		private String title;
+		private Long updatedAt;
+		public AuditedBook(){}
+		public AuditedBook(final String bookId, final String title, final Long updatedAt){
+			this.bookId = bookId;
+			this.title = title;
+			this.updatedAt = updatedAt;
+		}
+		public String getBookId() {
+			return bookId;
+		}
+		public String getTitle() {
+			return title;
+		}
+		@IgnoreChanges
+		public Long getUpdatedAt() {
+			return updatedAt;
+		}
+	}
 }
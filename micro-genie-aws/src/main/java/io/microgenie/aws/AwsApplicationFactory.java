@@ -67,30 +67,29 @@ public class AwsApplicationFactory extends ApplicationFactory {
 		/*** Create any clients that have been configured **/
 		if (config != null) {
 			
+			if (config.getS3() != null) {
+				this.s3Client = new AmazonS3Client();
+				files = new S3BlobFactory(this.s3Client, config.getS3().getDefaultDrive());
+			}
+			if (config.getSqs() != null) {
+				this.sqsClient = new AmazonSQSClient();
+				queues = new SqsFactory(this.sqsClient, config.getSqs(), files, this.mapper);
+			}
 			if (config.getKinesis() != null || config.getDynamo() != null) {
 
 				/** both kinesis and dynamodb rely on the AmazonDynamoDbClient **/
 				this.dynamoClient = new AmazonDynamoDBClient();
 				
-				/** Kinesis KCL uses the cloudwatchClient **/
+				/** Kinesis KCL uses the cloudwatchClient, consumers may dead letter to queues or files created above **/
 				if (this.config.getKinesis() != null) {
 					this.kinesisClient = new AmazonKinesisClient();
 					this.cloudwatchClient = new AmazonCloudWatchClient();
-					events = new KinesisEventFactory(kinesisClient, this.dynamoClient, this.cloudwatchClient, this.mapper);
+					events = new KinesisEventFactory(this.config.getKinesis(), kinesisClient, this.dynamoClient, this.cloudwatchClient, this.mapper, queues, files);
 				}
 			}
-			
-			if (config.getS3() != null) {
-				this.s3Client = new AmazonS3Client();
-				files = new S3BlobFactory(this.s3Client, config.getS3().getDefaultDrive());
-			}
 			if (config.getDynamo() != null) {
 				databases = new DynamoDbMapperFactory(this.dynamoClient);
 			}
-			if (config.getSqs() != null) {
-				this.sqsClient = new AmazonSQSClient();
-				queues = new SqsFactory(this.sqsClient, config.getSqs());
-			}
 		}
 	}
 
@@ -0,0 +1,94 @@
+package io.microgenie.aws.admin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+
+/***
+ * Concurrent, bounded cache of queue name to queue url mappings.
+ * <p>
+ * Resolved urls are cached until evicted by size or invalidated. Queues that do not exist are cached as negative
+ * results for a short time, so producing to a missing queue does not call GetQueueUrl for every message.
+ * Concurrent lookups of the same uncached queue share a single resolution, and reads of cached urls do not block
+ *
+ * @author shawn
+ */
+class QueueUrlCache {
+
+	private final Cache<String, String> urls;
+	private final Cache<String, String> missing;
+
+
+	/***
+	 * @param maxSize - The maximum number of queue urls cached
+	 * @param negativeTtlMs - How long a queue that does not exist is remembered as missing, zero disables negative caching
+	 */
+	QueueUrlCache(final int maxSize, final long negativeTtlMs){
+		Preconditions.checkArgument(maxSize > 0, "maxSize must be greater than zero");
+		this.urls = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+		this.missing = CacheBuilder.newBuilder()
+		.maximumSize(maxSize)
+		.expireAfterWrite(Math.max(0, negativeTtlMs), TimeUnit.MILLISECONDS)
+		.build();
+	}
+
+
+	/***
+	 * Get the cached url, resolving it when it is not cached
+	 * @param queueName
+	 * @param resolver - resolves the url of an uncached queue, throws {@link QueueDoesNotExistException} for missing queues
+	 * @return queueUrl
+	 * @throws QueueDoesNotExistException - if the queue does not exist, or was recently found not to exist
+	 */
+	String get(final String queueName, final Callable<String> resolver) throws QueueDoesNotExistException{
+		final String url = this.urls.getIfPresent(queueName);
+		if(url != null){
+			return url;
+		}
+		final String missingReason = this.missing.getIfPresent(queueName);
+		if(missingReason != null){
+			throw new QueueDoesNotExistException(missingReason);
+		}
+		try {
+			return this.urls.get(queueName, resolver);
+		} catch (UncheckedExecutionException | ExecutionException | ExecutionError e) {
+			if(e.getCause() instanceof QueueDoesNotExistException){
+				this.missing.put(queueName, String.format("The queue: %s was not found - %s", queueName, e.getCause().getMessage()));
+				throw (QueueDoesNotExistException)e.getCause();
+			}
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw new RuntimeException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e.getCause());
+		}
+	}
+
+
+	/***
+	 * Cache a known url, clearing any negative result for the queue
+	 * @param queueName
+	 * @param queueUrl
+	 */
+	void put(final String queueName, final String queueUrl){
+		this.missing.invalidate(queueName);
+		this.urls.put(queueName, queueUrl);
+	}
+
+
+	/***
+	 * Forget the url and any negative result for the queue
+	 * @param queueName
+	 */
+	void invalidate(final String queueName){
+		this.urls.invalidate(queueName);
+		this.missing.invalidate(queueName);
+	}
+}
@@ -6,6 +6,7 @@ import io.microgenie.aws.config.SqsQueueConfig;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -14,11 +15,13 @@ import org.slf4j.LoggerFactory;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
 import com.amazonaws.services.sqs.model.GetQueueUrlResult;
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
 
 /***
  * Used to administer SQS Queues and initialize the queues if they do not exist.
@@ -30,8 +33,15 @@ import com.google.common.collect.Maps;
 public class SqsQueueAdmin {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(SqsQueueAdmin.class);
+
+	/** The SQS default visibility timeout, used when the queue attribute is not returned **/
+	public static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+	
+	/** Queue url cache defaults **/
+	public static final int DEFAULT_QUEUE_URL_CACHE_SIZE = 1000;
+	public static final long DEFAULT_MISSING_QUEUE_TTL_MS = 5000;
 	
-	private final Map<String, String> queueUrlMap = Maps.newHashMap();
+	private final QueueUrlCache queueUrls;
 	private final AmazonSQSClient sqs;
 
 	private volatile boolean shutdown = false;
@@ -39,7 +49,18 @@ public class SqsQueueAdmin {
 	
 	
 	public SqsQueueAdmin(final AmazonSQSClient sqs){
+		this(sqs, DEFAULT_QUEUE_URL_CACHE_SIZE, DEFAULT_MISSING_QUEUE_TTL_MS);
+	}
+	
+	
+	/***
+	 * @param sqs
+	 * @param queueUrlCacheSize - The maximum number of queue urls cached
+	 * @param missingQueueTtlMs - How long a queue that does not exist is remembered as missing before it is looked up again
+	 */
+	public SqsQueueAdmin(final AmazonSQSClient sqs, final int queueUrlCacheSize, final long missingQueueTtlMs){
 		this.sqs = sqs;
+		this.queueUrls = new QueueUrlCache(queueUrlCacheSize, missingQueueTtlMs);
 	}
 	
 	
@@ -65,7 +86,12 @@ public class SqsQueueAdmin {
 		
 		final CreateQueueRequest request = new CreateQueueRequest(queue.getName())
 		.withAttributes(queue.createAttributes());		
-		this.sqs.createQueue(request);
+		final CreateQueueResult result = this.sqs.createQueue(request);
+		if(result != null && !Strings.isNullOrEmpty(result.getQueueUrl())){
+			this.queueUrls.put(queue.getName(), result.getQueueUrl());
+		}else{
+			this.queueUrls.invalidate(queue.getName());
+		}
 
 		/** 
 		 * if blockUntilReady is true, Ensure the queue is created before returning
@@ -100,47 +126,107 @@ public class SqsQueueAdmin {
 	/**
 	 * Get the queue url. First an internal cache is checked, if the name to queueUrl mapping
 	 * is not found in the internal cache a call is made to the Sqs API. If a valid queue
-	 * url is returned the name -> queueUrl mapping will be cached locally 
+	 * url is returned the name -> queueUrl mapping will be cached locally. Queues that do not 
+	 * exist are remembered as missing for a short time
 	 * @param queueName
 	 * @return queueUrl
 	 */
 	public String getQueueUrl(final String queueName) throws QueueDoesNotExistException{
 
 		Preconditions.checkArgument(!Strings.isNullOrEmpty(queueName), "Queue Name is required in order to submit a message for sqs");
-		String url = queueUrlMap.get(queueName);
-		if(url!=null){
-			return url;
-		}else{
-			return this.getAndSetQueueUrl(queueName);
+		return this.queueUrls.get(queueName, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return resolveQueueUrl(queueName);
+			}
+		});
+	}
+	
+	
+	
+	/***
+	 * Forget the cached url of the queue, called when a request fails because the queue no longer exists
+	 * @param queueName
+	 */
+	public void invalidateQueueUrl(final String queueName){
+		this.queueUrls.invalidate(queueName);
+	}
+	
+	
+	
+	/***
+	 * Resolve and cache the urls of the configured queues, queues that do not exist yet are logged and remembered as missing
+	 * @param queues
+	 */
+	public void prewarmQueueUrls(final List<SqsQueueConfig> queues){
+		if(CollectionUtil.hasElements(queues)){
+			for(SqsQueueConfig queue : queues){
+				try{
+					this.getQueueUrl(queue.getName());
+				}catch(QueueDoesNotExistException ex){
+					LOGGER.info("queue: {} does not exist yet, its url was not cached", queue.getName());
+				}catch(Exception ex){
+					LOGGER.warn("failed to resolve url of queue: {} - {}", queue.getName(), ex.getMessage());
+				}
+			}
 		}
 	}
 	
 
 	
+	/***
+	 * Get the visibility timeout of the queue
+	 * @param queueName
+	 * @return visibilityTimeoutSeconds
+	 */
+	public int getVisibilityTimeout(final String queueName) throws QueueDoesNotExistException{
+		final GetQueueAttributesResult result = this.sqs.getQueueAttributes(
+				new GetQueueAttributesRequest(this.getQueueUrl(queueName))
+				.withAttributeNames(SqsQueueConfig.VISIBILITY_TIMEOUT));
+		if(result != null && result.getAttributes() != null && !Strings.isNullOrEmpty(result.getAttributes().get(SqsQueueConfig.VISIBILITY_TIMEOUT))){
+			return Integer.parseInt(result.getAttributes().get(SqsQueueConfig.VISIBILITY_TIMEOUT));
+		}
+		return DEFAULT_VISIBILITY_TIMEOUT_SECONDS;
+	}
+	
+	
+	
+	/***
+	 * Sample the approximate depth of the queue
+	 * @param queueName
+	 * @return depth - the approximate number of visible and in flight messages
+	 */
+	public QueueDepth getQueueDepth(final String queueName) throws QueueDoesNotExistException{
+		final GetQueueAttributesResult result = this.sqs.getQueueAttributes(
+				new GetQueueAttributesRequest(this.getQueueUrl(queueName))
+				.withAttributeNames(SqsQueueConfig.APPROXIMATE_NUMBER_OF_MESSAGES, SqsQueueConfig.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE));
+		final Map<String, String> attributes = result != null ? result.getAttributes() : null;
+		return new QueueDepth(attributeAsLong(attributes, SqsQueueConfig.APPROXIMATE_NUMBER_OF_MESSAGES), 
+				attributeAsLong(attributes, SqsQueueConfig.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE));
+	}
+	
+	
+	
+	private static long attributeAsLong(final Map<String, String> attributes, final String name){
+		if(attributes == null || Strings.isNullOrEmpty(attributes.get(name))){
+			return 0;
+		}
+		return Long.parseLong(attributes.get(name));
+	}
+	
+	
+	
 	/**
-	 * Get a queue url from a queue name
+	 * Get a queue url from a queue name with the Sqs API
 	 * @param queueName
 	 * @return queueUrl - For the specified queue name
 	 */
-	private synchronized String getAndSetQueueUrl(final String queueName) throws QueueDoesNotExistException{
-		try{
-
-			final String url = queueUrlMap.get(queueName); 
-			if(url != null){
-				return url;
-			}else{
-				final GetQueueUrlResult result = this.sqs.getQueueUrl(queueName);
-				if(result != null && !Strings.isNullOrEmpty(result.getQueueUrl())){
-						queueUrlMap.put(queueName, result.getQueueUrl());	
-						return result.getQueueUrl();
-				}				
-			}
-		}catch(QueueDoesNotExistException qne){
-			throw qne;
-		}catch(Exception ex){
-			throw new RuntimeException(ex.getMessage(), ex);
+	private String resolveQueueUrl(final String queueName) throws QueueDoesNotExistException{
+		final GetQueueUrlResult result = this.sqs.getQueueUrl(queueName);
+		if(result != null && !Strings.isNullOrEmpty(result.getQueueUrl())){
+			return result.getQueueUrl();
 		}
-		return null;
+		throw new QueueDoesNotExistException(String.format("The queue: %s was not found", queueName));
 	}
 
 	
@@ -177,4 +263,35 @@ public class SqsQueueAdmin {
 		/** This unblocks the ensureQueueIsReady action on shutdown **/
 		this.shutdown = true;
 	}
+
+
+
+	
+	/***
+	 * The approximate depth of a queue
+	 */
+	public static class QueueDepth {
+		
+		private final long visible;
+		private final long inFlight;
+		
+		public QueueDepth(final long visible, final long inFlight){
+			this.visible = visible;
+			this.inFlight = inFlight;
+		}
+		
+		/** The approximate number of messages available to be received **/
+		public long getVisible() {
+			return visible;
+		}
+		
+		/** The approximate number of messages received but not yet deleted **/
+		public long getInFlight() {
+			return inFlight;
+		}
+		
+		public long getTotal() {
+			return this.visible + this.inFlight;
+		}
+	}
 }
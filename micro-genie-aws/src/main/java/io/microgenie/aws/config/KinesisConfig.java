@@ -12,6 +12,8 @@ public class KinesisConfig {
 	
 	private String topic;
 	private int shards;
+	private KinesisProducerConfig producer = new KinesisProducerConfig();
+	private KinesisConsumerConfig consumer = new KinesisConsumerConfig();
 	
 	public KinesisConfig(){}
 	
@@ -42,4 +44,32 @@ public class KinesisConfig {
 		this.shards = shards;
 		return this;
 	}
+	
+	
+	@JsonProperty("producer")
+	public KinesisProducerConfig getProducer() {
+		return producer;
+	}
+	@JsonProperty("producer")
+	public void setProducer(KinesisProducerConfig producer) {
+		this.producer = producer;
+	}
+	public KinesisConfig withProducer(final KinesisProducerConfig producer){
+		this.producer = producer;
+		return this;
+	}
+	
+	
+	@JsonProperty("consumer")
+	public KinesisConsumerConfig getConsumer() {
+		return consumer;
+	}
+	@JsonProperty("consumer")
+	public void setConsumer(KinesisConsumerConfig consumer) {
+		this.consumer = consumer;
+	}
+	public KinesisConfig withConsumer(final KinesisConsumerConfig consumer){
+		this.consumer = consumer;
+		return this;
+	}
 }
@@ -0,0 +1,238 @@
+package io.microgenie.aws.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Kinesis consumer configuration for a single topic
+ * @author shawn
+ */
+public class KinesisConsumerConfig {
+
+	/***
+	 * How consumed events are delivered to the {@link io.microgenie.application.events.EventHandler}
+	 * <li>RECORD - each event is delivered through handle(Event)</li>
+	 * <li>BATCH - all events from a getRecords call are delivered through a single handle(List) call</li>
+	 * <li>PARALLEL - events are delivered through handle(Event) by a pool of workers keyed by partition key, 
+	 * events with the same partition key are handled in order while different keys are handled concurrently</li>
+	 */
+	public enum DispatchMode {
+		RECORD,
+		BATCH,
+		PARALLEL
+	}
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+	public static final long DEFAULT_INITIAL_BACKOFF_MS = 100L;
+	public static final long DEFAULT_MAX_BACKOFF_MS = 30000L;
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 60000L;
+	public static final int DEFAULT_CHECKPOINT_INTERVAL_RECORDS = 10000;
+
+	private DispatchMode dispatchMode = DispatchMode.RECORD;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long initialBackoffMs = DEFAULT_INITIAL_BACKOFF_MS;
+	private long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+	private String deadLetterQueue;
+	private String deadLetterDrive;
+	private String deadLetterPrefix;
+	private long checkpointIntervalMs = DEFAULT_CHECKPOINT_INTERVAL_MS;
+	private int checkpointIntervalRecords = DEFAULT_CHECKPOINT_INTERVAL_RECORDS;
+	private boolean deleteClaimChecks = false;
+
+	public KinesisConsumerConfig(){}
+
+
+	@JsonProperty("dispatchMode")
+	public DispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+	@JsonProperty("dispatchMode")
+	public void setDispatchMode(DispatchMode dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+	public KinesisConsumerConfig withDispatchMode(final DispatchMode dispatchMode){
+		this.dispatchMode = dispatchMode;
+		return this;
+	}
+
+
+	/***
+	 * The number of workers per shard used in {@link DispatchMode#PARALLEL} mode
+	 * @return parallelism
+	 */
+	@JsonProperty("parallelism")
+	public int getParallelism() {
+		return parallelism;
+	}
+	@JsonProperty("parallelism")
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+	public KinesisConsumerConfig withParallelism(final int parallelism){
+		this.parallelism = parallelism;
+		return this;
+	}
+
+
+	/***
+	 * The number of times an event is delivered to the handler before it is sent to the dead letter sink
+	 * @return maxAttempts
+	 */
+	@JsonProperty("maxAttempts")
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	@JsonProperty("maxAttempts")
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+	public KinesisConsumerConfig withMaxAttempts(final int maxAttempts){
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+
+	/***
+	 * The base delay before the first retry, doubled on each following retry
+	 * @return initialBackoffMs
+	 */
+	@JsonProperty("initialBackoffMs")
+	public long getInitialBackoffMs() {
+		return initialBackoffMs;
+	}
+	@JsonProperty("initialBackoffMs")
+	public void setInitialBackoffMs(long initialBackoffMs) {
+		this.initialBackoffMs = initialBackoffMs;
+	}
+	public KinesisConsumerConfig withInitialBackoffMs(final long initialBackoffMs){
+		this.initialBackoffMs = initialBackoffMs;
+		return this;
+	}
+
+
+	@JsonProperty("maxBackoffMs")
+	public long getMaxBackoffMs() {
+		return maxBackoffMs;
+	}
+	@JsonProperty("maxBackoffMs")
+	public void setMaxBackoffMs(long maxBackoffMs) {
+		this.maxBackoffMs = maxBackoffMs;
+	}
+	public KinesisConsumerConfig withMaxBackoffMs(final long maxBackoffMs){
+		this.maxBackoffMs = maxBackoffMs;
+		return this;
+	}
+
+
+	/***
+	 * The queue that events exhausting their retries are sent to
+	 * @return deadLetterQueue
+	 */
+	@JsonProperty("deadLetterQueue")
+	public String getDeadLetterQueue() {
+		return deadLetterQueue;
+	}
+	@JsonProperty("deadLetterQueue")
+	public void setDeadLetterQueue(String deadLetterQueue) {
+		this.deadLetterQueue = deadLetterQueue;
+	}
+	public KinesisConsumerConfig withDeadLetterQueue(final String deadLetterQueue){
+		this.deadLetterQueue = deadLetterQueue;
+		return this;
+	}
+
+
+	/***
+	 * The file store drive (S3 bucket) that dead letters are saved to when a dead letter prefix is set.
+	 * If not set the default drive is used
+	 * @return deadLetterDrive
+	 */
+	@JsonProperty("deadLetterDrive")
+	public String getDeadLetterDrive() {
+		return deadLetterDrive;
+	}
+	@JsonProperty("deadLetterDrive")
+	public void setDeadLetterDrive(String deadLetterDrive) {
+		this.deadLetterDrive = deadLetterDrive;
+	}
+	public KinesisConsumerConfig withDeadLetterDrive(final String deadLetterDrive){
+		this.deadLetterDrive = deadLetterDrive;
+		return this;
+	}
+
+
+	/***
+	 * The file store path prefix that events exhausting their retries are saved under
+	 * @return deadLetterPrefix
+	 */
+	@JsonProperty("deadLetterPrefix")
+	public String getDeadLetterPrefix() {
+		return deadLetterPrefix;
+	}
+	@JsonProperty("deadLetterPrefix")
+	public void setDeadLetterPrefix(String deadLetterPrefix) {
+		this.deadLetterPrefix = deadLetterPrefix;
+	}
+	public KinesisConsumerConfig withDeadLetterPrefix(final String deadLetterPrefix){
+		this.deadLetterPrefix = deadLetterPrefix;
+		return this;
+	}
+
+
+	/***
+	 * The maximum time between checkpoints
+	 * @return checkpointIntervalMs
+	 */
+	@JsonProperty("checkpointIntervalMs")
+	public long getCheckpointIntervalMs() {
+		return checkpointIntervalMs;
+	}
+	@JsonProperty("checkpointIntervalMs")
+	public void setCheckpointIntervalMs(long checkpointIntervalMs) {
+		this.checkpointIntervalMs = checkpointIntervalMs;
+	}
+	public KinesisConsumerConfig withCheckpointIntervalMs(final long checkpointIntervalMs){
+		this.checkpointIntervalMs = checkpointIntervalMs;
+		return this;
+	}
+
+
+	/***
+	 * The number of records consumed after which a checkpoint is taken, even if the checkpoint interval has not passed
+	 * @return checkpointIntervalRecords
+	 */
+	@JsonProperty("checkpointIntervalRecords")
+	public int getCheckpointIntervalRecords() {
+		return checkpointIntervalRecords;
+	}
+	@JsonProperty("checkpointIntervalRecords")
+	public void setCheckpointIntervalRecords(int checkpointIntervalRecords) {
+		this.checkpointIntervalRecords = checkpointIntervalRecords;
+	}
+	public KinesisConsumerConfig withCheckpointIntervalRecords(final int checkpointIntervalRecords){
+		this.checkpointIntervalRecords = checkpointIntervalRecords;
+		return this;
+	}
+
+
+	/***
+	 * Delete the saved event of a claim check record once a checkpoint passes the record. Disabled by default, 
+	 * the files are left to expire with a lifecycle rule on the store. Only enable when a single application consumes the topic,
+	 * other applications still need the saved events
+	 * @return deleteClaimChecks
+	 */
+	@JsonProperty("deleteClaimChecks")
+	public boolean isDeleteClaimChecks() {
+		return deleteClaimChecks;
+	}
+	@JsonProperty("deleteClaimChecks")
+	public void setDeleteClaimChecks(boolean deleteClaimChecks) {
+		this.deleteClaimChecks = deleteClaimChecks;
+	}
+	public KinesisConsumerConfig withDeleteClaimChecks(final boolean deleteClaimChecks){
+		this.deleteClaimChecks = deleteClaimChecks;
+		return this;
+	}
+}
@@ -0,0 +1,228 @@
+package io.microgenie.aws.config;
+
+import io.microgenie.application.events.EventCodecs.Format;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Kinesis producer configuration for a single topic
+ * @author shawn
+ */
+public class KinesisProducerConfig {
+
+	/** Leave room below the 1 MB kinesis record limit for the partition key **/
+	public static final int DEFAULT_MAX_AGGREGATED_RECORD_BYTES = 1000 * 1024;
+	public static final int DEFAULT_MAX_AGGREGATED_EVENTS = 1000;
+	/** Half of the 1000 records per second a single shard accepts **/
+	public static final int DEFAULT_HOT_KEY_RECORDS_PER_SECOND = 500;
+	public static final int DEFAULT_SALT_BUCKETS = 16;
+
+
+	/***
+	 * How the partition key of a hot key is salted to spread its records over several shards
+	 * <ul>
+	 * <li>NONE - keys are never salted, per key ordering is preserved</li>
+	 * <li>EXPLICIT_HASH_KEY - the partition key is kept and an explicit hash key picks one of the salt buckets across the hash key range</li>
+	 * <li>SUFFIX - a salt bucket suffix is appended to the partition key</li>
+	 * </ul>
+	 */
+	public enum Salting {
+		NONE, EXPLICIT_HASH_KEY, SUFFIX
+	}
+
+	private boolean aggregate;
+	private int maxAggregatedRecordBytes = DEFAULT_MAX_AGGREGATED_RECORD_BYTES;
+	private int maxAggregatedEvents = DEFAULT_MAX_AGGREGATED_EVENTS;
+	private Format codec = Format.JSON;
+	private int hotKeyRecordsPerSecond = DEFAULT_HOT_KEY_RECORDS_PER_SECOND;
+	private Salting salting = Salting.NONE;
+	private int saltBuckets = DEFAULT_SALT_BUCKETS;
+	private boolean claimCheck;
+	private String claimCheckDrive;
+	private String claimCheckPrefix = "claim-checks";
+
+	public KinesisProducerConfig(){}
+
+
+	/***
+	 * When true, batches of events that share a partition key are packed into a single kinesis record.
+	 * Consumers built on this library de-aggregate records transparently
+	 * @return aggregate
+	 */
+	@JsonProperty("aggregate")
+	public boolean isAggregate() {
+		return aggregate;
+	}
+	@JsonProperty("aggregate")
+	public void setAggregate(boolean aggregate) {
+		this.aggregate = aggregate;
+	}
+	public KinesisProducerConfig withAggregate(final boolean aggregate){
+		this.aggregate = aggregate;
+		return this;
+	}
+
+
+	/***
+	 * The maximum size of an aggregated record in bytes
+	 * @return maxAggregatedRecordBytes
+	 */
+	@JsonProperty("maxAggregatedRecordBytes")
+	public int getMaxAggregatedRecordBytes() {
+		return maxAggregatedRecordBytes;
+	}
+	@JsonProperty("maxAggregatedRecordBytes")
+	public void setMaxAggregatedRecordBytes(int maxAggregatedRecordBytes) {
+		this.maxAggregatedRecordBytes = maxAggregatedRecordBytes;
+	}
+	public KinesisProducerConfig withMaxAggregatedRecordBytes(final int maxAggregatedRecordBytes){
+		this.maxAggregatedRecordBytes = maxAggregatedRecordBytes;
+		return this;
+	}
+
+
+	/***
+	 * The maximum number of events packed into a single aggregated record
+	 * @return maxAggregatedEvents
+	 */
+	@JsonProperty("maxAggregatedEvents")
+	public int getMaxAggregatedEvents() {
+		return maxAggregatedEvents;
+	}
+	@JsonProperty("maxAggregatedEvents")
+	public void setMaxAggregatedEvents(int maxAggregatedEvents) {
+		this.maxAggregatedEvents = maxAggregatedEvents;
+	}
+	public KinesisProducerConfig withMaxAggregatedEvents(final int maxAggregatedEvents){
+		this.maxAggregatedEvents = maxAggregatedEvents;
+		return this;
+	}
+
+
+	/***
+	 * The wire format events are serialized with. Consumers detect the format of each record, 
+	 * so the codec of a topic can be changed while older records are still being consumed
+	 * @return codec
+	 */
+	@JsonProperty("codec")
+	public Format getCodec() {
+		return codec;
+	}
+	@JsonProperty("codec")
+	public void setCodec(Format codec) {
+		this.codec = codec;
+	}
+	public KinesisProducerConfig withCodec(final Format codec){
+		this.codec = codec;
+		return this;
+	}
+
+
+
+	/***
+	 * The per partition key rate, in records per second, above which a key is reported as hot
+	 * and, when salting is enabled, has its records spread over several shards
+	 * @return hotKeyRecordsPerSecond
+	 */
+	@JsonProperty("hotKeyRecordsPerSecond")
+	public int getHotKeyRecordsPerSecond() {
+		return hotKeyRecordsPerSecond;
+	}
+	@JsonProperty("hotKeyRecordsPerSecond")
+	public void setHotKeyRecordsPerSecond(int hotKeyRecordsPerSecond) {
+		this.hotKeyRecordsPerSecond = hotKeyRecordsPerSecond;
+	}
+	public KinesisProducerConfig withHotKeyRecordsPerSecond(final int hotKeyRecordsPerSecond){
+		this.hotKeyRecordsPerSecond = hotKeyRecordsPerSecond;
+		return this;
+	}
+
+
+	/***
+	 * The salting strategy applied to hot keys. Salting gives up per key ordering for hot keys, 
+	 * only enable it for topics whose consumers do not depend on the order of events sharing a key
+	 * @return salting
+	 */
+	@JsonProperty("salting")
+	public Salting getSalting() {
+		return salting;
+	}
+	@JsonProperty("salting")
+	public void setSalting(Salting salting) {
+		this.salting = salting;
+	}
+	public KinesisProducerConfig withSalting(final Salting salting){
+		this.salting = salting;
+		return this;
+	}
+
+
+	/***
+	 * The number of buckets a salted hot key is spread over
+	 * @return saltBuckets
+	 */
+	@JsonProperty("saltBuckets")
+	public int getSaltBuckets() {
+		return saltBuckets;
+	}
+	@JsonProperty("saltBuckets")
+	public void setSaltBuckets(int saltBuckets) {
+		this.saltBuckets = saltBuckets;
+	}
+	public KinesisProducerConfig withSaltBuckets(final int saltBuckets){
+		this.saltBuckets = saltBuckets;
+		return this;
+	}
+
+
+	/***
+	 * When true, events that encode to more than the 1 MB kinesis record limit are saved to the file store
+	 * and the record carries a pointer to the saved event instead
+	 * @return claimCheck
+	 */
+	@JsonProperty("claimCheck")
+	public boolean isClaimCheck() {
+		return claimCheck;
+	}
+	@JsonProperty("claimCheck")
+	public void setClaimCheck(boolean claimCheck) {
+		this.claimCheck = claimCheck;
+	}
+	public KinesisProducerConfig withClaimCheck(final boolean claimCheck){
+		this.claimCheck = claimCheck;
+		return this;
+	}
+
+
+	/***
+	 * The drive oversized events are saved to, the file store default drive is used when not set
+	 * @return claimCheckDrive
+	 */
+	@JsonProperty("claimCheckDrive")
+	public String getClaimCheckDrive() {
+		return claimCheckDrive;
+	}
+	@JsonProperty("claimCheckDrive")
+	public void setClaimCheckDrive(String claimCheckDrive) {
+		this.claimCheckDrive = claimCheckDrive;
+	}
+	public KinesisProducerConfig withClaimCheckDrive(final String claimCheckDrive){
+		this.claimCheckDrive = claimCheckDrive;
+		return this;
+	}
+
+
+	@JsonProperty("claimCheckPrefix")
+	public String getClaimCheckPrefix() {
+		return claimCheckPrefix;
+	}
+	@JsonProperty("claimCheckPrefix")
+	public void setClaimCheckPrefix(String claimCheckPrefix) {
+		this.claimCheckPrefix = claimCheckPrefix;
+	}
+	public KinesisProducerConfig withClaimCheckPrefix(final String claimCheckPrefix){
+		this.claimCheckPrefix = claimCheckPrefix;
+		return this;
+	}
+}
@@ -16,6 +16,9 @@ public class SqsConfig {
 	private boolean blockUntilReady = true;
 	private List<SqsQueueConfig> queues = new ArrayList<SqsQueueConfig>();
 	private List<SqsConsumerConfig> consumers = new ArrayList<SqsConsumerConfig>();
+	private SqsProducerConfig producer = new SqsProducerConfig();
+	private int queueUrlCacheSize = 1000;
+	private long missingQueueTtlMs = 5000;
 	
 	@JsonProperty(value="queues")
 	public List<SqsQueueConfig> getQueues() {
@@ -41,6 +44,14 @@ public class SqsConfig {
 	public void setProduces(boolean produces) {
 		this.produces = produces;
 	}
+	@JsonProperty(value="producer")
+	public SqsProducerConfig getProducer() {
+		return producer;
+	}
+	@JsonProperty(value="producer")
+	public void setProducer(SqsProducerConfig producer) {
+		this.producer = producer;
+	}
 	@JsonProperty(value="blockUntilReady")
 	public boolean isBlockUntilReady() {
 		return blockUntilReady;
@@ -52,6 +63,33 @@ public class SqsConfig {
 	
 	
 	
+	/***
+	 * The maximum number of queue urls cached by the queue admin
+	 * @return queueUrlCacheSize
+	 */
+	@JsonProperty(value="queueUrlCacheSize")
+	public int getQueueUrlCacheSize() {
+		return queueUrlCacheSize;
+	}
+	@JsonProperty(value="queueUrlCacheSize")
+	public void setQueueUrlCacheSize(int queueUrlCacheSize) {
+		this.queueUrlCacheSize = queueUrlCacheSize;
+	}
+	/***
+	 * How long a queue that does not exist is remembered as missing before its url is looked up again
+	 * @return missingQueueTtlMs
+	 */
+	@JsonProperty(value="missingQueueTtlMs")
+	public long getMissingQueueTtlMs() {
+		return missingQueueTtlMs;
+	}
+	@JsonProperty(value="missingQueueTtlMs")
+	public void setMissingQueueTtlMs(long missingQueueTtlMs) {
+		this.missingQueueTtlMs = missingQueueTtlMs;
+	}
+	
+	
+	
 	public SqsConfig withProduces(boolean producers){
 		this.produces = producers;
 		return this;
@@ -60,6 +98,18 @@ public class SqsConfig {
 		this.blockUntilReady = block;
 		return this;
 	}
+	public SqsConfig withQueueUrlCacheSize(int queueUrlCacheSize){
+		this.queueUrlCacheSize = queueUrlCacheSize;
+		return this;
+	}
+	public SqsConfig withMissingQueueTtlMs(long missingQueueTtlMs){
+		this.missingQueueTtlMs = missingQueueTtlMs;
+		return this;
+	}
+	public SqsConfig withProducer(SqsProducerConfig producer){
+		this.producer = producer;
+		return this;
+	}
 	public SqsConfig withQueues(SqsQueueConfig ...queues){
 		this.queues.addAll(Lists.newArrayList(queues));
 		return this;
@@ -9,11 +9,50 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * @author shawn
  */
 public class SqsConsumerConfig{
+
+	/** SQS returns at most 10 messages per receive and long polls for at most 20 seconds **/
+	public static final int MAX_MESSAGES_LIMIT = 10;
+	public static final int WAIT_TIME_SECONDS_LIMIT = 20;
+
+
+	/***
+	 * How messages are received and handled
+	 * <ul>
+	 * <li>POLLING - each thread receives, handles and deletes its own batches</li>
+	 * <li>PIPELINED - receiver threads feed a bounded buffer drained by the handler threads, 
+	 * handled messages are deleted in batches by deleter threads</li>
+	 * <li>AUTOSCALING - polling threads are added and retired between minThreads and maxThreads 
+	 * to hold a target backlog per thread, based on the sampled queue depth</li>
+	 * <li>FIFO - receiver threads split each batch by message group, distinct groups are handled in parallel 
+	 * by the handler threads while the messages of a group are handled in order</li>
+	 * </ul>
+	 */
+	public enum ConsumerMode {
+		POLLING, PIPELINED, AUTOSCALING, FIFO
+	}
+
 	private int threads = 1; 	//Default to a thread count of one for consumers
 	private String queue;
 	private String handlerKey;
 	private int shutdownTimeMS = 2000;
 	private MessageHandler handlerInstance;
+	private int maxMessages = MAX_MESSAGES_LIMIT;
+	private int waitTimeSeconds = WAIT_TIME_SECONDS_LIMIT;
+	private boolean adaptivePolling = true;
+	private long maxIdleDelayMs;
+	private ConsumerMode mode = ConsumerMode.POLLING;
+	private int receivers = 1;
+	private int deleters = 1;
+	private int bufferSize = 100;
+	private long visibilityMarginMs = 5000;
+	private int nackVisibilityTimeoutSeconds;
+	private boolean visibilityHeartbeat = true;
+	private int maxVisibilitySeconds = 3600;
+	private boolean deleteClaimChecks = true;
+	private int minThreads = 1;
+	private int maxThreads = 10;
+	private int targetBacklogPerThread = 100;
+	private long scaleIntervalMs = 10000;
 	
 	@JsonProperty("queue")
 	public String getQueue() {
@@ -28,6 +67,10 @@ public class SqsConsumerConfig{
 		return this;
 	}
 	
+	/***
+	 * The number of polling threads, or the number of handler threads when the mode is PIPELINED
+	 * @return threads
+	 */
 	@JsonProperty("threads")
 	public int getThreads() {
 		return threads;
@@ -66,6 +109,316 @@ public class SqsConsumerConfig{
 		return this;
 	}
 	
+	/***
+	 * The maximum number of messages requested by each receive, from 1 to 10
+	 * @return maxMessages
+	 */
+	@JsonProperty("maxMessages")
+	public int getMaxMessages() {
+		return maxMessages;
+	}
+	@JsonProperty("maxMessages")
+	public void setMaxMessages(int maxMessages) {
+		this.maxMessages = maxMessages;
+	}
+	public SqsConsumerConfig withMaxMessages(final int maxMessages) {
+		this.maxMessages = maxMessages;
+		return this;
+	}
+
+
+	/***
+	 * The long polling wait time of each receive in seconds, from 0 to 20. Zero uses short polling
+	 * @return waitTimeSeconds
+	 */
+	@JsonProperty("waitTimeSeconds")
+	public int getWaitTimeSeconds() {
+		return waitTimeSeconds;
+	}
+	@JsonProperty("waitTimeSeconds")
+	public void setWaitTimeSeconds(int waitTimeSeconds) {
+		this.waitTimeSeconds = waitTimeSeconds;
+	}
+	public SqsConsumerConfig withWaitTimeSeconds(final int waitTimeSeconds) {
+		this.waitTimeSeconds = waitTimeSeconds;
+		return this;
+	}
+
+
+	/***
+	 * When true, pollers are parked while receives mostly come back empty and resumed 
+	 * once receives come back with full batches. When false every thread polls continuously
+	 * @return adaptivePolling
+	 */
+	@JsonProperty("adaptivePolling")
+	public boolean isAdaptivePolling() {
+		return adaptivePolling;
+	}
+	@JsonProperty("adaptivePolling")
+	public void setAdaptivePolling(boolean adaptivePolling) {
+		this.adaptivePolling = adaptivePolling;
+	}
+	public SqsConsumerConfig withAdaptivePolling(final boolean adaptivePolling) {
+		this.adaptivePolling = adaptivePolling;
+		return this;
+	}
+
+
+	/***
+	 * The maximum delay added between consecutive empty receives when adaptive polling is enabled.
+	 * The delay grows exponentially with each empty receive. Zero, the default, relies on long polling alone,
+	 * a delay is mostly useful to reduce the receive rate of short polling consumers
+	 * @return maxIdleDelayMs
+	 */
+	@JsonProperty("maxIdleDelayMs")
+	public long getMaxIdleDelayMs() {
+		return maxIdleDelayMs;
+	}
+	@JsonProperty("maxIdleDelayMs")
+	public void setMaxIdleDelayMs(long maxIdleDelayMs) {
+		this.maxIdleDelayMs = maxIdleDelayMs;
+	}
+	public SqsConsumerConfig withMaxIdleDelayMs(final long maxIdleDelayMs) {
+		this.maxIdleDelayMs = maxIdleDelayMs;
+		return this;
+	}
+
+
+	@JsonProperty("mode")
+	public ConsumerMode getMode() {
+		return mode;
+	}
+	@JsonProperty("mode")
+	public void setMode(ConsumerMode mode) {
+		this.mode = mode;
+	}
+	public SqsConsumerConfig withMode(final ConsumerMode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+
+	/***
+	 * The number of receiver threads when the mode is PIPELINED or FIFO
+	 * @return receivers
+	 */
+	@JsonProperty("receivers")
+	public int getReceivers() {
+		return receivers;
+	}
+	@JsonProperty("receivers")
+	public void setReceivers(int receivers) {
+		this.receivers = receivers;
+	}
+	public SqsConsumerConfig withReceivers(final int receivers) {
+		this.receivers = receivers;
+		return this;
+	}
+
+
+	/***
+	 * The number of deleter threads when the mode is PIPELINED
+	 * @return deleters
+	 */
+	@JsonProperty("deleters")
+	public int getDeleters() {
+		return deleters;
+	}
+	@JsonProperty("deleters")
+	public void setDeleters(int deleters) {
+		this.deleters = deleters;
+	}
+	public SqsConsumerConfig withDeleters(final int deleters) {
+		this.deleters = deleters;
+		return this;
+	}
+
+
+	/***
+	 * The number of received messages buffered for the handler threads when the mode is PIPELINED.
+	 * Receivers only receive when the buffer has room for a full batch. Buffered messages count against
+	 * their visibility timeout, so keep the buffer small relative to the handler throughput
+	 * @return bufferSize
+	 */
+	@JsonProperty("bufferSize")
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	@JsonProperty("bufferSize")
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+	public SqsConsumerConfig withBufferSize(final int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+
+	/***
+	 * Buffered messages whose visibility timeout expires within this margin are not handed to a handler,
+	 * they are left to become visible again and be redelivered
+	 * @return visibilityMarginMs
+	 */
+	@JsonProperty("visibilityMarginMs")
+	public long getVisibilityMarginMs() {
+		return visibilityMarginMs;
+	}
+	@JsonProperty("visibilityMarginMs")
+	public void setVisibilityMarginMs(long visibilityMarginMs) {
+		this.visibilityMarginMs = visibilityMarginMs;
+	}
+	public SqsConsumerConfig withVisibilityMarginMs(final long visibilityMarginMs) {
+		this.visibilityMarginMs = visibilityMarginMs;
+		return this;
+	}
+
+
+	/***
+	 * The visibility timeout given to messages that failed handling, zero makes them visible for redelivery immediately
+	 * @return nackVisibilityTimeoutSeconds
+	 */
+	@JsonProperty("nackVisibilityTimeoutSeconds")
+	public int getNackVisibilityTimeoutSeconds() {
+		return nackVisibilityTimeoutSeconds;
+	}
+	@JsonProperty("nackVisibilityTimeoutSeconds")
+	public void setNackVisibilityTimeoutSeconds(int nackVisibilityTimeoutSeconds) {
+		this.nackVisibilityTimeoutSeconds = nackVisibilityTimeoutSeconds;
+	}
+	public SqsConsumerConfig withNackVisibilityTimeoutSeconds(final int nackVisibilityTimeoutSeconds) {
+		this.nackVisibilityTimeoutSeconds = nackVisibilityTimeoutSeconds;
+		return this;
+	}
+
+
+	/***
+	 * When true, the visibility timeout of messages that are still being handled is extended
+	 * before it expires, so long running handlers do not cause duplicate deliveries
+	 * @return visibilityHeartbeat
+	 */
+	@JsonProperty("visibilityHeartbeat")
+	public boolean isVisibilityHeartbeat() {
+		return visibilityHeartbeat;
+	}
+	@JsonProperty("visibilityHeartbeat")
+	public void setVisibilityHeartbeat(boolean visibilityHeartbeat) {
+		this.visibilityHeartbeat = visibilityHeartbeat;
+	}
+	public SqsConsumerConfig withVisibilityHeartbeat(final boolean visibilityHeartbeat) {
+		this.visibilityHeartbeat = visibilityHeartbeat;
+		return this;
+	}
+
+
+	/***
+	 * The maximum time in seconds the heartbeat keeps a message invisible, measured from the time it was received.
+	 * SQS caps the visibility of a message at 12 hours
+	 * @return maxVisibilitySeconds
+	 */
+	@JsonProperty("maxVisibilitySeconds")
+	public int getMaxVisibilitySeconds() {
+		return maxVisibilitySeconds;
+	}
+	@JsonProperty("maxVisibilitySeconds")
+	public void setMaxVisibilitySeconds(int maxVisibilitySeconds) {
+		this.maxVisibilitySeconds = maxVisibilitySeconds;
+	}
+	public SqsConsumerConfig withMaxVisibilitySeconds(final int maxVisibilitySeconds) {
+		this.maxVisibilitySeconds = maxVisibilitySeconds;
+		return this;
+	}
+
+
+	/***
+	 * Delete the claim check payload of a message once the message has been handled and deleted
+	 * @return deleteClaimChecks
+	 */
+	@JsonProperty("deleteClaimChecks")
+	public boolean isDeleteClaimChecks() {
+		return deleteClaimChecks;
+	}
+	@JsonProperty("deleteClaimChecks")
+	public void setDeleteClaimChecks(boolean deleteClaimChecks) {
+		this.deleteClaimChecks = deleteClaimChecks;
+	}
+	public SqsConsumerConfig withDeleteClaimChecks(final boolean deleteClaimChecks) {
+		this.deleteClaimChecks = deleteClaimChecks;
+		return this;
+	}
+
+
+	/***
+	 * The minimum number of polling threads when the mode is AUTOSCALING
+	 * @return minThreads
+	 */
+	@JsonProperty("minThreads")
+	public int getMinThreads() {
+		return minThreads;
+	}
+	@JsonProperty("minThreads")
+	public void setMinThreads(int minThreads) {
+		this.minThreads = minThreads;
+	}
+	public SqsConsumerConfig withMinThreads(final int minThreads) {
+		this.minThreads = minThreads;
+		return this;
+	}
+
+
+	/***
+	 * The maximum number of polling threads when the mode is AUTOSCALING
+	 * @return maxThreads
+	 */
+	@JsonProperty("maxThreads")
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+	@JsonProperty("maxThreads")
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+	public SqsConsumerConfig withMaxThreads(final int maxThreads) {
+		this.maxThreads = maxThreads;
+		return this;
+	}
+
+
+	/***
+	 * The number of visible and in flight messages each polling thread should hold when the mode is AUTOSCALING
+	 * @return targetBacklogPerThread
+	 */
+	@JsonProperty("targetBacklogPerThread")
+	public int getTargetBacklogPerThread() {
+		return targetBacklogPerThread;
+	}
+	@JsonProperty("targetBacklogPerThread")
+	public void setTargetBacklogPerThread(int targetBacklogPerThread) {
+		this.targetBacklogPerThread = targetBacklogPerThread;
+	}
+	public SqsConsumerConfig withTargetBacklogPerThread(final int targetBacklogPerThread) {
+		this.targetBacklogPerThread = targetBacklogPerThread;
+		return this;
+	}
+
+
+	/***
+	 * How often the queue depth is sampled to scale the polling threads when the mode is AUTOSCALING
+	 * @return scaleIntervalMs
+	 */
+	@JsonProperty("scaleIntervalMs")
+	public long getScaleIntervalMs() {
+		return scaleIntervalMs;
+	}
+	@JsonProperty("scaleIntervalMs")
+	public void setScaleIntervalMs(long scaleIntervalMs) {
+		this.scaleIntervalMs = scaleIntervalMs;
+	}
+	public SqsConsumerConfig withScaleIntervalMs(final long scaleIntervalMs) {
+		this.scaleIntervalMs = scaleIntervalMs;
+		return this;
+	}
+
+
 	public MessageHandler getHandlerInstance() {
 		return handlerInstance;
 	}
@@ -107,6 +460,23 @@ public class SqsConsumerConfig{
 		config.setQueue(this.queue);
 		config.setThreads(this.threads);
 		config.setShutdownTimeMS(this.shutdownTimeMS);
+		config.setMaxMessages(this.maxMessages);
+		config.setWaitTimeSeconds(this.waitTimeSeconds);
+		config.setAdaptivePolling(this.adaptivePolling);
+		config.setMaxIdleDelayMs(this.maxIdleDelayMs);
+		config.setMode(this.mode);
+		config.setReceivers(this.receivers);
+		config.setDeleters(this.deleters);
+		config.setBufferSize(this.bufferSize);
+		config.setVisibilityMarginMs(this.visibilityMarginMs);
+		config.setNackVisibilityTimeoutSeconds(this.nackVisibilityTimeoutSeconds);
+		config.setVisibilityHeartbeat(this.visibilityHeartbeat);
+		config.setMaxVisibilitySeconds(this.maxVisibilitySeconds);
+		config.setDeleteClaimChecks(this.deleteClaimChecks);
+		config.setMinThreads(this.minThreads);
+		config.setMaxThreads(this.maxThreads);
+		config.setTargetBacklogPerThread(this.targetBacklogPerThread);
+		config.setScaleIntervalMs(this.scaleIntervalMs);
 		return config;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package io.microgenie.aws.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * SQS Producer Configuration
+ * <p>
+ * When buffered, submitted messages are coalesced per queue into SendMessageBatch requests, a batch
+ * is sent once it holds 10 messages, once the next message would take it over 256 KB, or once
+ * {@link #getLingerMs()} milliseconds have passed since its first message was submitted
+ * <p>
+ * With claim checks enabled, message bodies that would exceed the 256 KB SQS limit are saved to the file store
+ * and the message carries a pointer to the saved body instead
+ *
+ * @author shawn
+ */
+public class SqsProducerConfig {
+
+	private boolean buffered;
+	private long lingerMs = 20;
+	private int bufferSize = 10000;
+	private int senderThreads = 2;
+	private int maxAttempts = 3;
+	private long initialBackoffMs = 100;
+	private long closeTimeoutMs = 5000;
+	private boolean claimCheck;
+	private String claimCheckDrive;
+	private String claimCheckPrefix = "claim-checks";
+
+
+	@JsonProperty("buffered")
+	public boolean isBuffered() {
+		return buffered;
+	}
+	@JsonProperty("buffered")
+	public void setBuffered(boolean buffered) {
+		this.buffered = buffered;
+	}
+	public SqsProducerConfig withBuffered(final boolean buffered) {
+		this.buffered = buffered;
+		return this;
+	}
+
+
+	@JsonProperty("lingerMs")
+	public long getLingerMs() {
+		return lingerMs;
+	}
+	@JsonProperty("lingerMs")
+	public void setLingerMs(long lingerMs) {
+		this.lingerMs = lingerMs;
+	}
+	public SqsProducerConfig withLingerMs(final long lingerMs) {
+		this.lingerMs = lingerMs;
+		return this;
+	}
+
+
+	/***
+	 * The maximum number of buffered messages waiting to be sent, submit blocks while the buffer is full
+	 * @return bufferSize
+	 */
+	@JsonProperty("bufferSize")
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	@JsonProperty("bufferSize")
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+	public SqsProducerConfig withBufferSize(final int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+
+	@JsonProperty("senderThreads")
+	public int getSenderThreads() {
+		return senderThreads;
+	}
+	@JsonProperty("senderThreads")
+	public void setSenderThreads(int senderThreads) {
+		this.senderThreads = senderThreads;
+	}
+	public SqsProducerConfig withSenderThreads(final int senderThreads) {
+		this.senderThreads = senderThreads;
+		return this;
+	}
+
+
+	/***
+	 * The number of times a batch entry is sent before it is reported as failed. Entries
+	 * rejected as the sender's fault are not retried
+	 * @return maxAttempts
+	 */
+	@JsonProperty("maxAttempts")
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	@JsonProperty("maxAttempts")
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+	public SqsProducerConfig withMaxAttempts(final int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+
+	/***
+	 * The delay before the first retry, doubled for each following attempt
+	 * @return initialBackoffMs
+	 */
+	@JsonProperty("initialBackoffMs")
+	public long getInitialBackoffMs() {
+		return initialBackoffMs;
+	}
+	@JsonProperty("initialBackoffMs")
+	public void setInitialBackoffMs(long initialBackoffMs) {
+		this.initialBackoffMs = initialBackoffMs;
+	}
+	public SqsProducerConfig withInitialBackoffMs(final long initialBackoffMs) {
+		this.initialBackoffMs = initialBackoffMs;
+		return this;
+	}
+
+
+	@JsonProperty("closeTimeoutMs")
+	public long getCloseTimeoutMs() {
+		return closeTimeoutMs;
+	}
+	@JsonProperty("closeTimeoutMs")
+	public void setCloseTimeoutMs(long closeTimeoutMs) {
+		this.closeTimeoutMs = closeTimeoutMs;
+	}
+	public SqsProducerConfig withCloseTimeoutMs(final long closeTimeoutMs) {
+		this.closeTimeoutMs = closeTimeoutMs;
+		return this;
+	}
+
+
+	@JsonProperty("claimCheck")
+	public boolean isClaimCheck() {
+		return claimCheck;
+	}
+	@JsonProperty("claimCheck")
+	public void setClaimCheck(boolean claimCheck) {
+		this.claimCheck = claimCheck;
+	}
+	public SqsProducerConfig withClaimCheck(final boolean claimCheck) {
+		this.claimCheck = claimCheck;
+		return this;
+	}
+
+
+	/***
+	 * The drive oversized bodies are saved to, the file store default drive is used when not set
+	 * @return claimCheckDrive
+	 */
+	@JsonProperty("claimCheckDrive")
+	public String getClaimCheckDrive() {
+		return claimCheckDrive;
+	}
+	@JsonProperty("claimCheckDrive")
+	public void setClaimCheckDrive(String claimCheckDrive) {
+		this.claimCheckDrive = claimCheckDrive;
+	}
+	public SqsProducerConfig withClaimCheckDrive(final String claimCheckDrive) {
+		this.claimCheckDrive = claimCheckDrive;
+		return this;
+	}
+
+
+	@JsonProperty("claimCheckPrefix")
+	public String getClaimCheckPrefix() {
+		return claimCheckPrefix;
+	}
+	@JsonProperty("claimCheckPrefix")
+	public void setClaimCheckPrefix(String claimCheckPrefix) {
+		this.claimCheckPrefix = claimCheckPrefix;
+	}
+	public SqsProducerConfig withClaimCheckPrefix(final String claimCheckPrefix) {
+		this.claimCheckPrefix = claimCheckPrefix;
+		return this;
+	}
+}
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
 
 
 /**
@@ -58,6 +59,26 @@ public class SqsQueueConfig {
 	private int visibilityTimeout;
 	public final static String VISIBILITY_TIMEOUT = "VisibilityTimeout"; 
 	
+	/***
+	 * Creates a FIFO queue, delivering the messages of each message group exactly once and in the order they were sent. 
+	 * The queue name must end with the .fifo suffix. Can only be set when the queue is created
+	 */
+	private boolean fifoQueue;
+	public final static String FIFO_QUEUE = "FifoQueue"; 
+	public final static String FIFO_SUFFIX = ".fifo"; 
+	
+	
+	/***
+	 * For FIFO queues, deduplicate messages sent without a deduplication id by the SHA-256 hash of their body
+	 */
+	private boolean contentBasedDeduplication;
+	public final static String CONTENT_BASED_DEDUPLICATION = "ContentBasedDeduplication"; 
+	
+	
+	/** Read only attributes, the approximate number of visible and in flight messages **/
+	public final static String APPROXIMATE_NUMBER_OF_MESSAGES = "ApproximateNumberOfMessages"; 
+	public final static String APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE = "ApproximateNumberOfMessagesNotVisible"; 
+	
 	
 
 	@JsonProperty("name")
@@ -145,6 +166,41 @@ public class SqsQueueConfig {
 		return this;
 	}
 	
+	/**
+	 * FIFO queue
+	 * @return fifoQueue
+	 */
+	@JsonProperty("fifoQueue")
+	public boolean isFifoQueue() {
+		return fifoQueue;
+	}
+	@JsonProperty("fifoQueue")
+	public void setFifoQueue(boolean fifoQueue) {
+		this.fifoQueue = fifoQueue;
+	}
+	public SqsQueueConfig withFifoQueue(final boolean fifoQueue){
+		this.fifoQueue = fifoQueue;
+		return this;
+	}
+	
+	
+	/**
+	 * Content based deduplication, only applies to FIFO queues
+	 * @return contentBasedDeduplication
+	 */
+	@JsonProperty("contentBasedDeduplication")
+	public boolean isContentBasedDeduplication() {
+		return contentBasedDeduplication;
+	}
+	@JsonProperty("contentBasedDeduplication")
+	public void setContentBasedDeduplication(boolean contentBasedDeduplication) {
+		this.contentBasedDeduplication = contentBasedDeduplication;
+	}
+	public SqsQueueConfig withContentBasedDeduplication(final boolean contentBasedDeduplication){
+		this.contentBasedDeduplication = contentBasedDeduplication;
+		return this;
+	}
+	
 	@JsonProperty("queueCreationTimeoutMS")
 	public int getQueueCreationTimeoutMS() {
 		return queueCreationTimeoutMS;
@@ -182,6 +238,23 @@ public class SqsQueueConfig {
 		if(this.delaySeconds>0){
 			attributes.put(DELAY_SECONDS, String.valueOf(this.delaySeconds));	
 		}
+		if(this.fifoQueue){
+			Preconditions.checkState(isFifo(this.name), "FIFO queue name %s must end with %s", this.name, FIFO_SUFFIX);
+			attributes.put(FIFO_QUEUE, Boolean.TRUE.toString());
+			if(this.contentBasedDeduplication){
+				attributes.put(CONTENT_BASED_DEDUPLICATION, Boolean.TRUE.toString());
+			}
+		}
 		return attributes;
 	}
+	
+	
+	/***
+	 * SQS requires the name of every FIFO queue to end with the .fifo suffix
+	 * @param queueName
+	 * @return isFifo - true if the queue name is that of a FIFO queue
+	 */
+	public static boolean isFifo(final String queueName){
+		return queueName != null && queueName.endsWith(FIFO_SUFFIX);
+	}
 }
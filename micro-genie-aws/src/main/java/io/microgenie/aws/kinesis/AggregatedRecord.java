@@ -0,0 +1,131 @@
+package io.microgenie.aws.kinesis;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+
+/***
+ * A kinesis record payload that packs many serialized events into a single record.
+ * <p>
+ * The format is a 4 byte magic header, a 4 byte entry count and then each entry as a 4 byte
+ * length followed by the entry bytes. The first magic byte (0xF3) can never start a JSON document,
+ * which allows consumers to tell aggregated records apart from plain records
+ *
+ * @author shawn
+ */
+public class AggregatedRecord {
+
+	private static final byte[] MAGIC = {(byte)0xF3, (byte)0x4D, (byte)0x47, (byte)0x01};
+	private static final int HEADER_BYTES = MAGIC.length + 4;
+	private static final int ENTRY_OVERHEAD_BYTES = 4;
+
+	private final int maxBytes;
+	private final int maxEntries;
+	private final List<byte[]> entries = Lists.newArrayList();
+	private int sizeInBytes = HEADER_BYTES;
+
+
+	/***
+	 * @param maxBytes - The maximum size in bytes of the aggregated record
+	 * @param maxEntries - The maximum number of entries packed into the record
+	 */
+	public AggregatedRecord(final int maxBytes, final int maxEntries){
+		this.maxBytes = maxBytes;
+		this.maxEntries = maxEntries;
+	}
+
+
+	/***
+	 * An empty record accepts any entry, otherwise the entry must fit within the byte and entry limits
+	 * @param entrySize - The size of the entry in bytes
+	 * @return canAdd - true if the entry can be added
+	 */
+	public boolean canAdd(final int entrySize){
+		if(this.entries.isEmpty()){
+			return true;
+		}
+		return this.entries.size() < this.maxEntries && (this.sizeInBytes + ENTRY_OVERHEAD_BYTES + entrySize) <= this.maxBytes;
+	}
+
+	public void add(final byte[] entry){
+		Preconditions.checkNotNull(entry, "entry cannot be null");
+		this.entries.add(entry);
+		this.sizeInBytes += ENTRY_OVERHEAD_BYTES + entry.length;
+	}
+
+	public int size(){
+		return this.entries.size();
+	}
+
+	public int getSizeInBytes(){
+		return this.sizeInBytes;
+	}
+
+
+	/***
+	 * Serialize the aggregated record
+	 * @return bytes
+	 */
+	public byte[] toBytes(){
+		final ByteBuffer buffer = ByteBuffer.allocate(this.sizeInBytes);
+		buffer.put(MAGIC);
+		buffer.putInt(this.entries.size());
+		for(byte[] entry : this.entries){
+			buffer.putInt(entry.length);
+			buffer.put(entry);
+		}
+		return buffer.array();
+	}
+
+
+
+	/***
+	 * Determine if the record data is an aggregated record. The buffer position is not modified
+	 * @param data
+	 * @return isAggregated
+	 */
+	public static boolean isAggregated(final ByteBuffer data){
+		if(data == null || data.remaining() < HEADER_BYTES){
+			return false;
+		}
+		for(int i = 0; i < MAGIC.length; i++){
+			if(data.get(data.position() + i) != MAGIC[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+
+	/***
+	 * Split an aggregated record into its entries. Each entry is returned as a read only
+	 * view over the original buffer, no entry bytes are copied. The buffer position is not modified
+	 *
+	 * @param data - aggregated record data
+	 * @return entries
+	 * @throws IllegalArgumentException - if the data is not a valid aggregated record
+	 */
+	public static List<ByteBuffer> deaggregate(final ByteBuffer data){
+		Preconditions.checkArgument(isAggregated(data), "record data is not an aggregated record");
+
+		final ByteBuffer reader = data.duplicate();
+		reader.position(reader.position() + MAGIC.length);
+		final int count = reader.getInt();
+		Preconditions.checkArgument(count >= 0, "aggregated record has an invalid entry count: %s", count);
+
+		final List<ByteBuffer> entries = Lists.newArrayListWithCapacity(count);
+		for(int i = 0; i < count; i++){
+			final int length = reader.getInt();
+			Preconditions.checkArgument(length >= 0 && length <= reader.remaining(), "aggregated record entry %s has an invalid length: %s", i, length);
+			final ByteBuffer entry = reader.slice();
+			entry.limit(length);
+			entries.add(entry.asReadOnlyBuffer());
+			reader.position(reader.position() + length);
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,71 @@
+package io.microgenie.aws.kinesis;
+
+import io.microgenie.application.blob.ClaimCheckStore;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+
+/***
+ * A kinesis record payload that points to an event saved in a {@link ClaimCheckStore}, used for events
+ * that exceed the 1 MB kinesis record limit.
+ * <p>
+ * The format is a 4 byte magic header followed by the UTF-8 claim check pointer. The magic header shares
+ * its first three bytes with {@link AggregatedRecord} and differs in the version byte
+ *
+ * @author shawn
+ */
+public class ClaimCheckRecord {
+
+	private static final byte[] MAGIC = {(byte)0xF3, (byte)0x4D, (byte)0x47, (byte)0x02};
+
+	private ClaimCheckRecord(){}
+
+
+	/***
+	 * Serialize the claim check record
+	 * @param pointer - the claim check pointer
+	 * @return bytes
+	 */
+	public static byte[] toBytes(final String pointer){
+		final byte[] pointerBytes = pointer.getBytes(Charsets.UTF_8);
+		final ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + pointerBytes.length);
+		buffer.put(MAGIC);
+		buffer.put(pointerBytes);
+		return buffer.array();
+	}
+
+
+	/***
+	 * Determine if the record data is a claim check record. The buffer position is not modified
+	 * @param data
+	 * @return isClaimCheck
+	 */
+	public static boolean isClaimCheck(final ByteBuffer data){
+		if(data == null || data.remaining() <= MAGIC.length){
+			return false;
+		}
+		for(int i = 0; i < MAGIC.length; i++){
+			if(data.get(data.position() + i) != MAGIC[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/***
+	 * Read the claim check pointer from the record data. The buffer position is not modified
+	 * @param data
+	 * @return pointer
+	 * @throws IllegalArgumentException - if the data is not a claim check record
+	 */
+	public static String pointer(final ByteBuffer data){
+		Preconditions.checkArgument(isClaimCheck(data), "record data is not a claim check record");
+		final ByteBuffer reader = data.duplicate();
+		reader.position(reader.position() + MAGIC.length);
+		return Charsets.UTF_8.decode(reader).toString();
+	}
+}
@@ -0,0 +1,84 @@
+package io.microgenie.aws.kinesis;
+
+import io.microgenie.application.events.Event;
+import io.microgenie.aws.kinesis.SequenceTracker.Position;
+
+
+/***
+ * An event decoded from a kinesis record, along with its position in the shard and delivery attempts
+ * @author shawn
+ */
+class ConsumedEvent {
+
+	private Event event;
+	private final Position position;
+	private final String partitionKey;
+	private final String claimCheck;
+	private int attempts;
+	private long nextAttemptMillis;
+
+
+	ConsumedEvent(final Event event, final Position position, final String partitionKey){
+		this(event, position, partitionKey, null);
+	}
+
+	/***
+	 * @param event - the event, or null for a claim check that has not been read from the store yet
+	 * @param claimCheck - the claim check pointer the event was read from, null if the event was read from the record
+	 */
+	ConsumedEvent(final Event event, final Position position, final String partitionKey, final String claimCheck){
+		this.event = event;
+		this.position = position;
+		this.partitionKey = partitionKey;
+		this.claimCheck = claimCheck;
+	}
+
+	Event getEvent() {
+		return event;
+	}
+	Position getPosition() {
+		return position;
+	}
+	String getSequenceNumber() {
+		return position.getSequenceNumber();
+	}
+	String getPartitionKey() {
+		return partitionKey;
+	}
+	String getClaimCheck() {
+		return claimCheck;
+	}
+	boolean isResolved() {
+		return event != null;
+	}
+	int getAttempts() {
+		return attempts;
+	}
+	long getNextAttemptMillis() {
+		return nextAttemptMillis;
+	}
+
+
+	/***
+	 * Set the event read from the claim check store
+	 * @param event
+	 */
+	void resolve(final Event event){
+		this.event = event;
+	}
+
+
+	/***
+	 * Record a failed delivery attempt
+	 * @param nextAttemptMillis - the earliest time the event should be delivered again
+	 * @return attempts - the number of attempts made so far
+	 */
+	int failed(final long nextAttemptMillis){
+		this.nextAttemptMillis = nextAttemptMillis;
+		return ++this.attempts;
+	}
+
+	boolean isDue(final long now){
+		return this.nextAttemptMillis <= now;
+	}
+}
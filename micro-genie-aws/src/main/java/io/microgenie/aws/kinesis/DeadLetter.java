@@ -0,0 +1,73 @@
+package io.microgenie.aws.kinesis;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/***
+ * A consumed kinesis record, or an event contained in it, that could not be processed.
+ * <p>
+ * The data is the serialized event when the event could be decoded, otherwise the raw record data
+ *
+ * @author shawn
+ */
+public class DeadLetter {
+
+	private final String topic;
+	private final String shardId;
+	private final String sequenceNumber;
+	private final String partitionKey;
+	private final String eventId;
+	private final int attempts;
+	private final String reason;
+	private final byte[] data;
+
+
+	public DeadLetter(final String topic, final String shardId, final String sequenceNumber, final String partitionKey,
+			final String eventId, final int attempts, final String reason, final byte[] data){
+		this.topic = topic;
+		this.shardId = shardId;
+		this.sequenceNumber = sequenceNumber;
+		this.partitionKey = partitionKey;
+		this.eventId = eventId;
+		this.attempts = attempts;
+		this.reason = reason;
+		this.data = data;
+	}
+
+	@JsonProperty("topic")
+	public String getTopic() {
+		return topic;
+	}
+	@JsonProperty("shardId")
+	public String getShardId() {
+		return shardId;
+	}
+	@JsonProperty("sequenceNumber")
+	public String getSequenceNumber() {
+		return sequenceNumber;
+	}
+	@JsonProperty("partitionKey")
+	public String getPartitionKey() {
+		return partitionKey;
+	}
+	/***
+	 * The id of the event, or null if the record could not be decoded
+	 * @return eventId
+	 */
+	@JsonProperty("eventId")
+	public String getEventId() {
+		return eventId;
+	}
+	@JsonProperty("attempts")
+	public int getAttempts() {
+		return attempts;
+	}
+	@JsonProperty("reason")
+	public String getReason() {
+		return reason;
+	}
+	@JsonProperty("data")
+	public byte[] getData() {
+		return data;
+	}
+}
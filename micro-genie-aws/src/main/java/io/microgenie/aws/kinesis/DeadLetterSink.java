@@ -0,0 +1,10 @@
+package io.microgenie.aws.kinesis;
+
+
+/***
+ * Destination for consumed records and events that exhausted their retries or could not be decoded
+ * @author shawn
+ */
+public interface DeadLetterSink {
+	public void send(DeadLetter deadLetter);
+}
@@ -0,0 +1,41 @@
+package io.microgenie.aws.kinesis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.Preconditions;
+
+
+/***
+ * Exponential backoff with jitter. The delay for an attempt is chosen at random between half
+ * and all of initialDelay * 2^(attempt-1), capped at maxDelay
+ * @author shawn
+ */
+public class ExponentialBackoff {
+
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+
+
+	public ExponentialBackoff(final long initialDelayMillis, final long maxDelayMillis){
+		Preconditions.checkArgument(initialDelayMillis >= 0, "initialDelayMillis cannot be negative");
+		Preconditions.checkArgument(maxDelayMillis >= initialDelayMillis, "maxDelayMillis must be greater than or equal to initialDelayMillis");
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+
+	/***
+	 * The delay before the next attempt
+	 * @param attempt - the number of attempts made so far, starting at 1
+	 * @return delayMillis
+	 */
+	public long delayMillis(final int attempt){
+		final int shift = Math.min(Math.max(attempt - 1, 0), 30);
+		final long delay = Math.min(this.maxDelayMillis, this.initialDelayMillis << shift);
+		if(delay <= 1){
+			return delay;
+		}
+		final long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+}
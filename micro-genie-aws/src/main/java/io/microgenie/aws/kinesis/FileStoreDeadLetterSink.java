@@ -0,0 +1,60 @@
+package io.microgenie.aws.kinesis;
+
+import io.microgenie.application.blob.FileContent;
+import io.microgenie.application.blob.FileMetadata;
+import io.microgenie.application.blob.FileStoreFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+
+/***
+ * {@link DeadLetterSink} that saves the data of each dead letter as a file under a prefix.
+ * <p>
+ * Files are saved at {prefix}/{topic}/{shardId}/{sequenceNumber}-{eventId} and the remaining dead letter
+ * fields are saved as file attributes
+ * @author shawn
+ */
+public class FileStoreDeadLetterSink implements DeadLetterSink {
+
+	private static final String CONTENT_TYPE = "application/octet-stream";
+
+	private final FileStoreFactory files;
+	private final String drive;
+	private final String prefix;
+
+
+	/***
+	 * @param files
+	 * @param drive - The drive to save dead letters to, if null the default drive is used
+	 * @param prefix - The path prefix dead letters are saved under
+	 */
+	public FileStoreDeadLetterSink(final FileStoreFactory files, final String drive, final String prefix){
+		this.files = Preconditions.checkNotNull(files, "FileStoreFactory is required");
+		this.drive = Strings.isNullOrEmpty(drive) ? files.getDefaultDrive() : drive;
+		Preconditions.checkArgument(!Strings.isNullOrEmpty(this.drive), "A dead letter drive is required when the file store has no default drive");
+		this.prefix = Strings.nullToEmpty(prefix).endsWith("/") ? prefix.substring(0, prefix.length() - 1) : Strings.nullToEmpty(prefix);
+	}
+
+
+	@Override
+	public void send(final DeadLetter deadLetter) {
+		final byte[] data = deadLetter.getData() != null ? deadLetter.getData() : new byte[0];
+		final String name = String.format("%s-%s", deadLetter.getSequenceNumber(), deadLetter.getEventId() != null ? deadLetter.getEventId() : UUID.randomUUID().toString());
+		final String path = String.format("%s/%s/%s/%s", this.prefix, deadLetter.getTopic(), deadLetter.getShardId(), name);
+
+		final Map<String, String> attributes = Maps.newHashMap();
+		attributes.put("topic", deadLetter.getTopic());
+		attributes.put("partition-key", deadLetter.getPartitionKey());
+		attributes.put("attempts", String.valueOf(deadLetter.getAttempts()));
+		attributes.put("reason", Strings.nullToEmpty(deadLetter.getReason()));
+
+		this.files.save(FileContent.create(this.drive, path, data.length, new ByteArrayInputStream(data),
+				FileMetadata.create(CONTENT_TYPE, null, attributes)));
+	}
+}
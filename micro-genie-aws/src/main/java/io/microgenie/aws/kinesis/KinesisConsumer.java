@@ -1,7 +1,9 @@
 package io.microgenie.aws.kinesis;
 
+import io.microgenie.application.blob.ClaimCheckStore;
 import io.microgenie.application.events.EventHandler;
 import io.microgenie.application.events.Subscriber;
+import io.microgenie.aws.config.KinesisConsumerConfig;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -28,6 +30,9 @@ public class KinesisConsumer implements Subscriber{
 	
 	private final String topic;
 	private final KinesisClientLibConfiguration config;
+	private final KinesisConsumerConfig consumerConfig;
+	private final DeadLetterSink deadLetterSink;
+	private final ClaimCheckStore claimChecks;
 	private final AmazonKinesisClient client;
 	private final ObjectMapper mapper;
 	
@@ -57,9 +62,62 @@ public class KinesisConsumer implements Subscriber{
 			final AmazonDynamoDBClient dynamoClient, 
 			final AmazonCloudWatchClient cloudwatchClient, 
 			final ObjectMapper mapper){
+		this(topic, config, new KinesisConsumerConfig(), new LoggingDeadLetterSink(), client, dynamoClient, cloudwatchClient, mapper);
+	}
+	
+	
+	/***
+	 * 
+	 * All input parameters are required 
+	 * 
+	 * @param topic
+	 * @param config
+	 * @param consumerConfig - controls how consumed events are dispatched to the handler and retried
+	 * @param deadLetterSink - receives events that exhausted their retries
+	 * @param client
+	 * @param dynamoClient
+	 * @param cloudwatchClient
+	 */
+	public KinesisConsumer(final String topic, 
+			final KinesisClientLibConfiguration config, 
+			final KinesisConsumerConfig consumerConfig,
+			final DeadLetterSink deadLetterSink,
+			final AmazonKinesisClient client, 
+			final AmazonDynamoDBClient dynamoClient, 
+			final AmazonCloudWatchClient cloudwatchClient, 
+			final ObjectMapper mapper){
+		this(topic, config, consumerConfig, deadLetterSink, null, client, dynamoClient, cloudwatchClient, mapper);
+	}
+	
+	
+	/***
+	 * 
+	 * All input parameters except claimChecks are required 
+	 * 
+	 * @param topic
+	 * @param config
+	 * @param consumerConfig - controls how consumed events are dispatched to the handler and retried
+	 * @param deadLetterSink - receives events that exhausted their retries
+	 * @param claimChecks - resolves claim check records, may be null
+	 * @param client
+	 * @param dynamoClient
+	 * @param cloudwatchClient
+	 */
+	public KinesisConsumer(final String topic, 
+			final KinesisClientLibConfiguration config, 
+			final KinesisConsumerConfig consumerConfig,
+			final DeadLetterSink deadLetterSink,
+			final ClaimCheckStore claimChecks,
+			final AmazonKinesisClient client, 
+			final AmazonDynamoDBClient dynamoClient, 
+			final AmazonCloudWatchClient cloudwatchClient, 
+			final ObjectMapper mapper){
 
 		this.topic =  Preconditions.checkNotNull(topic, "A valid kinesis topic is required");
 		this.config = Preconditions.checkNotNull(config, "KinesisClientLibConfiguration is required");
+		this.consumerConfig = Preconditions.checkNotNull(consumerConfig, "KinesisConsumerConfig is required");
+		this.deadLetterSink = Preconditions.checkNotNull(deadLetterSink, "DeadLetterSink is required");
+		this.claimChecks = claimChecks;
 		this.client = Preconditions.checkNotNull(client, "AmazonKinesisClient is required");
 		this.dynamoClient = Preconditions.checkNotNull(dynamoClient, "AmazonDynamoDBClient is required");
 		this.cloudwatchClient = Preconditions.checkNotNull(cloudwatchClient, "AmazonCloudWatchClient is required");
@@ -75,7 +133,7 @@ public class KinesisConsumer implements Subscriber{
 	public synchronized void subscribe(final EventHandler handler) {
 		Preconditions.checkNotNull(handler, "An eventHandler is required to handle consumed events");
 		if(this.worker==null){
-			this.worker = new Worker(new KinesisRecordProcessorFactory(this.topic, handler, this.mapper), this.config, this.client, this.dynamoClient, this.cloudwatchClient);
+			this.worker = new Worker(new KinesisRecordProcessorFactory(this.topic, handler, this.mapper, this.consumerConfig, this.deadLetterSink, this.claimChecks), this.config, this.client, this.dynamoClient, this.cloudwatchClient);
 		}
 		this.executor.execute(this.worker);
 	}
@@ -2,12 +2,21 @@ package io.microgenie.aws.kinesis;
 
 
 import io.microgenie.application.StateChangeConfiguration;
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.blob.FileStoreFactory;
+import io.microgenie.application.events.AsyncPublisher;
+import io.microgenie.application.events.AsyncPublisherConfig;
+import io.microgenie.application.events.CoalescingStateChangePublisher;
 import io.microgenie.application.events.Event;
 import io.microgenie.application.events.EventFactory;
 import io.microgenie.application.events.EventHandler;
 import io.microgenie.application.events.Publisher;
 import io.microgenie.application.events.StateChangePublisher;
 import io.microgenie.application.events.Subscriber;
+import io.microgenie.application.queue.QueueFactory;
+import io.microgenie.aws.config.KinesisConfig;
+import io.microgenie.aws.config.KinesisConsumerConfig;
+import io.microgenie.aws.config.KinesisProducerConfig;
 
 import java.io.IOException;
 import java.util.List;
@@ -23,7 +32,10 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.KinesisClientLibConfiguration;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 
@@ -49,17 +61,49 @@ public class KinesisEventFactory extends EventFactory {
 	private final AmazonKinesisClient kinesisClient;	
 	private final AmazonDynamoDBClient dynamoDbClient;
 	private final AmazonCloudWatchClient cloudwatchClient;
+	private final QueueFactory queues;
+	private final FileStoreFactory files;
+	private final Map<String, KinesisProducerConfig> producerConfigs = Maps.newHashMap();
+	private final Map<String, KinesisConsumerConfig> consumerConfigs = Maps.newHashMap();
 
 	
 	private final Map<String, Publisher> publishers = Maps.newHashMap();
+	private final Map<String, AsyncPublisher> asyncPublishers = Maps.newHashMap();
+	private final List<CoalescingStateChangePublisher> coalescingPublishers = Lists.newArrayList();
 	private final Map<String, Subscriber> subscribers = Maps.newHashMap();
 
 	
 	public KinesisEventFactory(final AmazonKinesisClient kinesisClient, final AmazonDynamoDBClient dynamoDbClient, final AmazonCloudWatchClient cloudwatchClient, final ObjectMapper mapper){
+		this(ImmutableList.<KinesisConfig>of(), kinesisClient, dynamoDbClient, cloudwatchClient, mapper);
+	}
+	public KinesisEventFactory(final List<KinesisConfig> topics, final AmazonKinesisClient kinesisClient, final AmazonDynamoDBClient dynamoDbClient, final AmazonCloudWatchClient cloudwatchClient, final ObjectMapper mapper){
+		this(topics, kinesisClient, dynamoDbClient, cloudwatchClient, mapper, null, null);
+	}
+	
+	
+	/***
+	 * @param topics - per topic kinesis configuration, used to configure producers and consumers for each stream
+	 * @param queues - used by consumers configured with a dead letter queue, may be null
+	 * @param files - used by consumers configured with a dead letter prefix and to save and resolve claim checks, may be null
+	 */
+	public KinesisEventFactory(final List<KinesisConfig> topics, final AmazonKinesisClient kinesisClient, final AmazonDynamoDBClient dynamoDbClient, final AmazonCloudWatchClient cloudwatchClient, final ObjectMapper mapper, 
+			final QueueFactory queues, final FileStoreFactory files){
 		this.mapper = mapper;
 		this.kinesisClient = kinesisClient;
 		this.dynamoDbClient = dynamoDbClient;
 		this.cloudwatchClient = cloudwatchClient;
+		this.queues = queues;
+		this.files = files;
+		if(topics!=null){
+			for(KinesisConfig topic : topics){
+				if(topic.getProducer()!=null){
+					this.producerConfigs.put(topic.getTopic(), topic.getProducer());
+				}
+				if(topic.getConsumer()!=null){
+					this.consumerConfigs.put(topic.getTopic(), topic.getConsumer());
+				}
+			}
+		}
 	}
 	
 	@Override
@@ -95,7 +139,9 @@ public class KinesisEventFactory extends EventFactory {
 		if(subscriber == null){
 			LOGGER.debug("creating kinsis subscriber for topic {} - clientId: {}", topic, clientIdToUse);
 			final KinesisClientLibConfiguration config = createConsumerConfig(clientIdToUse, topic);
-			subscriber = new KinesisConsumer(topic, config, this.kinesisClient, this.dynamoDbClient, this.cloudwatchClient, this.mapper);
+			final KinesisConsumerConfig consumerConfig = this.consumerConfigs.containsKey(topic) ? this.consumerConfigs.get(topic) : new KinesisConsumerConfig();
+			subscriber = new KinesisConsumer(topic, config, consumerConfig, this.createDeadLetterSink(consumerConfig), 
+					this.files != null ? new ClaimCheckStore(this.files, null, null) : null, this.kinesisClient, this.dynamoDbClient, this.cloudwatchClient, this.mapper);
 			this.subscribers.put(topic, subscriber);
 		}
 		return subscriber;
@@ -115,18 +161,50 @@ public class KinesisEventFactory extends EventFactory {
 		Publisher publisher = publishers.get(clientIdToUse);
 		if(publisher==null){
 			LOGGER.debug("creating kinsis publisher");
-			publisher = new KinesisProducer(clientIdToUse, this.mapper, this.kinesisClient);
+			publisher = new KinesisProducer(clientIdToUse, this.mapper, this.kinesisClient, this.producerConfigs, this.files);
 			publishers.put(clientIdToUse, publisher);
 		}
 		return publisher;
 	}
 
+	
+	
+	
+	/***
+	 * Create an asynchronous publisher, if it has not already been created, that buffers events 
+	 * and sends them in batches through the kinesis publisher for the same clientId
+	 */
+	@Override
+	public synchronized AsyncPublisher createAsyncPublisher(final String clientId, final AsyncPublisherConfig config) {
+		
+		final String clientIdToUse = Strings.isNullOrEmpty(clientId) ? DEFAULT_CLIENT_ID : clientId;
+		
+		AsyncPublisher publisher = this.asyncPublishers.get(clientIdToUse);
+		if(publisher==null){
+			LOGGER.debug("creating async kinesis publisher for clientId: {}", clientIdToUse);
+			publisher = new AsyncPublisher(this.createPublisher(clientIdToUse), config);
+			this.asyncPublishers.put(clientIdToUse, publisher);
+		}
+		return publisher;
+	}
 
 
 
+	/***
+	 * Create a state change publisher. If the state change configuration contains an async publisher
+	 * configuration, changes are published asynchronously. If it contains a coalescing configuration, 
+	 * successive changes to the same item are merged before being published
+	 */
 	@Override
-	public StateChangePublisher createChangePublisher(final String clientId, StateChangeConfiguration stateChangeConfig) {
-		final Publisher publisher = this.createPublisher(clientId);
+	public synchronized StateChangePublisher createChangePublisher(final String clientId, StateChangeConfiguration stateChangeConfig) {
+		final Publisher publisher = stateChangeConfig.getAsyncPublisher() != null ? 
+				this.createAsyncPublisher(clientId, stateChangeConfig.getAsyncPublisher()) : 
+				this.createPublisher(clientId);
+		if(stateChangeConfig.getCoalescing() != null){
+			final CoalescingStateChangePublisher changePublisher = new CoalescingStateChangePublisher(stateChangeConfig, publisher, stateChangeConfig.getCoalescing());
+			this.coalescingPublishers.add(changePublisher);
+			return changePublisher;
+		}
 		final StateChangePublisher changePublisher = new StateChangePublisher(stateChangeConfig, publisher);
 		return changePublisher;
 	}
@@ -143,13 +221,33 @@ public class KinesisEventFactory extends EventFactory {
 	
 	
 	/***
-	 * Create consumer configurations
+	 * Create the dead letter sink for a consumer. A dead letter queue takes precedence over a dead letter prefix, 
+	 * when neither is configured dead letters are logged
+	 */
+	private DeadLetterSink createDeadLetterSink(final KinesisConsumerConfig consumerConfig) {
+		if(!Strings.isNullOrEmpty(consumerConfig.getDeadLetterQueue())){
+			Preconditions.checkState(this.queues != null, "A dead letter queue is configured but no queue factory is available, configure sqs");
+			return new QueueDeadLetterSink(this.queues.getProducer(), consumerConfig.getDeadLetterQueue(), this.mapper);
+		}
+		if(!Strings.isNullOrEmpty(consumerConfig.getDeadLetterPrefix())){
+			Preconditions.checkState(this.files != null, "A dead letter prefix is configured but no file store factory is available, configure s3");
+			return new FileStoreDeadLetterSink(this.files, consumerConfig.getDeadLetterDrive(), consumerConfig.getDeadLetterPrefix());
+		}
+		return new LoggingDeadLetterSink();
+	}
+	
+	
+	
+	/***
+	 * Create consumer configurations. Record processors are called even when no records were returned
+	 * so that events waiting for retry are redelivered on idle shards
 	 */
 	private KinesisClientLibConfiguration createConsumerConfig(final String clientId, final String topic) {
 		
 		final String kinesisApplication = String.format(WORKER_ID_TEMPLATE, topic, clientId);
 		final KinesisClientLibConfiguration clientConfig = 
-				new KinesisClientLibConfiguration(kinesisApplication, topic, new DefaultAWSCredentialsProviderChain(), UUID.randomUUID().toString());
+				new KinesisClientLibConfiguration(kinesisApplication, topic, new DefaultAWSCredentialsProviderChain(), UUID.randomUUID().toString())
+				.withCallProcessRecordsEvenForEmptyRecordList(true);
 		return clientConfig;		
 	}
 
@@ -166,6 +264,16 @@ public class KinesisEventFactory extends EventFactory {
 			subscriptionEntry.getValue().stop();
 		}
 		this.subscribers.clear();
+		
+		/** held changes are published first, then async publishers are closed so that buffered events are drained through the underlying publishers **/
+		for(CoalescingStateChangePublisher changePublisher : this.coalescingPublishers){
+			changePublisher.close();
+		}
+		this.coalescingPublishers.clear();
+		for(java.util.Map.Entry<String, AsyncPublisher> publisherEntry : this.asyncPublishers.entrySet()){
+			publisherEntry.getValue().close();
+		}
+		this.asyncPublishers.clear();
 		for(java.util.Map.Entry<String, Publisher> publisherEntry : this.publishers.entrySet()){
 			publisherEntry.getValue().close();
 		}
@@ -1,22 +1,47 @@
 package io.microgenie.aws.kinesis;
 
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.blob.FileStoreFactory;
 import io.microgenie.application.events.Event;
+import io.microgenie.application.events.EventCodecs;
 import io.microgenie.application.events.Publisher;
+import io.microgenie.aws.config.KinesisProducerConfig;
+import io.microgenie.aws.config.KinesisProducerConfig.Salting;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.kinesis.model.PutRecordRequest;
 import com.amazonaws.services.kinesis.model.PutRecordResult;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 
 /**
@@ -24,12 +49,38 @@ import com.google.common.base.Strings;
  * @author shawn
  */
 public class KinesisProducer implements Publisher{
-	
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(KinesisProducer.class);
 
+	/** Kinesis PutRecords limits **/
+	private static final int MAX_RECORDS_PER_REQUEST = 500;
+	private static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+	private static final int MAX_BYTES_PER_RECORD = 1024 * 1024;
+
+	/** Failed records in a batch are retried individually up to this many attempts **/
+	private static final int MAX_BATCH_ATTEMPTS = 3;
+	private static final long BATCH_BACKOFF_TIME_IN_MILLIS = 100L;
+
+	private static final String INVALID_EVENT = "InvalidEvent";
+	private static final String RECORD_TOO_LARGE = "RecordTooLarge";
+	private static final String THROUGHPUT_EXCEEDED = "ProvisionedThroughputExceededException";
+
+	/** Salted partition keys are suffixed with the separator and the salt bucket **/
+	private static final String SALT_SEPARATOR = "#";
+	private static final BigInteger HASH_KEY_SPACE = BigInteger.ONE.shiftLeft(128);
+
+	private static final KinesisProducerConfig DEFAULT_CONFIG = new KinesisProducerConfig();
+
 	private final String clientId;
-	private final ObjectMapper mapper;
+	private final EventCodecs codecs;
 	private final AmazonKinesisClient client;
+	private final Map<String, KinesisProducerConfig> producerConfigs;
+	private final PartitionKeyTracker tracker = new PartitionKeyTracker();
+	private final ConcurrentMap<String, KinesisShardMap> shardMaps = Maps.newConcurrentMap();
+	/** shard maps are loaded off the publish path, so throttled publishers never wait on DescribeStream **/
+	private final ExecutorService shardRefresher;
+	private final FileStoreFactory files;
+	private final ConcurrentMap<String, ClaimCheckStore> claimChecks = Maps.newConcurrentMap();
 
 
 	/**
@@ -37,12 +88,43 @@ public class KinesisProducer implements Publisher{
 	 * @param client
 	 */
 	public KinesisProducer(final String clientId, final ObjectMapper mapper, final AmazonKinesisClient client) {
+		this(clientId, mapper, client, ImmutableMap.<String, KinesisProducerConfig>of());
+	}
+
+
+	/**
+	 * Kinesis Publisher with per stream producer configuration
+	 * @param clientId
+	 * @param mapper
+	 * @param client
+	 * @param producerConfigs - producer configuration keyed by stream name, streams without configuration use the defaults
+	 */
+	public KinesisProducer(final String clientId, final ObjectMapper mapper, final AmazonKinesisClient client, final Map<String, KinesisProducerConfig> producerConfigs) {
+		this(clientId, mapper, client, producerConfigs, null);
+	}
+
+
+	/**
+	 * Kinesis Publisher with per stream producer configuration
+	 * @param clientId
+	 * @param mapper
+	 * @param client
+	 * @param producerConfigs - producer configuration keyed by stream name, streams without configuration use the defaults
+	 * @param files - saves events over the kinesis record limit for streams configured with claim checks, may be null
+	 */
+	public KinesisProducer(final String clientId, final ObjectMapper mapper, final AmazonKinesisClient client, final Map<String, KinesisProducerConfig> producerConfigs, final FileStoreFactory files) {
 		this.clientId = clientId;
-		this.mapper = mapper;
+		this.files = files;
+		this.codecs = new EventCodecs(mapper);
 		this.client = client;
+		this.producerConfigs = ImmutableMap.copyOf(Preconditions.checkNotNull(producerConfigs, "producerConfigs cannot be null"));
+		this.shardRefresher = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+		.setDaemon(true)
+		.setNameFormat("kinesis-shard-map-" + clientId + "-%d")
+		.build());
 	}
-	
-	
+
+
 	/**
 	 * publish a single message
 	 */
@@ -51,30 +133,45 @@ public class KinesisProducer implements Publisher{
 		
 		try {
 			
-			Preconditions.checkNotNull(event, "event cannot be null");
-			Preconditions.checkNotNull(event.getEventData(), "event data cannot be null");
-			Preconditions.checkArgument(!Strings.isNullOrEmpty(event.getTopic()), "Topic is required");
-			Preconditions.checkNotNull(event.getPartitionKey(), "Partition key cannot be null");
-			Preconditions.checkArgument(!Strings.isNullOrEmpty(event.getPartitionKey().toString()), "PartitionKey is required");
+			this.validate(event);
 			
-			/** serialize the event **/
-			byte[] bytes = this.mapper.writeValueAsBytes(event);
+			/** serialize the event, saving it as a claim check if it is over the record limit **/
+			final byte[] bytes = this.claimCheck(event.getTopic(), event.getPartitionKey(), this.encode(event));
 	
 			final PutRecordRequest putRecordRequest = new PutRecordRequest();
 			putRecordRequest.setStreamName(event.getTopic());
 			putRecordRequest.setPartitionKey(event.getPartitionKey().toString());
 			putRecordRequest.setData(ByteBuffer.wrap(bytes));
 			
+			final KinesisProducerConfig producerConfig = this.config(event.getTopic());
+			this.tracker.record(event.getTopic(), putRecordRequest.getPartitionKey(), bytes.length, producerConfig.getHotKeyRecordsPerSecond());
+			final int bucket = this.saltBucket(event.getTopic(), putRecordRequest.getPartitionKey(), producerConfig);
+			if(bucket >= 0 && producerConfig.getSalting() == Salting.SUFFIX){
+				putRecordRequest.setPartitionKey(saltedPartitionKey(putRecordRequest.getPartitionKey(), bucket));
+			}else if(bucket >= 0){
+				putRecordRequest.setExplicitHashKey(explicitHashKey(bucket, producerConfig.getSaltBuckets()));
+			}
+			
 			//putRecordRequest.setSequenceNumberForOrdering( sequenceNumberOfPreviousRecord );
 			
-			final PutRecordResult putRecordResult = client.putRecord(putRecordRequest);
+			final PutRecordResult putRecordResult;
+			try{
+				putRecordResult = client.putRecord(putRecordRequest);
+			}catch(RuntimeException ex){
+				if(ex instanceof ProvisionedThroughputExceededException){
+					this.tracker.throttled(event.getTopic(), this.shardMap(event.getTopic()).shardFor(putRecordRequest.getPartitionKey(), putRecordRequest.getExplicitHashKey()));
+				}
+				this.releaseClaimCheck(event.getTopic(), bytes);
+				throw ex;
+			}
+			this.tracker.accepted(event.getTopic(), putRecordResult.getShardId());
 			LOGGER.trace("published message to stream: {} partitionKey: {}, sequenceNumberForOrdering: {}, returnedSequenceNumber:{}", 
 						putRecordRequest.getStreamName(), 
 						putRecordRequest.getPartitionKey(), 
 						putRecordRequest.getSequenceNumberForOrdering(), 
 						putRecordResult.getSequenceNumber());
 		
-		} catch (JsonProcessingException e) {
+		} catch (IOException e) {
 			LOGGER.error(e.getMessage(), e);
 		}
 	}
@@ -83,12 +180,427 @@ public class KinesisProducer implements Publisher{
 	
 	
 	/**
-	 * Publish the event batch
+	 * Publish the event batch using Kinesis PutRecords requests.
+	 * <p>
+	 * Events that could not be published after retries are written to the error log,
+	 * use {@link #publishBatch(List)} to inspect the per event results
 	 */
 	@Override
 	public void submitBatch(List<Event> events) {
-		for(Event event: events){
-			this.submit(event);
+		for(KinesisPublishResult result : this.publishBatch(events)){
+			if(!result.isSuccessful()){
+				LOGGER.error("Failed to publish event id: {} to stream: {} - errorCode: {} - errorMessage: {} - attempts: {}",
+						result.getEvent()!=null ? result.getEvent().getId() : null,
+						result.getEvent()!=null ? result.getEvent().getTopic() : null,
+						result.getErrorCode(), result.getErrorMessage(), result.getAttempts());
+			}
+		}
+	}
+
+
+
+	/***
+	 * Publish the event batch, returning a publish result for each event.
+	 * <p>
+	 * Events are partitioned by stream and each stream partition is sent as one or more PutRecords
+	 * requests, each bounded to 500 records and 5 MB. Records that fail within a request
+	 * (for example, due to throttling) are retried individually with backoff.
+	 * <p>
+	 * For streams configured to aggregate, events sharing a partition key are packed into
+	 * {@link AggregatedRecord}s, every event in an aggregated record shares its publish result.
+	 * For streams configured with a salting strategy, records of hot keys are spread over the salt buckets.
+	 * For streams configured with claim checks, events over the record limit are saved to the file store and
+	 * published as {@link ClaimCheckRecord}s, the saved event is deleted if the record cannot be published
+	 *
+	 * @param events - The events to publish, which can be destined for one or more streams
+	 * @return results - One {@link KinesisPublishResult} per event, in the same order as the submitted events
+	 */
+	public List<KinesisPublishResult> publishBatch(final List<Event> events) {
+
+		Preconditions.checkNotNull(events, "events cannot be null");
+
+		final KinesisPublishResult[] results = new KinesisPublishResult[events.size()];
+		final Map<String, List<PendingRecord>> streams = Maps.newLinkedHashMap();
+
+		for(int i = 0; i < events.size(); i++){
+			final Event event = events.get(i);
+			try{
+				this.validate(event);
+				final byte[] bytes = this.claimCheck(event.getTopic(), event.getPartitionKey(), this.encode(event));
+				final PendingRecord record = new PendingRecord(i, event, bytes);
+				if(record.size > MAX_BYTES_PER_RECORD){
+					results[i] = KinesisPublishResult.failed(event, RECORD_TOO_LARGE, String.format("Record size of %d bytes exceeds the kinesis limit of %d bytes", record.size, MAX_BYTES_PER_RECORD), 0);
+					continue;
+				}
+				this.tracker.record(event.getTopic(), event.getPartitionKey(), bytes.length, this.config(event.getTopic()).getHotKeyRecordsPerSecond());
+				if(!streams.containsKey(event.getTopic())){
+					streams.put(event.getTopic(), Lists.<PendingRecord>newArrayList());
+				}
+				streams.get(event.getTopic()).add(record);
+			}catch(Exception ex){
+				LOGGER.debug(ex.getMessage(), ex);
+				results[i] = KinesisPublishResult.failed(event, INVALID_EVENT, ex.getMessage(), 0);
+			}
+		}
+
+		for(Entry<String, List<PendingRecord>> stream : streams.entrySet()){
+			final KinesisProducerConfig producerConfig = this.config(stream.getKey());
+			final List<PendingRecord> records;
+			if(producerConfig.isAggregate()){
+				records = this.aggregate(stream.getValue(), producerConfig);
+			}else{
+				records = stream.getValue();
+			}
+			for(PendingRecord record : records){
+				this.salt(stream.getKey(), record, producerConfig);
+			}
+			this.putRecords(stream.getKey(), records, results);
+			for(PendingRecord record : stream.getValue()){
+				if(!results[record.indexes.get(0)].isSuccessful()){
+					this.releaseClaimCheck(stream.getKey(), record.data);
+				}
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+
+
+	/***
+	 * Put the records for a single stream, retrying failed records until they succeed
+	 * or the maximum number of attempts has been reached
+	 *
+	 * @param stream - The stream to publish to
+	 * @param records - The records destined for the stream
+	 * @param results - The result array, indexed by the original event position
+	 */
+	private void putRecords(final String stream, final List<PendingRecord> records, final KinesisPublishResult[] results) {
+
+		List<PendingRecord> remaining = records;
+		for(int attempt = 1; !remaining.isEmpty(); attempt++){
+
+			final List<PendingRecord> failed = Lists.newArrayList();
+			for(List<PendingRecord> request : this.partitionRequests(remaining)){
+				failed.addAll(this.putRecordsRequest(stream, request, results, attempt));
+			}
+
+			if(failed.isEmpty()){
+				break;
+			}
+			if(attempt >= MAX_BATCH_ATTEMPTS){
+				for(PendingRecord record : failed){
+					for(int i = 0; i < record.events.size(); i++){
+						results[record.indexes.get(i)] = KinesisPublishResult.failed(record.events.get(i), record.errorCode, record.errorMessage, attempt);
+					}
+				}
+				break;
+			}
+			LOGGER.debug("{} of {} records failed to publish to stream: {} on attempt {} - retrying", failed.size(), remaining.size(), stream, attempt);
+			this.backOff(attempt);
+			remaining = failed;
+		}
+	}
+
+
+
+	/***
+	 * Execute a single PutRecords request
+	 *
+	 * @return failedRecords - records that were not accepted and should be retried
+	 */
+	private List<PendingRecord> putRecordsRequest(final String stream, final List<PendingRecord> records, final KinesisPublishResult[] results, final int attempt) {
+
+		final List<PutRecordsRequestEntry> entries = Lists.newArrayListWithCapacity(records.size());
+		for(PendingRecord record : records){
+			entries.add(record.entry);
+		}
+		final PutRecordsRequest request = new PutRecordsRequest()
+		.withStreamName(stream)
+		.withRecords(entries);
+
+		final List<PendingRecord> failed = Lists.newArrayList();
+		try{
+			final PutRecordsResult result = this.client.putRecords(request);
+			final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+			for(int i = 0; i < records.size(); i++){
+				final PendingRecord record = records.get(i);
+				final PutRecordsResultEntry resultEntry = resultEntries.get(i);
+				if(Strings.isNullOrEmpty(resultEntry.getErrorCode())){
+					for(int j = 0; j < record.events.size(); j++){
+						results[record.indexes.get(j)] = KinesisPublishResult.succeeded(record.events.get(j), resultEntry.getShardId(), resultEntry.getSequenceNumber(), attempt);
+					}
+					this.tracker.accepted(stream, resultEntry.getShardId());
+				}else{
+					if(THROUGHPUT_EXCEEDED.equals(resultEntry.getErrorCode())){
+						this.tracker.throttled(stream, this.shardMap(stream).shardFor(record.entry.getPartitionKey(), record.entry.getExplicitHashKey()));
+					}
+					record.failed(resultEntry.getErrorCode(), resultEntry.getErrorMessage());
+					failed.add(record);
+				}
+			}
+			LOGGER.trace("published {} records to stream: {} - failedRecordCount: {}", records.size(), stream, result.getFailedRecordCount());
+		}catch(AmazonClientException ex){
+			LOGGER.warn("PutRecords request to stream: {} failed - {}", stream, ex.getMessage());
+			for(PendingRecord record : records){
+				record.failed(ex.getClass().getSimpleName(), ex.getMessage());
+				failed.add(record);
+			}
+		}
+		return failed;
+	}
+
+
+
+	/***
+	 * Pack records that share a partition key into aggregated records bounded by the configured
+	 * size and event count. Groups that end up holding a single event are sent as plain records
+	 *
+	 * @param records - single event records for one stream
+	 * @param producerConfig
+	 * @return records - aggregated and plain records
+	 */
+	private List<PendingRecord> aggregate(final List<PendingRecord> records, final KinesisProducerConfig producerConfig){
+
+		final int maxBytes = Math.min(producerConfig.getMaxAggregatedRecordBytes(), MAX_BYTES_PER_RECORD);
+		final Map<String, List<PendingRecord>> partitions = Maps.newLinkedHashMap();
+		for(PendingRecord record : records){
+			final String partitionKey = record.entry.getPartitionKey();
+			if(!partitions.containsKey(partitionKey)){
+				partitions.put(partitionKey, Lists.<PendingRecord>newArrayList());
+			}
+			partitions.get(partitionKey).add(record);
+		}
+
+		final List<PendingRecord> aggregated = Lists.newArrayList();
+		for(Entry<String, List<PendingRecord>> partition : partitions.entrySet()){
+			final int keyBytes = partition.getKey().getBytes(Charsets.UTF_8).length;
+			List<PendingRecord> group = Lists.newArrayList();
+			AggregatedRecord aggregate = new AggregatedRecord(maxBytes - keyBytes, producerConfig.getMaxAggregatedEvents());
+			for(PendingRecord record : partition.getValue()){
+				if(!aggregate.canAdd(record.data.length)){
+					aggregated.add(PendingRecord.aggregate(partition.getKey(), group, aggregate));
+					group = Lists.newArrayList();
+					aggregate = new AggregatedRecord(maxBytes - keyBytes, producerConfig.getMaxAggregatedEvents());
+				}
+				aggregate.add(record.data);
+				group.add(record);
+			}
+			aggregated.add(PendingRecord.aggregate(partition.getKey(), group, aggregate));
+		}
+		return aggregated;
+	}
+
+
+
+	/***
+	 * Salt the partition key of a record whose key is hot, when the stream has a salting strategy
+	 * @param stream
+	 * @param record
+	 * @param producerConfig
+	 */
+	private void salt(final String stream, final PendingRecord record, final KinesisProducerConfig producerConfig){
+		final int bucket = this.saltBucket(stream, record.entry.getPartitionKey(), producerConfig);
+		if(bucket < 0){
+			return;
+		}
+		if(producerConfig.getSalting() == Salting.SUFFIX){
+			final String partitionKey = saltedPartitionKey(record.entry.getPartitionKey(), bucket);
+			record.size += partitionKey.length() - record.entry.getPartitionKey().length();
+			record.entry.setPartitionKey(partitionKey);
+		}else{
+			record.entry.setExplicitHashKey(explicitHashKey(bucket, producerConfig.getSaltBuckets()));
+		}
+	}
+
+
+	/***
+	 * Pick a random salt bucket for a hot key
+	 * @return bucket - or -1 if the key should not be salted
+	 */
+	private int saltBucket(final String stream, final String partitionKey, final KinesisProducerConfig producerConfig){
+		if(producerConfig.getSalting() == null || producerConfig.getSalting() == Salting.NONE || producerConfig.getSaltBuckets() < 2){
+			return -1;
+		}
+		if(!this.tracker.isHot(stream, partitionKey, producerConfig.getHotKeyRecordsPerSecond())){
+			return -1;
+		}
+		return ThreadLocalRandom.current().nextInt(producerConfig.getSaltBuckets());
+	}
+
+
+	static String saltedPartitionKey(final String partitionKey, final int bucket){
+		return partitionKey + SALT_SEPARATOR + bucket;
+	}
+
+
+	/***
+	 * The midpoint of the salt bucket within the 128 bit hash key range, buckets are spread evenly
+	 * so a hot key lands on every shard of the stream when there are at least as many buckets as shards
+	 */
+	static String explicitHashKey(final int bucket, final int buckets){
+		final BigInteger width = HASH_KEY_SPACE.divide(BigInteger.valueOf(buckets));
+		return width.multiply(BigInteger.valueOf(bucket)).add(width.shiftRight(1)).toString();
+	}
+
+
+
+	/***
+	 * Report the hot keys, per shard record rates and throttled record counts of every stream
+	 * this producer has published to
+	 * @return report
+	 */
+	public KinesisTrafficReport getTrafficReport(){
+		final List<KinesisTrafficReport.HotKey> hotKeys = Lists.newArrayList();
+		final Map<String, Map<String, Long>> shardRates = Maps.newTreeMap();
+		final Map<String, Map<String, Long>> throttled = Maps.newTreeMap();
+		for(String stream : this.tracker.getStreams()){
+			final int threshold = this.config(stream).getHotKeyRecordsPerSecond();
+			for(Entry<String, long[]> key : this.tracker.getKeyRates(stream, threshold).entrySet()){
+				if(key.getValue()[0] >= threshold){
+					final String shardId = this.shardMap(stream).shardFor(key.getKey(), null);
+					hotKeys.add(new KinesisTrafficReport.HotKey(stream, key.getKey(), shardId, key.getValue()[0], key.getValue()[1]));
+				}
+			}
+			shardRates.put(stream, this.tracker.getShardRates(stream, threshold));
+			throttled.put(stream, this.tracker.getThrottled(stream));
+		}
+		Collections.sort(hotKeys, new Comparator<KinesisTrafficReport.HotKey>() {
+			@Override
+			public int compare(KinesisTrafficReport.HotKey left, KinesisTrafficReport.HotKey right) {
+				return Long.compare(right.getRecordsPerSecond(), left.getRecordsPerSecond());
+			}
+		});
+		return new KinesisTrafficReport(hotKeys, shardRates, throttled);
+	}
+
+
+
+	/***
+	 * Split records into groups that satisfy the PutRecords request record count and size limits
+	 * @param records
+	 * @return requests
+	 */
+	private List<List<PendingRecord>> partitionRequests(final List<PendingRecord> records){
+		final List<List<PendingRecord>> requests = Lists.newArrayList();
+		List<PendingRecord> request = Lists.newArrayList();
+		int requestBytes = 0;
+		for(PendingRecord record : records){
+			if(request.size() >= MAX_RECORDS_PER_REQUEST || (requestBytes + record.size) > MAX_BYTES_PER_REQUEST){
+				requests.add(request);
+				request = Lists.newArrayList();
+				requestBytes = 0;
+			}
+			request.add(record);
+			requestBytes += record.size;
+		}
+		if(!request.isEmpty()){
+			requests.add(request);
+		}
+		return requests;
+	}
+
+
+
+	/***
+	 * Serialize the event with the codec configured for its stream, JSON by default
+	 * @param event
+	 * @return bytes
+	 * @throws IOException
+	 */
+	private byte[] encode(final Event event) throws IOException {
+		return this.codecs.encode(this.config(event.getTopic()).getCodec(), event);
+	}
+
+
+	/***
+	 * Save an encoded event that exceeds the record limit to the file store when the stream is configured with claim checks
+	 * @param stream
+	 * @param partitionKey
+	 * @param bytes - the encoded event
+	 * @return bytes - a {@link ClaimCheckRecord} when the event was saved, otherwise the encoded event
+	 */
+	private byte[] claimCheck(final String stream, final String partitionKey, final byte[] bytes){
+		final KinesisProducerConfig producerConfig = this.config(stream);
+		if(!producerConfig.isClaimCheck() || (bytes.length + partitionKey.getBytes(Charsets.UTF_8).length) <= MAX_BYTES_PER_RECORD){
+			return bytes;
+		}
+		final String pointer = this.claimCheckStore(stream, producerConfig).store(stream, bytes);
+		LOGGER.debug("saved event of {} bytes for stream: {} as claim check: {}", bytes.length, stream, pointer);
+		return ClaimCheckRecord.toBytes(pointer);
+	}
+
+
+	/***
+	 * Delete the saved event of a claim check record that could not be published
+	 * @param stream
+	 * @param data - the record data
+	 */
+	private void releaseClaimCheck(final String stream, final byte[] data){
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		if(ClaimCheckRecord.isClaimCheck(buffer)){
+			this.claimCheckStore(stream, this.config(stream)).delete(ClaimCheckRecord.pointer(buffer));
+		}
+	}
+
+
+	private ClaimCheckStore claimCheckStore(final String stream, final KinesisProducerConfig producerConfig){
+		ClaimCheckStore store = this.claimChecks.get(stream);
+		if(store == null){
+			Preconditions.checkState(this.files != null, "Claim checks are enabled for stream: %s but no file store factory is available, configure s3", stream);
+			final ClaimCheckStore created = new ClaimCheckStore(this.files, producerConfig.getClaimCheckDrive(), producerConfig.getClaimCheckPrefix());
+			store = this.claimChecks.putIfAbsent(stream, created);
+			if(store == null){
+				store = created;
+			}
+		}
+		return store;
+	}
+
+
+	private KinesisProducerConfig config(final String stream){
+		final KinesisProducerConfig producerConfig = this.producerConfigs.get(stream);
+		return producerConfig != null ? producerConfig : DEFAULT_CONFIG;
+	}
+
+
+	private KinesisShardMap shardMap(final String stream){
+		KinesisShardMap shardMap = this.shardMaps.get(stream);
+		if(shardMap == null){
+			final KinesisShardMap created = new KinesisShardMap(stream, this.client, this.shardRefresher);
+			shardMap = this.shardMaps.putIfAbsent(stream, created);
+			if(shardMap == null){
+				shardMap = created;
+			}
+		}
+		return shardMap;
+	}
+
+
+
+	/***
+	 * Ensure the event contains the fields required to publish
+	 * @param event
+	 */
+	private void validate(final Event event){
+		Preconditions.checkNotNull(event, "event cannot be null");
+		Preconditions.checkNotNull(event.getEventData(), "event data cannot be null");
+		Preconditions.checkArgument(!Strings.isNullOrEmpty(event.getTopic()), "Topic is required");
+		Preconditions.checkNotNull(event.getPartitionKey(), "Partition key cannot be null");
+		Preconditions.checkArgument(!Strings.isNullOrEmpty(event.getPartitionKey().toString()), "PartitionKey is required");
+	}
+
+
+
+	/***
+	 * Exponential back off between batch attempts
+	 * @param attempt
+	 */
+	private void backOff(final int attempt) {
+		try {
+			Thread.sleep(BATCH_BACKOFF_TIME_IN_MILLIS << (attempt - 1));
+		} catch (InterruptedException e) {
+			LOGGER.debug("Interrupted sleep", e);
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -101,13 +613,58 @@ public class KinesisProducer implements Publisher{
 	public String clientId() {
 		return this.clientId;
 	}
-	
+
 
 	/***
 	 * Close the Producer
 	 */
 	@Override
 	public void close() throws IOException {
+		this.shardRefresher.shutdownNow();
+	}
 
+
+
+	/***
+	 * A record waiting to be accepted by a PutRecords request, holding one event
+	 * or, when aggregated, several events that share a partition key
+	 */
+	private static class PendingRecord {
+		private final List<Integer> indexes;
+		private final List<Event> events;
+		private final byte[] data;
+		private final PutRecordsRequestEntry entry;
+		private int size;
+		private String errorCode;
+		private String errorMessage;
+
+		PendingRecord(final int index, final Event event, final byte[] data){
+			this(Lists.newArrayList(index), Lists.newArrayList(event), event.getPartitionKey(), data);
+		}
+		private PendingRecord(final List<Integer> indexes, final List<Event> events, final String partitionKey, final byte[] data){
+			this.indexes = indexes;
+			this.events = events;
+			this.data = data;
+			this.entry = new PutRecordsRequestEntry()
+			.withPartitionKey(partitionKey)
+			.withData(ByteBuffer.wrap(data));
+			this.size = data.length + partitionKey.getBytes(Charsets.UTF_8).length;
+		}
+		static PendingRecord aggregate(final String partitionKey, final List<PendingRecord> group, final AggregatedRecord aggregate){
+			if(group.size() == 1){
+				return group.get(0);
+			}
+			final List<Integer> indexes = Lists.newArrayListWithCapacity(group.size());
+			final List<Event> events = Lists.newArrayListWithCapacity(group.size());
+			for(PendingRecord record : group){
+				indexes.addAll(record.indexes);
+				events.addAll(record.events);
+			}
+			return new PendingRecord(indexes, events, partitionKey, aggregate.toBytes());
+		}
+		void failed(final String errorCode, final String errorMessage){
+			this.errorCode = errorCode;
+			this.errorMessage = errorMessage;
+		}
 	}
 }
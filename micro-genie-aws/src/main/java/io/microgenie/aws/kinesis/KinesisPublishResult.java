@@ -0,0 +1,82 @@
+package io.microgenie.aws.kinesis;
+
+import io.microgenie.application.events.Event;
+
+
+/***
+ * The outcome of publishing a single {@link Event} as part of a Kinesis PutRecords batch
+ * <p>
+ * Successful results carry the shardId and sequence number assigned by Kinesis. Failed results
+ * carry the error code and message of the last attempt
+ *
+ * @author shawn
+ */
+public class KinesisPublishResult {
+
+	private final Event event;
+	private final boolean successful;
+	private final String shardId;
+	private final String sequenceNumber;
+	private final String errorCode;
+	private final String errorMessage;
+	private final int attempts;
+
+
+	protected KinesisPublishResult(final Event event, final boolean successful, final String shardId, final String sequenceNumber, final String errorCode, final String errorMessage, final int attempts){
+		this.event = event;
+		this.successful = successful;
+		this.shardId = shardId;
+		this.sequenceNumber = sequenceNumber;
+		this.errorCode = errorCode;
+		this.errorMessage = errorMessage;
+		this.attempts = attempts;
+	}
+
+	public Event getEvent() {
+		return event;
+	}
+	public boolean isSuccessful() {
+		return successful;
+	}
+	public String getShardId() {
+		return shardId;
+	}
+	public String getSequenceNumber() {
+		return sequenceNumber;
+	}
+	public String getErrorCode() {
+		return errorCode;
+	}
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+	public int getAttempts() {
+		return attempts;
+	}
+
+
+	/***
+	 * Create a successful publish result
+	 * @param event - The event that was published
+	 * @param shardId - The shard the event was written to
+	 * @param sequenceNumber - The sequence number assigned to the record
+	 * @param attempts - The number of attempts it took to publish the event
+	 * @return publishResult
+	 */
+	public static KinesisPublishResult succeeded(final Event event, final String shardId, final String sequenceNumber, final int attempts){
+		return new KinesisPublishResult(event, true, shardId, sequenceNumber, null, null, attempts);
+	}
+
+
+	/***
+	 * Create a failed publish result
+	 * @param event - The event that failed to publish
+	 * @param errorCode - The error code of the last attempt
+	 * @param errorMessage - The error message of the last attempt
+	 * @param attempts - The number of attempts made before giving up
+	 * @return publishResult
+	 */
+	public static KinesisPublishResult failed(final Event event, final String errorCode, final String errorMessage, final int attempts){
+		return new KinesisPublishResult(event, false, null, null, errorCode, errorMessage, attempts);
+	}
+}
@@ -2,27 +2,69 @@ package io.microgenie.aws.kinesis;
 
 
 
+import io.microgenie.application.blob.ClaimCheckStore;
 import io.microgenie.application.events.Event;
+import io.microgenie.application.events.EventBatchException;
+import io.microgenie.application.events.EventCodecs;
 import io.microgenie.application.events.EventHandler;
+import io.microgenie.aws.config.KinesisConsumerConfig;
+import io.microgenie.aws.config.KinesisConsumerConfig.DispatchMode;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.KinesisClientLibDependencyException;
 import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ThrottlingException;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
 import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
 import com.amazonaws.services.kinesis.model.Record;
-import com.amazonaws.services.route53.model.ThrottlingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
 * Kinesis Record Processor
+* <p>
+* Events that fail are not retried in place. They are parked with an exponential backoff and jitter
+* and redelivered on later calls to {@link #processRecords(List, IRecordProcessorCheckpointer)}, so that
+* healthy records on the shard keep flowing. Events that reach the configured maximum attempts, and records
+* that cannot be decoded, are sent to the {@link DeadLetterSink}.
+* <p>
+* Checkpoints are taken at the highest sequence number for which every record up to and including it has been
+* handled or dead lettered, so a fail over redelivers parked events and anything after them, but nothing before.
+* Checkpoints are taken once the configured number of records has been consumed or the checkpoint interval has passed.
+* Because later events are delivered while earlier events wait, a retried event can be handled after events
+* that followed it on the same partition key.
+* <p>
+* In {@link DispatchMode#PARALLEL} mode events are fanned out to single threaded lanes chosen by partition key, which keeps
+* per key ordering while different keys are handled concurrently. Each call waits for every lane to finish its events 
+* before returning, so the shard is only checkpointed once every event before the checkpoint has completed
+* <p>
+* {@link ClaimCheckRecord}s are resolved by streaming the saved event from the {@link ClaimCheckStore} before the event is
+* dispatched. A failed read is parked and retried like a failed event, a saved event that cannot be decoded or read within the
+* maximum attempts is dead lettered with the pointer as its data, and the saved event is kept. When enabled, saved events are
+* deleted only once a checkpoint passes their record, so a fail over can still resolve the records it redelivers
 */
 public class KinesisRawEventRecordProcessor  implements IRecordProcessor {
    
@@ -30,25 +72,67 @@ public class KinesisRawEventRecordProcessor  implements IRecordProcessor {
    
    private static final long BACKOFF_TIME_IN_MILLIS = 3000L;
    private static final int NUM_RETRIES = 10;
-   private static final long CHECKPOINT_INTERVAL_MILLIS = 60000L;
    
    
    private final String topic;
    private final EventHandler handler;
    
    private final ObjectMapper mapper;
+   private final EventCodecs codecs;
+   private final KinesisConsumerConfig consumerConfig;
+   private final DeadLetterSink deadLetterSink;
+   private final ExponentialBackoff backoff;
+   private final ClaimCheckStore claimChecks;
+   
+   /** events waiting to be redelivered, in the order they failed **/
+   private final List<ConsumedEvent> retries = Lists.newLinkedList();
+   private final SequenceTracker tracker = new SequenceTracker();
+   /** claim checks of records passed by the last checkpoint, deleted once that checkpoint has been saved **/
+   private final List<String> checkpointedClaimChecks = Lists.newArrayList();
+   
+   /** single threaded executors used in PARALLEL mode, events for a partition key always use the same lane **/
+   private ExecutorService[] lanes;
    
    private String kinesisShardId;
    private long nextCheckpointTimeInMillis;		
+   private int recordsSinceCheckpoint;
    
    
    /**
     * Constructor.
     */
    public KinesisRawEventRecordProcessor(final String topic, final EventHandler  handler, final ObjectMapper mapper) {
+       this(topic, handler, mapper, new KinesisConsumerConfig(), new LoggingDeadLetterSink());
+   }
+   
+   
+   /**
+    * Constructor.
+    * @param consumerConfig - controls how events are dispatched to the handler and retried
+    * @param deadLetterSink - receives events that exhausted their retries and records that could not be decoded
+    */
+   public KinesisRawEventRecordProcessor(final String topic, final EventHandler  handler, final ObjectMapper mapper, final KinesisConsumerConfig consumerConfig, final DeadLetterSink deadLetterSink) {
+       this(topic, handler, mapper, consumerConfig, deadLetterSink, null);
+   }
+   
+   
+   /**
+    * Constructor.
+    * @param consumerConfig - controls how events are dispatched to the handler and retried
+    * @param deadLetterSink - receives events that exhausted their retries and records that could not be decoded
+    * @param claimChecks - resolves claim check records, may be null
+    */
+   public KinesisRawEventRecordProcessor(final String topic, final EventHandler  handler, final ObjectMapper mapper, final KinesisConsumerConfig consumerConfig, final DeadLetterSink deadLetterSink, final ClaimCheckStore claimChecks) {
+       Preconditions.checkArgument(consumerConfig.getMaxAttempts() > 0, "maxAttempts must be greater than zero");
+       Preconditions.checkArgument(consumerConfig.getDispatchMode() != DispatchMode.PARALLEL || consumerConfig.getParallelism() > 0, "parallelism must be greater than zero");
        this.topic = topic;
        this.handler = handler;
        this.mapper = mapper;
+       this.codecs = new EventCodecs(mapper);
+       this.consumerConfig = consumerConfig;
+       this.deadLetterSink = Preconditions.checkNotNull(deadLetterSink, "DeadLetterSink is required");
+       this.backoff = new ExponentialBackoff(consumerConfig.getInitialBackoffMs(), consumerConfig.getMaxBackoffMs());
+       this.claimChecks = claimChecks;
    }
    
    
@@ -56,6 +140,15 @@ public class KinesisRawEventRecordProcessor  implements IRecordProcessor {
 	public String getTopic() {
 		return topic;
 	}
+	
+	
+	/***
+	 * The number of events waiting to be retried
+	 * @return retryCount
+	 */
+	public int getRetryCount() {
+		return this.retries.size();
+	}
    
    
    
@@ -66,20 +159,41 @@ public class KinesisRawEventRecordProcessor  implements IRecordProcessor {
    public void initialize(final String shardId) {
        LOGGER.info("Initializing record processor for shard: {}", shardId);
        this.kinesisShardId = shardId;
+       if(this.consumerConfig.getDispatchMode() == DispatchMode.PARALLEL){
+    	   this.lanes = new ExecutorService[this.consumerConfig.getParallelism()];
+    	   for(int i = 0; i < this.lanes.length; i++){
+    		   this.lanes[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+    		   .setDaemon(true)
+    		   .setNameFormat(String.format("kinesis-%s-%s-lane-%d", this.topic, shardId, i))
+    		   .build());
+    	   }
+       }
    }
 
    
    
    /**
-    * {@inheritDoc}
+    * Redeliver parked events that are due, then deliver the new records.
+    * <p>
+    * The consumer is configured to call this method even when no new records are available
+    * so that parked events are retried on idle shards
     */
    @Override
    public void processRecords(final List<Record> records, final IRecordProcessorCheckpointer checkpointer) {
-	   LOGGER.info("Processing {} records from ", records.size(), kinesisShardId);
-       this.processRecordsWithRetries(records);
-       if (System.currentTimeMillis() > nextCheckpointTimeInMillis) {
-           this.checkpoint(checkpointer);
-           this.nextCheckpointTimeInMillis = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MILLIS;
+	   if(!records.isEmpty()){
+		   LOGGER.debug("Processing {} records from {}", records.size(), kinesisShardId);
+	   }
+	   this.processRetries(System.currentTimeMillis());
+	   this.dispatch(this.decode(records));
+	   
+	   this.recordsSinceCheckpoint += records.size();
+       if (this.recordsSinceCheckpoint >= this.consumerConfig.getCheckpointIntervalRecords() || System.currentTimeMillis() >= nextCheckpointTimeInMillis) {
+    	   final String sequenceNumber = this.tracker.checkpointSequence(this.checkpointedClaimChecks);
+    	   if(sequenceNumber != null && this.checkpoint(checkpointer, sequenceNumber)){
+    		   this.deleteClaimChecks();
+    	   }
+           this.recordsSinceCheckpoint = 0;
+           this.nextCheckpointTimeInMillis = System.currentTimeMillis() + this.consumerConfig.getCheckpointIntervalMs();
        }
    }
 
@@ -95,74 +209,453 @@ public class KinesisRawEventRecordProcessor  implements IRecordProcessor {
        LOGGER.info("Shutting down record processor for shard: " + kinesisShardId);
        /** Important to checkpoint after reaching end of shard, so we can start processing data from child shards. **/
        if (reason == ShutdownReason.TERMINATE) {
-           checkpoint(checkpointer);
+    	   this.drainRetries();
+    	   this.tracker.checkpointSequence(this.checkpointedClaimChecks);
+           if(checkpoint(checkpointer, null)){
+        	   this.deleteClaimChecks();
+           }
+       }else{
+    	   /** the lease was lost, the new owner resumes from the last checkpoint which precedes the parked events and the claim checks still held **/
+    	   if(!this.retries.isEmpty()){
+    		   LOGGER.info("Abandoning {} events waiting for retry on shard: {}", this.retries.size(), kinesisShardId);
+    		   this.retries.clear();
+    	   }
+    	   this.checkpointedClaimChecks.clear();
+       }
+       this.tracker.clear();
+       if(this.lanes != null){
+    	   for(ExecutorService lane : this.lanes){
+    		   lane.shutdown();
+    	   }
        }
    }
    
    
-
    
-   /** Process records performing retries as needed. Skip "poison pill" records.
-    * @param records
+   /***
+    * At the end of a shard there are no further calls to processRecords, so parked events are
+    * retried in place until they succeed or exhaust their attempts
     */
-   private void processRecordsWithRetries(List<Record> records) {
-	   for(Record record : records) {
-		   boolean processedSuccessfully = false;
-           for (int i = 0; i < NUM_RETRIES; i++) {
-        	   processedSuccessfully = this.processRecord(record); 
-    		   if(processedSuccessfully){
-    			   break;   
-    		   }
-    		   /** If here then a failure occurred, let's back off **/
-        	   this.backOff();
-           }
-           if (!processedSuccessfully){
-               LOGGER.error("Couldn't process record {} - skipping record", record);
-               /** TODO add an optional failure handler here, such as a dead letter queue **/
-           }
-       }
+   private void drainRetries() {
+	   while(!this.retries.isEmpty()){
+		   long next = Long.MAX_VALUE;
+		   for(ConsumedEvent retry : this.retries){
+			   next = Math.min(next, retry.getNextAttemptMillis());
+		   }
+		   final long wait = next - System.currentTimeMillis();
+		   if(wait > 0){
+			   try {
+				   Thread.sleep(wait);
+			   } catch (InterruptedException e) {
+				   LOGGER.debug("Interrupted sleep", e);
+				   Thread.currentThread().interrupt();
+				   /** the shard is checkpointed at its end next, so events still parked are dead lettered rather than lost **/
+				   for(ConsumedEvent retry : this.retries){
+					   this.deadLetter(retry, retry.getAttempts(), String.format("Interrupted at the end of shard: %s before the event was retried", this.kinesisShardId));
+				   }
+				   this.retries.clear();
+				   return;
+			   }
+		   }
+		   this.processRetries(System.currentTimeMillis());
+	   }
+   }
+   
+   
+   
+   /***
+    * Redeliver parked events whose backoff has elapsed
+    * @param now
+    */
+   private void processRetries(final long now) {
+	   if(this.retries.isEmpty()){
+		   return;
+	   }
+	   final List<ConsumedEvent> due = Lists.newArrayList();
+	   final Iterator<ConsumedEvent> iterator = this.retries.iterator();
+	   while(iterator.hasNext()){
+		   final ConsumedEvent retry = iterator.next();
+		   if(retry.isDue(now)){
+			   due.add(retry);
+			   iterator.remove();
+		   }
+	   }
+	   if(!due.isEmpty()){
+		   LOGGER.debug("Retrying {} events on shard: {} - {} still waiting", due.size(), kinesisShardId, this.retries.size());
+		   this.dispatch(due);
+	   }
+   }
+   
+   
+   
+   /***
+    * Deliver events to the handler according to the {@link DispatchMode}. Failed events are parked for retry
+    * @param events
+    */
+   private void dispatch(final List<ConsumedEvent> unresolved) {
+	   final List<ConsumedEvent> events = this.resolve(unresolved);
+	   if(events.isEmpty()){
+		   return;
+	   }
+	   switch(this.consumerConfig.getDispatchMode()){
+	   case BATCH:
+		   this.processBatch(events);
+		   break;
+	   case PARALLEL:
+		   this.processParallel(events);
+		   break;
+	   case RECORD:
+	   default:
+		   for(ConsumedEvent event : events){
+			   this.processEvent(event);
+		   }
+	   }
+   }
+   
+   
+   
+   /***
+    * Read the events of claim check records from the {@link ClaimCheckStore}. A read that fails is parked for retry 
+    * like a failed event, a saved event that cannot be decoded will never succeed and is sent to the dead letter sink
+    * @param events
+    * @return resolved - the events ready to be delivered
+    */
+   private List<ConsumedEvent> resolve(final List<ConsumedEvent> events) {
+	   final List<ConsumedEvent> resolved = Lists.newArrayListWithCapacity(events.size());
+	   for(ConsumedEvent event : events){
+		   if(event.isResolved()){
+			   resolved.add(event);
+			   continue;
+		   }
+		   final byte[] payload;
+		   try{
+			   payload = this.claimChecks.read(event.getClaimCheck());
+		   }catch(Exception ex){
+			   LOGGER.warn("Couldn't read claim check: {} for sequence number: {} on shard: {} - {}", event.getClaimCheck(), event.getSequenceNumber(), kinesisShardId, ex.getMessage());
+			   this.failed(event, ex);
+			   continue;
+		   }
+		   try{
+			   event.resolve(this.codecs.decode(ByteBuffer.wrap(payload)));
+			   resolved.add(event);
+		   }catch(Exception ex){
+			   LOGGER.error("Couldn't decode claim check: {} for sequence number: {} - {}", event.getClaimCheck(), event.getSequenceNumber(), ex.getMessage(), ex);
+			   this.deadLetter(event, event.getAttempts() + 1, reason(ex));
+		   }
+	   }
+	   return resolved;
+   }
+   
+   
+   
+   /***
+    * Fan the events out to lanes by partition key and wait for every lane to complete. 
+    * Failures are collected by the lanes and parked for retry on the calling thread
+    * @param events
+    */
+   private void processParallel(final List<ConsumedEvent> events) {
+	   final Map<Integer, List<ConsumedEvent>> laneEvents = Maps.newHashMap();
+	   for(ConsumedEvent event : events){
+		   final int lane = this.lane(event);
+		   if(!laneEvents.containsKey(lane)){
+			   laneEvents.put(lane, Lists.<ConsumedEvent>newArrayList());
+		   }
+		   laneEvents.get(lane).add(event);
+	   }
+	   
+	   final List<Future<Map<ConsumedEvent, Exception>>> results = Lists.newArrayListWithCapacity(laneEvents.size());
+	   for(Map.Entry<Integer, List<ConsumedEvent>> entry : laneEvents.entrySet()){
+		   final List<ConsumedEvent> laneBatch = entry.getValue();
+		   results.add(this.lanes[entry.getKey()].submit(new Callable<Map<ConsumedEvent, Exception>>() {
+			   @Override
+			   public Map<ConsumedEvent, Exception> call() {
+				   final Map<ConsumedEvent, Exception> failures = Maps.newLinkedHashMap();
+				   for(ConsumedEvent event : laneBatch){
+					   final Exception failure = handle(event);
+					   if(failure != null){
+						   failures.put(event, failure);
+					   }
+				   }
+				   return failures;
+			   }
+		   }));
+	   }
+	   
+	   /** wait for every lane, even if interrupted, so no event is in flight once this call returns **/
+	   for(Future<Map<ConsumedEvent, Exception>> result : results){
+		   try {
+			   for(Map.Entry<ConsumedEvent, Exception> failure : Uninterruptibles.getUninterruptibly(result).entrySet()){
+				   this.failed(failure.getKey(), failure.getValue());
+			   }
+		   } catch (ExecutionException e) {
+			   throw new IllegalStateException(String.format("kinesis lane for shard: %s failed unexpectedly", kinesisShardId), e.getCause());
+		   }
+	   }
+   }
+   
+   
+   
+   /***
+    * Choose the lane for the event by its partition key, falling back to the record partition key
+    * @param event
+    * @return lane
+    */
+   private int lane(final ConsumedEvent event) {
+	   final String key = Strings.isNullOrEmpty(event.getEvent().getPartitionKey()) ? event.getPartitionKey() : event.getEvent().getPartitionKey();
+	   return (Strings.nullToEmpty(key).hashCode() & Integer.MAX_VALUE) % this.lanes.length;
+   }
+   
+   
+   
+   /***
+    * Submit the events to the handler as a batch. If the handler reports a partial failure
+    * with an {@link EventBatchException} only the failed events are retried, any other exception
+    * retries the whole batch
+    * @param events
+    */
+   private void processBatch(final List<ConsumedEvent> events) {
+	   final List<Event> batch = Lists.newArrayListWithCapacity(events.size());
+	   for(ConsumedEvent event : events){
+		   batch.add(event.getEvent());
+	   }
+	   try{
+		   handler.handle(batch);
+		   for(ConsumedEvent event : events){
+			   this.complete(event);
+		   }
+	   }catch(EventBatchException ex){
+		   LOGGER.error(ex.getMessage(), ex);
+		   final Set<Event> failedEvents = Sets.newIdentityHashSet();
+		   failedEvents.addAll(ex.getFailedEvents());
+		   for(ConsumedEvent event : events){
+			   if(failedEvents.contains(event.getEvent())){
+				   this.failed(event, ex);
+			   }else{
+				   this.complete(event);
+			   }
+		   }
+	   }catch(Exception ex){
+		   LOGGER.error(ex.getMessage(), ex);
+		   for(ConsumedEvent event : events){
+			   this.failed(event, ex);
+		   }
+	   }
    }
 
 
 
    /***
-    * Process the record by submitting to the handler
-    * <p> 
-    * If the handler throws an exception then false is returned. 
-    * If the handler successfully returns, the true is returned 
-    * @param record
-    * @return true - if successful, otherwise false
+    * Process the event by submitting to the handler, parking it for retry if the handler throws an exception
+    * @param event
     */
-	private boolean processRecord(Record record) {
-		final ByteBuffer buffer = record.getData();
-		LOGGER.trace("sequence number: {}, partitionKey: {}, data:{}", record.getSequenceNumber(), record.getPartitionKey(), new String(buffer.array(), Charsets.UTF_8));
-		
+	private void processEvent(final ConsumedEvent event) {
+		final Exception failure = this.handle(event);
+		if(failure != null){
+			this.failed(event, failure);
+		}
+	}
+	
+	
+	/***
+	 * Submit the event to the handler, marking it complete if it was handled
+	 * @param event
+	 * @return failure - the exception thrown by the handler, or null if the event was handled
+	 */
+	private Exception handle(final ConsumedEvent event) {
 		try {
-			Event event = this.mapper.readValue(buffer.array(), Event.class);
-			handler.handle(event);
-	        return true;
+			handler.handle(event.getEvent());
+			this.complete(event);
+			return null;
 		} catch (Exception ex) {
-			 LOGGER.error(ex.getMessage(), ex);
+			LOGGER.error(ex.getMessage(), ex);
+			return ex;
+		}
+	}
+	
+	
+	
+	/***
+	 * Park the event for retry, or send it to the dead letter sink once it has exhausted its attempts
+	 * @param event
+	 * @param ex
+	 */
+	private void failed(final ConsumedEvent event, final Exception ex) {
+		final int attempts = event.failed(System.currentTimeMillis() + this.backoff.delayMillis(event.getAttempts() + 1));
+		if(attempts < this.consumerConfig.getMaxAttempts()){
+			this.retries.add(event);
+			return;
+		}
+		this.deadLetter(event, attempts, reason(ex));
+	}
+	
+	
+	
+	/***
+	 * Send the event to the dead letter sink and mark it complete
+	 * @param event
+	 * @param attempts
+	 * @param reason
+	 */
+	private void deadLetter(final ConsumedEvent event, final int attempts, final String reason) {
+		if(!event.isResolved()){
+			/** the saved event was never read, the pointer is sent and the saved event is kept **/
+			this.deadLetter(new DeadLetter(this.topic, this.kinesisShardId, event.getSequenceNumber(), event.getPartitionKey(), 
+					null, attempts, reason, ClaimCheckRecord.toBytes(event.getClaimCheck())));
+			this.tracker.complete(event.getPosition());
+			return;
+		}
+		byte[] data = null;
+		try{
+			data = this.mapper.writeValueAsBytes(event.getEvent());
+		}catch(Exception e){
+			LOGGER.warn("Unable to serialize event id: {} for the dead letter sink - {}", event.getEvent().getId(), e.getMessage());
+		}
+		this.deadLetter(new DeadLetter(this.topic, this.kinesisShardId, event.getSequenceNumber(), event.getPartitionKey(), 
+				event.getEvent().getId(), attempts, reason, data));
+		this.complete(event);
+	}
+	
+	
+	
+	/***
+	 * Mark the event complete, holding the saved event of a claim check record for deletion once a checkpoint passes it
+	 * @param event
+	 */
+	private void complete(final ConsumedEvent event) {
+		this.tracker.complete(event.getPosition(), this.consumerConfig.isDeleteClaimChecks() ? event.getClaimCheck() : null);
+	}
+	
+	
+	
+	/***
+	 * Delete the saved events of claim check records passed by a saved checkpoint
+	 */
+	private void deleteClaimChecks() {
+		for(String pointer : this.checkpointedClaimChecks){
+			this.claimChecks.delete(pointer);
 		}
-		return false;
+		this.checkpointedClaimChecks.clear();
 	}
+	
+	
+	
+	private void deadLetter(final DeadLetter deadLetter) {
+		LOGGER.error("Sending event id: {} with sequence number: {} from shard: {} to the dead letter sink after {} attempts - {}", 
+				deadLetter.getEventId(), deadLetter.getSequenceNumber(), deadLetter.getShardId(), deadLetter.getAttempts(), deadLetter.getReason());
+		try{
+			this.deadLetterSink.send(deadLetter);
+		}catch(Exception ex){
+			LOGGER.error("Failed to send event id: {} with sequence number: {} to the dead letter sink - {}", deadLetter.getEventId(), deadLetter.getSequenceNumber(), ex.getMessage(), ex);
+		}
+	}
+	
+	
+	
+	private static String reason(final Exception ex) {
+		return ex.getClass().getSimpleName() + ": " + ex.getMessage();
+	}
+
+
+
+   /***
+    * Decode the records into the events they contain. Records that cannot be decoded will never 
+    * succeed, so they are sent to the dead letter sink without being retried
+    * @param records
+    * @return events
+    */
+   private List<ConsumedEvent> decode(final List<Record> records) {
+	   final List<ConsumedEvent> events = Lists.newArrayListWithCapacity(records.size());
+	   for(Record record : records) {
+		   try{
+			   final List<String> claimChecks = Lists.newArrayList();
+			   final List<Event> decoded = this.decode(record, claimChecks);
+			   final SequenceTracker.Position position = this.tracker.track(record.getSequenceNumber(), decoded.size());
+			   for(int i = 0; i < decoded.size(); i++){
+				   events.add(new ConsumedEvent(decoded.get(i), position, record.getPartitionKey(), claimChecks.get(i)));
+			   }
+		   }catch(Exception ex){
+			   LOGGER.error("Couldn't decode record with sequence number: {} partitionKey: {} - {}", record.getSequenceNumber(), record.getPartitionKey(), ex.getMessage(), ex);
+			   final ByteBuffer buffer = record.getData().duplicate();
+			   final byte[] data = new byte[buffer.remaining()];
+			   buffer.get(data);
+			   this.deadLetter(new DeadLetter(this.topic, this.kinesisShardId, record.getSequenceNumber(), record.getPartitionKey(), null, 1, reason(ex), data));
+			   this.tracker.track(record.getSequenceNumber(), 0);
+		   }
+	   }
+	   return events;
+   }
+   
+   
+
+   /***
+    * Decode the record into the events it contains. Plain records contain a single event
+    * and aggregated records contain one or more events
+    * @param record
+    * @param claimChecks - receives the claim check pointer of each decoded event, or null for events read from the record
+    * @return events
+    * @throws IOException - if the record data cannot be deserialized
+    */
+   private List<Event> decode(final Record record, final List<String> claimChecks) throws IOException {
+	   final ByteBuffer buffer = record.getData();
+	   if(AggregatedRecord.isAggregated(buffer)){
+		   final List<ByteBuffer> entries = AggregatedRecord.deaggregate(buffer);
+		   LOGGER.trace("sequence number: {}, partitionKey: {}, aggregated events: {}", record.getSequenceNumber(), record.getPartitionKey(), entries.size());
+		   final List<Event> events = Lists.newArrayListWithCapacity(entries.size());
+		   for(ByteBuffer entry : entries){
+			   events.add(this.readEvent(entry, claimChecks));
+		   }
+		   return events;
+	   }
+	   if(LOGGER.isTraceEnabled()){
+		   LOGGER.trace("sequence number: {}, partitionKey: {}, data: {}", record.getSequenceNumber(), record.getPartitionKey(), Charsets.UTF_8.decode(buffer.duplicate()));
+	   }
+	   return Lists.newArrayList(this.readEvent(buffer, claimChecks));
+   }
+   
+   
+   
+   /***
+    * Deserialize the event with the codec identified by its header, directly from the buffer without copying the payload.
+    * The event of a claim check record is read from the claim check store when it is dispatched
+    * @param buffer
+    * @param claimChecks - receives the claim check pointer of the event, or null
+    * @return event - or null for a claim check record
+    * @throws IOException
+    */
+   private Event readEvent(final ByteBuffer buffer, final List<String> claimChecks) throws IOException {
+	   if(ClaimCheckRecord.isClaimCheck(buffer)){
+		   final String pointer = ClaimCheckRecord.pointer(buffer);
+		   Preconditions.checkState(this.claimChecks != null, "record carries claim check: %s but no file store is available, configure s3", pointer);
+		   claimChecks.add(pointer);
+		   return null;
+	   }
+	   final Event event = this.codecs.decode(buffer);
+	   claimChecks.add(null);
+	   return event;
+   }
 
    
 
    /** Checkpoint with retries.
     * @param checkpointer
+    * @param sequenceNumber - The sequence number to checkpoint at, or null to checkpoint at the last record delivered
+    * @return checkpointed - true if the checkpoint was saved
     */
-   private void checkpoint(IRecordProcessorCheckpointer checkpointer) {
-       LOGGER.info("Checkpointing shard " + kinesisShardId);
+   private boolean checkpoint(IRecordProcessorCheckpointer checkpointer, final String sequenceNumber) {
+       LOGGER.info("Checkpointing shard: {} at sequence number: {}", kinesisShardId, sequenceNumber);
        for (int i = 0; i < NUM_RETRIES; i++) {
            try {
-               checkpointer.checkpoint();
-               break;
+        	   if(sequenceNumber == null){
+        		   checkpointer.checkpoint();
+        	   }else{
+        		   checkpointer.checkpoint(sequenceNumber);
+        	   }
+               return true;
            } catch (ShutdownException se) {
                /** Ignore checkpoint if the processor instance has been shutdown (fail over). **/
                LOGGER.info("Caught shutdown exception, skipping checkpoint.", se);
                break;
-           } catch (ThrottlingException e) {
+           } catch (ThrottlingException | KinesisClientLibDependencyException e) {
                /** Backoff and re-attempt checkpoint upon transient failures **/
                if (i >= (NUM_RETRIES - 1)) {
                    LOGGER.error("Checkpoint failed after " + (i + 1) + "attempts.", e);
@@ -177,11 +670,11 @@ public class KinesisRawEventRecordProcessor  implements IRecordProcessor {
            }
            this.backOff();
        }
-       
+       return false;
    }
 
    	/***
-   	 * Called to back off when processing failed records
+   	 * Called to back off between checkpoint attempts
    	 */
    	private void backOff() {
    		try {
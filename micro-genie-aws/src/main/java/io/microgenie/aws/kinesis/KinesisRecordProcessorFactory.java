@@ -1,6 +1,8 @@
 package io.microgenie.aws.kinesis;
 
+import io.microgenie.application.blob.ClaimCheckStore;
 import io.microgenie.application.events.EventHandler;
+import io.microgenie.aws.config.KinesisConsumerConfig;
 
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
@@ -17,17 +19,29 @@ public class KinesisRecordProcessorFactory implements IRecordProcessorFactory{
 	private final String topic;
 	private final EventHandler handler;
 	private final ObjectMapper mapper;
+	private final KinesisConsumerConfig consumerConfig;
+	private final DeadLetterSink deadLetterSink;
+	private final ClaimCheckStore claimChecks;
 	
 	
 	public KinesisRecordProcessorFactory(final String topic, EventHandler  handler, final ObjectMapper mapper){
+		this(topic, handler, mapper, new KinesisConsumerConfig(), new LoggingDeadLetterSink());
+	}
+	public KinesisRecordProcessorFactory(final String topic, EventHandler  handler, final ObjectMapper mapper, final KinesisConsumerConfig consumerConfig, final DeadLetterSink deadLetterSink){
+		this(topic, handler, mapper, consumerConfig, deadLetterSink, null);
+	}
+	public KinesisRecordProcessorFactory(final String topic, EventHandler  handler, final ObjectMapper mapper, final KinesisConsumerConfig consumerConfig, final DeadLetterSink deadLetterSink, final ClaimCheckStore claimChecks){
 		this.topic = topic;
 		this.handler = handler;
 		this.mapper = mapper;
+		this.consumerConfig = consumerConfig;
+		this.deadLetterSink = deadLetterSink;
+		this.claimChecks = claimChecks;
 	}
 	
 	
 	@Override
 	public IRecordProcessor createProcessor() {
-		return new KinesisRawEventRecordProcessor(this.topic, this.handler, this.mapper);
+		return new KinesisRawEventRecordProcessor(this.topic, this.handler, this.mapper, this.consumerConfig, this.deadLetterSink, this.claimChecks);
 	}
 }
@@ -0,0 +1,177 @@
+package io.microgenie.aws.kinesis;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+/***
+ * Maps partition keys to the open shards of a stream.
+ * <p>
+ * Kinesis routes a record to the shard whose hash key range contains the MD5 hash of the
+ * partition key, or the explicit hash key when one is set. The open shards are loaded with
+ * DescribeStream and reloaded periodically so resharding is picked up.
+ * <p>
+ * Shards are loaded by the given executor, so a lookup never waits on DescribeStream. Lookups made
+ * before the shards have been loaded return {@link #UNKNOWN_SHARD}
+ *
+ * @author shawn
+ */
+public class KinesisShardMap {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(KinesisShardMap.class);
+
+	public static final String UNKNOWN_SHARD = "unknown";
+	private static final long REFRESH_INTERVAL_MILLIS = 60 * 1000L;
+
+	private final String stream;
+	private final AmazonKinesisClient client;
+	private final Executor refresher;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private volatile List<ShardRange> shards = ImmutableList.of();
+	private volatile long nextRefreshMillis;
+
+
+	/***
+	 * Shard map that loads the shards on the thread making the lookup
+	 * @param stream
+	 * @param client
+	 */
+	public KinesisShardMap(final String stream, final AmazonKinesisClient client){
+		this(stream, client, MoreExecutors.directExecutor());
+	}
+
+
+	/***
+	 * @param stream
+	 * @param client
+	 * @param refresher - loads the shards of the stream
+	 */
+	public KinesisShardMap(final String stream, final AmazonKinesisClient client, final Executor refresher){
+		this.stream = stream;
+		this.client = client;
+		this.refresher = refresher;
+	}
+
+
+	/***
+	 * Find the shard a record is routed to
+	 * @param partitionKey
+	 * @param explicitHashKey - optional, overrides the partition key hash when set
+	 * @return shardId - or {@link #UNKNOWN_SHARD} when the shards of the stream could not be loaded
+	 */
+	public String shardFor(final String partitionKey, final String explicitHashKey){
+		final BigInteger hashKey = Strings.isNullOrEmpty(explicitHashKey) ? hashKey(partitionKey) : new BigInteger(explicitHashKey);
+		for(ShardRange shard : this.getShards()){
+			if(shard.contains(hashKey)){
+				return shard.shardId;
+			}
+		}
+		return UNKNOWN_SHARD;
+	}
+
+
+	/***
+	 * The 128 bit hash kinesis computes for a partition key
+	 * @param partitionKey
+	 * @return hashKey
+	 */
+	public static BigInteger hashKey(final String partitionKey){
+		return new BigInteger(1, Hashing.md5().hashString(partitionKey, Charsets.UTF_8).asBytes());
+	}
+
+
+	/***
+	 * The shards loaded so far, starting a reload when one is due and none is running
+	 */
+	private List<ShardRange> getShards(){
+		final long now = System.currentTimeMillis();
+		if(now >= this.nextRefreshMillis && this.refreshing.compareAndSet(false, true)){
+			this.nextRefreshMillis = now + REFRESH_INTERVAL_MILLIS;
+			try{
+				this.refresher.execute(new Runnable() {
+					@Override
+					public void run() {
+						try{
+							refresh();
+						}finally{
+							refreshing.set(false);
+						}
+					}
+				});
+			}catch(RejectedExecutionException ex){
+				this.refreshing.set(false);
+				LOGGER.debug("Unable to reload shards of stream: {} - {}", this.stream, ex.getMessage());
+			}
+		}
+		return this.shards;
+	}
+
+
+	/***
+	 * Load the open shards of the stream, keeping the previous shards if the stream cannot be described
+	 */
+	private void refresh(){
+		try{
+			final List<ShardRange> open = Lists.newArrayList();
+			String lastShardId = null;
+			boolean hasMoreShards = true;
+			while(hasMoreShards){
+				final DescribeStreamResult result = this.client.describeStream(new DescribeStreamRequest()
+				.withStreamName(this.stream)
+				.withExclusiveStartShardId(lastShardId));
+				if(result == null || result.getStreamDescription() == null){
+					return;
+				}
+				for(Shard shard : result.getStreamDescription().getShards()){
+					if(shard.getSequenceNumberRange() == null || shard.getSequenceNumberRange().getEndingSequenceNumber() == null){
+						open.add(new ShardRange(shard));
+					}
+					lastShardId = shard.getShardId();
+				}
+				hasMoreShards = Boolean.TRUE.equals(result.getStreamDescription().getHasMoreShards());
+			}
+			this.shards = ImmutableList.copyOf(open);
+			LOGGER.debug("loaded {} open shards for stream: {}", open.size(), this.stream);
+		}catch(AmazonClientException ex){
+			LOGGER.warn("Unable to describe shards of stream: {} - {}", this.stream, ex.getMessage());
+		}
+	}
+
+
+
+	/***
+	 * The hash key range of a single open shard
+	 */
+	private static class ShardRange {
+		private final String shardId;
+		private final BigInteger start;
+		private final BigInteger end;
+
+		ShardRange(final Shard shard){
+			this.shardId = shard.getShardId();
+			this.start = new BigInteger(shard.getHashKeyRange().getStartingHashKey());
+			this.end = new BigInteger(shard.getHashKeyRange().getEndingHashKey());
+		}
+		boolean contains(final BigInteger hashKey){
+			return hashKey.compareTo(this.start) >= 0 && hashKey.compareTo(this.end) <= 0;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package io.microgenie.aws.kinesis;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+
+/***
+ * A snapshot of the traffic a {@link KinesisProducer} has sent, by partition key and by shard.
+ * <p>
+ * Rates are measured over the most recent one second window. Hot keys report the shard their
+ * unsalted partition key hashes to, throttled record counts are cumulative since the producer was created
+ *
+ * @author shawn
+ */
+public class KinesisTrafficReport {
+
+	private final List<HotKey> hotKeys;
+	private final Map<String, Map<String, Long>> shardRecordsPerSecond;
+	private final Map<String, Map<String, Long>> throttledRecords;
+
+
+	public KinesisTrafficReport(final List<HotKey> hotKeys, final Map<String, Map<String, Long>> shardRecordsPerSecond, final Map<String, Map<String, Long>> throttledRecords){
+		this.hotKeys = ImmutableList.copyOf(hotKeys);
+		this.shardRecordsPerSecond = ImmutableMap.copyOf(shardRecordsPerSecond);
+		this.throttledRecords = ImmutableMap.copyOf(throttledRecords);
+	}
+
+
+	/***
+	 * Partition keys whose rate exceeded the hot key threshold of their stream, hottest first
+	 * @return hotKeys
+	 */
+	@JsonProperty("hotKeys")
+	public List<HotKey> getHotKeys() {
+		return hotKeys;
+	}
+
+	/***
+	 * Records per second sent to each shard, keyed by stream then shard id
+	 * @return shardRecordsPerSecond
+	 */
+	@JsonProperty("shardRecordsPerSecond")
+	public Map<String, Map<String, Long>> getShardRecordsPerSecond() {
+		return shardRecordsPerSecond;
+	}
+
+	/***
+	 * The number of records rejected with ProvisionedThroughputExceeded, keyed by stream then shard id
+	 * @return throttledRecords
+	 */
+	@JsonProperty("throttledRecords")
+	public Map<String, Map<String, Long>> getThrottledRecords() {
+		return throttledRecords;
+	}
+
+
+
+	/***
+	 * A partition key sending more records than its stream's hot key threshold
+	 */
+	public static class HotKey {
+
+		private final String stream;
+		private final String partitionKey;
+		private final String shardId;
+		private final long recordsPerSecond;
+		private final long bytesPerSecond;
+
+		public HotKey(final String stream, final String partitionKey, final String shardId, final long recordsPerSecond, final long bytesPerSecond){
+			this.stream = stream;
+			this.partitionKey = partitionKey;
+			this.shardId = shardId;
+			this.recordsPerSecond = recordsPerSecond;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		@JsonProperty("stream")
+		public String getStream() {
+			return stream;
+		}
+		@JsonProperty("partitionKey")
+		public String getPartitionKey() {
+			return partitionKey;
+		}
+		@JsonProperty("shardId")
+		public String getShardId() {
+			return shardId;
+		}
+		@JsonProperty("recordsPerSecond")
+		public long getRecordsPerSecond() {
+			return recordsPerSecond;
+		}
+		@JsonProperty("bytesPerSecond")
+		public long getBytesPerSecond() {
+			return bytesPerSecond;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package io.microgenie.aws.kinesis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/***
+ * Default {@link DeadLetterSink} used when no dead letter destination is configured. 
+ * The dead letter is written to the error log and dropped
+ * @author shawn
+ */
+public class LoggingDeadLetterSink implements DeadLetterSink {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoggingDeadLetterSink.class);
+
+	@Override
+	public void send(final DeadLetter deadLetter) {
+		LOGGER.error("Dropping event id: {} from topic: {} shard: {} sequence number: {} after {} attempts - {}",
+				deadLetter.getEventId(), deadLetter.getTopic(), deadLetter.getShardId(), deadLetter.getSequenceNumber(), deadLetter.getAttempts(), deadLetter.getReason());
+	}
+}
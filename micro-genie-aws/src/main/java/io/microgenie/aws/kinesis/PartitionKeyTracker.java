@@ -0,0 +1,238 @@
+package io.microgenie.aws.kinesis;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Tracks the records a producer sends per stream, partition key and shard over fixed windows.
+ * <p>
+ * Rates are reported for the most recently completed window. A key is hot when its rate in the
+ * completed window, or its count so far in the current window, reaches the hot key threshold.
+ * Throttled record counts are cumulative
+ *
+ * @author shawn
+ */
+class PartitionKeyTracker {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PartitionKeyTracker.class);
+
+	static final long DEFAULT_WINDOW_MILLIS = 1000L;
+
+	private final long windowMillis;
+	private final ConcurrentMap<String, StreamTraffic> streams = Maps.newConcurrentMap();
+
+
+	PartitionKeyTracker(){
+		this(DEFAULT_WINDOW_MILLIS);
+	}
+	PartitionKeyTracker(final long windowMillis){
+		this.windowMillis = windowMillis;
+	}
+
+
+	/***
+	 * Record an event about to be sent
+	 * @param stream
+	 * @param partitionKey - the unsalted partition key
+	 * @param bytes - the serialized event size
+	 * @param hotKeyRecordsPerSecond - the hot key threshold of the stream
+	 */
+	void record(final String stream, final String partitionKey, final int bytes, final int hotKeyRecordsPerSecond){
+		final StreamTraffic traffic = this.traffic(stream);
+		traffic.roll(System.currentTimeMillis(), hotKeyRecordsPerSecond);
+		Counter counter = traffic.keys.get(partitionKey);
+		if(counter == null){
+			final Counter created = new Counter();
+			counter = traffic.keys.putIfAbsent(partitionKey, created);
+			if(counter == null){
+				counter = created;
+			}
+		}
+		counter.records.incrementAndGet();
+		counter.bytes.addAndGet(bytes);
+	}
+
+
+	/***
+	 * Record a kinesis record accepted by a shard
+	 * @param stream
+	 * @param shardId
+	 */
+	void accepted(final String stream, final String shardId){
+		increment(this.traffic(stream).shards, shardId);
+	}
+
+
+	/***
+	 * Record a kinesis record rejected with ProvisionedThroughputExceeded
+	 * @param stream
+	 * @param shardId
+	 */
+	void throttled(final String stream, final String shardId){
+		increment(this.traffic(stream).throttled, shardId);
+	}
+
+
+	/***
+	 * Determine if the partition key is currently hot
+	 * @param stream
+	 * @param partitionKey
+	 * @param hotKeyRecordsPerSecond
+	 * @return isHot
+	 */
+	boolean isHot(final String stream, final String partitionKey, final int hotKeyRecordsPerSecond){
+		final StreamTraffic traffic = this.streams.get(stream);
+		if(traffic == null){
+			return false;
+		}
+		if(traffic.hotKeys.contains(partitionKey)){
+			return true;
+		}
+		final Counter counter = traffic.keys.get(partitionKey);
+		return counter != null && counter.records.get() >= (hotKeyRecordsPerSecond * this.windowMillis / 1000L);
+	}
+
+
+	Set<String> getStreams(){
+		return ImmutableSet.copyOf(this.streams.keySet());
+	}
+
+	/***
+	 * Records and bytes per second by partition key, for the last completed window
+	 * @param stream
+	 * @return rates - key to {recordsPerSecond, bytesPerSecond}
+	 */
+	Map<String, long[]> getKeyRates(final String stream, final int hotKeyRecordsPerSecond){
+		final StreamTraffic traffic = this.traffic(stream);
+		traffic.roll(System.currentTimeMillis(), hotKeyRecordsPerSecond);
+		return traffic.keyRates;
+	}
+
+	/***
+	 * Accepted kinesis records per second by shard, for the last completed window
+	 * @param stream
+	 * @return rates
+	 */
+	Map<String, Long> getShardRates(final String stream, final int hotKeyRecordsPerSecond){
+		final StreamTraffic traffic = this.traffic(stream);
+		traffic.roll(System.currentTimeMillis(), hotKeyRecordsPerSecond);
+		return traffic.shardRates;
+	}
+
+	/***
+	 * Throttled kinesis records by shard since the tracker was created
+	 * @param stream
+	 * @return throttled
+	 */
+	Map<String, Long> getThrottled(final String stream){
+		final Map<String, Long> throttled = Maps.newTreeMap();
+		for(Entry<String, AtomicLong> shard : this.traffic(stream).throttled.entrySet()){
+			throttled.put(shard.getKey(), shard.getValue().get());
+		}
+		return throttled;
+	}
+
+
+	private StreamTraffic traffic(final String stream){
+		StreamTraffic traffic = this.streams.get(stream);
+		if(traffic == null){
+			final StreamTraffic created = new StreamTraffic(stream, this.windowMillis);
+			traffic = this.streams.putIfAbsent(stream, created);
+			if(traffic == null){
+				traffic = created;
+			}
+		}
+		return traffic;
+	}
+
+
+	private static void increment(final ConcurrentMap<String, AtomicLong> counts, final String key){
+		AtomicLong count = counts.get(key);
+		if(count == null){
+			final AtomicLong created = new AtomicLong();
+			count = counts.putIfAbsent(key, created);
+			if(count == null){
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+
+
+	/***
+	 * Traffic counters for a single stream. The current window counters are swapped out when
+	 * the window completes, increments racing with the swap may be lost which is acceptable for rates
+	 */
+	private static class StreamTraffic {
+		private final String stream;
+		private final long windowMillis;
+		private volatile long windowStart = System.currentTimeMillis();
+		private volatile ConcurrentMap<String, Counter> keys = Maps.newConcurrentMap();
+		private volatile ConcurrentMap<String, AtomicLong> shards = Maps.newConcurrentMap();
+		private final ConcurrentMap<String, AtomicLong> throttled = Maps.newConcurrentMap();
+		private volatile Map<String, long[]> keyRates = ImmutableMap.of();
+		private volatile Map<String, Long> shardRates = ImmutableMap.of();
+		private volatile Set<String> hotKeys = ImmutableSet.of();
+
+		StreamTraffic(final String stream, final long windowMillis){
+			this.stream = stream;
+			this.windowMillis = windowMillis;
+		}
+
+		void roll(final long now, final int hotKeyRecordsPerSecond){
+			if(now - this.windowStart < this.windowMillis){
+				return;
+			}
+			synchronized(this){
+				final long elapsed = now - this.windowStart;
+				if(elapsed < this.windowMillis){
+					return;
+				}
+				final ConcurrentMap<String, Counter> completedKeys = this.keys;
+				final ConcurrentMap<String, AtomicLong> completedShards = this.shards;
+				this.keys = Maps.newConcurrentMap();
+				this.shards = Maps.newConcurrentMap();
+				this.windowStart = now;
+
+				final Map<String, long[]> keyRates = Maps.newHashMap();
+				final ImmutableSet.Builder<String> hotKeys = ImmutableSet.builder();
+				for(Entry<String, Counter> key : completedKeys.entrySet()){
+					final long records = key.getValue().records.get() * 1000L / elapsed;
+					final long bytes = key.getValue().bytes.get() * 1000L / elapsed;
+					keyRates.put(key.getKey(), new long[]{records, bytes});
+					if(records >= hotKeyRecordsPerSecond){
+						hotKeys.add(key.getKey());
+						if(!this.hotKeys.contains(key.getKey())){
+							LOGGER.warn("partition key: {} of stream: {} is hot - {} records/s, {} bytes/s", key.getKey(), this.stream, records, bytes);
+						}
+					}
+				}
+				final Map<String, Long> shardRates = Maps.newTreeMap();
+				for(Entry<String, AtomicLong> shard : completedShards.entrySet()){
+					shardRates.put(shard.getKey(), shard.getValue().get() * 1000L / elapsed);
+				}
+				this.keyRates = keyRates;
+				this.shardRates = shardRates;
+				this.hotKeys = hotKeys.build();
+			}
+		}
+	}
+
+
+	private static class Counter {
+		private final AtomicLong records = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+	}
+}
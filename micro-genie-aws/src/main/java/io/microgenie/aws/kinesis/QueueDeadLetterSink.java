@@ -0,0 +1,92 @@
+package io.microgenie.aws.kinesis;
+
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.Producer;
+
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+
+/***
+ * {@link DeadLetterSink} that submits each dead letter as a json message to a queue
+ * @author shawn
+ */
+public class QueueDeadLetterSink implements DeadLetterSink {
+
+	public static final String HEADER_TOPIC = "topic";
+	public static final String HEADER_SEQUENCE_NUMBER = "sequenceNumber";
+	public static final String HEADER_REASON = "reason";
+
+	/** Queue message attribute values are limited in size **/
+	private static final int MAX_REASON_LENGTH = 1024;
+
+	private final Producer producer;
+	private final String queue;
+	private final ObjectMapper mapper;
+
+
+	public QueueDeadLetterSink(final Producer producer, final String queue, final ObjectMapper mapper){
+		this.producer = Preconditions.checkNotNull(producer, "producer is required");
+		this.queue = Preconditions.checkNotNull(queue, "dead letter queue is required");
+		this.mapper = Preconditions.checkNotNull(mapper, "ObjectMapper is required");
+	}
+
+
+	@Override
+	public void send(final DeadLetter deadLetter) {
+		final String body;
+		try {
+			body = this.mapper.writeValueAsString(deadLetter);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		final Map<String, String> headers = Maps.newHashMap();
+		headers.put(HEADER_TOPIC, deadLetter.getTopic());
+		headers.put(HEADER_SEQUENCE_NUMBER, deadLetter.getSequenceNumber());
+		if(!Strings.isNullOrEmpty(deadLetter.getReason())){
+			headers.put(HEADER_REASON, deadLetter.getReason().length() > MAX_REASON_LENGTH ? deadLetter.getReason().substring(0, MAX_REASON_LENGTH) : deadLetter.getReason());
+		}
+		final String id = deadLetter.getEventId() != null ? deadLetter.getEventId() : UUID.randomUUID().toString();
+		this.producer.submit(new DeadLetterMessage(this.queue, id, body, headers));
+	}
+
+
+
+	/***
+	 * Queue message carrying a dead letter
+	 */
+	static class DeadLetterMessage implements Message {
+		private final String queue;
+		private final String id;
+		private final String body;
+		private final Map<String, String> headers;
+		DeadLetterMessage(final String queue, final String id, final String body, final Map<String, String> headers){
+			this.queue = queue;
+			this.id = id;
+			this.body = body;
+			this.headers = headers;
+		}
+		@Override
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+		@Override
+		public String getId() {
+			return id;
+		}
+		@Override
+		public String getQueue() {
+			return queue;
+		}
+		@Override
+		public String getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package io.microgenie.aws.kinesis;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+
+/***
+ * Tracks the completion of consumed records in shard order, to find the highest sequence number
+ * at which every record up to and including it has been handled.
+ * <p>
+ * A record is complete once each event it contains has been handled or sent to the dead letter sink.
+ * Records complete out of order when events are retried or handled in parallel, the checkpoint sequence
+ * only advances past a record once every record before it has completed. Methods are thread safe
+ *
+ * @author shawn
+ */
+class SequenceTracker {
+
+	private final LinkedList<Position> positions = new LinkedList<Position>();
+	private int pendingRecords;
+
+
+	/***
+	 * Start tracking a record
+	 * @param sequenceNumber - The record sequence number
+	 * @param events - The number of events that must complete before the record is complete
+	 * @return position - completed once per event
+	 */
+	synchronized Position track(final String sequenceNumber, final int events){
+		Preconditions.checkNotNull(sequenceNumber, "sequenceNumber cannot be null");
+		Preconditions.checkArgument(events >= 0, "events cannot be negative");
+		final Position position = new Position(sequenceNumber, events);
+		this.positions.add(position);
+		if(events > 0){
+			this.pendingRecords++;
+		}
+		return position;
+	}
+
+
+	/***
+	 * Mark one event of the record as complete
+	 * @param position
+	 */
+	synchronized void complete(final Position position){
+		this.complete(position, null);
+	}
+
+
+	/***
+	 * Mark one event of the record as complete, holding the claim check the event was read from until
+	 * a checkpoint passes the record
+	 * @param position
+	 * @param claimCheck - the claim check pointer of the event, may be null
+	 */
+	synchronized void complete(final Position position, final String claimCheck){
+		Preconditions.checkState(position.remaining > 0, "all events for sequence number: %s have already completed", position.sequenceNumber);
+		if(claimCheck != null){
+			position.claimChecks.add(claimCheck);
+		}
+		position.remaining--;
+		if(position.remaining == 0){
+			this.pendingRecords--;
+		}
+	}
+
+
+	/***
+	 * Remove completed records from the head and return the sequence number of the last one removed
+	 * @return sequenceNumber - the highest sequence number that can be checkpointed, or null if no new records have completed
+	 */
+	synchronized String checkpointSequence(){
+		return this.checkpointSequence(Lists.<String>newArrayList());
+	}
+
+
+	/***
+	 * Remove completed records from the head and return the sequence number of the last one removed
+	 * @param claimChecks - receives the claim checks held by the removed records
+	 * @return sequenceNumber - the highest sequence number that can be checkpointed, or null if no new records have completed
+	 */
+	synchronized String checkpointSequence(final List<String> claimChecks){
+		String sequenceNumber = null;
+		while(!this.positions.isEmpty() && this.positions.getFirst().remaining == 0){
+			final Position position = this.positions.removeFirst();
+			claimChecks.addAll(position.claimChecks);
+			sequenceNumber = position.sequenceNumber;
+		}
+		return sequenceNumber;
+	}
+
+
+	/***
+	 * The number of tracked records with events that have not completed
+	 * @return pendingRecords
+	 */
+	synchronized int getPendingRecords(){
+		return this.pendingRecords;
+	}
+
+
+	/***
+	 * Clear all tracked records, used when the shard lease is lost
+	 */
+	synchronized void clear(){
+		this.positions.clear();
+		this.pendingRecords = 0;
+	}
+
+
+
+	/***
+	 * The position of a record in the shard
+	 */
+	static class Position {
+		private final String sequenceNumber;
+		private final List<String> claimChecks = Lists.newArrayListWithCapacity(0);
+		private int remaining;
+		private Position(final String sequenceNumber, final int remaining){
+			this.sequenceNumber = sequenceNumber;
+			this.remaining = remaining;
+		}
+		String getSequenceNumber() {
+			return sequenceNumber;
+		}
+	}
+}
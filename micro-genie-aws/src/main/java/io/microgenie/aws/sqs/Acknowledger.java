@@ -0,0 +1,238 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.MessageBatchException;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.application.util.CollectionUtil;
+import io.microgenie.aws.config.SqsConsumerConfig;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+
+/***
+ * Hands batches to a {@link MessageHandler} and acknowledges the outcome of each message.
+ * <p>
+ * Acknowledged messages are deleted with DeleteMessageBatch. Failed messages are negatively acknowledged
+ * with ChangeMessageVisibilityBatch, setting their visibility timeout to the configured nack timeout so they
+ * are redelivered quickly instead of waiting out the remaining visibility timeout.
+ * <p>
+ * Messages carrying a claim check pointer are handed to the handler with the body read from the file store,
+ * and the saved body is deleted once the message itself has been deleted
+ *
+ * @author shawn
+ */
+class Acknowledger {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Acknowledger.class);
+
+	/** SQS accepts at most 10 entries per batch request **/
+	static final int MAX_BATCH_ENTRIES = 10;
+
+	private final AmazonSQSClient client;
+	private final String queue;
+	private final String queueUrl;
+	private final int nackVisibilityTimeoutSeconds;
+	private final ClaimCheckStore claimChecks;
+	private final boolean deleteClaimChecks;
+
+
+	/***
+	 * @param client
+	 * @param queue
+	 * @param queueUrl
+	 * @param config - the nack visibility timeout and claim check clean up
+	 * @param claimChecks - resolves claim check pointers, null when no file store is available
+	 */
+	Acknowledger(final AmazonSQSClient client, final String queue, final String queueUrl, final SqsConsumerConfig config, final ClaimCheckStore claimChecks){
+		this.client = client;
+		this.queue = queue;
+		this.queueUrl = queueUrl;
+		this.nackVisibilityTimeoutSeconds = config.getNackVisibilityTimeoutSeconds();
+		this.claimChecks = claimChecks;
+		this.deleteClaimChecks = config.isDeleteClaimChecks();
+	}
+
+
+	/***
+	 * Handle the batch
+	 * @param handler
+	 * @param messages
+	 * @return failed - the messages the handler failed, every message when the handler throws anything other than a {@link MessageBatchException}.
+	 * Messages whose claim check cannot be resolved are failed without being handed to the handler
+	 */
+	List<SqsMessage> handle(final MessageHandler handler, final List<SqsMessage> messages){
+		final List<SqsMessage> unresolved = Lists.newArrayList();
+		final List<Message> resolved = Lists.newArrayListWithCapacity(messages.size());
+		for(SqsMessage message : messages){
+			try{
+				resolved.add(this.resolve(message));
+			}catch(Exception ex){
+				LOGGER.error("failed to resolve claim check of message id: {} from queue: {} - {}", message.getId(), this.queue, ex.getMessage(), ex);
+				unresolved.add(message);
+			}
+		}
+		if(resolved.isEmpty()){
+			return unresolved;
+		}
+		final List<SqsMessage> failed = this.handleResolved(handler, messages, resolved);
+		failed.addAll(unresolved);
+		return failed;
+	}
+
+
+	private List<SqsMessage> handleResolved(final MessageHandler handler, final List<SqsMessage> messages, final List<Message> resolved){
+		try{
+			handler.handleBatch(resolved);
+			return Lists.newArrayList();
+		}catch(MessageBatchException ex){
+			LOGGER.warn("{} of {} messages from queue: {} failed - {}", ex.getFailedMessages().size(), resolved.size(), this.queue, ex.getMessage());
+			final Set<String> failedIds = Sets.newHashSet();
+			for(Message message : ex.getFailedMessages()){
+				failedIds.add(message.getId());
+			}
+			final List<SqsMessage> failed = Lists.newArrayList();
+			for(SqsMessage message : messages){
+				if(failedIds.contains(message.getId())){
+					failed.add(message);
+				}
+			}
+			return failed;
+		}catch(Exception ex){
+			LOGGER.error("failed to handle batch of {} messages from queue: {} - {}", resolved.size(), this.queue, ex.getMessage(), ex);
+			final Set<String> resolvedIds = Sets.newHashSet();
+			for(Message message : resolved){
+				resolvedIds.add(message.getId());
+			}
+			final List<SqsMessage> failed = Lists.newArrayList();
+			for(SqsMessage message : messages){
+				if(resolvedIds.contains(message.getId())){
+					failed.add(message);
+				}
+			}
+			return failed;
+		}
+	}
+
+
+	/***
+	 * Replace a claim check pointer with the body saved in the file store, streaming it from the store
+	 * @param message
+	 * @return message - the message with its original body
+	 * @throws IOException
+	 */
+	private SqsMessage resolve(final SqsMessage message) throws IOException{
+		final String pointer = claimCheck(message);
+		if(pointer == null){
+			return message;
+		}
+		Preconditions.checkState(this.claimChecks != null, "message id: %s carries a claim check but no file store is available, configure s3", message.getId());
+		return message.withBody(this.claimChecks.readString(pointer));
+	}
+
+
+	private static String claimCheck(final SqsMessage message){
+		return message.getHeaders() != null ? message.getHeaders().get(ClaimCheckStore.HEADER) : null;
+	}
+
+
+	/***
+	 * The messages of the batch that are not in the failed list
+	 */
+	static List<SqsMessage> acknowledged(final List<SqsMessage> messages, final List<SqsMessage> failed){
+		if(failed.isEmpty()){
+			return messages;
+		}
+		final List<SqsMessage> acknowledged = Lists.newArrayList(messages);
+		acknowledged.removeAll(failed);
+		return acknowledged;
+	}
+
+
+	/***
+	 * Delete the messages in batches of up to 10
+	 * @param messages
+	 */
+	void delete(final List<SqsMessage> messages){
+		for(List<SqsMessage> batch : Lists.partition(messages, MAX_BATCH_ENTRIES)){
+			this.deleteBatch(batch);
+		}
+	}
+
+
+	/***
+	 * Delete a single batch of at most 10 messages, failures are logged and the messages become visible again.
+	 * The claim checks of deleted messages are deleted afterwards
+	 * @param messages
+	 */
+	void deleteBatch(final List<SqsMessage> messages){
+		final List<DeleteMessageBatchRequestEntry> entries = Lists.newArrayListWithCapacity(messages.size());
+		for(SqsMessage message : messages){
+			entries.add(new DeleteMessageBatchRequestEntry(message.getId(), message.getReceiptHandle()));
+		}
+		final Set<String> failedIds = Sets.newHashSet();
+		try{
+			final DeleteMessageBatchResult result = this.client.deleteMessageBatch(new DeleteMessageBatchRequest(this.queueUrl).withEntries(entries));
+			if(result != null && CollectionUtil.hasElements(result.getFailed())){
+				for(BatchResultErrorEntry failed : result.getFailed()){
+					LOGGER.warn("failed to delete message id: {} from queue: {} - code: {}, message: {}", failed.getId(), this.queue, failed.getCode(), failed.getMessage());
+					failedIds.add(failed.getId());
+				}
+			}
+		}catch(Exception ex){
+			LOGGER.error("failed to delete batch of {} messages from queue: {} - {}", entries.size(), this.queue, ex.getMessage(), ex);
+			return;
+		}
+		if(this.claimChecks != null && this.deleteClaimChecks){
+			for(SqsMessage message : messages){
+				final String pointer = claimCheck(message);
+				if(pointer != null && !failedIds.contains(message.getId())){
+					this.claimChecks.delete(pointer);
+				}
+			}
+		}
+	}
+
+
+	/***
+	 * Release the messages for redelivery after the nack visibility timeout
+	 * @param messages
+	 */
+	void nack(final List<SqsMessage> messages){
+		for(List<SqsMessage> batch : Lists.partition(messages, MAX_BATCH_ENTRIES)){
+			final List<ChangeMessageVisibilityBatchRequestEntry> entries = Lists.newArrayListWithCapacity(batch.size());
+			for(SqsMessage message : batch){
+				entries.add(new ChangeMessageVisibilityBatchRequestEntry(message.getId(), message.getReceiptHandle())
+				.withVisibilityTimeout(this.nackVisibilityTimeoutSeconds));
+			}
+			try{
+				final ChangeMessageVisibilityBatchResult result = this.client.changeMessageVisibilityBatch(
+						new ChangeMessageVisibilityBatchRequest(this.queueUrl, entries));
+				if(result != null && CollectionUtil.hasElements(result.getFailed())){
+					for(BatchResultErrorEntry failed : result.getFailed()){
+						LOGGER.warn("failed to release message id: {} of queue: {} - code: {}, message: {}", failed.getId(), this.queue, failed.getCode(), failed.getMessage());
+					}
+				}
+			}catch(Exception ex){
+				LOGGER.error("failed to release batch of {} messages from queue: {} - {}", entries.size(), this.queue, ex.getMessage(), ex);
+			}
+		}
+	}
+}
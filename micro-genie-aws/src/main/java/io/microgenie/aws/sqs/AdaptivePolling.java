@@ -0,0 +1,134 @@
+package io.microgenie.aws.sqs;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+
+/***
+ * Adapts the receive concurrency and polling rate of the {@link Poller}s of a single queue.
+ * <p>
+ * Receive results are observed over windows of receives. When most receives in a window come back
+ * empty, one poller is parked so an idle queue is long polled by a single thread. When most receives
+ * come back with a full batch the queue has a backlog and the number of active pollers is doubled, up to
+ * the configured thread count. Pollers also wait an increasing idle delay, capped at the configured
+ * maximum, between consecutive empty receives
+ *
+ * @author shawn
+ */
+class AdaptivePolling {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptivePolling.class);
+
+	private static final int WINDOW_RECEIVES = 10;
+	private static final double SCALE_DOWN_EMPTY_RATIO = 0.5;
+	private static final double SCALE_UP_FULL_RATIO = 0.5;
+	private static final long MIN_IDLE_DELAY_MS = 100L;
+	private static final long PARKED_RECHECK_MS = 1000L;
+
+	private final String queue;
+	private final int maxPollers;
+	private final int maxMessages;
+	private final long maxIdleDelayMs;
+	private final boolean adaptive;
+
+	private int activePollers;
+	private int receives;
+	private int emptyReceives;
+	private int fullReceives;
+	private int consecutiveEmptyReceives;
+
+
+	/***
+	 * @param queue - the queue being polled
+	 * @param maxPollers - the number of poller threads
+	 * @param maxMessages - the maximum number of messages requested by a single receive
+	 * @param maxIdleDelayMs - the maximum delay between consecutive empty receives, zero disables the delay
+	 * @param adaptive - when false all pollers are always active and no idle delay is applied
+	 */
+	AdaptivePolling(final String queue, final int maxPollers, final int maxMessages, final long maxIdleDelayMs, final boolean adaptive){
+		Preconditions.checkArgument(maxPollers > 0, "maxPollers must be greater than zero");
+		this.queue = queue;
+		this.maxPollers = maxPollers;
+		this.maxMessages = maxMessages;
+		this.maxIdleDelayMs = maxIdleDelayMs;
+		this.adaptive = adaptive;
+		this.activePollers = maxPollers;
+	}
+
+
+	/***
+	 * Block while the poller is parked
+	 *
+	 * @param index - the index of the poller, pollers with an index below the active poller count may receive
+	 * @param running - the consumer run flag
+	 * @return mayReceive - false if the consumer was stopped while waiting
+	 * @throws InterruptedException
+	 */
+	synchronized boolean awaitTurn(final int index, final AtomicBoolean running) throws InterruptedException {
+		while(running.get() && index >= this.activePollers){
+			this.wait(PARKED_RECHECK_MS);
+		}
+		return running.get();
+	}
+
+
+	/***
+	 * Record the number of messages returned by a receive
+	 * @param count
+	 */
+	synchronized void received(final int count){
+		if(!this.adaptive){
+			return;
+		}
+		this.receives++;
+		if(count == 0){
+			this.emptyReceives++;
+			this.consecutiveEmptyReceives++;
+		}else{
+			this.consecutiveEmptyReceives = 0;
+			if(count >= this.maxMessages){
+				this.fullReceives++;
+			}
+		}
+		if(this.receives < WINDOW_RECEIVES){
+			return;
+		}
+
+		final int previous = this.activePollers;
+		if(this.fullReceives >= this.receives * SCALE_UP_FULL_RATIO){
+			this.activePollers = Math.min(this.maxPollers, this.activePollers * 2);
+		}else if(this.emptyReceives >= this.receives * SCALE_DOWN_EMPTY_RATIO){
+			this.activePollers = Math.max(1, this.activePollers - 1);
+		}
+		if(this.activePollers != previous){
+			LOGGER.debug("queue: {} active pollers changed from {} to {} - receives: {}, empty: {}, full: {}",
+					this.queue, previous, this.activePollers, this.receives, this.emptyReceives, this.fullReceives);
+			this.notifyAll();
+		}
+		this.receives = 0;
+		this.emptyReceives = 0;
+		this.fullReceives = 0;
+	}
+
+
+	/***
+	 * The delay a poller should wait before its next receive, growing exponentially with consecutive empty receives
+	 * @return idleDelayMs
+	 */
+	synchronized long idleDelayMillis(){
+		if(!this.adaptive || this.maxIdleDelayMs <= 0 || this.consecutiveEmptyReceives == 0){
+			return 0;
+		}
+		final int shift = Math.min(this.consecutiveEmptyReceives - 1, 16);
+		return Math.min(this.maxIdleDelayMs, MIN_IDLE_DELAY_MS << shift);
+	}
+
+
+	synchronized int getActivePollers(){
+		return this.activePollers;
+	}
+}
@@ -0,0 +1,220 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.queue.Consumer;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.admin.SqsQueueAdmin.QueueDepth;
+import io.microgenie.aws.config.SqsConsumerConfig;
+
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/***
+ * An SQS {@link Consumer} that scales its polling threads with the depth of the queue.
+ * <p>
+ * Every scaleIntervalMs the approximate number of visible and in flight messages is sampled through the
+ * {@link SqsQueueAdmin}. The desired poller count is the sampled backlog divided by the target backlog per thread,
+ * bounded by the configured minThreads and maxThreads. Pollers are added straight up to the desired count so bursts
+ * are drained quickly, and retired one per interval so a briefly empty queue does not tear down every thread.
+ * A retired poller finishes the batch it is handling before its thread exits
+ *
+ * @author shawn
+ */
+public class AutoscalingSqsConsumer implements Consumer{
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AutoscalingSqsConsumer.class);
+
+	private final AmazonSQSClient client;
+	private final SqsQueueAdmin queueAdmin;
+	private final SqsConsumerConfig config;
+	private final String queueUrl;
+	private final MessageHandler handler;
+	private final VisibilityHeartbeat heartbeat;
+	private final ClaimCheckStore claimChecks;
+	private final AdaptivePolling polling;
+
+	/** The run flags of the active pollers, the most recently added poller is retired first **/
+	private final Deque<AtomicBoolean> pollers = Queues.newArrayDeque();
+	private final ExecutorService executor;
+	private final ScheduledExecutorService scaler;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+
+
+	/***
+	 * @param client
+	 * @param admin
+	 * @param config
+	 * @param claimChecks - resolves claim check pointers of received messages, may be null
+	 */
+	public AutoscalingSqsConsumer(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config, final ClaimCheckStore claimChecks){
+		this.client = Preconditions.checkNotNull(client, "AmazonSQSClient cannot be null");
+		this.queueAdmin = Preconditions.checkNotNull(admin, "SqsQueueAdmin cannot be null");
+		this.config = Preconditions.checkNotNull(config, "SqsConsumerConfig cannot be null");
+		Preconditions.checkArgument(config.getMinThreads() > 0, "minThreads must be greater than zero");
+		Preconditions.checkArgument(config.getMaxThreads() >= config.getMinThreads(), "maxThreads must be greater than or equal to minThreads");
+		Preconditions.checkArgument(config.getTargetBacklogPerThread() > 0, "targetBacklogPerThread must be greater than zero");
+		Preconditions.checkArgument(config.getScaleIntervalMs() > 0, "scaleIntervalMs must be greater than zero");
+		try{
+			this.handler = config.createHandler();
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		this.queueUrl = admin.getQueueUrl(config.getQueue());
+		this.heartbeat = SqsConsumer.createHeartbeat(client, admin, config);
+		this.claimChecks = claimChecks;
+		/** Scaling is driven by queue depth, so the pollers are never parked by the receive based adaptive polling **/
+		this.polling = new AdaptivePolling(config.getQueue(), config.getMaxThreads(), config.getMaxMessages(), 0, false);
+		this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+		.setNameFormat("sqs-autoscaling-" + config.getQueue() + "-%d")
+		.build());
+		this.scaler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+		.setDaemon(true)
+		.setNameFormat("sqs-autoscaler-" + config.getQueue() + "-%d")
+		.build());
+	}
+
+
+
+	/***
+	 * The number of pollers needed to hold the target backlog per thread, bounded by minThreads and maxThreads
+	 * @param depth - the sampled queue depth
+	 * @param config
+	 * @return desiredPollers
+	 */
+	static int desiredPollers(final QueueDepth depth, final SqsConsumerConfig config){
+		final long target = config.getTargetBacklogPerThread();
+		final long desired = (depth.getTotal() + target - 1) / target;
+		return (int)Math.max(config.getMinThreads(), Math.min(config.getMaxThreads(), desired));
+	}
+
+
+
+	/***
+	 * Start the minimum number of pollers and begin sampling the queue depth
+	 */
+	@Override
+	public void start() {
+		if(!this.running.getAndSet(true)){
+			if(this.heartbeat != null){
+				this.heartbeat.start();
+			}
+			this.resize(this.config.getMinThreads());
+			this.scaler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						scale();
+					}catch(Exception ex){
+						LOGGER.error("failed to scale consumer for queue: {} - {}", config.getQueue(), ex.getMessage(), ex);
+					}
+				}
+			}, this.config.getScaleIntervalMs(), this.config.getScaleIntervalMs(), TimeUnit.MILLISECONDS);
+			LOGGER.info("autoscaling consumer started for queue: {} - threads: {} to {}", this.config.getQueue(), this.config.getMinThreads(), this.config.getMaxThreads());
+		}else{
+			LOGGER.info("consumer for queue: {} is already running. This call has no effect", this.config.getQueue());
+		}
+	}
+
+
+
+	/***
+	 * Sample the queue depth and add or retire pollers towards the desired count
+	 * @return pollers - the number of active pollers after scaling
+	 */
+	int scale(){
+		if(!this.running.get()){
+			return this.getPollerCount();
+		}
+		final QueueDepth depth = this.queueAdmin.getQueueDepth(this.config.getQueue());
+		final int desired = desiredPollers(depth, this.config);
+		final int current = this.getPollerCount();
+		if(desired > current){
+			this.resize(desired);
+		}else if(desired < current){
+			this.resize(current - 1);
+		}
+		if(desired != current){
+			LOGGER.debug("queue: {} visible: {} in flight: {} - pollers changed from {} towards {}",
+					this.config.getQueue(), depth.getVisible(), depth.getInFlight(), current, desired);
+		}
+		return this.getPollerCount();
+	}
+
+
+
+	private synchronized void resize(final int count){
+		while(this.running.get() && this.pollers.size() < count){
+			final AtomicBoolean runFlag = new AtomicBoolean(true);
+			final int index = this.pollers.size();
+			this.pollers.push(runFlag);
+			this.executor.execute(new Poller(this.config.getQueue(), this.queueUrl, this.handler, this.client, runFlag,
+					this.config, this.polling, index, this.heartbeat, this.claimChecks));
+		}
+		while(this.pollers.size() > count){
+			this.pollers.pop().set(false);
+		}
+	}
+
+
+
+	/***
+	 * The number of active pollers
+	 * @return pollerCount
+	 */
+	synchronized int getPollerCount(){
+		return this.pollers.size();
+	}
+
+
+
+	/***
+	 * Stop sampling the queue depth and stop all running pollers
+	 */
+	@Override
+	public void stop() {
+		if(this.running.getAndSet(false)){
+			this.scaler.shutdownNow();
+			this.resize(0);
+			try {
+				LOGGER.info("waiting {} milliseconds for SQS consumer threads to shutdown", config.getShutdownTimeMS());
+				this.executor.shutdown();
+				if(!this.executor.awaitTermination(config.getShutdownTimeMS(),TimeUnit.MILLISECONDS)){
+					this.executor.shutdownNow();
+				}
+			} catch (Exception e) {
+				this.executor.shutdownNow();
+			}
+			if(this.heartbeat != null){
+				this.heartbeat.stop();
+			}
+			LOGGER.info("autoscaling consumer has been stopped for queue: {}", this.config.getQueue());
+		}
+	}
+
+
+
+	/**
+	 * If true, the consumer is running, polling messages
+	 */
+	@Override
+	public boolean isRunning() {
+		return this.running.get();
+	}
+}
@@ -0,0 +1,339 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.Producer;
+import io.microgenie.aws.config.SqsProducerConfig;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/***
+ * Buffered SQS Producer
+ * <p>
+ * Messages submitted from any thread are coalesced per queue into SendMessageBatch requests. A queue's
+ * batch is handed to the sender threads once it holds 10 messages, once the next message would take it over
+ * 256 KB, or once its first message has waited for the configured linger time. Batches are sent with
+ * {@link SqsProducer#sendBatch(String, List)}, which retries failed entries with backoff.
+ * <p>
+ * At most bufferSize messages are buffered or in flight, {@link #submit(Message)} blocks while the buffer is full.
+ * Batches of the same queue may be sent concurrently, configure a single sender thread when the order of FIFO message groups matters
+ *
+ * @author shawn
+ */
+public class BufferedSqsProducer implements Producer, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BufferedSqsProducer.class);
+
+	private final SqsProducer producer;
+	private final long lingerMs;
+	private final long closeTimeoutMs;
+	private final Semaphore capacity;
+	private final ConcurrentMap<String, QueueBuffer> buffers = Maps.newConcurrentMap();
+	private final Set<Future<?>> inFlight = Sets.newConcurrentHashSet();
+	private final ExecutorService senders;
+	private final ScheduledExecutorService lingerScheduler;
+	/** submits buffer under the read lock, close takes the write lock so no message is buffered after the final dispatch **/
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private volatile boolean closed;
+
+
+	/***
+	 * @param producer - sends the batches
+	 * @param config
+	 */
+	public BufferedSqsProducer(final SqsProducer producer, final SqsProducerConfig config){
+		Preconditions.checkNotNull(producer, "SqsProducer cannot be null");
+		Preconditions.checkArgument(config.getBufferSize() > 0, "bufferSize must be greater than 0");
+		Preconditions.checkArgument(config.getSenderThreads() > 0, "senderThreads must be greater than 0");
+		this.producer = producer;
+		this.lingerMs = Math.max(0, config.getLingerMs());
+		this.closeTimeoutMs = config.getCloseTimeoutMs();
+		this.capacity = new Semaphore(config.getBufferSize());
+		this.senders = Executors.newFixedThreadPool(config.getSenderThreads(), new ThreadFactoryBuilder()
+		.setDaemon(true)
+		.setNameFormat("sqs-producer-sender-%d")
+		.build());
+		this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+		.setDaemon(true)
+		.setNameFormat("sqs-producer-linger-%d")
+		.build());
+		final long checkIntervalMs = Math.max(1, this.lingerMs / 4);
+		this.lingerScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					dispatchLingering(System.currentTimeMillis());
+				}catch(Exception ex){
+					LOGGER.error("failed to dispatch lingering sqs batches - {}", ex.getMessage(), ex);
+				}
+			}
+		}, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+
+
+	/***
+	 * Buffer the message, blocking while the buffer is full
+	 * @param message
+	 * @throws IllegalStateException - if the producer has been closed
+	 */
+	@Override
+	public void submit(final Message message) {
+		Preconditions.checkState(!this.closed, "BufferedSqsProducer has been closed");
+		try {
+			this.capacity.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for sqs producer buffer capacity", e);
+		}
+		this.closeLock.readLock().lock();
+		try{
+			if(this.closed){
+				this.capacity.release();
+				throw new IllegalStateException("BufferedSqsProducer has been closed");
+			}
+			final List<Message> full = this.buffer(message.getQueue()).add(message);
+			if(full != null){
+				this.dispatch(message.getQueue(), full);
+			}
+		}finally{
+			this.closeLock.readLock().unlock();
+		}
+	}
+
+
+
+	/***
+	 * Buffer each of the messages, they are batched with any other messages submitted to the same queue
+	 * @param messages
+	 */
+	@Override
+	public void submitBatch(final List<Message> messages) {
+		for(Message message : messages){
+			this.submit(message);
+		}
+	}
+
+
+
+	/***
+	 * Send all buffered messages and wait for every in flight batch to complete
+	 */
+	public void flush(){
+		this.dispatchLingering(Long.MAX_VALUE);
+		for(Future<?> future : Lists.newArrayList(this.inFlight)){
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				LOGGER.error("sqs batch failed - {}", e.getMessage(), e);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Send the buffered messages, waiting up to the close timeout for in flight batches before shutting down the senders
+	 */
+	@Override
+	public synchronized void close() {
+		if(this.closed){
+			return;
+		}
+		this.closeLock.writeLock().lock();
+		try{
+			this.closed = true;
+		}finally{
+			this.closeLock.writeLock().unlock();
+		}
+		this.lingerScheduler.shutdownNow();
+		try {
+			this.lingerScheduler.awaitTermination(this.closeTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.dispatchLingering(Long.MAX_VALUE);
+		final long deadline = System.currentTimeMillis() + this.closeTimeoutMs;
+		for(Future<?> future : Lists.newArrayList(this.inFlight)){
+			try {
+				future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (TimeoutException e) {
+				LOGGER.warn("timed out after {} ms waiting for {} sqs batches to be sent", this.closeTimeoutMs, this.inFlight.size());
+				break;
+			} catch (ExecutionException e) {
+				LOGGER.error("sqs batch failed - {}", e.getMessage(), e);
+			}
+		}
+		/** batches still queued when the timeout expired are cancelled, releasing their capacity **/
+		int unsent = 0;
+		for(Runnable task : this.senders.shutdownNow()){
+			if(task instanceof SendTask && ((SendTask)task).cancel(false)){
+				unsent += ((SendTask)task).size;
+			}
+		}
+		if(unsent > 0){
+			LOGGER.error("BufferedSqsProducer was closed with {} unsent messages", unsent);
+		}
+	}
+
+
+
+	/***
+	 * Dispatch the batches whose first message was buffered at least linger milliseconds before now
+	 * @param now
+	 */
+	void dispatchLingering(final long now){
+		for(Entry<String, QueueBuffer> entry : this.buffers.entrySet()){
+			final List<Message> batch = entry.getValue().drainIfLingered(now, this.lingerMs);
+			if(batch != null){
+				this.dispatch(entry.getKey(), batch);
+			}
+		}
+	}
+
+
+
+	private void dispatch(final String queue, final List<Message> batch){
+		final SendTask task = new SendTask(queue, batch);
+		this.inFlight.add(task);
+		try{
+			this.senders.execute(task);
+		}catch(RejectedExecutionException ex){
+			LOGGER.error("failed to send batch of {} messages to queue: {}, the producer has been closed", batch.size(), queue);
+			task.cancel(false);
+		}
+	}
+
+
+
+	private QueueBuffer buffer(final String queue){
+		QueueBuffer buffer = this.buffers.get(queue);
+		if(buffer == null){
+			final QueueBuffer created = new QueueBuffer();
+			buffer = this.buffers.putIfAbsent(queue, created);
+			if(buffer == null){
+				buffer = created;
+			}
+		}
+		return buffer;
+	}
+
+
+
+	/***
+	 * Sends a batch, releasing its buffer capacity once the send completes or is cancelled
+	 */
+	private class SendTask extends FutureTask<Void> {
+
+		private final int size;
+
+		SendTask(final String queue, final List<Message> batch){
+			super(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						for(Message message : producer.sendBatch(queue, batch)){
+							LOGGER.error("Failed to submit messageId: {} to queue: {}", message.getId(), queue);
+						}
+					}catch(Exception ex){
+						LOGGER.error("failed to send batch of {} messages to queue: {} - {}", batch.size(), queue, ex.getMessage(), ex);
+					}
+				}
+			}, null);
+			this.size = batch.size();
+		}
+
+		@Override
+		protected void done() {
+			capacity.release(this.size);
+			inFlight.remove(this);
+		}
+	}
+
+
+
+	/***
+	 * The pending batch of a single queue
+	 */
+	private static class QueueBuffer {
+
+		private List<Message> pending = Lists.newArrayList();
+		private int pendingBytes;
+		private long firstBufferedAtMillis;
+
+
+		/***
+		 * Add the message to the pending batch
+		 * @param message
+		 * @return batch - a batch ready to be sent, or null when the pending batch can take more messages
+		 */
+		synchronized List<Message> add(final Message message){
+			final int size = SqsProducer.messageSize(message);
+			List<Message> ready = null;
+			if(!this.pending.isEmpty() && (this.pendingBytes + size) > SqsProducer.MAX_BATCH_BYTES){
+				ready = this.drain();
+			}
+			if(this.pending.isEmpty()){
+				this.firstBufferedAtMillis = System.currentTimeMillis();
+			}
+			this.pending.add(message);
+			this.pendingBytes += size;
+			if(this.pending.size() >= SqsProducer.MAX_BATCH_ENTRIES || this.pendingBytes >= SqsProducer.MAX_BATCH_BYTES){
+				/** the previous batch was just drained, so the message alone fills a batch - send both together **/
+				if(ready != null){
+					ready.addAll(this.drain());
+					return ready;
+				}
+				return this.drain();
+			}
+			return ready;
+		}
+
+
+		synchronized List<Message> drainIfLingered(final long now, final long lingerMs){
+			if(this.pending.isEmpty() || (now - this.firstBufferedAtMillis) < lingerMs){
+				return null;
+			}
+			return this.drain();
+		}
+
+
+		private List<Message> drain(){
+			final List<Message> batch = this.pending;
+			this.pending = Lists.newArrayList();
+			this.pendingBytes = 0;
+			return batch;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package io.microgenie.aws.sqs;
+
+import java.util.List;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+
+
+/***
+ * Adds the MessageGroupId and MessageDeduplicationId parameters required by FIFO queues to marshalled send requests.
+ * <p>
+ * The version of the SQS client in use predates FIFO queues, so its request models cannot carry these parameters.
+ * {@link SqsProducer} sends messages bound for FIFO queues as {@link FifoSendMessageRequest}s and
+ * {@link FifoSendMessageBatchRequestEntry}s, and this handler, registered on the client by {@link SqsFactory},
+ * writes their ids into the query parameters before the request is signed
+ *
+ * @author shawn
+ */
+class FifoRequestHandler extends RequestHandler2 {
+
+	private static final String BATCH_ENTRY_PREFIX = "SendMessageBatchRequestEntry.";
+
+
+	@Override
+	public void beforeRequest(final Request<?> request) {
+		final AmazonWebServiceRequest original = request.getOriginalRequest();
+		if(original instanceof FifoSendMessageRequest){
+			final FifoSendMessageRequest send = (FifoSendMessageRequest)original;
+			addParameters(request, "", send.getMessageGroupId(), send.getMessageDeduplicationId());
+		}else if(original instanceof SendMessageBatchRequest){
+			final List<SendMessageBatchRequestEntry> entries = ((SendMessageBatchRequest)original).getEntries();
+			for(int i = 0; i < entries.size(); i++){
+				if(entries.get(i) instanceof FifoSendMessageBatchRequestEntry){
+					final FifoSendMessageBatchRequestEntry entry = (FifoSendMessageBatchRequestEntry)entries.get(i);
+					/** batch entries are marshalled with a one based index **/
+					addParameters(request, BATCH_ENTRY_PREFIX + (i + 1) + ".", entry.getMessageGroupId(), entry.getMessageDeduplicationId());
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public void afterResponse(final Request<?> request, final Response<?> response) {}
+
+
+	@Override
+	public void afterError(final Request<?> request, final Response<?> response, final Exception e) {}
+
+
+	private static void addParameters(final Request<?> request, final String prefix, final String groupId, final String deduplicationId){
+		if(groupId != null){
+			request.addParameter(prefix + SqsMessage.MESSAGE_GROUP_ID, groupId);
+		}
+		if(deduplicationId != null){
+			request.addParameter(prefix + SqsMessage.MESSAGE_DEDUPLICATION_ID, deduplicationId);
+		}
+	}
+
+
+
+	/***
+	 * A SendMessage request to a FIFO queue
+	 */
+	static class FifoSendMessageRequest extends SendMessageRequest {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String messageGroupId;
+		private final String messageDeduplicationId;
+
+		FifoSendMessageRequest(final String messageGroupId, final String messageDeduplicationId){
+			this.messageGroupId = messageGroupId;
+			this.messageDeduplicationId = messageDeduplicationId;
+		}
+		String getMessageGroupId() {
+			return messageGroupId;
+		}
+		String getMessageDeduplicationId() {
+			return messageDeduplicationId;
+		}
+	}
+
+
+
+	/***
+	 * A SendMessageBatch entry bound for a FIFO queue
+	 */
+	static class FifoSendMessageBatchRequestEntry extends SendMessageBatchRequestEntry {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String messageGroupId;
+		private final String messageDeduplicationId;
+
+		FifoSendMessageBatchRequestEntry(final String messageGroupId, final String messageDeduplicationId){
+			this.messageGroupId = messageGroupId;
+			this.messageDeduplicationId = messageDeduplicationId;
+		}
+		String getMessageGroupId() {
+			return messageGroupId;
+		}
+		String getMessageDeduplicationId() {
+			return messageDeduplicationId;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.queue.Consumer;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.application.util.CollectionUtil;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.config.SqsConsumerConfig;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/***
+ * An SQS {@link Consumer} for FIFO queues that handles distinct message groups in parallel while keeping
+ * strict order within each group.
+ * <p>
+ * Receiver threads long poll the queue, requesting the MessageGroupId of each message, and split every batch
+ * by message group. Each group is handed to one of the handler lanes, chosen by the hash of the group id, and a lane
+ * handles the messages of a group one at a time in the order they were received. A receiver waits for the groups of
+ * its batch to complete before receiving again.
+ * <p>
+ * When a message fails, the messages of its group that follow it are not handed to the handler. The acknowledged
+ * messages before it are deleted and the rest of the group is released for redelivery, so the group is retried
+ * from the failed message onwards. SQS does not deliver further messages of a group while earlier ones are in flight
+ *
+ * @author shawn
+ */
+public class FifoSqsConsumer implements Consumer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FifoSqsConsumer.class);
+
+	private final AmazonSQSClient client;
+	private final SqsConsumerConfig config;
+	private final MessageHandler handler;
+	private final String queueUrl;
+	private final Acknowledger acknowledger;
+	private final VisibilityHeartbeat heartbeat;
+
+	private final ExecutorService receivers;
+	private final List<ExecutorService> lanes;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+
+
+	/***
+	 * @param client
+	 * @param admin
+	 * @param config
+	 * @param claimChecks - resolves claim check pointers of received messages, may be null
+	 */
+	public FifoSqsConsumer(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config, final ClaimCheckStore claimChecks){
+		this.client = Preconditions.checkNotNull(client, "AmazonSQSClient cannot be null");
+		this.config = Preconditions.checkNotNull(config, "SqsConsumerConfig cannot be null");
+		Preconditions.checkNotNull(admin, "SqsQueueAdmin cannot be null");
+		Preconditions.checkArgument(config.getReceivers() > 0, "receivers must be greater than zero");
+		Preconditions.checkArgument(config.getThreads() > 0, "threads must be greater than zero");
+		try{
+			this.handler = config.createHandler();
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		this.queueUrl = admin.getQueueUrl(config.getQueue());
+		this.heartbeat = SqsConsumer.createHeartbeat(client, admin, config);
+		this.acknowledger = new Acknowledger(client, config.getQueue(), this.queueUrl, config, claimChecks);
+		this.receivers = Executors.newFixedThreadPool(config.getReceivers(), new ThreadFactoryBuilder()
+		.setNameFormat("sqs-" + config.getQueue() + "-receiver-%d")
+		.build());
+		this.lanes = Lists.newArrayListWithCapacity(config.getThreads());
+		for(int i = 0; i < config.getThreads(); i++){
+			this.lanes.add(Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("sqs-" + config.getQueue() + "-lane-" + i + "-%d")
+			.build()));
+		}
+	}
+
+
+
+	/***
+	 * Start the receiver threads
+	 */
+	@Override
+	public void start() {
+		if(!this.running.getAndSet(true)){
+			if(this.heartbeat != null){
+				this.heartbeat.start();
+			}
+			for(int i = 0; i < this.config.getReceivers(); i++){
+				this.receivers.execute(new Receiver());
+			}
+			LOGGER.info("fifo consumer started for queue: {} - receivers: {}, lanes: {}", this.config.getQueue(), this.config.getReceivers(), this.lanes.size());
+		}else{
+			LOGGER.info("consumer for queue: {} is already running. This call has no effect", this.config.getQueue());
+		}
+	}
+
+
+
+	/***
+	 * Stop receiving, waiting up to the configured shutdown time for received groups to be handled
+	 */
+	@Override
+	public void stop() {
+		if(this.running.getAndSet(false)){
+			LOGGER.info("waiting {} milliseconds for fifo consumer of queue: {} to shutdown", this.config.getShutdownTimeMS(), this.config.getQueue());
+			awaitTermination(this.receivers, this.config.getShutdownTimeMS());
+			for(ExecutorService lane : this.lanes){
+				awaitTermination(lane, this.config.getShutdownTimeMS());
+			}
+			if(this.heartbeat != null){
+				this.heartbeat.stop();
+			}
+			LOGGER.info("fifo consumer stopped for queue: {}", this.config.getQueue());
+		}
+	}
+
+
+	@Override
+	public boolean isRunning() {
+		return this.running.get();
+	}
+
+
+
+	/***
+	 * Split the received messages by message group and handle the groups in parallel, waiting for every group to complete
+	 * @param messages - in the order they were received
+	 * @throws InterruptedException
+	 */
+	void handleReceived(final List<SqsMessage> messages) throws InterruptedException{
+		if(this.heartbeat != null){
+			this.heartbeat.track(messages);
+		}
+		try{
+			final List<Future<?>> groups = Lists.newArrayList();
+			for(final List<SqsMessage> group : groupByMessageGroup(messages).values()){
+				groups.add(this.lane(group.get(0)).submit(new Runnable() {
+					@Override
+					public void run() {
+						handleGroup(group);
+					}
+				}));
+			}
+			for(Future<?> group : groups){
+				try{
+					group.get();
+				}catch(ExecutionException ex){
+					LOGGER.error("failed to handle message group from queue: {} - {}", this.config.getQueue(), ex.getMessage(), ex);
+				}
+			}
+		}finally{
+			if(this.heartbeat != null){
+				this.heartbeat.release(messages);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Handle the messages of a group in order, stopping at the first failure. Handled messages are deleted and
+	 * the failed message and those following it are released for redelivery
+	 * @param group
+	 */
+	private void handleGroup(final List<SqsMessage> group){
+		int handled = 0;
+		while(handled < group.size()){
+			if(!this.acknowledger.handle(this.handler, Collections.singletonList(group.get(handled))).isEmpty()){
+				break;
+			}
+			handled++;
+		}
+		/** stop extending the group first, a beat after the nack would hide the failed messages again **/
+		if(this.heartbeat != null){
+			this.heartbeat.release(group);
+		}
+		if(handled > 0){
+			this.acknowledger.delete(group.subList(0, handled));
+		}
+		if(handled < group.size()){
+			LOGGER.warn("message id: {} of group: {} from queue: {} failed - releasing {} messages of the group",
+					group.get(handled).getId(), group.get(handled).getMessageGroupId(), this.config.getQueue(), group.size() - handled);
+			this.acknowledger.nack(group.subList(handled, group.size()));
+		}
+	}
+
+
+
+	/***
+	 * The lane of a message group, every message of a group is handled by the same lane
+	 */
+	private ExecutorService lane(final SqsMessage message){
+		return this.lanes.get((groupKey(message).hashCode() & Integer.MAX_VALUE) % this.lanes.size());
+	}
+
+
+
+	/***
+	 * Group the messages by message group, keeping the received order within each group
+	 * @param messages
+	 * @return groups
+	 */
+	static Map<String, List<SqsMessage>> groupByMessageGroup(final List<SqsMessage> messages){
+		final Map<String, List<SqsMessage>> groups = Maps.newLinkedHashMap();
+		for(SqsMessage message : messages){
+			final String key = groupKey(message);
+			if(!groups.containsKey(key)){
+				groups.put(key, Lists.<SqsMessage>newArrayList());
+			}
+			groups.get(key).add(message);
+		}
+		return groups;
+	}
+
+
+	/** Messages without a group, received from a standard queue, are each handled as a group of their own **/
+	private static String groupKey(final SqsMessage message){
+		return message.getMessageGroupId() != null ? message.getMessageGroupId() : message.getId();
+	}
+
+
+
+	private static void awaitTermination(final ExecutorService executor, final long timeoutMs){
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)){
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+
+	/***
+	 * Receives batches from the queue and hands them to the lanes
+	 */
+	private class Receiver implements Runnable {
+
+		@Override
+		public void run() {
+			while(running.get()){
+				try{
+					final ReceiveMessageResult result = client.receiveMessage(new ReceiveMessageRequest(queueUrl)
+					.withMaxNumberOfMessages(config.getMaxMessages())
+					.withWaitTimeSeconds(config.getWaitTimeSeconds())
+					.withAttributeNames(SqsMessage.MESSAGE_GROUP_ID)
+					.withMessageAttributeNames(SqsMessage.ALL_ATTRIBUTES));
+					if(result != null && CollectionUtil.hasElements(result.getMessages())){
+						final long receivedAt = System.currentTimeMillis();
+						final List<SqsMessage> messages = Lists.newArrayListWithCapacity(result.getMessages().size());
+						for(com.amazonaws.services.sqs.model.Message sqsMessage : result.getMessages()){
+							messages.add(SqsMessage.from(config.getQueue(), sqsMessage, receivedAt));
+						}
+						handleReceived(messages);
+					}
+				}catch(InterruptedException ex){
+					LOGGER.debug("receiver for queue: {} interrupted", config.getQueue());
+					Thread.currentThread().interrupt();
+					return;
+				}catch(AbortedException ex){
+					LOGGER.debug("receiver for queue: {} aborted - {}", config.getQueue(), ex.getMessage());
+				}catch(Exception ex){
+					LOGGER.error("receiver for queue: {} failed - {}", config.getQueue(), ex.getMessage(), ex);
+				}
+			}
+		}
+	}
+}
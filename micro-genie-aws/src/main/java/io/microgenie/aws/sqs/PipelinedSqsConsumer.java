@@ -0,0 +1,371 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.queue.Consumer;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.application.util.CollectionUtil;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.config.SqsConsumerConfig;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/***
+ * An SQS {@link Consumer} that receives, handles and deletes messages in separate stages.
+ * <p>
+ * Receiver threads long poll the queue and hand messages to a bounded buffer, a receiver only
+ * receives once the buffer has room for a full batch. Handler threads drain the buffer in batches
+ * and pass handled messages to deleter threads, which delete them with DeleteMessageBatch requests.
+ * The number of threads of each stage is configured separately.
+ * <p>
+ * A buffered message whose visibility timeout expires within the configured margin is not handed to
+ * a handler, it is left to become visible again and be redelivered to another consumer.
+ * Messages the handler fails are released for redelivery as described by {@link Acknowledger}, messages
+ * that are still being handled have their visibility extended by a {@link VisibilityHeartbeat}
+ *
+ * @author shawn
+ */
+public class PipelinedSqsConsumer implements Consumer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedSqsConsumer.class);
+
+	private static final long DELETE_LINGER_MS = 50L;
+	private static final long POLL_INTERVAL_MS = 100L;
+
+	private final AmazonSQSClient client;
+	private final SqsConsumerConfig config;
+	private final MessageHandler handler;
+	private final String queueUrl;
+	private final long visibilityTimeoutMs;
+	private final AdaptivePolling polling;
+	private final Acknowledger acknowledger;
+	private final VisibilityHeartbeat heartbeat;
+
+	private final BlockingQueue<SqsMessage> buffer;
+	private final Semaphore capacity;
+	private final BlockingQueue<SqsMessage> deletes = new LinkedBlockingQueue<SqsMessage>();
+
+	private final ExecutorService receivers;
+	private final ExecutorService handlers;
+	private final ExecutorService deleters;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+	private final AtomicBoolean handling = new AtomicBoolean();
+	private final AtomicLong expired = new AtomicLong();
+
+
+
+	/***
+	 * @param client
+	 * @param admin
+	 * @param config
+	 */
+	public PipelinedSqsConsumer(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config){
+		this(client, admin, config, null);
+	}
+
+
+
+	/***
+	 * @param client
+	 * @param admin
+	 * @param config
+	 * @param claimChecks - resolves claim check pointers of received messages, may be null
+	 */
+	public PipelinedSqsConsumer(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config, final ClaimCheckStore claimChecks){
+		this.client = Preconditions.checkNotNull(client, "AmazonSQSClient cannot be null");
+		this.config = Preconditions.checkNotNull(config, "SqsConsumerConfig cannot be null");
+		Preconditions.checkNotNull(admin, "SqsQueueAdmin cannot be null");
+		Preconditions.checkArgument(config.getReceivers() > 0, "receivers must be greater than zero");
+		Preconditions.checkArgument(config.getThreads() > 0, "threads must be greater than zero");
+		Preconditions.checkArgument(config.getDeleters() > 0, "deleters must be greater than zero");
+		Preconditions.checkArgument(config.getBufferSize() >= config.getMaxMessages(), "bufferSize must be at least maxMessages");
+
+		try{
+			this.handler = config.createHandler();
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		this.queueUrl = admin.getQueueUrl(config.getQueue());
+		this.visibilityTimeoutMs = TimeUnit.SECONDS.toMillis(admin.getVisibilityTimeout(config.getQueue()));
+		this.heartbeat = SqsConsumer.createHeartbeat(client, admin, config);
+		this.acknowledger = new Acknowledger(client, config.getQueue(), this.queueUrl, config, claimChecks);
+		this.polling = new AdaptivePolling(config.getQueue(), config.getReceivers(), config.getMaxMessages(), config.getMaxIdleDelayMs(), config.isAdaptivePolling());
+
+		this.buffer = new LinkedBlockingQueue<SqsMessage>(config.getBufferSize());
+		this.capacity = new Semaphore(config.getBufferSize());
+		this.receivers = Executors.newFixedThreadPool(config.getReceivers(), threadFactory(config.getQueue(), "receiver"));
+		this.handlers = Executors.newFixedThreadPool(config.getThreads(), threadFactory(config.getQueue(), "handler"));
+		this.deleters = Executors.newFixedThreadPool(config.getDeleters(), threadFactory(config.getQueue(), "deleter"));
+	}
+
+
+
+	/***
+	 * Start the receiver, handler and deleter threads
+	 */
+	@Override
+	public void start() {
+		if(!this.running.getAndSet(true)){
+			this.handling.set(true);
+			if(this.heartbeat != null){
+				this.heartbeat.start();
+			}
+			for(int i = 0; i < this.config.getDeleters(); i++){
+				this.deleters.execute(new Deleter());
+			}
+			for(int i = 0; i < this.config.getThreads(); i++){
+				this.handlers.execute(new Handler());
+			}
+			for(int i = 0; i < this.config.getReceivers(); i++){
+				this.receivers.execute(new Receiver(i));
+			}
+			LOGGER.info("pipelined consumer started for queue: {} - receivers: {}, handlers: {}, deleters: {}",
+					this.config.getQueue(), this.config.getReceivers(), this.config.getThreads(), this.config.getDeleters());
+		}else{
+			LOGGER.info("consumer for queue: {} is already running. This call has no effect", this.config.getQueue());
+		}
+	}
+
+
+
+	/***
+	 * Stop receiving, then wait for buffered messages to be handled and handled messages to be deleted,
+	 * each stage waiting up to the configured shutdown time
+	 */
+	@Override
+	public void stop() {
+		if(this.running.getAndSet(false)){
+			LOGGER.info("waiting {} milliseconds per stage for pipelined consumer of queue: {} to shutdown", this.config.getShutdownTimeMS(), this.config.getQueue());
+			awaitTermination(this.receivers, this.config.getShutdownTimeMS());
+			awaitTermination(this.handlers, this.config.getShutdownTimeMS());
+			this.handling.set(false);
+			if(this.heartbeat != null){
+				this.heartbeat.stop();
+			}
+			awaitTermination(this.deleters, this.config.getShutdownTimeMS());
+			LOGGER.info("pipelined consumer stopped for queue: {} - expired messages: {}", this.config.getQueue(), this.expired.get());
+		}
+	}
+
+
+	@Override
+	public boolean isRunning() {
+		return this.running.get();
+	}
+
+
+	/***
+	 * The number of messages that were not handed to a handler because their visibility timeout was about to expire
+	 * @return expiredCount
+	 */
+	public long getExpiredCount(){
+		return this.expired.get();
+	}
+
+
+
+	private static void awaitTermination(final ExecutorService executor, final long timeoutMs){
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)){
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private static ThreadFactory threadFactory(final String queue, final String stage){
+		return new ThreadFactoryBuilder()
+		.setNameFormat("sqs-" + queue + "-" + stage + "-%d")
+		.build();
+	}
+
+
+
+	/***
+	 * Receives batches from the queue once the buffer has room for a full batch
+	 */
+	private class Receiver implements Runnable {
+
+		private final int index;
+
+		Receiver(final int index){
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			while(running.get()){
+				try{
+					if(!polling.awaitTurn(this.index, running)){
+						return;
+					}
+					if(!capacity.tryAcquire(config.getMaxMessages(), POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)){
+						continue;
+					}
+					int buffered = 0;
+					try{
+						final ReceiveMessageResult result = client.receiveMessage(new ReceiveMessageRequest(queueUrl)
+						.withMaxNumberOfMessages(config.getMaxMessages())
+						.withWaitTimeSeconds(config.getWaitTimeSeconds())
+						.withMessageAttributeNames(SqsMessage.ALL_ATTRIBUTES));
+						final long receivedAt = System.currentTimeMillis();
+						if(result != null && CollectionUtil.hasElements(result.getMessages())){
+							for(com.amazonaws.services.sqs.model.Message sqsMessage : result.getMessages()){
+								buffer.put(SqsMessage.from(config.getQueue(), sqsMessage, receivedAt));
+								buffered++;
+							}
+						}
+						polling.received(buffered);
+					}finally{
+						capacity.release(config.getMaxMessages() - buffered);
+					}
+					if(buffered == 0){
+						final long idleDelay = polling.idleDelayMillis();
+						if(idleDelay > 0){
+							Thread.sleep(idleDelay);
+						}
+					}
+				}catch(InterruptedException ex){
+					LOGGER.debug("receiver for queue: {} interrupted", config.getQueue());
+					Thread.currentThread().interrupt();
+					return;
+				}catch(AbortedException ex){
+					LOGGER.debug("receiver for queue: {} aborted - {}", config.getQueue(), ex.getMessage());
+				}catch(Exception ex){
+					LOGGER.error(ex.getMessage(), ex);
+				}
+			}
+		}
+	}
+
+
+
+	/***
+	 * Drains the buffer in batches, handing messages that are still within their visibility
+	 * timeout to the message handler and queueing handled messages for deletion
+	 */
+	private class Handler implements Runnable {
+
+		@Override
+		public void run() {
+			while(running.get() || !buffer.isEmpty()){
+				try{
+					final SqsMessage first = buffer.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+					if(first == null){
+						continue;
+					}
+					final List<SqsMessage> batch = Lists.newArrayList(first);
+					buffer.drainTo(batch, config.getMaxMessages() - 1);
+					capacity.release(batch.size());
+					this.handle(batch);
+				}catch(InterruptedException ex){
+					LOGGER.debug("handler for queue: {} interrupted", config.getQueue());
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+
+		private void handle(final List<SqsMessage> batch){
+			final long now = System.currentTimeMillis();
+			final List<SqsMessage> messages = Lists.newArrayListWithCapacity(batch.size());
+			for(SqsMessage message : batch){
+				if(message.getReceivedAtMillis() + visibilityTimeoutMs - config.getVisibilityMarginMs() <= now){
+					expired.incrementAndGet();
+					LOGGER.debug("message id: {} of queue: {} is about to become visible again - skipping", message.getId(), message.getQueue());
+					continue;
+				}
+				messages.add(message);
+			}
+			if(messages.isEmpty()){
+				return;
+			}
+			if(heartbeat != null){
+				heartbeat.track(messages);
+			}
+			try{
+				final List<SqsMessage> failed = acknowledger.handle(handler, messages);
+				/** stop extending the batch first, a beat after the nack would hide the failed messages again **/
+				if(heartbeat != null){
+					heartbeat.release(messages);
+				}
+				for(SqsMessage message : Acknowledger.acknowledged(messages, failed)){
+					deletes.add(message);
+				}
+				if(!failed.isEmpty()){
+					acknowledger.nack(failed);
+				}
+			}finally{
+				if(heartbeat != null){
+					heartbeat.release(messages);
+				}
+			}
+		}
+	}
+
+
+
+	/***
+	 * Deletes handled messages in batches of up to 10, waiting briefly for a batch to fill
+	 */
+	private class Deleter implements Runnable {
+
+		@Override
+		public void run() {
+			while(handling.get() || !deletes.isEmpty()){
+				try{
+					final SqsMessage first = deletes.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+					if(first == null){
+						continue;
+					}
+					final List<SqsMessage> batch = Lists.newArrayList(first);
+					final long deadline = System.currentTimeMillis() + DELETE_LINGER_MS;
+					while(batch.size() < Acknowledger.MAX_BATCH_ENTRIES){
+						deletes.drainTo(batch, Acknowledger.MAX_BATCH_ENTRIES - batch.size());
+						final long remaining = deadline - System.currentTimeMillis();
+						if(batch.size() >= Acknowledger.MAX_BATCH_ENTRIES || remaining <= 0){
+							break;
+						}
+						final SqsMessage next = deletes.poll(remaining, TimeUnit.MILLISECONDS);
+						if(next != null){
+							batch.add(next);
+						}
+					}
+					acknowledger.deleteBatch(batch);
+				}catch(InterruptedException ex){
+					LOGGER.debug("deleter for queue: {} interrupted", config.getQueue());
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+	}
+}
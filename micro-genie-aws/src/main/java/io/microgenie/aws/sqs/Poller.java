@@ -1,12 +1,11 @@
 package io.microgenie.aws.sqs;
 
-import io.microgenie.application.queue.Message;
+import io.microgenie.application.blob.ClaimCheckStore;
 import io.microgenie.application.queue.MessageHandler;
 import io.microgenie.application.util.CollectionUtil;
+import io.microgenie.aws.config.SqsConsumerConfig;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -14,19 +13,21 @@ import org.slf4j.LoggerFactory;
 
 import com.amazonaws.AbortedException;
 import com.amazonaws.services.sqs.AmazonSQSClient;
-import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
-import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 
 
 /****
  * SQS Polling {@link Runnable}
+ * <p>
+ * Each receive requests up to the configured number of messages and long polls for the configured
+ * wait time. Pollers of the same queue share an {@link AdaptivePolling} instance, which parks pollers
+ * while the queue is idle and delays receives after consecutive empty results
+ * 
  * @author shawn
  */
 class Poller implements Runnable {
@@ -39,28 +40,72 @@ class Poller implements Runnable {
 	private final MessageHandler handler;
 	private final AmazonSQSClient client;
 	private final AtomicBoolean runFlag;
+	private final int maxMessages;
+	private final int waitTimeSeconds;
+	private final AdaptivePolling polling;
+	private final int index;
+	private final Acknowledger acknowledger;
+	private final VisibilityHeartbeat heartbeat;
 		
-	public Poller(final String queue, final String queueUrl, final MessageHandler handler, final AmazonSQSClient client, final AtomicBoolean runFlag){
+	/***
+	 * @param queue
+	 * @param queueUrl
+	 * @param handler
+	 * @param client
+	 * @param runFlag - shared run flag of the consumer
+	 * @param config - the receive batch size and wait time
+	 * @param polling - the adaptive polling state shared by the pollers of the queue
+	 * @param index - the index of this poller, used to decide whether it is parked
+	 * @param heartbeat - extends the visibility of messages being handled, null when disabled
+	 * @param claimChecks - resolves claim check pointers of received messages, may be null
+	 */
+	public Poller(final String queue, final String queueUrl, final MessageHandler handler, final AmazonSQSClient client, final AtomicBoolean runFlag, 
+			final SqsConsumerConfig config, final AdaptivePolling polling, final int index, final VisibilityHeartbeat heartbeat, final ClaimCheckStore claimChecks){
 		
 		Preconditions.checkArgument(!Strings.isNullOrEmpty(queueUrl), "Queue URL must be evaludated in order to consume messages from queue ");
+		Preconditions.checkArgument(config.getMaxMessages() > 0 && config.getMaxMessages() <= SqsConsumerConfig.MAX_MESSAGES_LIMIT, "maxMessages must be between 1 and %s", SqsConsumerConfig.MAX_MESSAGES_LIMIT);
+		Preconditions.checkArgument(config.getWaitTimeSeconds() >= 0 && config.getWaitTimeSeconds() <= SqsConsumerConfig.WAIT_TIME_SECONDS_LIMIT, "waitTimeSeconds must be between 0 and %s", SqsConsumerConfig.WAIT_TIME_SECONDS_LIMIT);
 		this.queue = queue;
 		this.queueUrl = queueUrl; 					
 		this.client = client;
 		this.handler = handler;
 		this.runFlag = runFlag;
+		this.maxMessages = config.getMaxMessages();
+		this.waitTimeSeconds = config.getWaitTimeSeconds();
+		this.polling = Preconditions.checkNotNull(polling, "AdaptivePolling cannot be null");
+		this.index = index;
+		this.heartbeat = heartbeat;
+		this.acknowledger = new Acknowledger(client, queue, queueUrl, config, claimChecks);
 	}
 	
 	
 	@Override
 	public void run() {
 		while(runFlag.get()){
-			try{		
-				final ReceiveMessageRequest request = new ReceiveMessageRequest(this.queueUrl);
+			try{
+				if(!this.polling.awaitTurn(this.index, this.runFlag)){
+					return;
+				}
+				final ReceiveMessageRequest request = new ReceiveMessageRequest(this.queueUrl)
+				.withMaxNumberOfMessages(this.maxMessages)
+				.withWaitTimeSeconds(this.waitTimeSeconds)
+				.withMessageAttributeNames(SqsMessage.ALL_ATTRIBUTES);
 				final ReceiveMessageResult result = this.client.receiveMessage(request);
 				if(result !=null && CollectionUtil.hasElements(result.getMessages())){
-					final List<com.amazonaws.services.sqs.model.Message> sqsMessages = result.getMessages();		
+					final List<com.amazonaws.services.sqs.model.Message> sqsMessages = result.getMessages();
+					this.polling.received(sqsMessages.size());
 					this.handleMessages(this.queue, sqsMessages);	
+				}else{
+					this.polling.received(0);
+					final long idleDelay = this.polling.idleDelayMillis();
+					if(idleDelay > 0){
+						Thread.sleep(idleDelay);
+					}
 				}
+			}catch(InterruptedException ex){
+				LOGGER.debug("Interrupted threadId: {} - Thread isRunning: {}", Thread.currentThread().getId(), this.runFlag.get());
+				Thread.currentThread().interrupt();
+				return;
 			}catch(AbortedException ex){
 				LOGGER.debug("Aborted threadId: {} - message: {} Thread isRunning: {}", Thread.currentThread().getId(),ex.getMessage(), this.runFlag.get());
 				if(!runFlag.get()){
@@ -74,68 +119,34 @@ class Poller implements Runnable {
 	
 	
 	/***
-	 * Handle Messages
+	 * Handle Messages, deleting the messages the handler acknowledged and releasing the failed messages for redelivery
 	 * @param queue
 	 * @param sqsMessages
 	 */
 	private void handleMessages(final String queue, final List<com.amazonaws.services.sqs.model.Message> sqsMessages) {
 		
-		final List<Message> messages =  fromSqsMessages(queue, sqsMessages);
-		if(CollectionUtil.hasElements(messages)){
-			
-			this.handler.handleBatch(messages);
-			final List<DeleteMessageBatchRequestEntry> deleteEntries = new ArrayList<DeleteMessageBatchRequestEntry>();
-
-			/*** TODO Allow the caller to specify messages to delete **/
-			for(com.amazonaws.services.sqs.model.Message sqsMessage : sqsMessages){
-				final DeleteMessageBatchRequestEntry entry = new DeleteMessageBatchRequestEntry(sqsMessage.getMessageId(), sqsMessage.getReceiptHandle());
-				deleteEntries.add(entry);
-			}
-			/** Delete the message batch - TODO - This should actually Respect the feedback given from the handler on which messages to delete**/ 
-			this.client.deleteMessageBatch(
-					new DeleteMessageBatchRequest(this.queueUrl)
-					.withEntries(deleteEntries));
-		}
-	}
-	
-	
-	/***
-	 * Transform to out message format
-	 * @param sqsMessages
-	 * @return messages
-	 */
-	private List<Message> fromSqsMessages(final String queue, final List<com.amazonaws.services.sqs.model.Message> sqsMessages){
-		
-		final List<Message> messages = Lists.newArrayList();
-		
+		final long receivedAt = System.currentTimeMillis();
+		final List<SqsMessage> messages = Lists.newArrayListWithCapacity(sqsMessages.size());
 		for(com.amazonaws.services.sqs.model.Message sqsMessage : sqsMessages){
-			final String messageId = sqsMessage.getMessageId();
-			final Map<String, String> headers = Maps.newHashMap(sqsMessage.getAttributes());
-			final String body = sqsMessage.getBody();
-			
-			/** Construct the message for the application **/
-			final Message message = new Message() {
-				@Override
-				public String getQueue() {
-					return queue;
-				}
-				@Override
-				public String getId() {
-					return messageId;
-				}
-				@Override
-				public Map<String, String> getHeaders() {
-					return headers;
-				}
-				@Override
-				public String getBody() {
-					return body;
-				}
-			};
-			messages.add(message);
+			messages.add(SqsMessage.from(queue, sqsMessage, receivedAt));
+		}
+		if(this.heartbeat != null){
+			this.heartbeat.track(messages);
+		}
+		try{
+			final List<SqsMessage> failed = this.acknowledger.handle(this.handler, messages);
+			/** stop extending the batch first, a beat after the nack would hide the failed messages again **/
+			if(this.heartbeat != null){
+				this.heartbeat.release(messages);
+			}
+			this.acknowledger.delete(Acknowledger.acknowledged(messages, failed));
+			if(!failed.isEmpty()){
+				this.acknowledger.nack(failed);
+			}
+		}finally{
+			if(this.heartbeat != null){
+				this.heartbeat.release(messages);
+			}
 		}
-		return messages;	
 	}
 }
-
-	
\ No newline at end of file
@@ -1,5 +1,6 @@
 package io.microgenie.aws.sqs;
 
+import io.microgenie.application.blob.ClaimCheckStore;
 import io.microgenie.application.queue.Consumer;
 import io.microgenie.application.queue.MessageHandler;
 import io.microgenie.aws.admin.SqsQueueAdmin;
@@ -34,6 +35,8 @@ public class SqsConsumer implements Consumer{
 	private final SqsQueueAdmin queueAdmin;
 	private final SqsConsumerConfig config;
 	
+	private final VisibilityHeartbeat heartbeat;
+	private final ClaimCheckStore claimChecks;
 	private final List<Poller> pollers;
 	private final ExecutorService executor;
 
@@ -48,15 +51,45 @@ public class SqsConsumer implements Consumer{
 	 * @param config
 	 */
 	public SqsConsumer(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config)  {
+		this(client, admin, config, null);
+	}
+	
+	
+	
+	/***
+	 * Constructor for SQSConsumer
+	 * 
+	 * @param client
+	 * @param admin
+	 * @param config
+	 * @param claimChecks - resolves claim check pointers of received messages, may be null
+	 */
+	public SqsConsumer(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config, final ClaimCheckStore claimChecks)  {
 		this.client = Preconditions.checkNotNull(client, "AmazonSQSClient cannot be null");
 		this.queueAdmin = Preconditions.checkNotNull(admin, "SqsQueueAdmin cannot be null");
 		this.config = Preconditions.checkNotNull(config, "SqsConsumerConfig cannot be null");;
+		this.heartbeat = createHeartbeat(client, admin, config);
+		this.claimChecks = claimChecks;
 		this.pollers = this.createPollers(config);
 		this.executor = Executors.newFixedThreadPool(this.pollers.size());
 	}
 	
 	
 	
+	/***
+	 * Create the visibility heartbeat for the queue, if enabled
+	 * @return heartbeat - or null when the heartbeat is disabled
+	 */
+	static VisibilityHeartbeat createHeartbeat(final AmazonSQSClient client, final SqsQueueAdmin admin, final SqsConsumerConfig config){
+		if(!config.isVisibilityHeartbeat()){
+			return null;
+		}
+		return new VisibilityHeartbeat(client, config.getQueue(), admin.getQueueUrl(config.getQueue()), 
+				admin.getVisibilityTimeout(config.getQueue()), config.getMaxVisibilitySeconds());
+	}
+	
+	
+	
 	/***
 	 * Create runnable {@link Poller} list to consume from sqs
 	 * where the count of poller are equal to config thread count
@@ -73,8 +106,9 @@ public class SqsConsumer implements Consumer{
 		} catch (Exception e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}	
+		final AdaptivePolling polling = new AdaptivePolling(config.getQueue(), config.getThreads(), config.getMaxMessages(), config.getMaxIdleDelayMs(), config.isAdaptivePolling());
 		for(int i =0; i < config.getThreads();  i++){
-			pollers.add(new Poller(config.getQueue(), url, handler, this.client, this.running));
+			pollers.add(new Poller(config.getQueue(), url, handler, this.client, this.running, config, polling, i, this.heartbeat, this.claimChecks));
 		}
 		return pollers;
 	}
@@ -87,6 +121,9 @@ public class SqsConsumer implements Consumer{
 	@Override
 	public void start() {
 		if(!this.running.getAndSet(true)){
+			if(this.heartbeat != null){
+				this.heartbeat.start();
+			}
 			for(Poller poller : this.pollers){
 				this.executor.execute(poller);
 			}			
@@ -105,12 +142,16 @@ public class SqsConsumer implements Consumer{
 		if(this.running.getAndSet(false)){
 			try {
 				LOGGER.info("waiting {} milliseconds for SQS consumer threads to shutdown", config.getShutdownTimeMS());
+				this.executor.shutdown();
 				if(!this.executor.awaitTermination(config.getShutdownTimeMS(),TimeUnit.MILLISECONDS)){
 					this.executor.shutdownNow();
 				}
 			} catch (Exception e) {		
 				this.executor.shutdownNow();
 			}
+			if(this.heartbeat != null){
+				this.heartbeat.stop();
+			}
 			LOGGER.info("{} consuming threads have been stopped for queue: {}", this.config.getThreads(), this.config.getQueue());
 		}
 	}
@@ -1,5 +1,7 @@
 package io.microgenie.aws.sqs;
 
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.blob.FileStoreFactory;
 import io.microgenie.application.queue.Consumer;
 import io.microgenie.application.queue.Message;
 import io.microgenie.application.queue.MessageHandler;
@@ -9,6 +11,8 @@ import io.microgenie.application.util.CollectionUtil;
 import io.microgenie.aws.admin.SqsQueueAdmin;
 import io.microgenie.aws.config.SqsConfig;
 import io.microgenie.aws.config.SqsConsumerConfig;
+import io.microgenie.aws.config.SqsProducerConfig;
+import io.microgenie.aws.config.SqsConsumerConfig.ConsumerMode;
 import io.microgenie.aws.config.SqsQueueConfig;
 
 import java.util.List;
@@ -20,6 +24,8 @@ import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 
@@ -52,6 +58,7 @@ public class SqsFactory extends QueueFactory{
 	private final Map<String, SqsConsumerConfig> consumerConfigMap = Maps.newHashMap();
 	private final Map<String, Consumer> consumers = Maps.newHashMap();
 	
+	private final FileStoreFactory files;
 	private Producer producer;
 	
 	
@@ -60,15 +67,47 @@ public class SqsFactory extends QueueFactory{
 	 * @param config
 	 */
 	public SqsFactory(final AmazonSQSClient sqsClient, final SqsConfig config){
-		
+		this(sqsClient, config, null);
+	}
+	
+	
+	/**
+	 * @param sqsClient
+	 * @param config
+	 * @param files - used to save and resolve claim checks of messages over the SQS size limit, may be null
+	 */
+	public SqsFactory(final AmazonSQSClient sqsClient, final SqsConfig config, final FileStoreFactory files){
+		this(sqsClient, config, files, new ObjectMapper());
+	}
+	
+	
+	/**
+	 * @param sqsClient
+	 * @param config
+	 * @param files - used to save and resolve claim checks of messages over the SQS size limit, may be null
+	 * @param mapper - decodes message bodies for typed consumers
+	 */
+	public SqsFactory(final AmazonSQSClient sqsClient, final SqsConfig config, final FileStoreFactory files, final ObjectMapper mapper){
+		super(mapper);
 		this.sqs = sqsClient;
+		/** sends the message group and deduplication ids of messages bound for FIFO queues **/
+		this.sqs.addRequestHandler(new FifoRequestHandler());
 		this.config = config;
-		this.admin = new SqsQueueAdmin(this.sqs);
+		this.files = files;
+		this.admin = new SqsQueueAdmin(this.sqs, config.getQueueUrlCacheSize(), config.getMissingQueueTtlMs());
 		this.mapQueueConfig(config.getQueues());
+		this.admin.prewarmQueueUrls(config.getQueues());
 		this.createConsumers(config.getConsumers());
 		
 		if(config.isProduces()){
-			this.producer = new SqsProducer(this.sqs, admin);
+			final SqsProducerConfig producerConfig = config.getProducer() != null ? config.getProducer() : new SqsProducerConfig();
+			ClaimCheckStore claimChecks = null;
+			if(producerConfig.isClaimCheck()){
+				Preconditions.checkState(files != null, "Claim checks are enabled but no file store factory is available, configure s3");
+				claimChecks = new ClaimCheckStore(files, producerConfig.getClaimCheckDrive(), producerConfig.getClaimCheckPrefix());
+			}
+			final SqsProducer sqsProducer = new SqsProducer(this.sqs, admin, producerConfig, claimChecks);
+			this.producer = producerConfig.isBuffered() ? new BufferedSqsProducer(sqsProducer, producerConfig) : sqsProducer;
 		}
 	}
 
@@ -98,7 +137,8 @@ public class SqsFactory extends QueueFactory{
 	 * <p>
 	 * This method ensures that the queue exists. If it does not exist it will be created
 	 * After the queue is created Consumers will be started. The number of threads determines how
-	 * many consuming threads are started with the given queue
+	 * many consuming threads are started with the given queue. FIFO queues, named with the .fifo suffix,
+	 * are consumed by a {@link FifoSqsConsumer}
 	 */
 	@Override
 	public synchronized void consume(final String queue, final int threads, final MessageHandler handler) {
@@ -110,6 +150,9 @@ public class SqsFactory extends QueueFactory{
 			consumerConfig.setQueue(queue);
 			consumerConfig.setHandlerInstance(handler);
 			consumerConfig.setThreads(threads);
+			if(SqsQueueConfig.isFifo(queue)){
+				consumerConfig.setMode(ConsumerMode.FIFO);
+			}
 			consumer = this.createAndSetConsumer(consumerConfig);
 		}
 		consumer.start();
@@ -124,6 +167,11 @@ public class SqsFactory extends QueueFactory{
 	 */
 	@Override
 	public synchronized void close(){
+		if(this.producer instanceof BufferedSqsProducer){
+			LOGGER.info("flushing buffered producer");
+			((BufferedSqsProducer)this.producer).close();
+		}
+		
 		LOGGER.info("shutting down admin client");
 		
 		if(this.admin!=null){
@@ -164,11 +212,23 @@ public class SqsFactory extends QueueFactory{
 	
 
 	/** 
-	 * Create the {@link SqsConsumer} and map the consumerConfiguration
+	 * Create the {@link SqsConsumer}, {@link PipelinedSqsConsumer} when the consumer mode is PIPELINED, 
+	 * {@link AutoscalingSqsConsumer} when the consumer mode is AUTOSCALING or {@link FifoSqsConsumer} when 
+	 * the consumer mode is FIFO, and map the consumerConfiguration
 	 * @param consumerConfig
 	 */
 	private Consumer createAndSetConsumer(final SqsConsumerConfig consumerConfig) {
-		final Consumer consumer = new SqsConsumer(this.sqs, this.admin, consumerConfig);
+		final Consumer consumer;
+		final ClaimCheckStore claimChecks = this.files != null ? new ClaimCheckStore(this.files, null, null) : null;
+		if(consumerConfig.getMode() == ConsumerMode.PIPELINED){
+			consumer = new PipelinedSqsConsumer(this.sqs, this.admin, consumerConfig, claimChecks);
+		}else if(consumerConfig.getMode() == ConsumerMode.AUTOSCALING){
+			consumer = new AutoscalingSqsConsumer(this.sqs, this.admin, consumerConfig, claimChecks);
+		}else if(consumerConfig.getMode() == ConsumerMode.FIFO){
+			consumer = new FifoSqsConsumer(this.sqs, this.admin, consumerConfig, claimChecks);
+		}else{
+			consumer = new SqsConsumer(this.sqs, this.admin, consumerConfig, claimChecks);
+		}
 		this.consumers.put(consumerConfig.getQueue(), consumer);
 		this.consumerConfigMap.put(consumerConfig.getQueue(), consumerConfig);
 		return consumer;
@@ -209,6 +269,7 @@ public class SqsFactory extends QueueFactory{
 				/** create default config if we don't know about it **/
 				queueConfig = new SqsQueueConfig();
 				queueConfig.setName(queue);
+				queueConfig.setFifoQueue(SqsQueueConfig.isFifo(queue));
 				this.queueConfigMap.put(queue, queueConfig);
 			}
 			LOGGER.info("Queue: {} does not exist - creating the queue now", queue);
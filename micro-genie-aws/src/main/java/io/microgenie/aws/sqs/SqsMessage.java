@@ -0,0 +1,104 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.queue.Message;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.google.common.collect.Maps;
+
+
+/***
+ * A {@link Message} received from an SQS queue, holding the receipt handle required
+ * to delete the message or change its visibility
+ *
+ * @author shawn
+ */
+public class SqsMessage implements Message {
+
+	/** Requests every message attribute on receive, message attributes carry the message headers **/
+	static final String ALL_ATTRIBUTES = "All";
+
+	/** FIFO queue headers. Sent as the message group and deduplication ids, received from the message system attributes **/
+	public static final String MESSAGE_GROUP_ID = "MessageGroupId";
+	public static final String MESSAGE_DEDUPLICATION_ID = "MessageDeduplicationId";
+
+	private final String queue;
+	private final String id;
+	private final Map<String, String> headers;
+	private final String body;
+	private final String receiptHandle;
+	private final long receivedAtMillis;
+
+
+	public SqsMessage(final String queue, final String id, final Map<String, String> headers, final String body, final String receiptHandle, final long receivedAtMillis){
+		this.queue = queue;
+		this.id = id;
+		this.headers = headers;
+		this.body = body;
+		this.receiptHandle = receiptHandle;
+		this.receivedAtMillis = receivedAtMillis;
+	}
+
+
+	/***
+	 * A copy of this message with a different body
+	 * @param body
+	 * @return message
+	 */
+	public SqsMessage withBody(final String body){
+		return new SqsMessage(this.queue, this.id, this.headers, body, this.receiptHandle, this.receivedAtMillis);
+	}
+
+
+	/***
+	 * Transform to our message format, message attributes with string values are added to the headers
+	 * @param queue
+	 * @param sqsMessage
+	 * @param receivedAtMillis - the time the message was received
+	 * @return message
+	 */
+	public static SqsMessage from(final String queue, final com.amazonaws.services.sqs.model.Message sqsMessage, final long receivedAtMillis){
+		final Map<String, String> headers = Maps.newHashMap(sqsMessage.getAttributes());
+		if(sqsMessage.getMessageAttributes() != null){
+			for(Entry<String, MessageAttributeValue> attribute : sqsMessage.getMessageAttributes().entrySet()){
+				if(attribute.getValue().getStringValue() != null){
+					headers.put(attribute.getKey(), attribute.getValue().getStringValue());
+				}
+			}
+		}
+		return new SqsMessage(queue, sqsMessage.getMessageId(), headers, sqsMessage.getBody(), sqsMessage.getReceiptHandle(), receivedAtMillis);
+	}
+
+
+	@Override
+	public String getQueue() {
+		return queue;
+	}
+	@Override
+	public String getId() {
+		return id;
+	}
+	@Override
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+	@Override
+	public String getBody() {
+		return body;
+	}
+	/***
+	 * The message group of a message received from a FIFO queue
+	 * @return messageGroupId - null for standard queues
+	 */
+	public String getMessageGroupId() {
+		return headers != null ? headers.get(MESSAGE_GROUP_ID) : null;
+	}
+	public String getReceiptHandle() {
+		return receiptHandle;
+	}
+	public long getReceivedAtMillis() {
+		return receivedAtMillis;
+	}
+}
@@ -1,11 +1,15 @@
 package io.microgenie.aws.sqs;
 
+import io.microgenie.application.blob.ClaimCheckStore;
 import io.microgenie.application.queue.Message;
 import io.microgenie.application.queue.Producer;
 import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.config.SqsProducerConfig;
+import io.microgenie.aws.config.SqsQueueConfig;
+import io.microgenie.aws.sqs.FifoRequestHandler.FifoSendMessageBatchRequestEntry;
+import io.microgenie.aws.sqs.FifoRequestHandler.FifoSendMessageRequest;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -13,31 +17,64 @@ import java.util.Map.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
 import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
 import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 
 /**
  * SQS Producer Implementation 
+ * <p>
+ * Messages bound for FIFO queues are sent with the message group and deduplication ids found in their
+ * {@link SqsMessage#MESSAGE_GROUP_ID} and {@link SqsMessage#MESSAGE_DEDUPLICATION_ID} headers, which requires the
+ * {@link FifoRequestHandler} to be registered on the client
  * @author shawn
  */
 public class SqsProducer implements Producer{
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(SqsProducer.class);
+
+	/** SendMessageBatch limits **/
+	static final int MAX_BATCH_ENTRIES = 10;
+	static final int MAX_BATCH_BYTES = 256 * 1024;
+
+	private static final String STRING_DATA_TYPE = "String";
 	
 	private final SqsQueueAdmin queueAdmin;
 	private final AmazonSQS sqs;
+	private final SqsProducerConfig config;
+	private final ClaimCheckStore claimChecks;
 	
 	
 	public SqsProducer(AmazonSQS sqs, SqsQueueAdmin queueAdmin){
+		this(sqs, queueAdmin, new SqsProducerConfig());
+	}
+	public SqsProducer(AmazonSQS sqs, SqsQueueAdmin queueAdmin, SqsProducerConfig config){
+		this(sqs, queueAdmin, config, null);
+	}
+	/***
+	 * @param sqs
+	 * @param queueAdmin
+	 * @param config
+	 * @param claimChecks - saves bodies of messages over the SQS size limit, null to reject oversized messages
+	 */
+	public SqsProducer(AmazonSQS sqs, SqsQueueAdmin queueAdmin, SqsProducerConfig config, ClaimCheckStore claimChecks){
 		this.sqs = sqs;
 		this.queueAdmin = queueAdmin;
+		this.config = Preconditions.checkNotNull(config, "SqsProducerConfig cannot be null");
+		this.claimChecks = claimChecks;
 	}
 
 	
@@ -49,11 +86,21 @@ public class SqsProducer implements Producer{
 	@Override
 	public void submit(final Message message) {
 		
-		final SendMessageRequest request = new SendMessageRequest()
+		final Message toSend = this.claimCheck(message.getQueue(), message);
+		final boolean fifo = SqsQueueConfig.isFifo(message.getQueue());
+		final SendMessageRequest request = (fifo ? new FifoSendMessageRequest(header(toSend, SqsMessage.MESSAGE_GROUP_ID), header(toSend, SqsMessage.MESSAGE_DEDUPLICATION_ID)) : new SendMessageRequest())
 		.withQueueUrl(this.queueAdmin.getQueueUrl(message.getQueue()))
-		.withMessageBody(message.getBody())
-		.withMessageAttributes(this.toMessageAttrs(message));
-		this.sqs.sendMessage(request);
+		.withMessageBody(toSend.getBody())
+		.withMessageAttributes(this.toMessageAttrs(toSend, fifo));
+		try{
+			this.sqs.sendMessage(request);
+		}catch(RuntimeException ex){
+			this.releaseClaimCheck(toSend);
+			if(ex instanceof QueueDoesNotExistException){
+				this.queueAdmin.invalidateQueueUrl(message.getQueue());
+			}
+			throw ex;
+		}
 		
 		LOGGER.debug("Successfully submitted messageId: {} to queue: {}", message.getId(), message.getQueue());
 	}
@@ -72,29 +119,179 @@ public class SqsProducer implements Producer{
 	 */
 	@Override
 	public void submitBatch(final List<Message> messages) {
-		final Map<String, List<SendMessageBatchRequestEntry>> messageBatches = this.createBatchesForQueues(messages);
-		this.submitBatches(messageBatches);
+		final Map<String, List<Message>> messageBatches = this.createBatchesForQueues(messages);
+		for(Entry<String, List<Message>> queueBatch : messageBatches.entrySet()){
+			this.logFailures(queueBatch.getKey(), this.sendBatch(queueBatch.getKey(), queueBatch.getValue()));
+		}
+	}
+
+
+
+	/***
+	 * Send messages to a single queue. The messages are split into SendMessageBatch requests of at most
+	 * 10 entries and 256 KB, entries that fail for reasons other than the sender's fault are retried with backoff.
+	 * When claim checks are enabled, bodies of messages over 256 KB are saved to the file store and replaced with a pointer
+	 * 
+	 * @param queue - The queue the messages are sent to
+	 * @param messages
+	 * @return failedMessages - messages that could not be sent
+	 */
+	public List<Message> sendBatch(final String queue, final List<Message> messages) {
+
+		final String queueUrl = this.queueAdmin.getQueueUrl(queue);
+		final List<Message> failed = Lists.newArrayList();
+		List<Message> request = Lists.newArrayList();
+		int requestBytes = 0;
+		for(Message original : messages){
+			final Message message;
+			try{
+				message = this.claimCheck(queue, original);
+			}catch(Exception ex){
+				LOGGER.error("failed to save claim check for messageId: {} for queue: {} - {}", original.getId(), queue, ex.getMessage(), ex);
+				failed.add(original);
+				continue;
+			}
+			final int size = messageSize(message);
+			if(size > MAX_BATCH_BYTES){
+				LOGGER.error("messageId: {} for queue: {} is {} bytes which exceeds the sqs limit of {} bytes", message.getId(), queue, size, MAX_BATCH_BYTES);
+				failed.add(message);
+				continue;
+			}
+			if(request.size() >= MAX_BATCH_ENTRIES || (requestBytes + size) > MAX_BATCH_BYTES){
+				failed.addAll(this.sendRequest(queue, queueUrl, request));
+				request = Lists.newArrayList();
+				requestBytes = 0;
+			}
+			request.add(message);
+			requestBytes += size;
+		}
+		if(!request.isEmpty()){
+			failed.addAll(this.sendRequest(queue, queueUrl, request));
+		}
+		for(int i = 0; i < failed.size(); i++){
+			if(failed.get(i) instanceof ClaimCheckMessage){
+				this.releaseClaimCheck(failed.get(i));
+				failed.set(i, ((ClaimCheckMessage)failed.get(i)).original);
+			}
+		}
+		return failed;
+	}
+
+
+
+	/***
+	 * Save the body of a message that exceeds the SQS size limit to the file store, replacing it with a claim check pointer
+	 * @param queue
+	 * @param message
+	 * @return message - the message to send, the original message when it is within the limit or claim checks are disabled
+	 */
+	private Message claimCheck(final String queue, final Message message){
+		if(this.claimChecks == null || messageSize(message) <= MAX_BATCH_BYTES){
+			return message;
+		}
+		final String pointer = this.claimChecks.store(queue, message.getBody().getBytes(Charsets.UTF_8));
+		final Map<String, String> headers = message.getHeaders() != null ? Maps.newHashMap(message.getHeaders()) : Maps.<String, String>newHashMap();
+		headers.put(ClaimCheckStore.HEADER, pointer);
+		LOGGER.debug("saved body of messageId: {} for queue: {} as claim check: {}", message.getId(), queue, pointer);
+		return new ClaimCheckMessage(message, headers, pointer);
+	}
+
+
+	/***
+	 * Delete the saved body of a claim check message that could not be sent
+	 * @param message
+	 */
+	private void releaseClaimCheck(final Message message){
+		if(message instanceof ClaimCheckMessage){
+			this.claimChecks.delete(message.getBody());
+		}
+	}
+
+
+
+	/***
+	 * Send a single SendMessageBatch request, retrying failed entries until they succeed or the maximum number of attempts is reached
+	 * 
+	 * @return failedMessages
+	 */
+	private List<Message> sendRequest(final String queue, final String queueUrl, final List<Message> messages){
+
+		final List<Message> failed = Lists.newArrayList();
+		List<Message> remaining = messages;
+		for(int attempt = 1; ; attempt++){
+			final List<Message> retry = Lists.newArrayList();
+			try{
+				final List<SendMessageBatchRequestEntry> entries = Lists.newArrayListWithCapacity(remaining.size());
+				for(int i = 0; i < remaining.size(); i++){
+					entries.add(this.createEntry(queue, remaining.get(i))
+					.withId(String.valueOf(i))
+					.withMessageBody(remaining.get(i).getBody()));
+				}
+				final SendMessageBatchResult result = this.sqs.sendMessageBatch(new SendMessageBatchRequest()
+				.withQueueUrl(queueUrl)
+				.withEntries(entries));
+				if(result != null && result.getFailed() != null){
+					for(BatchResultErrorEntry error : result.getFailed()){
+						final Message message = remaining.get(Integer.parseInt(error.getId()));
+						if(Boolean.TRUE.equals(error.getSenderFault())){
+							LOGGER.error("Failed to submit sqs batch message entry - Id: {} - Code: {} - Message: {}, isSenders fault: {}", message.getId(), error.getCode(), error.getMessage(), error.getSenderFault());
+							failed.add(message);
+						}else{
+							retry.add(message);
+						}
+					}
+				}
+			}catch(AmazonServiceException ex){
+				if(ex instanceof QueueDoesNotExistException){
+					/** the cached url is stale, the next send resolves the queue again **/
+					this.queueAdmin.invalidateQueueUrl(queue);
+				}
+				if(ex.getErrorType() == ErrorType.Client){
+					LOGGER.error("SendMessageBatch request to queue: {} was rejected - {}", queue, ex.getMessage());
+					failed.addAll(remaining);
+					return failed;
+				}
+				LOGGER.warn("SendMessageBatch request to queue: {} failed - {}", queue, ex.getMessage());
+				retry.addAll(remaining);
+			}catch(AmazonClientException ex){
+				LOGGER.warn("SendMessageBatch request to queue: {} failed - {}", queue, ex.getMessage());
+				retry.addAll(remaining);
+			}
+
+			if(retry.isEmpty()){
+				return failed;
+			}
+			if(attempt >= this.config.getMaxAttempts()){
+				failed.addAll(retry);
+				return failed;
+			}
+			LOGGER.debug("{} of {} messages failed to send to queue: {} on attempt {} - retrying", retry.size(), remaining.size(), queue, attempt);
+			this.backOff(attempt);
+			remaining = retry;
+		}
 	}
 
 
 	
 	/***
-	 * Submit the batches of messages
-	 * @param messageBatches
+	 * Create the batch entry for the message, entries bound for FIFO queues carry the message group and deduplication ids
+	 * @param queue
+	 * @param message
+	 * @return entry
 	 */
-	private void submitBatches(
-			final Map<String, List<SendMessageBatchRequestEntry>> messageBatches) {
-		for(Entry<String, List<SendMessageBatchRequestEntry>> queueBatchEntry : messageBatches.entrySet()){
-			final String queueUrl = this.queueAdmin.getQueueUrl(queueBatchEntry.getKey());
-			final SendMessageBatchRequest batch = new SendMessageBatchRequest()
-			.withQueueUrl(queueUrl)
-			.withEntries(queueBatchEntry.getValue());
-			final SendMessageBatchResult batchResult = this.sqs.sendMessageBatch(batch);
-			this.logFailures(batchResult.getFailed());
+	private SendMessageBatchRequestEntry createEntry(final String queue, final Message message){
+		if(SqsQueueConfig.isFifo(queue)){
+			return new FifoSendMessageBatchRequestEntry(header(message, SqsMessage.MESSAGE_GROUP_ID), header(message, SqsMessage.MESSAGE_DEDUPLICATION_ID))
+			.withMessageAttributes(this.toMessageAttrs(message, true));
 		}
+		return new SendMessageBatchRequestEntry().withMessageAttributes(this.toMessageAttrs(message, false));
 	}
 
 
+	private static String header(final Message message, final String name){
+		return message.getHeaders() != null ? message.getHeaders().get(name) : null;
+	}
+
 
 	
 	/***
@@ -102,22 +299,14 @@ public class SqsProducer implements Producer{
 	 * @param messages
 	 * @return messageBatches - belonging to one or more queues
 	 */
-	private Map<String, List<SendMessageBatchRequestEntry>> createBatchesForQueues(final List<Message> messages) {
+	private Map<String, List<Message>> createBatchesForQueues(final List<Message> messages) {
 		
-		final Map<String, List<SendMessageBatchRequestEntry>> messageBatches = new HashMap<String, List<SendMessageBatchRequestEntry>>();
-
+		final Map<String, List<Message>> messageBatches = Maps.newLinkedHashMap();
 		for(Message message : messages){
-			final Map<String, MessageAttributeValue> attributes = this.toMessageAttrs(message);
-			
-			final SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry() 
-			.withId(message.getId())
-			.withMessageAttributes(attributes)
-			.withMessageBody(message.getBody());
-
 			if(!messageBatches.containsKey(message.getQueue())){
-				messageBatches.put(message.getQueue(), new ArrayList<SendMessageBatchRequestEntry>());
+				messageBatches.put(message.getQueue(), new ArrayList<Message>());
 			}
-			messageBatches.get(message.getQueue()).add(entry);
+			messageBatches.get(message.getQueue()).add(message);
 		}
 		return messageBatches;
 	}
@@ -127,13 +316,45 @@ public class SqsProducer implements Producer{
 
 	/***
 	 * Logging Failures
+	 * @param queue
 	 * @param failed 
 	 */
-	private void logFailures(final List<BatchResultErrorEntry> failed) {
-		if(failed != null){
-			for(BatchResultErrorEntry batchError :  failed){
-				LOGGER.error("Failed to submit sqs batch message entry - Id: {} - Code: {} - Message: {}, isSenders fault: {}",  batchError.getId(), batchError.getCode(), batchError.getMessage(), batchError.getSenderFault());
-			}			
+	private void logFailures(final String queue, final List<Message> failed) {
+		for(Message message : failed){
+			LOGGER.error("Failed to submit messageId: {} to queue: {}", message.getId(), queue);
+		}
+	}
+
+
+
+	/***
+	 * The size SQS counts against the message size limit, the body plus the name, type and value of each attribute
+	 * @param message
+	 * @return size - in bytes
+	 */
+	static int messageSize(final Message message){
+		int size = message.getBody() != null ? message.getBody().getBytes(Charsets.UTF_8).length : 0;
+		if(message.getHeaders() != null){
+			for(Entry<String, String> header : message.getHeaders().entrySet()){
+				size += header.getKey().getBytes(Charsets.UTF_8).length + STRING_DATA_TYPE.length();
+				size += header.getValue() != null ? header.getValue().getBytes(Charsets.UTF_8).length : 0;
+			}
+		}
+		return size;
+	}
+
+
+
+	/***
+	 * Exponential back off between attempts
+	 * @param attempt
+	 */
+	private void backOff(final int attempt) {
+		try {
+			Thread.sleep(this.config.getInitialBackoffMs() << (attempt - 1));
+		} catch (InterruptedException e) {
+			LOGGER.debug("Interrupted sleep", e);
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -142,17 +363,54 @@ public class SqsProducer implements Producer{
 	/**
 	 * Convert Message headers from {@link Message} to SQS {@link MessageAttributeValue} Map entries
 	 * @param message
+	 * @param fifo - if true the message group and deduplication id headers are sent as request parameters rather than attributes
 	 * @return messageAttributes
 	 */
-	private Map<String, MessageAttributeValue> toMessageAttrs(Message message){
+	private Map<String, MessageAttributeValue> toMessageAttrs(final Message message, final boolean fifo){
 		if(message!=null && message.getHeaders() != null && message.getHeaders().size()>0){
 			final Map<String, MessageAttributeValue> messageAttrs = Maps.newHashMap();
 			for(Entry<String, String> attr : message.getHeaders().entrySet()){
-				messageAttrs.put(attr.getKey(), new MessageAttributeValue().withStringValue(attr.getValue()));
+				if(fifo && (SqsMessage.MESSAGE_GROUP_ID.equals(attr.getKey()) || SqsMessage.MESSAGE_DEDUPLICATION_ID.equals(attr.getKey()))){
+					continue;
+				}
+				messageAttrs.put(attr.getKey(), new MessageAttributeValue().withDataType(STRING_DATA_TYPE).withStringValue(attr.getValue()));
 			}
-			return messageAttrs;
+			return messageAttrs.isEmpty() ? null : messageAttrs;
 		}
 		return null;
 	}
-}
 
+
+
+	/***
+	 * A message sent with a claim check pointer in place of its body
+	 */
+	private static class ClaimCheckMessage implements Message {
+
+		private final Message original;
+		private final Map<String, String> headers;
+		private final String pointer;
+
+		ClaimCheckMessage(final Message original, final Map<String, String> headers, final String pointer){
+			this.original = original;
+			this.headers = headers;
+			this.pointer = pointer;
+		}
+		@Override
+		public Map<String, String> getHeaders() {
+			return this.headers;
+		}
+		@Override
+		public String getId() {
+			return this.original.getId();
+		}
+		@Override
+		public String getQueue() {
+			return this.original.getQueue();
+		}
+		@Override
+		public String getBody() {
+			return this.pointer;
+		}
+	}
+}
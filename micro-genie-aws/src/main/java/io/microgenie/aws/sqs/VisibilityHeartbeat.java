@@ -0,0 +1,207 @@
+package io.microgenie.aws.sqs;
+
+import io.microgenie.application.util.CollectionUtil;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/***
+ * Extends the visibility timeout of messages that are still being handled.
+ * <p>
+ * Handlers track messages before handling them and release them once acknowledged. A background thread
+ * beats every third of the queue visibility timeout, extending the lease of each tracked message whose
+ * lease expires before the next beat by another visibility timeout, using ChangeMessageVisibilityBatch requests
+ * of up to 10 entries. A message is extended until it has been invisible for the configured maximum, after
+ * which its lease is left to expire and the message is redelivered.
+ * <p>
+ * Releasing messages waits for a beat in progress, so once released a message is never extended again and
+ * handlers can safely release failed messages for redelivery
+ *
+ * @author shawn
+ */
+class VisibilityHeartbeat {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(VisibilityHeartbeat.class);
+
+	private static final long MIN_INTERVAL_MS = 1000L;
+
+	private final AmazonSQSClient client;
+	private final String queue;
+	private final String queueUrl;
+	private final long visibilityTimeoutMs;
+	private final long maxVisibilityMs;
+	private final long intervalMs;
+	private final ConcurrentMap<String, Lease> leases = Maps.newConcurrentMap();
+	/** held by a beat while it extends leases, and by release **/
+	private final Object beatLock = new Object();
+	private ScheduledExecutorService scheduler;
+
+
+	/***
+	 * @param client
+	 * @param queue
+	 * @param queueUrl
+	 * @param visibilityTimeoutSeconds - the visibility timeout of the queue, each extension adds this much time
+	 * @param maxVisibilitySeconds - the maximum time a message is kept invisible from the time it was received
+	 */
+	VisibilityHeartbeat(final AmazonSQSClient client, final String queue, final String queueUrl, final int visibilityTimeoutSeconds, final int maxVisibilitySeconds){
+		this.client = client;
+		this.queue = queue;
+		this.queueUrl = queueUrl;
+		this.visibilityTimeoutMs = TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds);
+		this.maxVisibilityMs = TimeUnit.SECONDS.toMillis(maxVisibilitySeconds);
+		this.intervalMs = Math.max(MIN_INTERVAL_MS, this.visibilityTimeoutMs / 3);
+	}
+
+
+	synchronized void start(){
+		if(this.scheduler == null){
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+			.setDaemon(true)
+			.setNameFormat("sqs-" + this.queue + "-heartbeat-%d")
+			.build());
+			this.scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						beat(System.currentTimeMillis());
+					}catch(Exception ex){
+						LOGGER.error("visibility heartbeat for queue: {} failed - {}", queue, ex.getMessage(), ex);
+					}
+				}
+			}, this.intervalMs, this.intervalMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	synchronized void stop(){
+		if(this.scheduler != null){
+			this.scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+		this.leases.clear();
+	}
+
+
+	/***
+	 * Track messages that are about to be handled
+	 * @param messages
+	 */
+	void track(final List<SqsMessage> messages){
+		for(SqsMessage message : messages){
+			this.leases.put(message.getReceiptHandle(), new Lease(message, message.getReceivedAtMillis() + this.visibilityTimeoutMs));
+		}
+	}
+
+
+	/***
+	 * Stop tracking messages that have been acknowledged or released
+	 * @param messages
+	 */
+	void release(final List<SqsMessage> messages){
+		synchronized(this.beatLock){
+			for(SqsMessage message : messages){
+				this.leases.remove(message.getReceiptHandle());
+			}
+		}
+	}
+
+
+	int getTrackedCount(){
+		return this.leases.size();
+	}
+
+
+	/***
+	 * Extend the leases that expire before the next beat
+	 * @param now
+	 */
+	void beat(final long now){
+		synchronized(this.beatLock){
+			this.extendExpiring(now);
+		}
+	}
+
+
+	private void extendExpiring(final long now){
+		final List<Lease> expiring = Lists.newArrayList();
+		final List<ChangeMessageVisibilityBatchRequestEntry> entries = Lists.newArrayList();
+		for(Lease lease : this.leases.values()){
+			if(lease.expiresAtMillis > now + this.intervalMs){
+				continue;
+			}
+			final long maxExpiresAt = lease.message.getReceivedAtMillis() + this.maxVisibilityMs;
+			final long extendBySeconds = TimeUnit.MILLISECONDS.toSeconds(Math.min(now + this.visibilityTimeoutMs, maxExpiresAt) - now);
+			final long extendTo = now + TimeUnit.SECONDS.toMillis(extendBySeconds);
+			if(extendBySeconds < 1 || extendTo <= lease.expiresAtMillis){
+				LOGGER.warn("message id: {} of queue: {} is still being handled after the maximum visibility of {} ms - it will be redelivered",
+						lease.message.getId(), this.queue, this.maxVisibilityMs);
+				this.leases.remove(lease.message.getReceiptHandle());
+				continue;
+			}
+			lease.pendingExpiresAtMillis = extendTo;
+			expiring.add(lease);
+			entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(entries.size()), lease.message.getReceiptHandle())
+			.withVisibilityTimeout((int)extendBySeconds));
+		}
+		for(int start = 0; start < entries.size(); start += Acknowledger.MAX_BATCH_ENTRIES){
+			final int end = Math.min(entries.size(), start + Acknowledger.MAX_BATCH_ENTRIES);
+			this.extend(entries.subList(start, end), expiring.subList(start, end));
+		}
+	}
+
+
+	private void extend(final List<ChangeMessageVisibilityBatchRequestEntry> entries, final List<Lease> leases){
+		try{
+			final ChangeMessageVisibilityBatchResult result = this.client.changeMessageVisibilityBatch(
+					new ChangeMessageVisibilityBatchRequest(this.queueUrl, Lists.newArrayList(entries)));
+			for(Lease lease : leases){
+				lease.expiresAtMillis = lease.pendingExpiresAtMillis;
+			}
+			if(result != null && CollectionUtil.hasElements(result.getFailed())){
+				for(BatchResultErrorEntry failed : result.getFailed()){
+					final Lease lease = leases.get(Integer.parseInt(failed.getId()) % Acknowledger.MAX_BATCH_ENTRIES);
+					if(this.leases.remove(lease.message.getReceiptHandle()) != null){
+						LOGGER.warn("failed to extend visibility of message id: {} of queue: {} - code: {}, message: {}",
+								lease.message.getId(), this.queue, failed.getCode(), failed.getMessage());
+					}
+				}
+			}
+			LOGGER.debug("extended visibility of {} messages of queue: {}", entries.size(), this.queue);
+		}catch(Exception ex){
+			LOGGER.error("failed to extend visibility of {} messages of queue: {} - {}", entries.size(), this.queue, ex.getMessage(), ex);
+		}
+	}
+
+
+
+	/***
+	 * A tracked message and the time its current lease expires
+	 */
+	private static class Lease {
+		private final SqsMessage message;
+		private volatile long expiresAtMillis;
+		private long pendingExpiresAtMillis;
+
+		Lease(final SqsMessage message, final long expiresAtMillis){
+			this.message = message;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package io.microgenie.aws.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.aws.config.SqsQueueConfig;
+
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.google.common.collect.Lists;
+
+
+/***
+ * Test queue url caching of the {@link SqsQueueAdmin}
+ * @author shawn
+ */
+public class SqsQueueAdminTest {
+
+	private static final String QUEUE = "TestQueue";
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue";
+
+	private final AmazonSQSClient sqs = mock(AmazonSQSClient.class);
+
+
+	/***
+	 * Urls should be resolved once, including when pre-warmed, and resolved again after invalidation
+	 */
+	@Test
+	public void shouldCacheResolvedUrlsUntilInvalidated(){
+
+		when(sqs.getQueueUrl(QUEUE)).thenReturn(new GetQueueUrlResult().withQueueUrl(QUEUE_URL));
+		final SqsQueueAdmin admin = new SqsQueueAdmin(sqs);
+
+		admin.prewarmQueueUrls(Lists.newArrayList(new SqsQueueConfig().withName(QUEUE)));
+		assertThat(admin.getQueueUrl(QUEUE)).isEqualTo(QUEUE_URL);
+		assertThat(admin.getQueueUrl(QUEUE)).isEqualTo(QUEUE_URL);
+		verify(sqs, times(1)).getQueueUrl(QUEUE);
+
+		admin.invalidateQueueUrl(QUEUE);
+		assertThat(admin.getQueueUrl(QUEUE)).isEqualTo(QUEUE_URL);
+		verify(sqs, times(2)).getQueueUrl(QUEUE);
+	}
+
+
+
+	/***
+	 * Missing queues should be remembered, until the queue is created
+	 */
+	@Test
+	public void shouldRememberMissingQueuesUntilCreated(){
+
+		when(sqs.getQueueUrl(QUEUE)).thenThrow(new QueueDoesNotExistException("missing"));
+		when(sqs.createQueue(any(CreateQueueRequest.class))).thenReturn(new CreateQueueResult().withQueueUrl(QUEUE_URL));
+		final SqsQueueAdmin admin = new SqsQueueAdmin(sqs, 10, 60000);
+
+		for(int i = 0; i < 3; i++){
+			try{
+				admin.getQueueUrl(QUEUE);
+				fail("expected QueueDoesNotExistException");
+			}catch(QueueDoesNotExistException ex){
+				assertThat(ex.getMessage()).contains("missing");
+			}
+		}
+		verify(sqs, times(1)).getQueueUrl(QUEUE);
+
+		admin.initializeQueue(new SqsQueueConfig().withName(QUEUE), false);
+		assertThat(admin.getQueueUrl(QUEUE)).isEqualTo(QUEUE_URL);
+		verify(sqs, times(1)).getQueueUrl(QUEUE);
+	}
+}
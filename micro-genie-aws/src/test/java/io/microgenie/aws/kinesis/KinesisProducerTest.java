@@ -0,0 +1,303 @@
+package io.microgenie.aws.kinesis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.events.Event;
+import io.microgenie.aws.config.KinesisProducerConfig;
+import io.microgenie.aws.config.KinesisProducerConfig.Salting;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test batching behavior of the {@link KinesisProducer}
+ * @author shawn
+ */
+public class KinesisProducerTest {
+
+	private static final String STREAM_A = "StreamA";
+	private static final String STREAM_B = "StreamB";
+
+	private final AmazonKinesisClient client = mock(AmazonKinesisClient.class);
+	private KinesisProducer producer;
+
+
+	@Before
+	public void setup(){
+		this.producer = new KinesisProducer("test-client", new ObjectMapper(), this.client);
+	}
+
+
+
+	/***
+	 * Events should be grouped by stream and split into requests of at most 500 records
+	 */
+	@Test
+	public void shouldPartitionBatchByStreamAndRecordLimit(){
+
+		when(client.putRecords(any(PutRecordsRequest.class))).thenAnswer(new SuccessfulPut());
+
+		final List<Event> events = Lists.newArrayList();
+		events.addAll(createEvents(STREAM_A, 750));
+		events.addAll(createEvents(STREAM_B, 10));
+
+		final List<KinesisPublishResult> results = this.producer.publishBatch(events);
+
+		final ArgumentCaptor<PutRecordsRequest> requestCaptor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+		verify(client, times(3)).putRecords(requestCaptor.capture());
+
+		final List<PutRecordsRequest> requests = requestCaptor.getAllValues();
+		assertThat(requests.get(0).getStreamName()).isEqualTo(STREAM_A);
+		assertThat(requests.get(0).getRecords()).hasSize(500);
+		assertThat(requests.get(1).getStreamName()).isEqualTo(STREAM_A);
+		assertThat(requests.get(1).getRecords()).hasSize(250);
+		assertThat(requests.get(2).getStreamName()).isEqualTo(STREAM_B);
+		assertThat(requests.get(2).getRecords()).hasSize(10);
+
+		assertThat(results).hasSize(760);
+		for(int i = 0; i < results.size(); i++){
+			assertThat(results.get(i).isSuccessful()).isTrue();
+			assertThat(results.get(i).getEvent()).isSameAs(events.get(i));
+		}
+	}
+
+
+
+	/***
+	 * Only records that failed within a request should be retried
+	 */
+	@Test
+	public void shouldRetryOnlyFailedRecords(){
+
+		when(client.putRecords(any(PutRecordsRequest.class)))
+		.thenAnswer(new Answer<PutRecordsResult>() {
+			@Override
+			public PutRecordsResult answer(InvocationOnMock invocation) throws Throwable {
+				final PutRecordsRequest request = (PutRecordsRequest)invocation.getArguments()[0];
+				final PutRecordsResult result = new PutRecordsResult().withFailedRecordCount(1);
+				result.withRecords(new PutRecordsResultEntry().withErrorCode("ProvisionedThroughputExceededException").withErrorMessage("slow down"));
+				for(int i = 1; i < request.getRecords().size(); i++){
+					result.withRecords(new PutRecordsResultEntry().withShardId("shardId-000").withSequenceNumber(String.valueOf(i)));
+				}
+				return result;
+			}
+		})
+		.thenAnswer(new SuccessfulPut());
+
+		final List<KinesisPublishResult> results = this.producer.publishBatch(createEvents(STREAM_A, 3));
+
+		final ArgumentCaptor<PutRecordsRequest> requestCaptor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+		verify(client, times(2)).putRecords(requestCaptor.capture());
+		assertThat(requestCaptor.getAllValues().get(1).getRecords()).hasSize(1);
+
+		assertThat(results.get(0).isSuccessful()).isTrue();
+		assertThat(results.get(0).getAttempts()).isEqualTo(2);
+		assertThat(results.get(1).getAttempts()).isEqualTo(1);
+		assertThat(results.get(2).getAttempts()).isEqualTo(1);
+	}
+
+
+
+	/***
+	 * Invalid events should be reported as failures without being sent
+	 */
+	@Test
+	public void shouldReportInvalidEventsWithoutSending(){
+
+		final List<Event> events = Lists.newArrayList(Event.create(STREAM_A, null, data()));
+		final List<KinesisPublishResult> results = this.producer.publishBatch(events);
+
+		verify(client, times(0)).putRecords(any(PutRecordsRequest.class));
+		assertThat(results).hasSize(1);
+		assertThat(results.get(0).isSuccessful()).isFalse();
+		assertThat(results.get(0).getErrorCode()).isEqualTo("InvalidEvent");
+	}
+
+
+
+	/***
+	 * Events sharing a partition key should be packed into a single aggregated record that
+	 * can be de-aggregated back into the original events
+	 */
+	@Test
+	public void shouldAggregateEventsSharingPartitionKey() throws Exception{
+
+		when(client.putRecords(any(PutRecordsRequest.class))).thenAnswer(new SuccessfulPut());
+		final ObjectMapper mapper = new ObjectMapper();
+		final KinesisProducer aggregatingProducer = new KinesisProducer("test-client", mapper, this.client,
+				ImmutableMap.of(STREAM_A, new KinesisProducerConfig().withAggregate(true)));
+
+		final List<Event> events = Lists.newArrayList();
+		for(int i = 0; i < 5; i++){
+			events.add(Event.create(STREAM_A, "shared-key", data()));
+		}
+		events.add(Event.create(STREAM_A, "single-key", data()));
+
+		final List<KinesisPublishResult> results = aggregatingProducer.publishBatch(events);
+
+		final ArgumentCaptor<PutRecordsRequest> requestCaptor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+		verify(client, times(1)).putRecords(requestCaptor.capture());
+		final List<PutRecordsRequestEntry> records = requestCaptor.getValue().getRecords();
+		assertThat(records).hasSize(2);
+
+		final ByteBuffer aggregated = records.get(0).getData();
+		assertThat(AggregatedRecord.isAggregated(aggregated)).isTrue();
+		final List<ByteBuffer> entries = AggregatedRecord.deaggregate(aggregated);
+		assertThat(entries).hasSize(5);
+		final byte[] first = new byte[entries.get(0).remaining()];
+		entries.get(0).get(first);
+		assertThat(mapper.readValue(first, Event.class).getId()).isEqualTo(events.get(0).getId());
+
+		assertThat(AggregatedRecord.isAggregated(records.get(1).getData())).isFalse();
+		for(KinesisPublishResult result : results){
+			assertThat(result.isSuccessful()).isTrue();
+		}
+	}
+
+
+
+	/***
+	 * Once a key is hot, a stream configured with suffix salting should spread its records
+	 * over salted partition keys while cold keys are left untouched
+	 */
+	@Test
+	public void shouldSaltHotKeys(){
+
+		when(client.putRecords(any(PutRecordsRequest.class))).thenAnswer(new SuccessfulPut());
+		final KinesisProducer saltingProducer = new KinesisProducer("test-client", new ObjectMapper(), this.client,
+				ImmutableMap.of(STREAM_A, new KinesisProducerConfig()
+				.withHotKeyRecordsPerSecond(3)
+				.withSalting(Salting.SUFFIX)
+				.withSaltBuckets(4)));
+
+		final List<Event> events = Lists.newArrayList();
+		for(int i = 0; i < 5; i++){
+			events.add(Event.create(STREAM_A, "hot-key", data()));
+		}
+		events.add(Event.create(STREAM_A, "cold-key", data()));
+		saltingProducer.publishBatch(events);
+
+		final ArgumentCaptor<PutRecordsRequest> requestCaptor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+		verify(client, times(1)).putRecords(requestCaptor.capture());
+		final List<PutRecordsRequestEntry> records = requestCaptor.getValue().getRecords();
+		for(int i = 0; i < 5; i++){
+			assertThat(records.get(i).getPartitionKey()).matches("hot-key#[0-3]");
+		}
+		assertThat(records.get(5).getPartitionKey()).isEqualTo("cold-key");
+	}
+
+
+
+	/***
+	 * Records rejected with ProvisionedThroughputExceeded should be counted against the shard
+	 * their partition key hashes to, once the shards of the stream have been loaded in the background
+	 */
+	@Test
+	public void shouldReportThrottledRecordsByShard() throws InterruptedException{
+
+		final BigInteger half = BigInteger.ONE.shiftLeft(127);
+		when(client.describeStream(any(DescribeStreamRequest.class))).thenReturn(new DescribeStreamResult()
+				.withStreamDescription(new StreamDescription()
+				.withHasMoreShards(false)
+				.withShards(shard("shardId-000", BigInteger.ZERO, half.subtract(BigInteger.ONE)),
+							shard("shardId-001", half, BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE)))));
+		/** every other request is throttled, the retry of a throttled record succeeds **/
+		final AtomicInteger requests = new AtomicInteger();
+		when(client.putRecords(any(PutRecordsRequest.class))).thenAnswer(new Answer<PutRecordsResult>() {
+			@Override
+			public PutRecordsResult answer(InvocationOnMock invocation) throws Throwable {
+				if(requests.getAndIncrement() % 2 == 0){
+					return new PutRecordsResult().withFailedRecordCount(1)
+							.withRecords(new PutRecordsResultEntry().withErrorCode("ProvisionedThroughputExceededException").withErrorMessage("slow down"));
+				}
+				return new SuccessfulPut().answer(invocation);
+			}
+		});
+
+		/** the first throttle starts loading the shards without waiting for them **/
+		this.producer.publishBatch(createEvents(STREAM_A, 1));
+		verify(client, timeout(5000)).describeStream(any(DescribeStreamRequest.class));
+
+		final boolean lowerHalf = KinesisShardMap.hashKey("key-0").compareTo(half) < 0;
+		final String expectedShard = lowerHalf ? "shardId-000" : "shardId-001";
+		final String otherShard = lowerHalf ? "shardId-001" : "shardId-000";
+		Map<String, Long> throttled = ImmutableMap.of();
+		for(int i = 0; i < 100 && !throttled.containsKey(expectedShard); i++){
+			this.producer.publishBatch(createEvents(STREAM_A, 1));
+			throttled = this.producer.getTrafficReport().getThrottledRecords().get(STREAM_A);
+			Thread.sleep(10);
+		}
+		assertThat(throttled).containsKey(expectedShard);
+		assertThat(throttled).doesNotContainKey(otherShard);
+	}
+
+
+
+	private static Shard shard(final String shardId, final BigInteger start, final BigInteger end){
+		return new Shard()
+		.withShardId(shardId)
+		.withHashKeyRange(new HashKeyRange().withStartingHashKey(start.toString()).withEndingHashKey(end.toString()))
+		.withSequenceNumberRange(new SequenceNumberRange().withStartingSequenceNumber("0"));
+	}
+
+	private static List<Event> createEvents(final String stream, final int count){
+		final List<Event> events = Lists.newArrayList();
+		for(int i = 0; i < count; i++){
+			events.add(Event.create(stream, "key-" + i, data()));
+		}
+		return events;
+	}
+
+	private static Map<String, Object> data(){
+		final Map<String, Object> data = Maps.newHashMap();
+		data.put("name", "value");
+		return data;
+	}
+
+
+	/***
+	 * Accept every record in the request
+	 */
+	static class SuccessfulPut implements Answer<PutRecordsResult>{
+		@Override
+		public PutRecordsResult answer(InvocationOnMock invocation) throws Throwable {
+			final PutRecordsRequest request = (PutRecordsRequest)invocation.getArguments()[0];
+			final PutRecordsResult result = new PutRecordsResult().withFailedRecordCount(0);
+			for(int i = 0; i < request.getRecords().size(); i++){
+				result.withRecords(new PutRecordsResultEntry().withShardId("shardId-000").withSequenceNumber(String.valueOf(i)));
+			}
+			return result;
+		}
+	}
+}
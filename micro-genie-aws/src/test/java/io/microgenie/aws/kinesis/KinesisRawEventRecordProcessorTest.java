@@ -0,0 +1,532 @@
+package io.microgenie.aws.kinesis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.blob.FileContentStream;
+import io.microgenie.application.blob.FilePath;
+import io.microgenie.application.blob.FileStoreFactory;
+import io.microgenie.application.events.Event;
+import io.microgenie.application.events.EventBatchException;
+import io.microgenie.application.events.EventHandler;
+import io.microgenie.aws.config.KinesisConsumerConfig;
+import io.microgenie.aws.config.KinesisConsumerConfig.DispatchMode;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownReason;
+import com.amazonaws.services.kinesis.model.Record;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test dispatching of consumed records by the {@link KinesisRawEventRecordProcessor}
+ * @author shawn
+ */
+public class KinesisRawEventRecordProcessorTest {
+
+	private static final String TOPIC = "TopicTestProcessor";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final IRecordProcessorCheckpointer checkpointer = mock(IRecordProcessorCheckpointer.class);
+
+
+
+	/***
+	 * In batch mode plain and aggregated records should be delivered to the handler in a single call
+	 */
+	@Test
+	public void shouldDispatchRecordsAsSingleBatch() throws Exception{
+
+		final RecordingHandler handler = new RecordingHandler(0);
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				new KinesisConsumerConfig().withDispatchMode(DispatchMode.BATCH), new RecordingSink());
+		processor.initialize("shardId-000");
+
+		final List<Event> events = createEvents(4);
+		final AggregatedRecord aggregated = new AggregatedRecord(1024 * 1024, 100);
+		aggregated.add(mapper.writeValueAsBytes(events.get(1)));
+		aggregated.add(mapper.writeValueAsBytes(events.get(2)));
+
+		final List<Record> records = Lists.newArrayList(
+				this.record("1", mapper.writeValueAsBytes(events.get(0))),
+				this.record("2", aggregated.toBytes()),
+				this.record("3", mapper.writeValueAsBytes(events.get(3))));
+		processor.processRecords(records, checkpointer);
+
+		assertThat(handler.batches).hasSize(1);
+		assertThat(handler.batches.get(0)).hasSize(4);
+		for(int i = 0; i < events.size(); i++){
+			assertThat(handler.batches.get(0).get(i).getId()).isEqualTo(events.get(i).getId());
+		}
+	}
+
+
+
+	/***
+	 * Only the events reported as failed by the handler should be redelivered, on a later call, 
+	 * and the shard should not be checkpointed past them while they wait
+	 */
+	@Test
+	public void shouldRetryOnlyFailedEventsInBatch() throws Exception{
+
+		final RecordingHandler handler = new RecordingHandler(1);
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				noBackoff().withDispatchMode(DispatchMode.BATCH), new RecordingSink());
+		processor.initialize("shardId-000");
+
+		final List<Event> events = createEvents(3);
+		processor.processRecords(this.records(events), checkpointer);
+		assertThat(handler.batches).hasSize(1);
+		assertThat(processor.getRetryCount()).isEqualTo(1);
+		verify(checkpointer, never()).checkpoint(anyString());
+
+		processor.processRecords(Collections.<Record>emptyList(), checkpointer);
+		assertThat(processor.getRetryCount()).isEqualTo(0);
+		verify(checkpointer).checkpoint(events.get(2).getId());
+		assertThat(handler.batches).hasSize(2);
+		assertThat(handler.batches.get(0)).hasSize(3);
+		assertThat(handler.batches.get(1)).hasSize(1);
+		assertThat(handler.batches.get(1).get(0).getId()).isEqualTo(events.get(0).getId());
+	}
+
+
+
+	/***
+	 * A poison event should be sent to the dead letter sink after the maximum attempts, 
+	 * while events that follow it are handled without waiting
+	 */
+	@Test
+	public void shouldDeadLetterEventAfterMaxAttempts() throws Exception{
+
+		final RecordingHandler handler = new RecordingHandler(Integer.MAX_VALUE);
+		final RecordingSink sink = new RecordingSink();
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				noBackoff().withMaxAttempts(3), sink);
+		processor.initialize("shardId-000");
+
+		final List<Event> events = createEvents(2);
+		processor.processRecords(this.records(events.subList(0, 1)), checkpointer);
+		processor.processRecords(this.records(events.subList(1, 2)), checkpointer);
+		processor.processRecords(Collections.<Record>emptyList(), checkpointer);
+
+		/** the second event fails once per call as well, but has only been attempted twice **/
+		assertThat(sink.deadLetters).hasSize(1);
+		final DeadLetter deadLetter = sink.deadLetters.get(0);
+		assertThat(deadLetter.getEventId()).isEqualTo(events.get(0).getId());
+		assertThat(deadLetter.getAttempts()).isEqualTo(3);
+		assertThat(deadLetter.getShardId()).isEqualTo("shardId-000");
+		assertThat(mapper.readValue(deadLetter.getData(), Event.class).getId()).isEqualTo(events.get(0).getId());
+		assertThat(processor.getRetryCount()).isEqualTo(1);
+	}
+
+
+
+	/***
+	 * Events still parked when draining retries at the end of a shard is interrupted should be dead lettered
+	 * before the shard is checkpointed
+	 */
+	@Test
+	public void shouldDeadLetterParkedEventsWhenShardEndIsInterrupted() throws Exception{
+
+		final RecordingHandler handler = new RecordingHandler(Integer.MAX_VALUE);
+		final RecordingSink sink = new RecordingSink();
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				new KinesisConsumerConfig().withInitialBackoffMs(60000).withMaxBackoffMs(60000), sink);
+		processor.initialize("shardId-000");
+
+		final List<Event> events = createEvents(1);
+		processor.processRecords(this.records(events), checkpointer);
+		assertThat(processor.getRetryCount()).isEqualTo(1);
+
+		Thread.currentThread().interrupt();
+		try{
+			processor.shutdown(checkpointer, ShutdownReason.TERMINATE);
+		}finally{
+			Thread.interrupted();
+		}
+		assertThat(processor.getRetryCount()).isEqualTo(0);
+		assertThat(sink.deadLetters).hasSize(1);
+		assertThat(sink.deadLetters.get(0).getEventId()).isEqualTo(events.get(0).getId());
+		verify(checkpointer).checkpoint();
+	}
+
+
+
+	/***
+	 * Records that cannot be decoded should be sent to the dead letter sink without retries
+	 */
+	@Test
+	public void shouldDeadLetterUndecodableRecord(){
+
+		final RecordingHandler handler = new RecordingHandler(0);
+		final RecordingSink sink = new RecordingSink();
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper, noBackoff(), sink);
+		processor.initialize("shardId-000");
+
+		final byte[] garbage = "not an event".getBytes(Charsets.UTF_8);
+		processor.processRecords(Lists.newArrayList(this.record("1", garbage)), checkpointer);
+
+		assertThat(handler.batches).isEmpty();
+		assertThat(sink.deadLetters).hasSize(1);
+		assertThat(sink.deadLetters.get(0).getEventId()).isNull();
+		assertThat(sink.deadLetters.get(0).getData()).isEqualTo(garbage);
+		assertThat(processor.getRetryCount()).isEqualTo(0);
+	}
+
+
+
+	/***
+	 * In parallel mode events for the same partition key should be handled in order, while
+	 * different keys are handled concurrently. All events complete before processRecords returns
+	 */
+	@Test
+	public void shouldHandleKeysInParallelPreservingKeyOrder() throws Exception{
+
+		final ParallelHandler handler = new ParallelHandler();
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				noBackoff().withDispatchMode(DispatchMode.PARALLEL).withParallelism(4), new RecordingSink());
+		processor.initialize("shardId-000");
+
+		final List<Event> events = Lists.newArrayList();
+		for(int i = 0; i < 5; i++){
+			for(int key = 0; key < 4; key++){
+				final Map<String, Object> data = Maps.newHashMap();
+				data.put("index", i);
+				events.add(Event.create(TOPIC, "key-" + key, data));
+			}
+		}
+		processor.processRecords(this.records(events), checkpointer);
+		processor.shutdown(checkpointer, ShutdownReason.TERMINATE);
+
+		assertThat(handler.handled.get()).isEqualTo(20);
+		assertThat(handler.maxConcurrent.get()).isGreaterThan(1);
+		for(List<Integer> keyOrder : handler.order.values()){
+			assertThat(keyOrder).containsExactly(0, 1, 2, 3, 4);
+		}
+	}
+
+
+
+	/***
+	 * The checkpoint should advance to the highest contiguous handled record, and no further
+	 */
+	@Test
+	public void shouldCheckpointAtHighestContiguousHandledRecord() throws Exception{
+
+		final List<Event> events = createEvents(4);
+		final FailingHandler handler = new FailingHandler(events.get(2).getId());
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper, noBackoff(), new RecordingSink());
+		processor.initialize("shardId-000");
+
+		processor.processRecords(this.records(events), checkpointer);
+		verify(checkpointer).checkpoint(events.get(1).getId());
+
+		processor.processRecords(Collections.<Record>emptyList(), checkpointer);
+		verify(checkpointer).checkpoint(events.get(3).getId());
+		verify(checkpointer, never()).checkpoint();
+	}
+
+
+
+	/***
+	 * Events should be read from direct, read only and offset heap buffers without relying on the backing array
+	 */
+	@Test
+	public void shouldReadEventsFromAnyBuffer() throws Exception{
+
+		final RecordingHandler handler = new RecordingHandler(0);
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				noBackoff().withDispatchMode(DispatchMode.BATCH), new RecordingSink());
+		processor.initialize("shardId-000");
+
+		final List<Event> events = createEvents(3);
+		final byte[] direct = mapper.writeValueAsBytes(events.get(0));
+		final ByteBuffer directBuffer = ByteBuffer.allocateDirect(direct.length);
+		directBuffer.put(direct).flip();
+
+		final ByteBuffer readOnlyBuffer = ByteBuffer.wrap(mapper.writeValueAsBytes(events.get(1))).asReadOnlyBuffer();
+
+		final byte[] sliced = mapper.writeValueAsBytes(events.get(2));
+		final ByteBuffer offsetBuffer = ByteBuffer.allocate(sliced.length + 10);
+		offsetBuffer.position(5);
+		offsetBuffer.put(sliced);
+		offsetBuffer.position(5);
+		offsetBuffer.limit(5 + sliced.length);
+
+		final List<Record> records = Lists.newArrayList(
+				new Record().withSequenceNumber("1").withPartitionKey("key").withData(directBuffer),
+				new Record().withSequenceNumber("2").withPartitionKey("key").withData(readOnlyBuffer),
+				new Record().withSequenceNumber("3").withPartitionKey("key").withData(offsetBuffer.slice()));
+		processor.processRecords(records, checkpointer);
+
+		assertThat(handler.batches).hasSize(1);
+		for(int i = 0; i < events.size(); i++){
+			assertThat(handler.batches.get(0).get(i).getId()).isEqualTo(events.get(i).getId());
+		}
+	}
+
+
+
+	/***
+	 * Claim check records should be resolved from the file store, the saved event is kept by default 
+	 * so that records replayed after a fail over, or read by other applications, still resolve
+	 */
+	@Test
+	public void shouldResolveClaimCheckRecords() throws Exception{
+
+		final Event event = createEvents(1).get(0);
+		final FileStoreFactory files = this.claimCheckFiles(event);
+
+		final RecordingHandler handler = new RecordingHandler(0);
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				new KinesisConsumerConfig().withDispatchMode(DispatchMode.BATCH), new RecordingSink(), new ClaimCheckStore(files, null, null));
+		processor.initialize("shardId-000");
+		processor.processRecords(Lists.newArrayList(this.record("1", ClaimCheckRecord.toBytes("bucket:claim-checks/" + TOPIC + "/1"))), checkpointer);
+
+		assertThat(handler.batches).hasSize(1);
+		assertThat(handler.batches.get(0).get(0).getId()).isEqualTo(event.getId());
+		verify(checkpointer).checkpoint("1");
+		verify(files, never()).delete(any(FilePath.class));
+	}
+
+
+
+	/***
+	 * When enabled, the saved event should only be deleted once a checkpoint that passes its record has been saved
+	 */
+	@Test
+	public void shouldDeleteClaimChecksOnceCheckpointed() throws Exception{
+
+		final Event event = createEvents(1).get(0);
+		final byte[] pointer = ClaimCheckRecord.toBytes("bucket:claim-checks/" + TOPIC + "/1");
+
+		/** the lease is lost before the checkpoint is saved, the new owner needs the saved event **/
+		final FileStoreFactory lostFiles = this.claimCheckFiles(event);
+		final IRecordProcessorCheckpointer lostCheckpointer = mock(IRecordProcessorCheckpointer.class);
+		doThrow(new ShutdownException("lease lost")).when(lostCheckpointer).checkpoint(anyString());
+		final KinesisRawEventRecordProcessor lost = new KinesisRawEventRecordProcessor(TOPIC, new RecordingHandler(0), mapper,
+				noBackoff().withDeleteClaimChecks(true), new RecordingSink(), new ClaimCheckStore(lostFiles, null, null));
+		lost.initialize("shardId-000");
+		lost.processRecords(Lists.newArrayList(this.record("1", pointer)), lostCheckpointer);
+		lost.shutdown(lostCheckpointer, ShutdownReason.ZOMBIE);
+		verify(lostFiles, never()).delete(any(FilePath.class));
+
+		final FileStoreFactory files = this.claimCheckFiles(event);
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, new RecordingHandler(0), mapper,
+				noBackoff().withDeleteClaimChecks(true), new RecordingSink(), new ClaimCheckStore(files, null, null));
+		processor.initialize("shardId-000");
+		processor.processRecords(Lists.newArrayList(this.record("1", pointer)), checkpointer);
+
+		final InOrder inOrder = inOrder(checkpointer, files);
+		inOrder.verify(checkpointer).checkpoint("1");
+		final ArgumentCaptor<FilePath> deleted = ArgumentCaptor.forClass(FilePath.class);
+		inOrder.verify(files).delete(deleted.capture());
+		assertThat(deleted.getValue().getDrive()).isEqualTo("bucket");
+		assertThat(deleted.getValue().getPath()).isEqualTo("claim-checks/" + TOPIC + "/1");
+	}
+
+
+
+	/***
+	 * A claim check that cannot be read should be retried with backoff, not sent to the dead letter sink, 
+	 * and the shard should not be checkpointed past it while it waits
+	 */
+	@Test
+	public void shouldRetryClaimChecksThatCannotBeRead() throws Exception{
+
+		final Event event = createEvents(1).get(0);
+		final byte[] data = mapper.writeValueAsBytes(event);
+		final FileStoreFactory files = mock(FileStoreFactory.class);
+		when(files.readStream(any(FilePath.class)))
+		.thenThrow(new IllegalStateException("service unavailable"))
+		.thenReturn(FileContentStream.create("bucket", "claim-checks/" + TOPIC + "/1", data.length, new ByteArrayInputStream(data)));
+
+		final RecordingHandler handler = new RecordingHandler(0);
+		final RecordingSink sink = new RecordingSink();
+		final KinesisRawEventRecordProcessor processor = new KinesisRawEventRecordProcessor(TOPIC, handler, mapper,
+				noBackoff().withDispatchMode(DispatchMode.BATCH), sink, new ClaimCheckStore(files, null, null));
+		processor.initialize("shardId-000");
+		processor.processRecords(Lists.newArrayList(this.record("1", ClaimCheckRecord.toBytes("bucket:claim-checks/" + TOPIC + "/1"))), checkpointer);
+
+		assertThat(handler.batches).isEmpty();
+		assertThat(processor.getRetryCount()).isEqualTo(1);
+		verify(checkpointer, never()).checkpoint(anyString());
+
+		processor.processRecords(Collections.<Record>emptyList(), checkpointer);
+		assertThat(handler.batches).hasSize(1);
+		assertThat(handler.batches.get(0).get(0).getId()).isEqualTo(event.getId());
+		assertThat(sink.deadLetters).isEmpty();
+		verify(checkpointer).checkpoint("1");
+	}
+
+
+
+	private FileStoreFactory claimCheckFiles(final Event event) throws Exception{
+		final byte[] data = mapper.writeValueAsBytes(event);
+		final FileStoreFactory files = mock(FileStoreFactory.class);
+		when(files.readStream(any(FilePath.class))).thenReturn(FileContentStream.create("bucket", "claim-checks/" + TOPIC + "/1", data.length, new ByteArrayInputStream(data)));
+		return files;
+	}
+
+
+	/***
+	 * Checkpoint on every call so tests can observe checkpoints
+	 */
+	private static KinesisConsumerConfig noBackoff(){
+		return new KinesisConsumerConfig()
+		.withInitialBackoffMs(0)
+		.withMaxBackoffMs(0)
+		.withCheckpointIntervalMs(0);
+	}
+
+
+	private List<Record> records(final List<Event> events) throws Exception{
+		final List<Record> records = Lists.newArrayList();
+		for(Event event : events){
+			records.add(this.record(event.getId(), mapper.writeValueAsBytes(event)));
+		}
+		return records;
+	}
+
+
+	private Record record(final String sequenceNumber, final byte[] data){
+		return new Record()
+		.withSequenceNumber(sequenceNumber)
+		.withPartitionKey("key")
+		.withData(ByteBuffer.wrap(data));
+	}
+
+
+	private static List<Event> createEvents(final int count){
+		final List<Event> events = Lists.newArrayList();
+		for(int i = 0; i < count; i++){
+			final Map<String, Object> data = Maps.newHashMap();
+			data.put("index", i);
+			events.add(Event.create(TOPIC, "key-" + i, data));
+		}
+		return events;
+	}
+
+
+
+	/***
+	 * Fails the event with the given id once
+	 */
+	static class FailingHandler implements EventHandler{
+		private String failId;
+		FailingHandler(final String failId){
+			this.failId = failId;
+		}
+		@Override
+		public void handle(Event event) {
+			if(event.getId().equals(this.failId)){
+				this.failId = null;
+				throw new IllegalStateException("failed event: " + event.getId());
+			}
+		}
+		@Override
+		public void handle(List<Event> events) {
+			for(Event event : events){
+				this.handle(event);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Tracks per key ordering and the number of events handled concurrently
+	 */
+	static class ParallelHandler implements EventHandler{
+		private final Map<String, List<Integer>> order = new ConcurrentHashMap<String, List<Integer>>();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+		private final AtomicInteger handled = new AtomicInteger();
+		@Override
+		public void handle(Event event) {
+			final int concurrent = this.running.incrementAndGet();
+			synchronized (this.maxConcurrent) {
+				this.maxConcurrent.set(Math.max(this.maxConcurrent.get(), concurrent));
+			}
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if(!this.order.containsKey(event.getPartitionKey())){
+				this.order.put(event.getPartitionKey(), new CopyOnWriteArrayList<Integer>());
+			}
+			this.order.get(event.getPartitionKey()).add((Integer)event.getEventData().getData().get("index"));
+			this.handled.incrementAndGet();
+			this.running.decrementAndGet();
+		}
+		@Override
+		public void handle(List<Event> events) {
+			for(Event event : events){
+				this.handle(event);
+			}
+		}
+	}
+
+
+
+	/***
+	 * Records dead letters
+	 */
+	static class RecordingSink implements DeadLetterSink{
+		private final List<DeadLetter> deadLetters = new CopyOnWriteArrayList<DeadLetter>();
+		@Override
+		public void send(DeadLetter deadLetter) {
+			this.deadLetters.add(deadLetter);
+		}
+	}
+
+
+
+	/***
+	 * Records each batch, failing the first event of the batch for the configured number of calls
+	 */
+	static class RecordingHandler implements EventHandler{
+		private final List<List<Event>> batches = Lists.newArrayList();
+		private int failures;
+		RecordingHandler(final int failures){
+			this.failures = failures;
+		}
+		@Override
+		public void handle(Event event) {
+			this.handle(Lists.newArrayList(event));
+		}
+		@Override
+		public void handle(List<Event> events) {
+			this.batches.add(Lists.newArrayList(events));
+			if(this.failures > 0){
+				this.failures--;
+				throw new EventBatchException("first event failed", events.subList(0, 1));
+			}
+		}
+	}
+}
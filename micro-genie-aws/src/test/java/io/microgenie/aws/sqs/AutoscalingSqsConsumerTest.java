@@ -0,0 +1,102 @@
+package io.microgenie.aws.sqs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.admin.SqsQueueAdmin.QueueDepth;
+import io.microgenie.aws.config.SqsConsumerConfig;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+
+/***
+ * Test the poller scaling of the {@link AutoscalingSqsConsumer}
+ * @author shawn
+ */
+public class AutoscalingSqsConsumerTest {
+
+	private static final String QUEUE = "TestQueue";
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue";
+
+
+	/***
+	 * The desired poller count should hold the target backlog per thread, bounded by min and max threads
+	 */
+	@Test
+	public void shouldBoundDesiredPollersByMinAndMaxThreads(){
+
+		final SqsConsumerConfig config = new SqsConsumerConfig().withMinThreads(2).withMaxThreads(8).withTargetBacklogPerThread(100);
+
+		assertThat(AutoscalingSqsConsumer.desiredPollers(new QueueDepth(0, 0), config)).isEqualTo(2);
+		assertThat(AutoscalingSqsConsumer.desiredPollers(new QueueDepth(250, 200), config)).isEqualTo(5);
+		assertThat(AutoscalingSqsConsumer.desiredPollers(new QueueDepth(501, 0), config)).isEqualTo(6);
+		assertThat(AutoscalingSqsConsumer.desiredPollers(new QueueDepth(100000, 0), config)).isEqualTo(8);
+	}
+
+
+
+	/***
+	 * Pollers should be added straight up to the desired count and retired one per sample
+	 */
+	@Test
+	public void shouldAddPollersForBacklogAndRetireOnePerSample(){
+
+		final AmazonSQSClient client = mock(AmazonSQSClient.class);
+		when(client.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new Answer<ReceiveMessageResult>() {
+			@Override
+			public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+				Thread.sleep(10);
+				return new ReceiveMessageResult();
+			}
+		});
+		final SqsQueueAdmin admin = mock(SqsQueueAdmin.class);
+		when(admin.getQueueUrl(QUEUE)).thenReturn(QUEUE_URL);
+		when(admin.getQueueDepth(QUEUE))
+		.thenReturn(new QueueDepth(350, 50))
+		.thenReturn(new QueueDepth(0, 0));
+
+		final SqsConsumerConfig config = new SqsConsumerConfig()
+		.withQueue(QUEUE)
+		.withHandler(new NoopHandler())
+		.withMode(SqsConsumerConfig.ConsumerMode.AUTOSCALING)
+		.withVisibilityHeartbeat(false)
+		.withMinThreads(1)
+		.withMaxThreads(10)
+		.withTargetBacklogPerThread(100)
+		.withScaleIntervalMs(60000);
+		final AutoscalingSqsConsumer consumer = new AutoscalingSqsConsumer(client, admin, config, null);
+		try{
+			consumer.start();
+			assertThat(consumer.getPollerCount()).isEqualTo(1);
+			assertThat(consumer.scale()).isEqualTo(4);
+			assertThat(consumer.scale()).isEqualTo(3);
+			assertThat(consumer.scale()).isEqualTo(2);
+			assertThat(consumer.scale()).isEqualTo(1);
+			assertThat(consumer.scale()).isEqualTo(1);
+		}finally{
+			consumer.stop();
+		}
+		assertThat(consumer.getPollerCount()).isEqualTo(0);
+	}
+
+
+
+	private static class NoopHandler implements MessageHandler {
+		@Override
+		public void handle(Message message) {}
+		@Override
+		public void handleBatch(List<Message> messages) {}
+	}
+}
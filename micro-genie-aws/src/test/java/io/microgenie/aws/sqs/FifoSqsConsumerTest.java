@@ -0,0 +1,146 @@
+package io.microgenie.aws.sqs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.config.SqsConsumerConfig;
+import io.microgenie.aws.config.SqsQueueConfig;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+
+
+/***
+ * Test message group ordering and failure handling of the {@link FifoSqsConsumer}
+ * @author shawn
+ */
+public class FifoSqsConsumerTest {
+
+	private static final String QUEUE = "TestQueue" + SqsQueueConfig.FIFO_SUFFIX;
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue.fifo";
+
+
+	/***
+	 * The messages of each group should be handled in the order they were received
+	 */
+	@Test
+	public void shouldHandleEachGroupInOrder() throws InterruptedException{
+
+		final AmazonSQSClient client = mock(AmazonSQSClient.class);
+		final RecordingHandler handler = new RecordingHandler(null);
+		final FifoSqsConsumer consumer = new FifoSqsConsumer(client, admin(), config(handler), null);
+		try{
+			consumer.handleReceived(Lists.newArrayList(message("a1", "A"), message("b1", "B"), message("a2", "A"),
+					message("c1", "C"), message("b2", "B"), message("a3", "A")));
+
+			assertThat(handler.handled.get("A")).containsExactly("a1", "a2", "a3");
+			assertThat(handler.handled.get("B")).containsExactly("b1", "b2");
+			assertThat(handler.handled.get("C")).containsExactly("c1");
+			assertThat(FifoSqsConsumer.groupByMessageGroup(Lists.newArrayList(message("a1", "A"), message("b1", "B"), message("a2", "A"))).keySet())
+			.containsExactly("A", "B");
+		}finally{
+			consumer.stop();
+		}
+	}
+
+
+
+	/***
+	 * A failed message should stop its group, the handled messages are deleted and the rest of the group is released
+	 */
+	@Test
+	public void shouldReleaseTheRestOfAGroupAfterAFailure() throws InterruptedException{
+
+		final AmazonSQSClient client = mock(AmazonSQSClient.class);
+		final RecordingHandler handler = new RecordingHandler("a2");
+		final FifoSqsConsumer consumer = new FifoSqsConsumer(client, admin(), config(handler), null);
+		try{
+			consumer.handleReceived(Lists.newArrayList(message("a1", "A"), message("a2", "A"), message("a3", "A")));
+
+			assertThat(handler.handled.get("A")).containsExactly("a1");
+			final ArgumentCaptor<DeleteMessageBatchRequest> deletes = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+			verify(client).deleteMessageBatch(deletes.capture());
+			final List<String> deleted = Lists.newArrayList();
+			for(DeleteMessageBatchRequestEntry entry : deletes.getValue().getEntries()){
+				deleted.add(entry.getId());
+			}
+			assertThat(deleted).containsExactly("a1");
+			final ArgumentCaptor<ChangeMessageVisibilityBatchRequest> releases = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+			verify(client).changeMessageVisibilityBatch(releases.capture());
+			assertThat(releases.getValue().getEntries()).hasSize(2);
+			assertThat(releases.getValue().getEntries().get(0).getId()).isEqualTo("a2");
+			assertThat(releases.getValue().getEntries().get(1).getId()).isEqualTo("a3");
+		}finally{
+			consumer.stop();
+		}
+	}
+
+
+
+	private static SqsQueueAdmin admin(){
+		final SqsQueueAdmin admin = mock(SqsQueueAdmin.class);
+		when(admin.getQueueUrl(QUEUE)).thenReturn(QUEUE_URL);
+		return admin;
+	}
+
+
+	private static SqsConsumerConfig config(final MessageHandler handler){
+		return new SqsConsumerConfig()
+		.withQueue(QUEUE)
+		.withHandler(handler)
+		.withMode(SqsConsumerConfig.ConsumerMode.FIFO)
+		.withVisibilityHeartbeat(false)
+		.withThreads(2);
+	}
+
+
+	private static SqsMessage message(final String id, final String group){
+		final Map<String, String> headers = ImmutableMap.of(SqsMessage.MESSAGE_GROUP_ID, group);
+		return new SqsMessage(QUEUE, id, headers, "body-" + id, "receipt-" + id, System.currentTimeMillis());
+	}
+
+
+
+	/***
+	 * Records the handled message ids by group, failing the message with the given id
+	 */
+	private static class RecordingHandler implements MessageHandler {
+
+		private final ListMultimap<String, String> handled = Multimaps.synchronizedListMultimap(LinkedListMultimap.<String, String>create());
+		private final String failId;
+
+		RecordingHandler(final String failId){
+			this.failId = failId;
+		}
+		@Override
+		public void handle(Message message) {
+			if(message.getId().equals(this.failId)){
+				throw new RuntimeException("failed to handle message: " + message.getId());
+			}
+			this.handled.put(message.getHeaders().get(SqsMessage.MESSAGE_GROUP_ID), message.getId());
+		}
+		@Override
+		public void handleBatch(List<Message> messages) {
+			for(Message message : messages){
+				this.handle(message);
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package io.microgenie.aws.sqs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.config.SqsConsumerConfig;
+import io.microgenie.aws.config.SqsConsumerConfig.ConsumerMode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+
+/***
+ * Test the receive, handle and delete stages of the {@link PipelinedSqsConsumer}
+ * @author shawn
+ */
+public class PipelinedSqsConsumerTest {
+
+	private static final String QUEUE = "TestQueue";
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue";
+
+	private final AmazonSQSClient client = mock(AmazonSQSClient.class);
+	private final SqsQueueAdmin admin = mock(SqsQueueAdmin.class);
+
+
+	@Before
+	public void setup(){
+		when(admin.getQueueUrl(QUEUE)).thenReturn(QUEUE_URL);
+		when(client.receiveMessage(any(ReceiveMessageRequest.class)))
+		.thenReturn(new ReceiveMessageResult().withMessages(message("1"), message("2"), message("3")))
+		.thenReturn(new ReceiveMessageResult());
+	}
+
+
+
+	/***
+	 * Received messages should be handled and then deleted by the deleter stage
+	 */
+	@Test
+	public void shouldHandleAndDeleteReceivedMessages() throws InterruptedException{
+
+		when(admin.getVisibilityTimeout(QUEUE)).thenReturn(30);
+		final RecordingHandler handler = new RecordingHandler(3);
+		final PipelinedSqsConsumer consumer = new PipelinedSqsConsumer(client, admin, config(handler));
+
+		consumer.start();
+		assertThat(handler.latch.await(5, TimeUnit.SECONDS)).isTrue();
+		consumer.stop();
+
+		assertThat(handler.messages).hasSize(3);
+		final ArgumentCaptor<DeleteMessageBatchRequest> deleteCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+		verify(client, atLeastOnce()).deleteMessageBatch(deleteCaptor.capture());
+		int deleted = 0;
+		for(DeleteMessageBatchRequest request : deleteCaptor.getAllValues()){
+			assertThat(request.getQueueUrl()).isEqualTo(QUEUE_URL);
+			for(DeleteMessageBatchRequestEntry entry : request.getEntries()){
+				assertThat(entry.getReceiptHandle()).startsWith("receipt-");
+				deleted++;
+			}
+		}
+		assertThat(deleted).isEqualTo(3);
+	}
+
+
+
+	/***
+	 * Messages whose visibility timeout expires within the margin should not be handed to the handler
+	 */
+	@Test
+	public void shouldNotHandMessagesAboutToExpire() throws InterruptedException{
+
+		when(admin.getVisibilityTimeout(QUEUE)).thenReturn(1);
+		final RecordingHandler handler = new RecordingHandler(1);
+		final PipelinedSqsConsumer consumer = new PipelinedSqsConsumer(client, admin, config(handler).withVisibilityMarginMs(5000));
+
+		consumer.start();
+		final long deadline = System.currentTimeMillis() + 5000;
+		while(consumer.getExpiredCount() < 3 && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		consumer.stop();
+
+		assertThat(consumer.getExpiredCount()).isEqualTo(3);
+		assertThat(handler.messages).isEmpty();
+		verify(client, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+	}
+
+
+
+	private static SqsConsumerConfig config(final MessageHandler handler){
+		return new SqsConsumerConfig()
+		.withQueue(QUEUE)
+		.withMode(ConsumerMode.PIPELINED)
+		.withThreads(2)
+		.withBufferSize(20)
+		.withWaitTimeSeconds(0)
+		.withHandler(handler);
+	}
+
+	private static com.amazonaws.services.sqs.model.Message message(final String id){
+		return new com.amazonaws.services.sqs.model.Message()
+		.withMessageId(id)
+		.withReceiptHandle("receipt-" + id)
+		.withBody("body-" + id);
+	}
+
+
+	static class RecordingHandler implements MessageHandler{
+		private final List<Message> messages = new CopyOnWriteArrayList<Message>();
+		private final CountDownLatch latch;
+		RecordingHandler(final int expected){
+			this.latch = new CountDownLatch(expected);
+		}
+		@Override
+		public void handle(Message message) {
+			this.handleBatch(Collections.singletonList(message));
+		}
+		@Override
+		public void handleBatch(List<Message> messages) {
+			for(Message message : messages){
+				this.messages.add(message);
+				this.latch.countDown();
+			}
+		}
+	}
+}
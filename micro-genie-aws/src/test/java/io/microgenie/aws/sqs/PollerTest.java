@@ -0,0 +1,216 @@
+package io.microgenie.aws.sqs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.queue.Message;
+import io.microgenie.application.queue.MessageBatchException;
+import io.microgenie.application.queue.MessageHandler;
+import io.microgenie.aws.config.SqsConsumerConfig;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.google.common.collect.Lists;
+
+
+/***
+ * Test receive requests, acknowledgements and adaptive polling of the {@link Poller}
+ * @author shawn
+ */
+public class PollerTest {
+
+	private static final String QUEUE = "TestQueue";
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue";
+
+
+	/***
+	 * Receives should request a full batch and long poll with the configured wait time
+	 */
+	@Test
+	public void shouldLongPollForFullBatches(){
+
+		final AmazonSQSClient client = mock(AmazonSQSClient.class);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final List<ReceiveMessageRequest> requests = Lists.newArrayList();
+		when(client.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new Answer<ReceiveMessageResult>() {
+			@Override
+			public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+				requests.add((ReceiveMessageRequest)invocation.getArguments()[0]);
+				running.set(false);
+				return new ReceiveMessageResult();
+			}
+		});
+
+		final SqsConsumerConfig config = new SqsConsumerConfig().withQueue(QUEUE);
+		new Poller(QUEUE, QUEUE_URL, new NoopHandler(), client, running, config, 
+				new AdaptivePolling(QUEUE, 1, config.getMaxMessages(), 0, true), 0, null, null).run();
+
+		assertThat(requests).hasSize(1);
+		assertThat(requests.get(0).getQueueUrl()).isEqualTo(QUEUE_URL);
+		assertThat(requests.get(0).getMaxNumberOfMessages()).isEqualTo(10);
+		assertThat(requests.get(0).getWaitTimeSeconds()).isEqualTo(20);
+	}
+
+
+
+	/***
+	 * Only acknowledged messages should be deleted, failed messages should be released for redelivery
+	 */
+	@Test
+	public void shouldDeleteAcknowledgedAndReleaseFailedMessages(){
+
+		final AmazonSQSClient client = mock(AmazonSQSClient.class);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		when(client.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new Answer<ReceiveMessageResult>() {
+			@Override
+			public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+				running.set(false);
+				return new ReceiveMessageResult().withMessages(message("1"), message("2"), message("3"));
+			}
+		});
+		final MessageHandler handler = new NoopHandler(){
+			@Override
+			public void handleBatch(List<Message> messages) {
+				throw new MessageBatchException("message 2 failed", Lists.newArrayList(messages.get(1)));
+			}
+		};
+
+		final SqsConsumerConfig config = new SqsConsumerConfig().withQueue(QUEUE).withNackVisibilityTimeoutSeconds(5);
+		new Poller(QUEUE, QUEUE_URL, handler, client, running, config, 
+				new AdaptivePolling(QUEUE, 1, config.getMaxMessages(), 0, true), 0, null, null).run();
+
+		final ArgumentCaptor<DeleteMessageBatchRequest> deleteCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+		verify(client).deleteMessageBatch(deleteCaptor.capture());
+		assertThat(deleteCaptor.getValue().getEntries()).hasSize(2);
+		assertThat(deleteCaptor.getValue().getEntries().get(0).getReceiptHandle()).isEqualTo("receipt-1");
+		assertThat(deleteCaptor.getValue().getEntries().get(1).getReceiptHandle()).isEqualTo("receipt-3");
+
+		final ArgumentCaptor<ChangeMessageVisibilityBatchRequest> nackCaptor = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(client).changeMessageVisibilityBatch(nackCaptor.capture());
+		assertThat(nackCaptor.getValue().getEntries()).hasSize(1);
+		assertThat(nackCaptor.getValue().getEntries().get(0).getReceiptHandle()).isEqualTo("receipt-2");
+		assertThat(nackCaptor.getValue().getEntries().get(0).getVisibilityTimeout()).isEqualTo(5);
+	}
+
+
+
+	/***
+	 * The heartbeat should stop extending the batch before failed messages are released, 
+	 * otherwise a beat could hide them again after the release
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldStopExtendingBeforeReleasingFailedMessages(){
+
+		final AmazonSQSClient client = mock(AmazonSQSClient.class);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		when(client.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new Answer<ReceiveMessageResult>() {
+			@Override
+			public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+				running.set(false);
+				return new ReceiveMessageResult().withMessages(message("1"), message("2"));
+			}
+		});
+		final MessageHandler handler = new NoopHandler(){
+			@Override
+			public void handleBatch(List<Message> messages) {
+				throw new MessageBatchException("message 2 failed", Lists.newArrayList(messages.get(1)));
+			}
+		};
+		final VisibilityHeartbeat heartbeat = mock(VisibilityHeartbeat.class);
+
+		final SqsConsumerConfig config = new SqsConsumerConfig().withQueue(QUEUE);
+		new Poller(QUEUE, QUEUE_URL, handler, client, running, config, 
+				new AdaptivePolling(QUEUE, 1, config.getMaxMessages(), 0, true), 0, heartbeat, null).run();
+
+		final InOrder inOrder = inOrder(heartbeat, client);
+		inOrder.verify(heartbeat).track(any(List.class));
+		inOrder.verify(heartbeat).release(any(List.class));
+		inOrder.verify(client).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+		inOrder.verify(client).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+	}
+
+
+
+	/***
+	 * Mostly empty receives should park pollers one at a time, full batches should double the active pollers
+	 */
+	@Test
+	public void shouldAdaptActivePollersToReceiveResults(){
+
+		final AdaptivePolling polling = new AdaptivePolling(QUEUE, 4, 10, 0, true);
+		assertThat(polling.getActivePollers()).isEqualTo(4);
+
+		receive(polling, 0, 10);
+		assertThat(polling.getActivePollers()).isEqualTo(3);
+		receive(polling, 0, 20);
+		assertThat(polling.getActivePollers()).isEqualTo(1);
+
+		receive(polling, 10, 10);
+		assertThat(polling.getActivePollers()).isEqualTo(2);
+		receive(polling, 10, 10);
+		assertThat(polling.getActivePollers()).isEqualTo(4);
+
+		/** partial batches on a queue that is not idle leave the pollers unchanged **/
+		receive(polling, 3, 10);
+		assertThat(polling.getActivePollers()).isEqualTo(4);
+	}
+
+
+
+	/***
+	 * The idle delay should grow with consecutive empty receives up to the maximum and reset on messages
+	 */
+	@Test
+	public void shouldBackOffBetweenEmptyReceives(){
+
+		final AdaptivePolling polling = new AdaptivePolling(QUEUE, 1, 10, 500, true);
+		assertThat(polling.idleDelayMillis()).isEqualTo(0);
+		receive(polling, 0, 1);
+		assertThat(polling.idleDelayMillis()).isEqualTo(100);
+		receive(polling, 0, 1);
+		assertThat(polling.idleDelayMillis()).isEqualTo(200);
+		receive(polling, 0, 5);
+		assertThat(polling.idleDelayMillis()).isEqualTo(500);
+		receive(polling, 1, 1);
+		assertThat(polling.idleDelayMillis()).isEqualTo(0);
+	}
+
+
+
+	private static com.amazonaws.services.sqs.model.Message message(final String id){
+		return new com.amazonaws.services.sqs.model.Message()
+		.withMessageId(id)
+		.withReceiptHandle("receipt-" + id)
+		.withBody("body-" + id);
+	}
+
+	private static void receive(final AdaptivePolling polling, final int count, final int times){
+		for(int i = 0; i < times; i++){
+			polling.received(count);
+		}
+	}
+
+
+	static class NoopHandler implements MessageHandler{
+		@Override
+		public void handle(Message message) {}
+		@Override
+		public void handleBatch(List<Message> messages) {}
+	}
+}
@@ -0,0 +1,219 @@
+package io.microgenie.aws.sqs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.microgenie.application.blob.ClaimCheckStore;
+import io.microgenie.application.blob.FileContent;
+import io.microgenie.application.blob.FileStoreFactory;
+import io.microgenie.application.queue.Message;
+import io.microgenie.aws.admin.SqsQueueAdmin;
+import io.microgenie.aws.config.SqsProducerConfig;
+import io.microgenie.aws.config.SqsQueueConfig;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.amazonaws.Request;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.transform.SendMessageBatchRequestMarshaller;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/***
+ * Test batch splitting, retries and FIFO ids of the {@link SqsProducer} and coalescing of the {@link BufferedSqsProducer}
+ * @author shawn
+ */
+public class SqsProducerTest {
+
+	private static final String QUEUE = "TestQueue";
+	private static final String FIFO_QUEUE = QUEUE + SqsQueueConfig.FIFO_SUFFIX;
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue";
+
+	private final AmazonSQSClient client = mock(AmazonSQSClient.class);
+	private final SqsQueueAdmin admin = mock(SqsQueueAdmin.class);
+	private final SqsProducerConfig config = new SqsProducerConfig().withInitialBackoffMs(1);
+
+
+	@Before
+	public void setup(){
+		when(admin.getQueueUrl(QUEUE)).thenReturn(QUEUE_URL);
+		when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(new SendMessageBatchResult());
+	}
+
+
+
+	/***
+	 * Batches should be split into requests of at most 10 entries and 256 KB
+	 */
+	@Test
+	public void shouldSplitBatchesByEntriesAndBytes(){
+
+		final SqsProducer producer = new SqsProducer(client, admin, config);
+		final List<Message> messages = messages(12, "body");
+		messages.addAll(messages(3, Strings.repeat("x", 100 * 1024)));
+
+		final List<Message> failed = producer.sendBatch(QUEUE, messages);
+
+		assertThat(failed).isEmpty();
+		final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+		verify(client, times(3)).sendMessageBatch(captor.capture());
+		assertThat(captor.getAllValues().get(0).getEntries()).hasSize(10);
+		assertThat(captor.getAllValues().get(1).getEntries()).hasSize(4);
+		assertThat(captor.getAllValues().get(2).getEntries()).hasSize(1);
+	}
+
+
+
+	/***
+	 * Entries failing through no fault of the sender should be retried, sender faults should be reported as failed
+	 */
+	@Test
+	public void shouldRetryFailedEntries(){
+
+		when(client.sendMessageBatch(any(SendMessageBatchRequest.class)))
+		.thenReturn(new SendMessageBatchResult().withFailed(
+				new BatchResultErrorEntry().withId("1").withCode("ServiceUnavailable").withSenderFault(false),
+				new BatchResultErrorEntry().withId("2").withCode("InvalidMessageContents").withSenderFault(true)))
+		.thenReturn(new SendMessageBatchResult());
+		final SqsProducer producer = new SqsProducer(client, admin, config);
+		final List<Message> messages = messages(3, "body");
+
+		final List<Message> failed = producer.sendBatch(QUEUE, messages);
+
+		assertThat(failed).containsExactly(messages.get(2));
+		final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+		verify(client, times(2)).sendMessageBatch(captor.capture());
+		assertThat(captor.getAllValues().get(1).getEntries()).hasSize(1);
+		assertThat(captor.getAllValues().get(1).getEntries().get(0).getMessageBody()).isEqualTo(messages.get(1).getBody());
+	}
+
+
+
+	/***
+	 * Bodies over the SQS limit should be saved to the file store and sent as a claim check pointer
+	 */
+	@Test
+	public void shouldSendOversizedBodiesAsClaimChecks(){
+
+		final FileStoreFactory files = mock(FileStoreFactory.class);
+		final SqsProducer producer = new SqsProducer(client, admin, config, new ClaimCheckStore(files, "bucket", "claim-checks"));
+		final List<Message> messages = messages(1, Strings.repeat("x", 300 * 1024));
+
+		final List<Message> failed = producer.sendBatch(QUEUE, messages);
+
+		assertThat(failed).isEmpty();
+		verify(files).save(any(FileContent.class));
+		final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+		verify(client).sendMessageBatch(captor.capture());
+		final SendMessageBatchRequestEntry entry = captor.getValue().getEntries().get(0);
+		assertThat(entry.getMessageBody()).startsWith("bucket:claim-checks/" + QUEUE + "/");
+		assertThat(entry.getMessageAttributes().get(ClaimCheckStore.HEADER).getStringValue()).isEqualTo(entry.getMessageBody());
+	}
+
+
+
+	/***
+	 * Messages bound for FIFO queues should carry their group and deduplication ids as request parameters rather than attributes
+	 */
+	@Test
+	public void shouldSendGroupAndDeduplicationIdsToFifoQueues(){
+
+		when(admin.getQueueUrl(FIFO_QUEUE)).thenReturn(QUEUE_URL + SqsQueueConfig.FIFO_SUFFIX);
+		final SqsProducer producer = new SqsProducer(client, admin, config);
+		final Map<String, String> headers = Maps.newHashMap();
+		headers.put(SqsMessage.MESSAGE_GROUP_ID, "order-1");
+		headers.put(SqsMessage.MESSAGE_DEDUPLICATION_ID, "event-1");
+		headers.put("type", "OrderPlaced");
+		final List<Message> messages = Lists.<Message>newArrayList(new SqsMessage(FIFO_QUEUE, "1", headers, "body", null, 0));
+
+		final List<Message> failed = producer.sendBatch(FIFO_QUEUE, messages);
+
+		assertThat(failed).isEmpty();
+		final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+		verify(client).sendMessageBatch(captor.capture());
+		assertThat(captor.getValue().getEntries().get(0).getMessageAttributes()).containsOnlyKeys("type");
+
+		final Request<SendMessageBatchRequest> request = new SendMessageBatchRequestMarshaller().marshall(captor.getValue());
+		new FifoRequestHandler().beforeRequest(request);
+		assertThat(request.getParameters().get("SendMessageBatchRequestEntry.1.MessageGroupId")).isEqualTo("order-1");
+		assertThat(request.getParameters().get("SendMessageBatchRequestEntry.1.MessageDeduplicationId")).isEqualTo("event-1");
+	}
+
+
+
+	/***
+	 * Individually submitted messages should be coalesced into full batches
+	 */
+	@Test
+	public void shouldCoalesceSubmittedMessages(){
+
+		final BufferedSqsProducer producer = new BufferedSqsProducer(new SqsProducer(client, admin, config), config.withLingerMs(60000));
+		try{
+			for(Message message : messages(15, "body")){
+				producer.submit(message);
+			}
+			producer.flush();
+
+			final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+			verify(client, times(2)).sendMessageBatch(captor.capture());
+			int sent = 0;
+			for(SendMessageBatchRequest request : captor.getAllValues()){
+				sent += request.getEntries().size();
+			}
+			assertThat(sent).isEqualTo(15);
+		}finally{
+			producer.close();
+		}
+	}
+
+
+
+	/***
+	 * Closing should send the buffered messages, and messages submitted after close should be rejected
+	 */
+	@Test
+	public void shouldSendBufferedMessagesOnCloseAndRejectLaterSubmits(){
+
+		final BufferedSqsProducer producer = new BufferedSqsProducer(new SqsProducer(client, admin, config), config.withLingerMs(60000));
+		for(Message message : messages(3, "body")){
+			producer.submit(message);
+		}
+		producer.close();
+		verify(client).sendMessageBatch(any(SendMessageBatchRequest.class));
+
+		try{
+			producer.submit(messages(1, "late").get(0));
+			fail("expected an IllegalStateException");
+		}catch(IllegalStateException ex){
+			assertThat(ex.getMessage()).contains("closed");
+		}
+	}
+
+
+
+	private static List<Message> messages(final int count, final String body){
+		final List<Message> messages = Lists.newArrayList();
+		for(int i = 0; i < count; i++){
+			final com.amazonaws.services.sqs.model.Message sqsMessage = new com.amazonaws.services.sqs.model.Message()
+			.withMessageId(body.length() + "-" + i)
+			.withBody(body + i);
+			messages.add(SqsMessage.from(QUEUE, sqsMessage, System.currentTimeMillis()));
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,157 @@
+package io.microgenie.aws.sqs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.google.common.collect.Lists;
+
+
+/***
+ * Test lease extension of the {@link VisibilityHeartbeat}
+ * @author shawn
+ */
+public class VisibilityHeartbeatTest {
+
+	private static final String QUEUE = "TestQueue";
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/TestQueue";
+
+	private final AmazonSQSClient client = mock(AmazonSQSClient.class);
+
+
+	@Before
+	public void setup(){
+		when(client.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class))).thenReturn(new ChangeMessageVisibilityBatchResult());
+	}
+
+
+
+	/***
+	 * Only tracked messages whose lease expires before the next beat should be extended
+	 */
+	@Test
+	public void shouldExtendLeasesAboutToExpire(){
+
+		final long now = System.currentTimeMillis();
+		final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE, QUEUE_URL, 30, 3600);
+		final SqsMessage expiring = message("1", now - 25000);
+		final SqsMessage fresh = message("2", now);
+		final SqsMessage handled = message("3", now - 25000);
+		heartbeat.track(Lists.newArrayList(expiring, fresh, handled));
+		heartbeat.release(Collections.singletonList(handled));
+
+		heartbeat.beat(now);
+
+		final ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(client).changeMessageVisibilityBatch(captor.capture());
+		assertThat(captor.getValue().getEntries()).hasSize(1);
+		assertThat(captor.getValue().getEntries().get(0).getReceiptHandle()).isEqualTo("receipt-1");
+		assertThat(captor.getValue().getEntries().get(0).getVisibilityTimeout()).isEqualTo(30);
+		assertThat(heartbeat.getTrackedCount()).isEqualTo(2);
+	}
+
+
+
+	/***
+	 * Leases should not be extended beyond the maximum visibility
+	 */
+	@Test
+	public void shouldStopExtendingAtMaximumVisibility(){
+
+		final long now = System.currentTimeMillis();
+		final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE, QUEUE_URL, 30, 40);
+		heartbeat.track(Collections.singletonList(message("1", now - 25000)));
+
+		heartbeat.beat(now);
+		final ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(client).changeMessageVisibilityBatch(captor.capture());
+		assertThat(captor.getValue().getEntries().get(0).getVisibilityTimeout()).isEqualTo(15);
+
+		heartbeat.beat(now + 10000);
+		assertThat(heartbeat.getTrackedCount()).isEqualTo(0);
+		verify(client).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+	}
+
+
+
+	/***
+	 * Releasing a message should wait for a beat in progress, so the message is not extended after it was released
+	 */
+	@Test
+	public void shouldWaitForBeatInProgressOnRelease() throws InterruptedException{
+
+		final long now = System.currentTimeMillis();
+		final CountDownLatch extending = new CountDownLatch(1);
+		final CountDownLatch extended = new CountDownLatch(1);
+		when(client.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class))).thenAnswer(new Answer<ChangeMessageVisibilityBatchResult>() {
+			@Override
+			public ChangeMessageVisibilityBatchResult answer(InvocationOnMock invocation) throws InterruptedException {
+				extending.countDown();
+				extended.await(5, TimeUnit.SECONDS);
+				return new ChangeMessageVisibilityBatchResult();
+			}
+		});
+		final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE, QUEUE_URL, 30, 3600);
+		final SqsMessage message = message("1", now - 25000);
+		heartbeat.track(Collections.singletonList(message));
+
+		final Thread beating = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				heartbeat.beat(now);
+			}
+		});
+		final Thread releasing = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				heartbeat.release(Collections.singletonList(message));
+			}
+		});
+		beating.start();
+		assertThat(extending.await(5, TimeUnit.SECONDS)).isTrue();
+		releasing.start();
+		releasing.join(200);
+		assertThat(releasing.isAlive()).isTrue();
+
+		extended.countDown();
+		releasing.join(5000);
+		beating.join(5000);
+		assertThat(heartbeat.getTrackedCount()).isEqualTo(0);
+	}
+
+
+
+	/***
+	 * Nothing should be sent while no message is about to expire
+	 */
+	@Test
+	public void shouldNotCallSqsWithoutExpiringLeases(){
+		final long now = System.currentTimeMillis();
+		final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE, QUEUE_URL, 30, 3600);
+		heartbeat.track(Collections.singletonList(message("1", now)));
+		heartbeat.beat(now);
+		verify(client, never()).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+	}
+
+
+
+	private static SqsMessage message(final String id, final long receivedAt){
+		return new SqsMessage(QUEUE, id, Collections.<String, String>emptyMap(), "body-" + id, "receipt-" + id, receivedAt);
+	}
+}